@@ -121,6 +121,15 @@ public class JawrConstant {
 	/** The smartsprites temporary directory */
 	public static final String CSS_SMARTSPRITES_TMP_DIR = "/cssSprites/src/";
 
+	/** The smartsprites cache directory of the generated sprites */
+	public static final String CSS_SMARTSPRITES_CACHE_DIR = "/cssSprites/cache/";
+
+	/** The property name of the number of threads used to generate the sprites */
+	public static final String CSS_SMARTSPRITES_THREAD_COUNT = "jawr.css.smartsprites.threadCount";
+
+	/** The property name of the flag enabling the cache of the generated sprites */
+	public static final String CSS_SMARTSPRITES_CACHE_ENABLED = "jawr.css.smartsprites.cache.enabled";
+
 	/** The ID of the CSS sprite global preprocessor */
 	public static final String GLOBAL_CSS_SMARTSPRITES_PREPROCESSOR_ID = "smartsprites";
 
@@ -243,6 +252,22 @@ public class JawrConstant {
 
 	public static final String BASE64_ENCODE_SPRITE = "jawr.css.postprocessor.base64ImageEncoder.encode.sprite";
 
+	/** The maximum number of entries of the shared base64 encoded image cache */
+	public static final String BASE64_IMG_CACHE_MAX_ENTRIES = "jawr.css.postprocessor.base64ImageEncoder.cache.maxEntries";
+
+	/** The maximum number of base64 encoded images kept for the image tags */
+	public static final String JAWR_BINARY_BASE64_CACHE_MAX_ENTRIES = "jawr.binary.base64.cache.maxEntries";
+
+	/** The default maximum number of base64 encoded images kept for the image tags */
+	public static final int DEFAULT_BINARY_BASE64_CACHE_MAX_ENTRIES = 200;
+
+	/**
+	 * The comma separated list of the web application directories whose pages
+	 * are scanned at startup for the image tags, to compute the cache busted
+	 * URL of their images in background
+	 */
+	public static final String JAWR_BINARY_TAG_PRESCAN_DIRS = "jawr.binary.tag.prescan.dirs";
+
 	public static final String POST_PROCESSING_CTX_JAWR_BINARY_MAPPING = "jawrBinaryMapping";
 
 	public static final String BASE64_ENCODED_RESOURCES = "BASE64_ENCODED_RESOURCES";
@@ -370,6 +395,37 @@ public class JawrConstant {
 	 */
 	public static final String JAWR_SMART_BUNDLING_DELAY_AFTER_LAST_EVENT = "jawr.smart.bundling.delay.after.last.event";
 
+	/**
+	 * The default quiet period in milliseconds, after which the pending watch
+	 * events are processed as a single batch
+	 */
+	public static final int DEFAULT_WATCH_EVENT_QUIET_PERIOD = 100;
+
+	/**
+	 * The property name which defines the quiet period in milliseconds, after
+	 * which the pending watch events are processed as a single batch
+	 */
+	public static final String JAWR_SMART_BUNDLING_EVENT_QUIET_PERIOD = "jawr.smart.bundling.event.quiet.period";
+
+	/**
+	 * The default maximum latency in milliseconds between the first watch
+	 * event of a batch and the processing of the batch
+	 */
+	public static final int DEFAULT_WATCH_EVENT_MAX_LATENCY = 1000;
+
+	/**
+	 * The property name which defines the maximum latency in milliseconds
+	 * between the first watch event of a batch and the processing of the
+	 * batch, even if the events keep coming
+	 */
+	public static final String JAWR_SMART_BUNDLING_EVENT_MAX_LATENCY = "jawr.smart.bundling.event.max.latency";
+
+	/**
+	 * The property name of the flag indicating if the modified bundles must be
+	 * rebuilt after each batch of watch events
+	 */
+	public static final String JAWR_SMART_BUNDLING_REBUILD_ON_CHANGE = "jawr.smart.bundling.rebuild.on.change";
+
 	/** URL prefix for jar file */
 	public static final String JAR_URL_PREFIX = "jar:";
 
@@ -32,6 +32,9 @@ public class CacheManagerFactory {
 	/** The configuration property name */
 	private static final String CACHE_PROPERTY_NAME = "jawr.cache.manager";
 
+	/** The alias of the tiered cache manager */
+	public static final String TIERED_CACHE_MANAGER = "tiered";
+
 	/**
 	 * Retrieves the cache manager for a resource type
 	 * 
@@ -47,6 +50,9 @@ public class CacheManagerFactory {
 		JawrCacheManager cacheManager = (JawrCacheManager) config.getContext().getAttribute(cacheMgrAttributeName);
 		if (cacheManager == null) {
 			String cacheManagerClass = config.getProperty(CACHE_PROPERTY_NAME, BasicCacheManager.class.getName());
+			if (TIERED_CACHE_MANAGER.equals(cacheManagerClass)) {
+				cacheManagerClass = TieredCacheManager.class.getName();
+			}
 			cacheManager = (JawrCacheManager) ClassLoaderResourceUtils.buildObjectInstance(cacheManagerClass,
 					new Object[] { config });
 			config.getContext().setAttribute(cacheMgrAttributeName, cacheManager);
@@ -75,4 +81,24 @@ public class CacheManagerFactory {
 		return getCacheManager(config, resourceType);
 	}
 
+	/**
+	 * Replaces the cache manager for a resource type by a new one. The
+	 * previous cache manager is not cleared, so it can still be used by the
+	 * previous bundles handler.
+	 * 
+	 * @param config
+	 *            the jawr config
+	 * @param resourceType
+	 *            the resource type
+	 * @return the previous cache manager, or null if there was none
+	 */
+	public static synchronized JawrCacheManager replaceCacheManager(JawrConfig config, String resourceType) {
+
+		String cacheMgrAttributeName = CACHE_ATTR_PREFIX + resourceType.toUpperCase() + CACHE_ATTR_SUFFIX;
+		JawrCacheManager cacheManager = (JawrCacheManager) config.getContext().getAttribute(cacheMgrAttributeName);
+		config.getContext().removeAttribute(cacheMgrAttributeName);
+		getCacheManager(config, resourceType);
+		return cacheManager;
+	}
+
 }
@@ -0,0 +1,752 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class defines a cache manager with two tiers, which doesn't depend on
+ * any external library.
+ *
+ * The most recently used elements are kept in the heap tier. The text and
+ * binary elements evicted from the heap tier are moved to the secondary tier,
+ * which stores their bytes outside of the Java heap, either in a direct byte
+ * buffer or in a memory-mapped file. An element read from the secondary tier
+ * is moved back to the heap tier. The elements evicted from the secondary
+ * tier are removed from the cache.
+ *
+ * The storage of the secondary tier is a slab of fixed size pages, allocated
+ * once per stripe. The pages of the removed elements are reused by the next
+ * stored elements, so the secondary tier doesn't allocate memory or files
+ * for each element. An element larger than the secondary tier of its stripe
+ * is not stored in the secondary tier.
+ *
+ * The cache is split in stripes, each with its own lock and its share of the
+ * tier sizes, so the concurrent requests for different bundles don't contend
+ * on a single lock.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class TieredCacheManager extends JawrCacheManager {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(TieredCacheManager.class);
+
+	/** The property name of the size of the heap tier in KB */
+	public static final String JAWR_CACHE_HEAP_SIZE = "jawr.cache.manager.heap.size";
+
+	/** The property name of the size of the secondary tier in KB */
+	public static final String JAWR_CACHE_SECONDARY_SIZE = "jawr.cache.manager.secondary.size";
+
+	/**
+	 * The property name of the secondary tier type. The value is either
+	 * 'offheap' or 'mmap'
+	 */
+	public static final String JAWR_CACHE_SECONDARY_TYPE = "jawr.cache.manager.secondary.type";
+
+	/** The property name of the directory of the memory-mapped files */
+	public static final String JAWR_CACHE_SECONDARY_DIR = "jawr.cache.manager.secondary.dir";
+
+	/** The secondary tier type using direct byte buffers */
+	public static final String OFF_HEAP_SECONDARY_TYPE = "offheap";
+
+	/** The secondary tier type using memory-mapped files */
+	public static final String MAPPED_FILE_SECONDARY_TYPE = "mmap";
+
+	/** The default size of the heap tier in KB */
+	private static final long DEFAULT_HEAP_SIZE = 8 * 1024;
+
+	/** The default size of the secondary tier in KB */
+	private static final long DEFAULT_SECONDARY_SIZE = 64 * 1024;
+
+	/** The default directory name of the memory-mapped files */
+	private static final String DEFAULT_SECONDARY_DIR = "jawrCache";
+
+	/**
+	 * The prefix of the directory of the memory-mapped files of a cache
+	 * manager instance
+	 */
+	private static final String GENERATION_DIR_PREFIX = "generation-";
+
+	/** The number of stripes */
+	private static final int STRIPE_COUNT = 16;
+
+	/** The size of the pages of the secondary tier */
+	private static final int PAGE_SIZE = 4 * 1024;
+
+	/** The maximum number of pages of the secondary tier of a stripe */
+	private static final int MAX_PAGE_COUNT = Integer.MAX_VALUE / PAGE_SIZE;
+
+	/** The charset of the text elements in the secondary tier */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The stripes */
+	private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+	/**
+	 * The directory of the memory-mapped files, or null if the secondary tier
+	 * uses direct byte buffers. Each cache manager has its own directory, so
+	 * the generations of a configuration reload don't share their files.
+	 */
+	private final File mappedFileDir;
+
+	/** The counter used to name the memory-mapped files */
+	private final AtomicLong fileCounter = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param config
+	 *            the jawr configuration
+	 */
+	public TieredCacheManager(JawrConfig config) {
+		super(config);
+
+		long heapSize = getSize(config, JAWR_CACHE_HEAP_SIZE, DEFAULT_HEAP_SIZE);
+		long secondarySize = getSize(config, JAWR_CACHE_SECONDARY_SIZE, DEFAULT_SECONDARY_SIZE);
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			stripes[i] = new Stripe(heapSize / STRIPE_COUNT,
+					(int) Math.min(MAX_PAGE_COUNT, secondarySize / STRIPE_COUNT / PAGE_SIZE));
+		}
+
+		String type = config.getProperty(JAWR_CACHE_SECONDARY_TYPE, OFF_HEAP_SECONDARY_TYPE);
+		if (MAPPED_FILE_SECONDARY_TYPE.equals(type)) {
+			mappedFileDir = createMappedFileDirectory(getMappedFileDirectory(config));
+		} else {
+			if (!OFF_HEAP_SECONDARY_TYPE.equals(type)) {
+				LOGGER.warn("Unknown secondary cache tier type '" + type + "', the off-heap tier will be used");
+			}
+			mappedFileDir = null;
+		}
+	}
+
+	/**
+	 * Creates the directory of the memory-mapped files of this cache manager
+	 * in the base directory. The base directory is shared by the cache
+	 * managers of the different generations, so it is never cleared.
+	 *
+	 * @param baseDir
+	 *            the base directory
+	 * @return the directory of the memory-mapped files, or null if it can't
+	 *         be created
+	 */
+	private static File createMappedFileDirectory(File baseDir) {
+
+		try {
+			if (!baseDir.exists() && !baseDir.mkdirs() && !baseDir.exists()) {
+				throw new IOException("Unable to create the directory " + baseDir.getAbsolutePath());
+			}
+			return Files.createTempDirectory(baseDir.toPath(), GENERATION_DIR_PREFIX).toFile();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to create the directory of the memory-mapped files in " + baseDir.getAbsolutePath()
+					+ ", the off-heap tier will be used", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a size defined in KB in the configuration
+	 *
+	 * @param config
+	 *            the jawr configuration
+	 * @param propertyName
+	 *            the property name
+	 * @param defaultValue
+	 *            the default value in KB
+	 * @return the size in bytes
+	 */
+	private static long getSize(JawrConfig config, String propertyName, long defaultValue) {
+
+		long size = defaultValue;
+		String value = config.getProperty(propertyName);
+		if (StringUtils.isNotEmpty(value)) {
+			size = Long.parseLong(value.trim());
+		}
+		return size * 1024;
+	}
+
+	/**
+	 * Returns the directory of the memory-mapped files
+	 *
+	 * @param config
+	 *            the jawr configuration
+	 * @return the directory of the memory-mapped files
+	 */
+	private static File getMappedFileDirectory(JawrConfig config) {
+
+		String dir = config.getProperty(JAWR_CACHE_SECONDARY_DIR);
+		if (StringUtils.isNotEmpty(dir)) {
+			return new File(dir, config.getResourceType());
+		}
+
+		File tempDir = null;
+		if (config.getContext() != null) {
+			tempDir = (File) config.getContext().getAttribute(JawrConstant.SERVLET_CONTEXT_TEMPDIR);
+		}
+		if (tempDir == null) {
+			tempDir = new File(System.getProperty("java.io.tmpdir"));
+		}
+		return new File(new File(tempDir, DEFAULT_SECONDARY_DIR), config.getResourceType());
+	}
+
+	/**
+	 * Returns the stripe of a key
+	 *
+	 * @param key
+	 *            the element key
+	 * @return the stripe of the key
+	 */
+	private Stripe getStripe(String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (STRIPE_COUNT - 1)];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.cache.JawrCacheManager#put(java.lang.String,
+	 * java.lang.Object)
+	 */
+	@Override
+	public void put(String key, Object value) {
+
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			StoredElement element = stripe.removeSecondary(key);
+			if (element != null) {
+				element.release();
+			}
+			stripe.putHeap(key, value);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.cache.JawrCacheManager#get(java.lang.String)
+	 */
+	@Override
+	public Object get(String key) {
+
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			Object value = stripe.heap.get(key);
+			if (value == null) {
+				StoredElement element = stripe.removeSecondary(key);
+				if (element != null) {
+					value = element.getValue();
+					element.release();
+					stripe.putHeap(key, value);
+				}
+			}
+			return value;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.cache.JawrCacheManager#remove(java.lang.String)
+	 */
+	@Override
+	public Object remove(String key) {
+
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			Object value = stripe.removeHeap(key);
+			StoredElement element = stripe.removeSecondary(key);
+			if (element != null) {
+				if (value == null) {
+					value = element.getValue();
+				}
+				element.release();
+			}
+			return value;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.cache.JawrCacheManager#clear()
+	 */
+	@Override
+	public void clear() {
+
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+
+		// The directory is created again by the next stored element
+		if (mappedFileDir != null) {
+			String[] files = mappedFileDir.list();
+			if (files != null && files.length == 0 && !mappedFileDir.delete()) {
+				LOGGER.debug("Unable to delete the directory " + mappedFileDir.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of elements in the heap tier
+	 *
+	 * @return the number of elements in the heap tier
+	 */
+	public int getHeapElementCount() {
+
+		int count = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.heap.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of elements in the secondary tier
+	 *
+	 * @return the number of elements in the secondary tier
+	 */
+	public int getSecondaryElementCount() {
+
+		int count = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.secondary.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the size of an element in the heap tier
+	 *
+	 * @param value
+	 *            the element
+	 * @return the size of the element
+	 */
+	private static long getHeapSize(Object value) {
+
+		long size = 0;
+		if (value instanceof byte[]) {
+			size = ((byte[]) value).length;
+		} else if (value instanceof String) {
+			size = ((String) value).length() * 2L;
+		}
+		return size;
+	}
+
+	/**
+	 * Creates the slab of the secondary tier of a stripe
+	 *
+	 * @param pageCount
+	 *            the number of pages of the slab
+	 * @return the slab, or null if it can't be created
+	 */
+	private Slab createSlab(int pageCount) {
+
+		int capacity = pageCount * PAGE_SIZE;
+		if (mappedFileDir == null) {
+			return new Slab(ByteBuffer.allocateDirect(capacity), null, pageCount);
+		}
+
+		File file = new File(mappedFileDir, fileCounter.incrementAndGet() + ".bin");
+		try {
+			if (!mappedFileDir.exists()) {
+				mappedFileDir.mkdirs();
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+				return new Slab(buffer, file, pageCount);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to create the memory-mapped file " + file.getAbsolutePath(), e);
+			if (!file.delete() && file.exists()) {
+				LOGGER.warn("Unable to delete the memory-mapped file " + file.getAbsolutePath());
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * This class defines a stripe of the cache
+	 */
+	private class Stripe {
+
+		/** The elements of the heap tier, in access order */
+		private final LinkedHashMap<String, Object> heap = new LinkedHashMap<>(16, 0.75f, true);
+
+		/** The elements of the secondary tier, in access order */
+		private final LinkedHashMap<String, StoredElement> secondary = new LinkedHashMap<>(16, 0.75f, true);
+
+		/** The maximum size of the heap tier */
+		private final long maxHeapSize;
+
+		/** The number of pages of the secondary tier */
+		private final int pageCount;
+
+		/** The size of the heap tier */
+		private long heapSize;
+
+		/**
+		 * The slab of the secondary tier, created when the first element is
+		 * stored
+		 */
+		private Slab slab;
+
+		/** The flag indicating if the slab can't be created */
+		private boolean slabUnavailable;
+
+		/**
+		 * Constructor
+		 *
+		 * @param maxHeapSize
+		 *            the maximum size of the heap tier
+		 * @param pageCount
+		 *            the number of pages of the secondary tier
+		 */
+		public Stripe(long maxHeapSize, int pageCount) {
+			this.maxHeapSize = maxHeapSize;
+			this.pageCount = pageCount;
+		}
+
+		/**
+		 * Puts an element in the heap tier, and moves the least recently used
+		 * elements to the secondary tier if the heap tier is full
+		 *
+		 * @param key
+		 *            the element key
+		 * @param value
+		 *            the element
+		 */
+		private void putHeap(String key, Object value) {
+
+			removeHeap(key);
+			heap.put(key, value);
+			heapSize += getHeapSize(value);
+
+			Iterator<Map.Entry<String, Object>> it = heap.entrySet().iterator();
+			while (heapSize > maxHeapSize && heap.size() > 1) {
+				Map.Entry<String, Object> eldest = it.next();
+				it.remove();
+				heapSize -= getHeapSize(eldest.getValue());
+				putSecondary(eldest.getKey(), eldest.getValue());
+			}
+		}
+
+		/**
+		 * Removes an element from the heap tier
+		 *
+		 * @param key
+		 *            the element key
+		 * @return the removed element
+		 */
+		private Object removeHeap(String key) {
+
+			Object value = heap.remove(key);
+			if (value != null) {
+				heapSize -= getHeapSize(value);
+			}
+			return value;
+		}
+
+		/**
+		 * Puts an element evicted from the heap tier in the secondary tier,
+		 * and removes the least recently used elements of the secondary tier
+		 * until there are enough free pages for the element. Only the text
+		 * and binary elements are kept in the secondary tier, and the
+		 * elements larger than the secondary tier are removed from the cache
+		 * without evicting the other elements.
+		 *
+		 * @param key
+		 *            the element key
+		 * @param value
+		 *            the element
+		 */
+		private void putSecondary(String key, Object value) {
+
+			byte[] data = null;
+			boolean text = false;
+			if (value instanceof byte[]) {
+				data = (byte[]) value;
+			} else if (value instanceof String) {
+				data = ((String) value).getBytes(UTF8);
+				text = true;
+			}
+			if (data == null) {
+				return;
+			}
+
+			int elementPageCount = (data.length + PAGE_SIZE - 1) / PAGE_SIZE;
+			if (elementPageCount > pageCount || !initSlab()) {
+				return;
+			}
+
+			Iterator<StoredElement> it = secondary.values().iterator();
+			while (slab.getFreePageCount() < elementPageCount) {
+				StoredElement eldest = it.next();
+				it.remove();
+				eldest.release();
+			}
+			secondary.put(key, slab.store(data, text, elementPageCount));
+		}
+
+		/**
+		 * Creates the slab of the secondary tier if needed
+		 *
+		 * @return true if the slab is available
+		 */
+		private boolean initSlab() {
+
+			if (slab == null && !slabUnavailable) {
+				slab = createSlab(pageCount);
+				slabUnavailable = slab == null;
+			}
+			return slab != null;
+		}
+
+		/**
+		 * Removes an element from the secondary tier. The caller must release
+		 * the storage of the removed element.
+		 *
+		 * @param key
+		 *            the element key
+		 * @return the removed element
+		 */
+		private StoredElement removeSecondary(String key) {
+
+			return secondary.remove(key);
+		}
+
+		/**
+		 * Clears the stripe, and releases the slab of the secondary tier
+		 */
+		private void clear() {
+
+			secondary.clear();
+			heap.clear();
+			heapSize = 0;
+			if (slab != null) {
+				slab.release();
+				slab = null;
+			}
+			slabUnavailable = false;
+		}
+	}
+
+	/**
+	 * This class defines the slab of the secondary tier of a stripe. The slab
+	 * is a buffer split in pages of the same size, which are allocated to the
+	 * stored elements and reused once the elements are removed.
+	 */
+	private static class Slab {
+
+		/** The buffer of the slab */
+		private final ByteBuffer buffer;
+
+		/** The memory-mapped file, or null for a direct byte buffer */
+		private final File file;
+
+		/** The stack of the free pages */
+		private final int[] freePages;
+
+		/** The number of free pages */
+		private int freePageCount;
+
+		/**
+		 * Constructor
+		 *
+		 * @param buffer
+		 *            the buffer of the slab
+		 * @param file
+		 *            the memory-mapped file
+		 * @param pageCount
+		 *            the number of pages
+		 */
+		public Slab(ByteBuffer buffer, File file, int pageCount) {
+			this.buffer = buffer;
+			this.file = file;
+			this.freePages = new int[pageCount];
+			for (int i = 0; i < pageCount; i++) {
+				freePages[i] = pageCount - 1 - i;
+			}
+			this.freePageCount = pageCount;
+		}
+
+		/**
+		 * Returns the number of free pages
+		 *
+		 * @return the number of free pages
+		 */
+		public int getFreePageCount() {
+			return freePageCount;
+		}
+
+		/**
+		 * Stores the bytes of an element in free pages
+		 *
+		 * @param data
+		 *            the bytes of the element
+		 * @param text
+		 *            the flag indicating if the element is a text
+		 * @param pageCount
+		 *            the number of pages of the element
+		 * @return the stored element
+		 */
+		public StoredElement store(byte[] data, boolean text, int pageCount) {
+
+			int[] pages = new int[pageCount];
+			for (int i = 0; i < pageCount; i++) {
+				pages[i] = freePages[--freePageCount];
+				int offset = i * PAGE_SIZE;
+				getPage(pages[i]).put(data, offset, Math.min(PAGE_SIZE, data.length - offset));
+			}
+			return new StoredElement(this, pages, data.length, text);
+		}
+
+		/**
+		 * Reads the bytes of an element
+		 *
+		 * @param pages
+		 *            the pages of the element
+		 * @param length
+		 *            the number of bytes of the element
+		 * @return the bytes of the element
+		 */
+		public byte[] read(int[] pages, int length) {
+
+			byte[] data = new byte[length];
+			for (int i = 0; i < pages.length; i++) {
+				int offset = i * PAGE_SIZE;
+				getPage(pages[i]).get(data, offset, Math.min(PAGE_SIZE, length - offset));
+			}
+			return data;
+		}
+
+		/**
+		 * Frees the pages of an element
+		 *
+		 * @param pages
+		 *            the pages of the element
+		 */
+		public void free(int[] pages) {
+
+			for (int page : pages) {
+				freePages[freePageCount++] = page;
+			}
+		}
+
+		/**
+		 * Returns a view of a page of the buffer
+		 *
+		 * @param page
+		 *            the page index
+		 * @return the view of the page
+		 */
+		private ByteBuffer getPage(int page) {
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(page * PAGE_SIZE);
+			view.limit(page * PAGE_SIZE + PAGE_SIZE);
+			return view;
+		}
+
+		/**
+		 * Releases the slab. The memory of the buffer is freed once the buffer
+		 * is garbage collected.
+		 */
+		public void release() {
+
+			if (file != null && !file.delete() && file.exists()) {
+				LOGGER.warn("Unable to delete the memory-mapped file " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * This class defines an element of the secondary tier
+	 */
+	private static class StoredElement {
+
+		/** The slab holding the bytes of the element */
+		private final Slab slab;
+
+		/** The pages of the element */
+		private final int[] pages;
+
+		/** The number of bytes of the element */
+		private final int length;
+
+		/** The flag indicating if the element is a text */
+		private final boolean text;
+
+		/**
+		 * Constructor
+		 *
+		 * @param slab
+		 *            the slab holding the bytes of the element
+		 * @param pages
+		 *            the pages of the element
+		 * @param length
+		 *            the number of bytes of the element
+		 * @param text
+		 *            the flag indicating if the element is a text
+		 */
+		public StoredElement(Slab slab, int[] pages, int length, boolean text) {
+			this.slab = slab;
+			this.pages = pages;
+			this.length = length;
+			this.text = text;
+		}
+
+		/**
+		 * Returns the element
+		 *
+		 * @return the element
+		 */
+		public Object getValue() {
+
+			byte[] data = slab.read(pages, length);
+			return text ? new String(data, UTF8) : data;
+		}
+
+		/**
+		 * Releases the pages of the element
+		 */
+		public void release() {
+
+			slab.free(pages);
+		}
+	}
+}
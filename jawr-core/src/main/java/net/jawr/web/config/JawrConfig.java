@@ -39,10 +39,14 @@ import net.jawr.web.resource.bundle.hashcode.MD5BundleHashcodeGenerator;
 import net.jawr.web.resource.bundle.locale.DefaultLocaleResolver;
 import net.jawr.web.resource.bundle.locale.LocaleResolver;
 import net.jawr.web.resource.bundle.locale.LocaleVariantResolverWrapper;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
 import net.jawr.web.resource.bundle.renderer.CSSHTMLBundleLinkRenderer;
 import net.jawr.web.resource.bundle.variant.VariantResolver;
 import net.jawr.web.resource.bundle.variant.resolver.BrowserResolver;
 import net.jawr.web.resource.bundle.variant.resolver.ConnectionTypeResolver;
+import net.jawr.web.resource.handler.bundle.BundleArtifactStore;
+import net.jawr.web.resource.handler.bundle.LocalBundleArtifactStore;
+import net.jawr.web.resource.handler.bundle.SharedFileSystemBundleArtifactStore;
 import net.jawr.web.servlet.util.MIMETypesSupport;
 import net.jawr.web.util.StringUtils;
 
@@ -188,6 +192,109 @@ public class JawrConfig implements Serializable {
 	 */
 	public static final String JAWR_USE_GENERATOR_CACHE = "jawr.use.generator.cache";
 
+	/**
+	 * The property name for the generator cache directory. This directory
+	 * can be shared by several nodes or deployments.
+	 */
+	public static final String JAWR_GENERATOR_CACHE_DIRECTORY = "jawr.generator.cache.dir";
+
+	/**
+	 * The property name for the directory where the index of the classpath
+	 * JAR entries is persisted.
+	 */
+	public static final String JAWR_CLASSPATH_INDEX_DIRECTORY = "jawr.classpath.index.dir";
+
+	/**
+	 * The property name for the flag indicating if the bundling process must
+	 * be profiled
+	 */
+	public static final String JAWR_BUNDLING_PROFILING = "jawr.bundling.profiling";
+
+	/**
+	 * The property name for the number of threads used to process the
+	 * bundles
+	 */
+	public static final String JAWR_BUNDLING_THREAD_COUNT = "jawr.bundling.thread.count";
+
+	/**
+	 * The property name for the flag indicating if the processed content of
+	 * the bundle members which don't depend on the variant must be shared
+	 * between the variants of a bundle
+	 */
+	public static final String JAWR_BUNDLING_SHARE_INVARIANT_CONTENT = "jawr.bundling.share.invariant.content";
+
+	/**
+	 * The property name for the flag indicating if the directories of the
+	 * resources are scanned through a snapshot of the resource tree, created
+	 * in one walk of the file system
+	 */
+	public static final String JAWR_RESOURCE_TREE_SNAPSHOT = "jawr.resource.tree.snapshot";
+
+	/**
+	 * The property name for the maximum number of resources not found by the
+	 * resource readers, which are kept to avoid asking the readers again. The
+	 * value 0 disables the cache of the resources not found.
+	 */
+	public static final String JAWR_RESOURCE_NOT_FOUND_CACHE_MAX_SIZE = "jawr.resource.not.found.cache.max.size";
+
+	/**
+	 * The property name for the maximum size in KB of the bundle responses
+	 * kept by the request handler to serve the bundle requests in production
+	 * mode. The responses are kept in the heap in addition to the content of
+	 * the bundle cache. The value 0, which is the default one, disables the
+	 * request fast lane.
+	 */
+	public static final String JAWR_REQUEST_FAST_LANE_MAX_SIZE = "jawr.request.fast.lane.max.size";
+
+	/**
+	 * The property name for the flag indicating if the content of all the
+	 * bundles must be loaded in the cache once the bundles are built. The
+	 * retention of the previous generations of the bundles depends on it.
+	 */
+	public static final String JAWR_BUNDLE_CACHE_WARM_UP = "jawr.bundle.cache.warmup";
+
+	/**
+	 * The property name for the delay in seconds during which the previous
+	 * generation of the bundles is kept after a configuration reload
+	 */
+	public static final String JAWR_GENERATION_GRACE_PERIOD = "jawr.generation.grace.period";
+
+	/**
+	 * The property name for the number of previous generations of each bundle
+	 * whose content is retained to serve the requests with a previous
+	 * hashcode. The content is only retained when the bundle cache warm-up is
+	 * enabled.
+	 */
+	public static final String JAWR_BUNDLE_RETAINED_GENERATIONS = "jawr.bundle.retained.generations";
+
+	/**
+	 * The property name for the flag indicating if the independent bundles
+	 * are built in parallel
+	 */
+	public static final String JAWR_BUNDLING_PARALLEL = "jawr.bundling.parallel";
+
+	/**
+	 * The property name for the bundle artifact store. The value is either
+	 * 'local', 'shared' or the class name of a custom
+	 * {@link BundleArtifactStore}
+	 */
+	public static final String JAWR_BUNDLE_ARTIFACT_STORE = "jawr.bundle.artifact.store";
+
+	/** The property name for the directory of the bundle artifact store */
+	public static final String JAWR_BUNDLE_ARTIFACT_STORE_DIR = "jawr.bundle.artifact.store.dir";
+
+	/**
+	 * The property name for the timeout in seconds of the lock of the shared
+	 * bundle artifact store
+	 */
+	public static final String JAWR_BUNDLE_ARTIFACT_STORE_LOCK_TIMEOUT = "jawr.bundle.artifact.store.lock.timeout";
+
+	/** The alias of the local bundle artifact store */
+	public static final String LOCAL_BUNDLE_ARTIFACT_STORE = "local";
+
+	/** The alias of the shared file system bundle artifact store */
+	public static final String SHARED_BUNDLE_ARTIFACT_STORE = "shared";
+
 	/**
 	 * The property name for the debug mode system flag
 	 */
@@ -342,12 +449,105 @@ public class JawrConfig implements Serializable {
 	 */
 	private boolean useGeneratorCache = true;
 
+	/**
+	 * The generator cache directory. If not defined, the generator cache is
+	 * stored in the working directory.
+	 */
+	private String generatorCacheDirectory;
+
+	/**
+	 * The directory where the index of the classpath JAR entries is
+	 * persisted. If not defined, the index is only kept in memory.
+	 */
+	private String classpathIndexDirectory;
+
+	/**
+	 * The bundling profiler, or null if the bundling process is not profiled
+	 */
+	private transient BundlingProfiler bundlingProfiler;
+
+	/**
+	 * The number of threads used to process the bundles
+	 */
+	private int bundlingThreadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The flag indicating if the processed content of the bundle members
+	 * which don't depend on the variant is shared between the variants
+	 */
+	private boolean shareInvariantContent = true;
+
+	/**
+	 * The flag indicating if the directories of the resources are scanned
+	 * through a snapshot of the resource tree
+	 */
+	private boolean useResourceTreeSnapshot = true;
+
+	/**
+	 * The maximum number of resources not found by the resource readers,
+	 * which are kept to avoid asking the readers again
+	 */
+	private int resourceNotFoundCacheMaxSize = 1000;
+
+	/**
+	 * The maximum size in KB of the bundle responses kept by the request
+	 * handler
+	 */
+	private int requestFastLaneMaxSize = 0;
+
+	/**
+	 * The flag indicating if the content of all the bundles must be loaded in
+	 * the cache once the bundles are built
+	 */
+	private boolean bundleCacheWarmUp = false;
+
+	/**
+	 * The delay in seconds during which the previous generation of the
+	 * bundles is kept after a configuration reload
+	 */
+	private int generationGracePeriod = 60;
+
+	/**
+	 * The number of previous generations of each bundle whose content is
+	 * retained
+	 */
+	private int bundleRetainedGenerations = 2;
+
+	/**
+	 * The flag indicating if the independent bundles are built in parallel
+	 */
+	private boolean bundlingParallel = false;
+
+	/**
+	 * The bundle artifact store, or null if the bundle artifacts are not
+	 * shared
+	 */
+	private transient BundleArtifactStore bundleArtifactStore;
+
 	/**
 	 * The delay after last event, this is used to to ensure that a batch
 	 * modification is ended before starting the build
 	 */
 	private int delayAfterLastEvent = JawrConstant.DEFAULT_DELAY_AFTER_LAST_EVENT;
 
+	/**
+	 * The quiet period after which the pending watch events are processed as a
+	 * single batch
+	 */
+	private int watchEventQuietPeriod = JawrConstant.DEFAULT_WATCH_EVENT_QUIET_PERIOD;
+
+	/**
+	 * The maximum latency between the first watch event of a batch and the
+	 * processing of the batch
+	 */
+	private int watchEventMaxLatency = JawrConstant.DEFAULT_WATCH_EVENT_MAX_LATENCY;
+
+	/**
+	 * The flag indicating if the modified bundles must be rebuilt after each
+	 * batch of watch events
+	 */
+	private boolean rebuildOnChange = true;
+
 	/**
 	 * The jawr working directory path
 	 */
@@ -543,12 +743,55 @@ public class JawrConfig implements Serializable {
 		}
 		
 		this.useGeneratorCache = getBooleanProperty(JAWR_USE_GENERATOR_CACHE, true);
+		this.generatorCacheDirectory = getProperty(JAWR_GENERATOR_CACHE_DIRECTORY);
+		this.classpathIndexDirectory = getProperty(JAWR_CLASSPATH_INDEX_DIRECTORY);
+		this.shareInvariantContent = getBooleanProperty(JAWR_BUNDLING_SHARE_INVARIANT_CONTENT, true);
+		this.useResourceTreeSnapshot = getBooleanProperty(JAWR_RESOURCE_TREE_SNAPSHOT, true);
+		this.resourceNotFoundCacheMaxSize = Integer
+				.parseInt(getProperty(JAWR_RESOURCE_NOT_FOUND_CACHE_MAX_SIZE, "1000"));
+		this.requestFastLaneMaxSize = Integer.parseInt(getProperty(JAWR_REQUEST_FAST_LANE_MAX_SIZE, "0"));
+		this.bundleCacheWarmUp = getBooleanProperty(JAWR_BUNDLE_CACHE_WARM_UP, false);
+		this.generationGracePeriod = Integer.parseInt(getProperty(JAWR_GENERATION_GRACE_PERIOD, "60"));
+		this.bundleRetainedGenerations = Integer.parseInt(getProperty(JAWR_BUNDLE_RETAINED_GENERATIONS, "2"));
+		this.bundlingParallel = getBooleanProperty(JAWR_BUNDLING_PARALLEL, false);
+		if (getBooleanProperty(JAWR_BUNDLING_PROFILING, false)) {
+			this.bundlingProfiler = new BundlingProfiler(resourceType);
+		}
+
+		String value = getProperty(JAWR_BUNDLE_ARTIFACT_STORE);
+		if (StringUtils.isNotEmpty(value)) {
+			if (value.equals(LOCAL_BUNDLE_ARTIFACT_STORE)) {
+				this.bundleArtifactStore = new LocalBundleArtifactStore();
+			} else if (value.equals(SHARED_BUNDLE_ARTIFACT_STORE)) {
+				this.bundleArtifactStore = new SharedFileSystemBundleArtifactStore();
+			} else {
+				this.bundleArtifactStore = (BundleArtifactStore) ClassLoaderResourceUtils.buildObjectInstance(value);
+			}
+			this.bundleArtifactStore.init(this);
+		}
 
-		String value = getProperty(JawrConstant.JAWR_SMART_BUNDLING_DELAY_AFTER_LAST_EVENT);
+		value = getProperty(JawrConstant.JAWR_SMART_BUNDLING_DELAY_AFTER_LAST_EVENT);
 		if (StringUtils.isNotEmpty(value)) {
 			delayAfterLastEvent = Integer.parseInt(value) * 1000;
 		}
 
+		value = getProperty(JAWR_BUNDLING_THREAD_COUNT);
+		if (StringUtils.isNotEmpty(value)) {
+			bundlingThreadCount = Math.max(1, Integer.parseInt(value));
+		}
+
+		value = getProperty(JawrConstant.JAWR_SMART_BUNDLING_EVENT_QUIET_PERIOD);
+		if (StringUtils.isNotEmpty(value)) {
+			watchEventQuietPeriod = Integer.parseInt(value);
+		}
+
+		value = getProperty(JawrConstant.JAWR_SMART_BUNDLING_EVENT_MAX_LATENCY);
+		if (StringUtils.isNotEmpty(value)) {
+			watchEventMaxLatency = Integer.parseInt(value);
+		}
+
+		this.rebuildOnChange = getBooleanProperty(JawrConstant.JAWR_SMART_BUNDLING_REBUILD_ON_CHANGE, true);
+
 		this.jawrWorkingDirectory = getProperty(JAWR_WORKING_DIRECTORY);
 
 		this.gzipResourcesModeOn = getBooleanProperty(JAWR_GZIP_ON, true);
@@ -798,6 +1041,277 @@ public class JawrConfig implements Serializable {
 		this.useGeneratorCache = useGeneratorCache;
 	}
 
+	/**
+	 * Returns the generator cache directory, or null if the generator cache
+	 * is stored in the working directory.
+	 * 
+	 * @return the generator cache directory
+	 */
+	public String getGeneratorCacheDirectory() {
+		return generatorCacheDirectory;
+	}
+
+	/**
+	 * Sets the generator cache directory
+	 * 
+	 * @param generatorCacheDirectory
+	 *            the directory to set
+	 */
+	public void setGeneratorCacheDirectory(String generatorCacheDirectory) {
+		this.generatorCacheDirectory = generatorCacheDirectory;
+	}
+
+	/**
+	 * Returns the directory where the index of the classpath JAR entries is
+	 * persisted
+	 * 
+	 * @return the classpath index directory
+	 */
+	public String getClasspathIndexDirectory() {
+		return classpathIndexDirectory;
+	}
+
+	/**
+	 * Sets the directory where the index of the classpath JAR entries is
+	 * persisted
+	 * 
+	 * @param classpathIndexDirectory
+	 *            the directory to set
+	 */
+	public void setClasspathIndexDirectory(String classpathIndexDirectory) {
+		this.classpathIndexDirectory = classpathIndexDirectory;
+	}
+
+	/**
+	 * Returns the number of threads used to process the bundles
+	 * 
+	 * @return the number of threads used to process the bundles
+	 */
+	public int getBundlingThreadCount() {
+		return bundlingThreadCount;
+	}
+
+	/**
+	 * Sets the number of threads used to process the bundles
+	 * 
+	 * @param bundlingThreadCount
+	 *            the number of threads to set
+	 */
+	public void setBundlingThreadCount(int bundlingThreadCount) {
+		this.bundlingThreadCount = bundlingThreadCount;
+	}
+
+	/**
+	 * Returns the flag indicating if the processed content of the bundle
+	 * members which don't depend on the variant is shared between the
+	 * variants of a bundle
+	 * 
+	 * @return true if the invariant content is shared between the variants
+	 */
+	public boolean isShareInvariantContent() {
+		return shareInvariantContent;
+	}
+
+	/**
+	 * Sets the flag indicating if the processed content of the bundle members
+	 * which don't depend on the variant is shared between the variants of a
+	 * bundle
+	 * 
+	 * @param shareInvariantContent
+	 *            the flag to set
+	 */
+	public void setShareInvariantContent(boolean shareInvariantContent) {
+		this.shareInvariantContent = shareInvariantContent;
+	}
+
+	/**
+	 * Returns the flag indicating if the directories of the resources are
+	 * scanned through a snapshot of the resource tree
+	 * 
+	 * @return true if the resource tree snapshot is used
+	 */
+	public boolean isUseResourceTreeSnapshot() {
+		return useResourceTreeSnapshot;
+	}
+
+	/**
+	 * Sets the flag indicating if the directories of the resources are
+	 * scanned through a snapshot of the resource tree
+	 * 
+	 * @param useResourceTreeSnapshot
+	 *            the flag to set
+	 */
+	public void setUseResourceTreeSnapshot(boolean useResourceTreeSnapshot) {
+		this.useResourceTreeSnapshot = useResourceTreeSnapshot;
+	}
+
+	/**
+	 * Returns the maximum number of resources not found by the resource
+	 * readers, which are kept to avoid asking the readers again
+	 * 
+	 * @return the maximum number of resources not found which are kept
+	 */
+	public int getResourceNotFoundCacheMaxSize() {
+		return resourceNotFoundCacheMaxSize;
+	}
+
+	/**
+	 * Sets the maximum number of resources not found by the resource readers,
+	 * which are kept to avoid asking the readers again
+	 * 
+	 * @param resourceNotFoundCacheMaxSize
+	 *            the maximum number of resources not found to set
+	 */
+	public void setResourceNotFoundCacheMaxSize(int resourceNotFoundCacheMaxSize) {
+		this.resourceNotFoundCacheMaxSize = resourceNotFoundCacheMaxSize;
+	}
+
+	/**
+	 * Returns the maximum size in KB of the bundle responses kept by the
+	 * request handler to serve the bundle requests in production mode
+	 * 
+	 * @return the maximum size in KB of the request fast lane
+	 */
+	public int getRequestFastLaneMaxSize() {
+		return requestFastLaneMaxSize;
+	}
+
+	/**
+	 * Sets the maximum size in KB of the bundle responses kept by the request
+	 * handler to serve the bundle requests in production mode
+	 * 
+	 * @param requestFastLaneMaxSize
+	 *            the size to set
+	 */
+	public void setRequestFastLaneMaxSize(int requestFastLaneMaxSize) {
+		this.requestFastLaneMaxSize = requestFastLaneMaxSize;
+	}
+
+	/**
+	 * Returns the flag indicating if the content of all the bundles must be
+	 * loaded in the cache once the bundles are built
+	 * 
+	 * @return the flag indicating if the bundle cache must be warmed up
+	 */
+	public boolean isBundleCacheWarmUp() {
+		return bundleCacheWarmUp;
+	}
+
+	/**
+	 * Sets the flag indicating if the content of all the bundles must be
+	 * loaded in the cache once the bundles are built
+	 * 
+	 * @param bundleCacheWarmUp
+	 *            the flag to set
+	 */
+	public void setBundleCacheWarmUp(boolean bundleCacheWarmUp) {
+		this.bundleCacheWarmUp = bundleCacheWarmUp;
+	}
+
+	/**
+	 * Returns the delay in seconds during which the previous generation of
+	 * the bundles is kept after a configuration reload
+	 * 
+	 * @return the grace period of the previous generation
+	 */
+	public int getGenerationGracePeriod() {
+		return generationGracePeriod;
+	}
+
+	/**
+	 * Sets the delay in seconds during which the previous generation of the
+	 * bundles is kept after a configuration reload
+	 * 
+	 * @param generationGracePeriod
+	 *            the grace period to set
+	 */
+	public void setGenerationGracePeriod(int generationGracePeriod) {
+		this.generationGracePeriod = generationGracePeriod;
+	}
+
+	/**
+	 * Returns the number of previous generations of each bundle whose content
+	 * is retained to serve the requests with a previous hashcode
+	 * 
+	 * @return the number of retained generations
+	 */
+	public int getBundleRetainedGenerations() {
+		return bundleRetainedGenerations;
+	}
+
+	/**
+	 * Sets the number of previous generations of each bundle whose content is
+	 * retained to serve the requests with a previous hashcode
+	 * 
+	 * @param bundleRetainedGenerations
+	 *            the number of retained generations to set
+	 */
+	public void setBundleRetainedGenerations(int bundleRetainedGenerations) {
+		this.bundleRetainedGenerations = bundleRetainedGenerations;
+	}
+
+	/**
+	 * Returns the flag indicating if the independent bundles are built in
+	 * parallel
+	 * 
+	 * @return the flag indicating if the independent bundles are built in
+	 *         parallel
+	 */
+	public boolean isBundlingParallel() {
+		return bundlingParallel;
+	}
+
+	/**
+	 * Sets the flag indicating if the independent bundles are built in
+	 * parallel
+	 * 
+	 * @param bundlingParallel
+	 *            the flag to set
+	 */
+	public void setBundlingParallel(boolean bundlingParallel) {
+		this.bundlingParallel = bundlingParallel;
+	}
+
+	/**
+	 * Returns the bundle artifact store
+	 * 
+	 * @return the bundle artifact store, or null if the bundle artifacts are
+	 *         not shared
+	 */
+	public BundleArtifactStore getBundleArtifactStore() {
+		return bundleArtifactStore;
+	}
+
+	/**
+	 * Sets the bundle artifact store
+	 * 
+	 * @param bundleArtifactStore
+	 *            the bundle artifact store to set
+	 */
+	public void setBundleArtifactStore(BundleArtifactStore bundleArtifactStore) {
+		this.bundleArtifactStore = bundleArtifactStore;
+	}
+
+	/**
+	 * Returns the bundling profiler
+	 * 
+	 * @return the bundling profiler, or null if the bundling process is not
+	 *         profiled
+	 */
+	public BundlingProfiler getBundlingProfiler() {
+		return bundlingProfiler;
+	}
+
+	/**
+	 * Sets the bundling profiler
+	 * 
+	 * @param bundlingProfiler
+	 *            the bundling profiler to set
+	 */
+	public void setBundlingProfiler(BundlingProfiler bundlingProfiler) {
+		this.bundlingProfiler = bundlingProfiler;
+	}
+
 	/**
 	 * Returns the flag indicating if we should use "smart bundling".
 	 * 
@@ -826,6 +1340,37 @@ public class JawrConfig implements Serializable {
 		return delayAfterLastEvent;
 	}
 
+	/**
+	 * Returns the quiet period after which the pending watch events are
+	 * processed as a single batch
+	 * 
+	 * @return the quiet period in milliseconds
+	 */
+	public int getSmartBundlingEventQuietPeriod() {
+		return watchEventQuietPeriod;
+	}
+
+	/**
+	 * Returns the maximum latency between the first watch event of a batch and
+	 * the processing of the batch
+	 * 
+	 * @return the maximum latency in milliseconds
+	 */
+	public int getSmartBundlingEventMaxLatency() {
+		return watchEventMaxLatency;
+	}
+
+	/**
+	 * Returns the flag indicating if the modified bundles must be rebuilt
+	 * after each batch of watch events
+	 * 
+	 * @return the flag indicating if the modified bundles must be rebuilt
+	 *         after each batch of watch events
+	 */
+	public boolean isSmartBundlingRebuildOnChange() {
+		return rebuildOnChange;
+	}
+
 	/**
 	 * Returns the flag indicating if we should use the bundle mapping
 	 * properties file.
@@ -418,4 +418,14 @@ public class JawrConfigManager implements JawrConfigManagerMBean {
 		return requestHandler.getDirtyBundleNames();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.config.jmx.JawrConfigManagerMBean#showBundlingProfile()
+	 */
+	@Override
+	public String showBundlingProfile() {
+		return requestHandler.getBundlingProfile();
+	}
+
 }
@@ -231,4 +231,12 @@ public interface JawrConfigManagerMBean {
 	 */
 	public List<String> getDirtyBundleNames();
 
+	/**
+	 * Returns the JSON profile of the last bundling process. The profiling
+	 * must be enabled with the property "jawr.bundling.profiling".
+	 * 
+	 * @return the JSON profile of the last bundling process
+	 */
+	public String showBundlingProfile();
+
 }
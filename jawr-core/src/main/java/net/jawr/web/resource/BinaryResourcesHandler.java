@@ -14,9 +14,19 @@
 package net.jawr.web.resource;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.bundle.CheckSumUtils;
@@ -33,6 +43,9 @@ import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
  */
 public class BinaryResourcesHandler {
 
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BinaryResourcesHandler.class);
+
 	/** The binary web resource map */
 	private final Map<String, String> binaryResourcePathMap = new ConcurrentHashMap<>();
 
@@ -45,6 +58,17 @@ public class BinaryResourcesHandler {
 	/** The resource bundle handler */
 	private final ResourceBundleHandler rsBundleHandler;
 
+	/**
+	 * The base64 encoded images, which are kept separately from the binary
+	 * web resource map, as they are not part of the bundle mapping. The least
+	 * recently used images are evicted once the maximum number of entries is
+	 * reached.
+	 */
+	private final Map<String, String> base64Images;
+
+	/** The computations in progress, indexed by key */
+	private final ConcurrentMap<String, FutureTask<String>> computationsInProgress = new ConcurrentHashMap<>();
+
 	/**
 	 * Constructor
 	 * 
@@ -60,6 +84,18 @@ public class BinaryResourcesHandler {
 		this.jawrConfig = config;
 		this.rsHandler = rsHandler;
 		this.rsBundleHandler = rsBundleHandler;
+
+		final int maxEntries = Integer.parseInt(config.getProperty(JawrConstant.JAWR_BINARY_BASE64_CACHE_MAX_ENTRIES,
+				Integer.toString(JawrConstant.DEFAULT_BINARY_BASE64_CACHE_MAX_ENTRIES)));
+		this.base64Images = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -2235180471391634545L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxEntries;
+			}
+		});
 	}
 
 	/**
@@ -119,12 +155,73 @@ public class BinaryResourcesHandler {
 		return binaryResourcePathMap.get(binaryUrl);
 	}
 
+	/**
+	 * Returns the base64 encoded image
+	 * 
+	 * @param binaryUrl
+	 *            the binary url
+	 * @return the base64 encoded image or null if it is not stored
+	 */
+	public String getBase64Image(String binaryUrl) {
+		return base64Images.get(binaryUrl);
+	}
+
+	/**
+	 * Stores a base64 encoded image
+	 * 
+	 * @param binaryUrl
+	 *            the binary url
+	 * @param base64Image
+	 *            the base64 encoded image
+	 */
+	public void addBase64Image(String binaryUrl, String base64Image) {
+		base64Images.put(binaryUrl, base64Image);
+	}
+
+	/**
+	 * Executes the computation identified by the key, making sure that the
+	 * same computation is not executed concurrently. If the computation is
+	 * already in progress in another thread, this method waits for its
+	 * result instead of executing it again.
+	 * 
+	 * @param key
+	 *            the computation key
+	 * @param computation
+	 *            the computation
+	 * @return the result of the computation, or null if it has failed
+	 */
+	public String computeOnce(String key, Callable<String> computation) {
+
+		FutureTask<String> task = new FutureTask<>(computation);
+		FutureTask<String> existingTask = computationsInProgress.putIfAbsent(key, task);
+		if (existingTask == null) {
+			try {
+				task.run();
+			} finally {
+				computationsInProgress.remove(key, task);
+			}
+		} else {
+			task = existingTask;
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.warn("Unable to compute '" + key + "'", e.getCause());
+			return null;
+		}
+	}
+
 	/**
 	 * Clears the binary map
 	 */
 	public void clear() {
 
 		binaryResourcePathMap.clear();
+		base64Images.clear();
 	}
 
 	/**
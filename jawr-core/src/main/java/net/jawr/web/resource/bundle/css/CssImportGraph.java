@@ -0,0 +1,350 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.css;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.exception.ResourceNotFoundException;
+import net.jawr.web.resource.BinaryResourcesHandler;
+import net.jawr.web.resource.bundle.IOUtils;
+import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
+import net.jawr.web.resource.bundle.factory.util.RegexUtil;
+import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.generator.ResourceGenerator;
+import net.jawr.web.resource.bundle.generator.resolver.SuffixedPathResolver;
+import net.jawr.web.resource.bundle.mappings.FilePathMappingUtils;
+import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class resolves the CSS imported with the @import statement. The
+ * imports of the imported CSS are resolved recursively.
+ *
+ * The content of each imported CSS, with its URLs rewritten for the importing
+ * CSS and wrapped in its media, is kept until the graph is cleared, so a CSS
+ * imported by several stylesheets is read and rewritten only once. The paths
+ * of the imported CSS are added to the file path mappings of each bundle which
+ * uses them.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class CssImportGraph {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CssImportGraph.class);
+
+	/** The import pattern */
+	public static final Pattern IMPORT_PATTERN = Pattern.compile("@import\\s*url\\(\\s*" // 'url('
+			// and any number of whitespaces
+			+ "[\"']?(?!(https?:)|(//))([^\"')]*)[\"']?" // any sequence of
+															// characters,
+															// except an
+															// unescaped ')'
+			+ "\\s*\\)\\s*(\\w+)?\\s*;?", // Any number of whitespaces, then ')'
+			Pattern.CASE_INSENSITIVE); // works with 'URL('
+
+	/** The imported CSS, by path, importing CSS path and media */
+	private final ConcurrentMap<String, ImportedCss> importedCss = new ConcurrentHashMap<>();
+
+	/** The URL rewriter of the imported CSS */
+	private volatile CssImportedUrlRewriter urlRewriter;
+
+	/**
+	 * Clears the imported CSS
+	 */
+	public void clear() {
+		importedCss.clear();
+	}
+
+	/**
+	 * Replaces the @import statements of a CSS by the content of the
+	 * imported CSS
+	 *
+	 * @param cssContent
+	 *            the CSS content
+	 * @param status
+	 *            the bundle processing status, whose last path added is the
+	 *            path of the CSS
+	 * @return the CSS content with the imports resolved
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public StringBuffer resolveImports(String cssContent, BundleProcessingStatus status) throws IOException {
+
+		String currentCssPath = status.getLastPathAdded();
+		List<String> importStack = new ArrayList<>();
+		importStack.add(currentCssPath);
+
+		Matcher matcher = IMPORT_PATTERN.matcher(cssContent);
+		StringBuffer sb = new StringBuffer();
+		while (matcher.find()) {
+
+			String path = getImportedCssPath(matcher.group(3), currentCssPath, status);
+			String content = "";
+			ImportedCss css = getImportedCss(path, currentCssPath, matcher.group(4), importStack, status);
+			if (css != null) {
+				for (String importedPath : css.paths) {
+					FilePathMappingUtils.buildFilePathMapping(status.getCurrentBundle(), importedPath,
+							status.getRsReader());
+				}
+				content = css.content;
+			}
+			matcher.appendReplacement(sb, RegexUtil.adaptReplacementToMatcher(content));
+		}
+		matcher.appendTail(sb);
+		return sb;
+	}
+
+	/**
+	 * Returns the path of an imported CSS
+	 *
+	 * @param cssPathToImport
+	 *            the path defined in the @import statement
+	 * @param importingCssPath
+	 *            the path of the importing CSS
+	 * @param status
+	 *            the bundle processing status
+	 * @return the path of the imported CSS
+	 */
+	private String getImportedCssPath(String cssPathToImport, String importingCssPath,
+			BundleProcessingStatus status) {
+
+		String path = cssPathToImport;
+		GeneratorRegistry generatorRegistry = status.getJawrConfig().getGeneratorRegistry();
+		if (generatorRegistry.isPathGenerated(path)) {
+
+			ResourceGenerator generator = generatorRegistry.getResourceGenerator(path);
+			if (generator != null && generator.getResolver() instanceof SuffixedPathResolver) {
+				path = PathNormalizer.concatWebPath(importingCssPath, cssPathToImport);
+			}
+		} else if (!cssPathToImport.startsWith("/")) { // relative URL
+			path = PathNormalizer.concatWebPath(importingCssPath, cssPathToImport);
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the imported CSS, with its own imports resolved
+	 *
+	 * @param path
+	 *            the path of the imported CSS
+	 * @param bundleCssPath
+	 *            the path of the CSS of the bundle, for which the URLs are
+	 *            rewritten
+	 * @param media
+	 *            the media of the import
+	 * @param importStack
+	 *            the paths of the CSS being imported
+	 * @param status
+	 *            the bundle processing status
+	 * @return the imported CSS, or null if the import is cyclic
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private ImportedCss getImportedCss(String path, String bundleCssPath, String media, List<String> importStack,
+			BundleProcessingStatus status) throws IOException {
+
+		if (importStack.contains(path)) {
+			LOGGER.warn("The cyclic import of the CSS '" + path + "' from " + importStack + " is ignored");
+			return null;
+		}
+
+		String key = path + "|" + bundleCssPath + "|" + (media == null ? "" : media);
+		ImportedCss css = importedCss.get(key);
+		if (css != null) {
+			return css;
+		}
+
+		Reader reader = null;
+		try {
+			reader = status.getRsReader().getResource(status.getCurrentBundle(), path, true);
+		} catch (ResourceNotFoundException e) {
+			throw new IOException("Css to import '" + path + "' was not found", e);
+		}
+
+		StringWriter writer = new StringWriter();
+		IOUtils.copy(reader, writer, true);
+		String content = writer.toString();
+
+		CssImportedUrlRewriter rewriter = getUrlRewriter(status.getJawrConfig());
+		Set<String> paths = new LinkedHashSet<>();
+		paths.add(path);
+		boolean cyclic = false;
+
+		StringBuilder result = new StringBuilder();
+		boolean isMediaAttributeSet = StringUtils.isNotEmpty(media);
+		if (isMediaAttributeSet) {
+			result.append("@media ").append(media).append(" {\n");
+		}
+
+		importStack.add(path);
+		try {
+			Matcher matcher = IMPORT_PATTERN.matcher(content);
+			int start = 0;
+			while (matcher.find()) {
+				result.append(rewriter.rewriteUrl(path, bundleCssPath, content.substring(start, matcher.start())));
+				String nestedPath = getImportedCssPath(matcher.group(3), path, status);
+				ImportedCss nestedCss = getImportedCss(nestedPath, bundleCssPath, matcher.group(4), importStack,
+						status);
+				if (nestedCss == null || nestedCss.cyclic) {
+					cyclic = true;
+				}
+				if (nestedCss != null) {
+					result.append(nestedCss.content);
+					paths.addAll(nestedCss.paths);
+				}
+				start = matcher.end();
+			}
+			result.append(rewriter.rewriteUrl(path, bundleCssPath, content.substring(start)));
+		} finally {
+			importStack.remove(importStack.size() - 1);
+		}
+
+		if (isMediaAttributeSet) {
+			result.append("\n}\n");
+		}
+
+		css = new ImportedCss(result.toString(), new ArrayList<>(paths), cyclic);
+
+		// The content of a CSS which is part of a cycle depends on the CSS
+		// which started the import
+		if (!cyclic) {
+			importedCss.put(key, css);
+		}
+		return css;
+	}
+
+	/**
+	 * Returns the URL rewriter of the imported CSS
+	 *
+	 * @param jawrConfig
+	 *            the Jawr config
+	 * @return the URL rewriter
+	 */
+	private CssImportedUrlRewriter getUrlRewriter(JawrConfig jawrConfig) {
+
+		BinaryResourcesHandler binaryRsHandler = (BinaryResourcesHandler) jawrConfig.getContext()
+				.getAttribute(JawrConstant.BINARY_CONTEXT_ATTRIBUTE);
+		if (binaryRsHandler != null) {
+			jawrConfig = binaryRsHandler.getConfig();
+		}
+
+		CssImportedUrlRewriter rewriter = urlRewriter;
+		if (rewriter == null || rewriter.getConfig() != jawrConfig) {
+			rewriter = new CssImportedUrlRewriter(jawrConfig);
+			urlRewriter = rewriter;
+		}
+		return rewriter;
+	}
+
+	/**
+	 * This class defines an imported CSS
+	 */
+	private static class ImportedCss {
+
+		/** The content of the CSS, with its imports resolved */
+		private final String content;
+
+		/** The paths of the CSS and of the CSS it imports */
+		private final List<String> paths;
+
+		/** The flag indicating if the CSS is part of a cyclic import */
+		private final boolean cyclic;
+
+		/**
+		 * Constructor
+		 *
+		 * @param content
+		 *            the content of the CSS
+		 * @param paths
+		 *            the paths of the CSS and of the CSS it imports
+		 * @param cyclic
+		 *            the flag indicating if the CSS is part of a cyclic import
+		 */
+		public ImportedCss(String content, List<String> paths, boolean cyclic) {
+			this.content = content;
+			this.paths = paths;
+			this.cyclic = cyclic;
+		}
+	}
+
+	/**
+	 * This class rewrite the image URL for the imported CSS.
+	 *
+	 * @author Ibrahim Chaehoi
+	 */
+	private static class CssImportedUrlRewriter extends CssImageUrlRewriter {
+
+		/** The generator registry */
+		private final GeneratorRegistry generatorRegistry;
+
+		/**
+		 * Constructor
+		 *
+		 * @param jawrConfig
+		 *            the Jawr config
+		 */
+		public CssImportedUrlRewriter(JawrConfig jawrConfig) {
+
+			super(jawrConfig);
+			this.generatorRegistry = jawrConfig.getGeneratorRegistry();
+		}
+
+		/**
+		 * Returns the Jawr config
+		 *
+		 * @return the Jawr config
+		 */
+		public JawrConfig getConfig() {
+			return config;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see net.jawr.web.resource.bundle.css.CssImageUrlRewriter#
+		 * getRewrittenImagePath(java.lang.String, java.lang.String,
+		 * java.lang.String)
+		 */
+		@Override
+		protected String getRewrittenImagePath(String originalCssPath, String newCssPath, String url)
+				throws IOException {
+
+			String currentPath = originalCssPath;
+
+			String imgPath = PathNormalizer.concatWebPath(currentPath, url);
+			if (!generatorRegistry.isGeneratedBinaryResource(imgPath)
+					&& !generatorRegistry.isHandlingCssImage(originalCssPath)) {
+				imgPath = PathNormalizer.getRelativeWebPath(PathNormalizer.getParentPath(newCssPath), imgPath);
+			}
+
+			return imgPath;
+		}
+	}
+}
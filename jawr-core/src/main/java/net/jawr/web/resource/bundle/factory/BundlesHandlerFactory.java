@@ -16,6 +16,7 @@ package net.jawr.web.resource.bundle.factory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -433,34 +434,52 @@ public class BundlesHandlerFactory {
 		}
 
 		// Initialize bundle dependencies
-		for (ResourceBundleDefinition definition : bundleDefinitionsWithDependencies) {
-			JoinableResourceBundle bundle = getBundleFromName(definition.getBundleName(), resourceBundles);
-			if (bundle != null) {
-				bundle.setDependencies(getBundleDependencies(definition, resourceBundles));
+		if (!bundleDefinitionsWithDependencies.isEmpty()) {
+			Map<String, JoinableResourceBundle> bundlesByName = getBundlesByName(resourceBundles);
+			Map<String, ResourceBundleDefinition> definitionsByName = getDefinitionsByName();
+			for (ResourceBundleDefinition definition : bundleDefinitionsWithDependencies) {
+				JoinableResourceBundle bundle = bundlesByName.get(definition.getBundleName());
+				if (bundle != null) {
+					bundle.setDependencies(getBundleDependencies(definition, definitionsByName, bundlesByName));
+				}
 			}
 		}
 	}
 
 	/**
-	 * Returns a bundle from its name
+	 * Returns the bundles mapped by their name. If several bundles have the
+	 * same name, the first one is kept.
 	 * 
-	 * @param name
-	 *            the bundle name
 	 * @param bundles
 	 *            the list of bundle
-	 * @return a bundle from its name
+	 * @return the bundles mapped by their name
 	 */
-	private JoinableResourceBundle getBundleFromName(String name, List<JoinableResourceBundle> bundles) {
+	private Map<String, JoinableResourceBundle> getBundlesByName(List<JoinableResourceBundle> bundles) {
 
-		JoinableResourceBundle bundle = null;
-		for (JoinableResourceBundle aBundle : bundles) {
-			if (aBundle.getName().equals(name)) {
-				bundle = aBundle;
-				break;
+		Map<String, JoinableResourceBundle> bundlesByName = new HashMap<>();
+		for (JoinableResourceBundle bundle : bundles) {
+			String name = bundle.getName();
+			if (name != null && !bundlesByName.containsKey(name)) {
+				bundlesByName.put(name, bundle);
 			}
 		}
+		return bundlesByName;
+	}
 
-		return bundle;
+	/**
+	 * Returns the custom bundle definitions mapped by their bundle name
+	 * 
+	 * @return the custom bundle definitions mapped by their bundle name
+	 */
+	private Map<String, ResourceBundleDefinition> getDefinitionsByName() {
+
+		Map<String, ResourceBundleDefinition> definitionsByName = new HashMap<>();
+		for (ResourceBundleDefinition definition : bundleDefinitions) {
+			if (!definitionsByName.containsKey(definition.getBundleName())) {
+				definitionsByName.put(definition.getBundleName(), definition);
+			}
+		}
+		return definitionsByName;
 	}
 
 	/**
@@ -622,23 +641,28 @@ public class BundlesHandlerFactory {
 	 * 
 	 * @param definition
 	 *            the resource definition
-	 * @param bundles
-	 *            the list of bundles
+	 * @param definitionsByName
+	 *            the custom bundle definitions mapped by their bundle name
+	 * @param bundlesByName
+	 *            the bundles mapped by their name
 	 * 
 	 * @throws BundleDependencyException
 	 *             if an error exists in the dependency definition
 	 */
 	private List<JoinableResourceBundle> getBundleDependencies(ResourceBundleDefinition definition,
-			List<JoinableResourceBundle> bundles) throws BundleDependencyException {
+			Map<String, ResourceBundleDefinition> definitionsByName, Map<String, JoinableResourceBundle> bundlesByName)
+			throws BundleDependencyException {
 
 		List<JoinableResourceBundle> dependencies = new ArrayList<>();
-		List<String> processedBundles = new ArrayList<>();
+		Set<String> dependencyNames = new HashSet<>();
+		Set<String> processedBundles = new HashSet<>();
 		if (definition.isGlobal() && definition.getDependencies() != null && !definition.getDependencies().isEmpty()) {
 			throw new BundleDependencyException(definition.getBundleName(),
 					"The dependencies property is not allowed for global bundles. Please use the order property "
 							+ "to define the import order.");
 		}
-		initBundleDependencies(definition.getBundleName(), definition, dependencies, processedBundles, bundles);
+		initBundleDependencies(definition.getBundleName(), definition, dependencies, dependencyNames, processedBundles,
+				definitionsByName, bundlesByName);
 		return dependencies;
 	}
 
@@ -651,18 +675,23 @@ public class BundlesHandlerFactory {
 	 *            the current resource bundle definition
 	 * @param bundleDependencies
 	 *            the bundle dependencies
+	 * @param dependencyNames
+	 *            the names of the bundle dependencies
 	 * @param processedBundles
-	 *            the list of bundles already processed during the dependency
+	 *            the set of bundles already processed during the dependency
 	 *            resolution
-	 * @param bundles
-	 *            the list of reference bundles
+	 * @param definitionsByName
+	 *            the custom bundle definitions mapped by their bundle name
+	 * @param bundlesByName
+	 *            the reference bundles mapped by their name
 	 * 
 	 * @throws BundleDependencyException
 	 *             if an error exists in the dependency definition
 	 */
 	private void initBundleDependencies(String rootBundleDefinition, ResourceBundleDefinition definition,
-			List<JoinableResourceBundle> bundleDependencies, List<String> processedBundles,
-			List<JoinableResourceBundle> bundles) throws BundleDependencyException {
+			List<JoinableResourceBundle> bundleDependencies, Set<String> dependencyNames, Set<String> processedBundles,
+			Map<String, ResourceBundleDefinition> definitionsByName, Map<String, JoinableResourceBundle> bundlesByName)
+			throws BundleDependencyException {
 
 		List<String> bundleDefDependencies = definition.getDependencies();
 		if (definition.isGlobal()) {
@@ -684,27 +713,26 @@ public class BundlesHandlerFactory {
 
 				processedBundles.add(definition.getBundleName());
 				for (String dependency : bundleDefDependencies) {
-					for (ResourceBundleDefinition dependencyBundle : bundleDefinitions) {
+					ResourceBundleDefinition dependencyBundle = definitionsByName.get(dependency);
+					if (dependencyBundle != null) {
 						String dependencyBundleName = dependencyBundle.getBundleName();
-						if (dependencyBundleName.equals(dependency)) {
-
-							if (!bundleListContains(bundleDependencies, dependencyBundleName)) {
-
-								if (!processedBundles.contains(dependencyBundleName)) {
-									initBundleDependencies(rootBundleDefinition, dependencyBundle, bundleDependencies,
-											processedBundles, bundles);
-									bundleDependencies.add(getBundleFromName(dependencyBundleName, bundles));
-								} else {
-									throw new BundleDependencyException(rootBundleDefinition,
-											"There is a circular dependency. The bundle in conflict is '"
-													+ dependencyBundleName + "'");
-								}
+						if (!dependencyNames.contains(dependencyBundleName)) {
+
+							if (!processedBundles.contains(dependencyBundleName)) {
+								initBundleDependencies(rootBundleDefinition, dependencyBundle, bundleDependencies,
+										dependencyNames, processedBundles, definitionsByName, bundlesByName);
+								bundleDependencies.add(bundlesByName.get(dependencyBundleName));
+								dependencyNames.add(dependencyBundleName);
 							} else {
-								if (LOGGER.isInfoEnabled()) {
-									LOGGER.info("The bundle '" + dependencyBundle.getBundleId()
-											+ "' occurs multiple time in the dependencies hierarchy of the bundle '"
-											+ rootBundleDefinition + "'.");
-								}
+								throw new BundleDependencyException(rootBundleDefinition,
+										"There is a circular dependency. The bundle in conflict is '"
+												+ dependencyBundleName + "'");
+							}
+						} else {
+							if (LOGGER.isInfoEnabled()) {
+								LOGGER.info("The bundle '" + dependencyBundle.getBundleId()
+										+ "' occurs multiple time in the dependencies hierarchy of the bundle '"
+										+ rootBundleDefinition + "'.");
 							}
 						}
 					}
@@ -713,26 +741,6 @@ public class BundlesHandlerFactory {
 		}
 	}
 
-	/**
-	 * Checks if the bundle name exists in the bundle list
-	 * 
-	 * @param bundles
-	 *            the bundle list
-	 * @param bundleName
-	 *            the bundle name
-	 * @return true if the bundle name exists in the bundle list
-	 */
-	private boolean bundleListContains(List<JoinableResourceBundle> bundles, String bundleName) {
-		boolean contains = false;
-		for (JoinableResourceBundle bundle : bundles) {
-			if (bundle.getName().equals(bundleName)) {
-				contains = true;
-				break;
-			}
-		}
-		return contains;
-	}
-
 	/**
 	 * Build a bundle based on a mapping returned by the
 	 * ResourceBundleDirMapperFactory.
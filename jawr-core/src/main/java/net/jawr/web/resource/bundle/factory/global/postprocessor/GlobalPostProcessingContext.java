@@ -16,6 +16,7 @@ package net.jawr.web.resource.bundle.factory.global.postprocessor;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.resource.bundle.global.processor.AbstractGlobalProcessingContext;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
+import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 
 /**
@@ -31,6 +32,9 @@ public class GlobalPostProcessingContext extends AbstractGlobalProcessingContext
 	/** The resource reader handler */
 	private ResourceReaderHandler rsHandler;
 
+	/** The resource bundle handler, which stores the bundles */
+	private ResourceBundleHandler resourceBundleHandler;
+
 	/**
 	 * Constructor
 	 * 
@@ -76,4 +80,23 @@ public class GlobalPostProcessingContext extends AbstractGlobalProcessingContext
 		this.rsHandler = rsHandler;
 	}
 
+	/**
+	 * Returns the resource bundle handler, which stores the bundles
+	 * 
+	 * @return the resource bundle handler
+	 */
+	public ResourceBundleHandler getResourceBundleHandler() {
+		return resourceBundleHandler;
+	}
+
+	/**
+	 * Sets the resource bundle handler
+	 * 
+	 * @param resourceBundleHandler
+	 *            the resource bundle handler to set
+	 */
+	public void setResourceBundleHandler(ResourceBundleHandler resourceBundleHandler) {
+		this.resourceBundleHandler = resourceBundleHandler;
+	}
+
 }
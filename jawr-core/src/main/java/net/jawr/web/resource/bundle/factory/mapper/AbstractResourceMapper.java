@@ -15,8 +15,10 @@ package net.jawr.web.resource.bundle.factory.mapper;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +58,9 @@ public abstract class AbstractResourceMapper {
 	/** The bundle mapping */
 	private final Map<String, String> bundleMapping;
 
+	/** The IDs of the current bundles */
+	private final Set<String> bundleIds;
+
 	/**
 	 * Constructor
 	 * 
@@ -78,6 +83,10 @@ public abstract class AbstractResourceMapper {
 			this.currentBundles.addAll(currentBundles);
 		this.resourceExtension = resourceExtension;
 		this.bundleMapping = new HashMap<>();
+		this.bundleIds = new HashSet<>();
+		for (JoinableResourceBundle bundle : this.currentBundles) {
+			this.bundleIds.add(bundle.getId());
+		}
 	}
 
 	/**
@@ -106,12 +115,10 @@ public abstract class AbstractResourceMapper {
 	 */
 	protected final void addBundleToMap(String bundleId, String mapping) throws DuplicateBundlePathException {
 
-		for (JoinableResourceBundle bundle : currentBundles) {
-			if (bundleId.equals(bundle.getId()) || this.bundleMapping.containsKey(bundleId)) {
-				Marker fatal = MarkerFactory.getMarker("FATAL");
-				LOGGER.error(fatal, "Duplicate bundle id resulted from mapping:" + bundleId);
-				throw new DuplicateBundlePathException(bundleId);
-			}
+		if (bundleIds.contains(bundleId) || (!currentBundles.isEmpty() && this.bundleMapping.containsKey(bundleId))) {
+			Marker fatal = MarkerFactory.getMarker("FATAL");
+			LOGGER.error(fatal, "Duplicate bundle id resulted from mapping:" + bundleId);
+			throw new DuplicateBundlePathException(bundleId);
 		}
 
 		bundleMapping.put(bundleId, mapping);
@@ -15,6 +15,7 @@ package net.jawr.web.resource.bundle.factory.mapper;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -66,6 +67,14 @@ public class OrphanResourceBundlesMapper {
 	/** The bundle mapping */
 	private final List<String> bundleMapping;
 
+	/**
+	 * The paths of the items, debug items and licenses of the current bundles
+	 */
+	private Set<String> mappedPaths;
+
+	/** The IDs of the current bundles */
+	private Set<String> bundleIds;
+
 	/**
 	 * Constructor
 	 * 
@@ -112,6 +121,8 @@ public class OrphanResourceBundlesMapper {
 	 */
 	public List<String> getOrphansList() throws DuplicateBundlePathException {
 
+		initMappedPaths();
+
 		// Create a mapping for every resource available
 		JoinableResourceBundleImpl tempBundle = new JoinableResourceOrphanBundleImpl("orphansTemp", "orphansTemp",
 				this.resourceExtension, new InclusionPattern(), Collections.singletonList(this.baseDir), rsHandler,
@@ -131,38 +142,45 @@ public class OrphanResourceBundlesMapper {
 		return this.bundleMapping;
 	}
 
+	/**
+	 * Initializes the index of the paths and IDs of the current bundles, so
+	 * the mapping of each resource doesn't go through all the bundles
+	 */
+	private void initMappedPaths() {
+
+		mappedPaths = new HashSet<>();
+		bundleIds = new HashSet<>();
+		for (JoinableResourceBundle bundle : currentBundles) {
+			for (BundlePath path : bundle.getItemPathList()) {
+				mappedPaths.add(path.getPath());
+			}
+			for (BundlePath path : bundle.getItemDebugPathList()) {
+				mappedPaths.add(path.getPath());
+			}
+			mappedPaths.addAll(bundle.getLicensesPathList());
+			bundleIds.add(bundle.getId());
+		}
+	}
+
 	/**
 	 * Determine wether a resource is already added to some bundle, add it to
 	 * the list if it is not.
 	 * 
 	 * @param filePath
-	 * @param currentMappedResources
+	 *            the file path
+	 * @throws DuplicateBundlePathException
+	 *             if the resource path is the ID of a bundle
 	 */
 	private void addFileIfNotMapped(String filePath) throws DuplicateBundlePathException {
 
-		for (JoinableResourceBundle bundle : currentBundles) {
-			List<BundlePath> items = bundle.getItemPathList();
-			List<BundlePath> itemsDebug = bundle.getItemDebugPathList();
-			Set<String> licenses = bundle.getLicensesPathList();
-
-			for (BundlePath path : items) {
-				if (path.getPath().equals(filePath)) {
-					return;
-				}
-			}
-			for (BundlePath path : itemsDebug) {
-				if (path.getPath().equals(filePath)) {
-					return;
-				}
-			}
+		if (mappedPaths.contains(filePath)) {
+			return;
+		}
 
-			if (licenses.contains(filePath))
-				return;
-			else if (filePath.equals(bundle.getId())) {
-				Marker fatal = MarkerFactory.getMarker("FATAL");
-				LOGGER.error(fatal, "Duplicate bundle id resulted from orphan mapping of:" + filePath);
-				throw new DuplicateBundlePathException(filePath);
-			}
+		if (bundleIds.contains(filePath)) {
+			Marker fatal = MarkerFactory.getMarker("FATAL");
+			LOGGER.error(fatal, "Duplicate bundle id resulted from orphan mapping of:" + filePath);
+			throw new DuplicateBundlePathException(filePath);
 		}
 
 		if (!filePath.startsWith(JawrConstant.WEB_INF_DIR_PREFIX)
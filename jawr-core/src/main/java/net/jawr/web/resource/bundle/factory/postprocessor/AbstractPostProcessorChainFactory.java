@@ -116,9 +116,7 @@ public abstract class AbstractPostProcessorChainFactory implements PostProcessor
 
 		if (customPostProcessors.get(key) == null) {
 			toAdd = buildProcessorByKey(key);
-			if (toAdd instanceof BundlingProcessLifeCycleListener && !listeners.contains(toAdd)) {
-				listeners.add((BundlingProcessLifeCycleListener) toAdd);
-			}
+			addBundlingProcessLifeCycleListener(toAdd);
 		} else {
 			toAdd = (AbstractChainedResourceBundlePostProcessor) customPostProcessors.get(key);
 		}
@@ -134,6 +132,20 @@ public abstract class AbstractPostProcessorChainFactory implements PostProcessor
 		return newChainResult;
 	}
 
+	/**
+	 * Registers a post processor as bundling process life cycle listener, if
+	 * it is one. This must be called for the post processors which are not
+	 * built from their key, like the ones of the default chains.
+	 * 
+	 * @param processor
+	 *            the post processor
+	 */
+	protected void addBundlingProcessLifeCycleListener(ResourceBundlePostProcessor processor) {
+		if (processor instanceof BundlingProcessLifeCycleListener && !listeners.contains(processor)) {
+			listeners.add((BundlingProcessLifeCycleListener) processor);
+		}
+	}
+
 	/**
 	 * Builds an AbstractChainedResourceBundlePostProcessor based on the
 	 * supplied key. If the key doesn't match any PostProcessor (as defined in
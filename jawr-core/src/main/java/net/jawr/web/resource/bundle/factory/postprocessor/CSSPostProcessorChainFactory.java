@@ -61,6 +61,7 @@ public class CSSPostProcessorChainFactory extends AbstractPostProcessorChainFact
 
 		// The default unit post processor is CSSImport,CSSIrlPathRewriter
 		ChainedResourceBundlePostProcessor processor = new CSSImportPostProcessor();
+		addBundlingProcessLifeCycleListener(processor);
 		processor.addNextProcessor(new CSSURLPathRewriterPostProcessor());
 		return processor;
 	}
@@ -15,20 +15,17 @@ package net.jawr.web.resource.bundle.generator;
 
 import static net.jawr.web.JawrConstant.URL_SEPARATOR;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -36,8 +33,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.exception.BundlingProcessException;
+import net.jawr.web.resource.bundle.CheckSumUtils;
 import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.generator.CachedGenerator.CacheMode;
@@ -53,6 +56,7 @@ import net.jawr.web.resource.bundle.locale.LocaleUtils;
 import net.jawr.web.resource.bundle.mappings.FilePathMapping;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import net.jawr.web.resource.handler.reader.WorkingDirectoryLocationAware;
+import net.jawr.web.util.FileUtils;
 import net.jawr.web.util.StopWatch;
 import net.jawr.web.util.StringUtils;
 
@@ -74,10 +78,10 @@ public abstract class AbstractCachedGenerator
 	/** The separator for file mappings */
 	private static final String SEMICOLON = ";";
 
-	/** The last modification separator in file mapping */
-	private static final String MAPPING_TIMESTAMP_SEPARATOR = "#";
+	/** The charset of the cache properties file */
+	private static final Charset PROPERTIES_CHARSET = Charset.forName("ISO-8859-1");
 
-	/** The cache mapping prefix */
+	/** The cache mapping prefix of the previous cache format */
 	private static final String JAWR_MAPPING_PREFIX = "jawr.cache.mapping.";
 
 	/** The ResourceReaderHandler */
@@ -107,6 +111,12 @@ public abstract class AbstractCachedGenerator
 	/** The jawr configuration */
 	protected JawrConfig config;
 
+	/** The content addressed store of the generated resources */
+	protected GeneratorCacheStore cacheStore;
+
+	/** The hash of the generator configuration */
+	protected String cacheConfigHash;
+
 	/**
 	 * Constructor
 	 */
@@ -120,6 +130,9 @@ public abstract class AbstractCachedGenerator
 	 */
 	protected Map<String, List<FilePathMapping>> linkedResourceMap = new ConcurrentHashMap<>();
 
+	/** The generations in progress, indexed by mode, bundle and cache key */
+	private final ConcurrentMap<String, Generation> generationsInProgress = new ConcurrentHashMap<>();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -187,10 +200,51 @@ public abstract class AbstractCachedGenerator
 					}
 					resetCache();
 				}
+
+				cacheStore = new GeneratorCacheStore(getTempDirectory(), getBaseDirectory());
+				cacheConfigHash = getCacheConfigHash();
 			}
 		}
 	}
 
+	/**
+	 * Returns the base directory of the web application resources, which is
+	 * used to store the path of the linked resources relative to it
+	 * 
+	 * @return the base directory of the web application resources, or null if
+	 *         it is not available
+	 */
+	protected String getBaseDirectory() {
+
+		String baseDir = null;
+		if (rsHandler != null) {
+			baseDir = rsHandler.getFilePath(URL_SEPARATOR);
+		}
+		return baseDir;
+	}
+
+	/**
+	 * Returns the hash of the generator configuration, which is part of the
+	 * key of the cached resources. The generator configuration is defined by
+	 * the cache properties.
+	 * 
+	 * @return the hash of the generator configuration
+	 */
+	protected String getCacheConfigHash() {
+
+		Map<String, String> properties = new TreeMap<>();
+		for (Enumeration<?> propertyNames = cacheProperties.propertyNames(); propertyNames.hasMoreElements();) {
+			String propName = (String) propertyNames.nextElement();
+			properties.put(propName, cacheProperties.getProperty(propName));
+		}
+
+		try {
+			return CheckSumUtils.getMD5Checksum(getClass().getName() + properties);
+		} catch (IOException e) {
+			throw new BundlingProcessException(e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -215,15 +269,36 @@ public abstract class AbstractCachedGenerator
 	 */
 	protected String getTempFilePath(GeneratorContext context, CacheMode cacheMode) {
 
-		return getTempDirectory() + cacheMode + URL_SEPARATOR + getResourceCacheKey(context.getPath(), context);
+		String cacheKey = getResourceCacheKey(context.getPath(), context);
+		List<FilePathMapping> fMappings = linkedResourceMap.get(cacheKey);
+		if (fMappings == null) {
+			return null;
+		}
+
+		String entryKey = cacheStore.getEntryKey(getName() + SEMICOLON + cacheConfigHash + SEMICOLON + cacheKey,
+				fMappings);
+		if (entryKey == null) {
+			return null;
+		}
+		return cacheStore.getEntryFile(cacheMode, entryKey).getPath();
 	}
 
 	/**
-	 * Returns the temporary directory or null if the generator don't use cache
+	 * Returns the temporary directory or null if the generator don't use cache.
+	 * The temporary directory is located in the generator cache directory if
+	 * it has been defined, otherwise in the working directory.
 	 * 
 	 * @return the temporary directory or null if the generator don't use cache
 	 */
 	protected String getTempDirectory() {
+
+		String generatorCacheDir = config.getGeneratorCacheDirectory();
+		if (StringUtils.isNotEmpty(generatorCacheDir)) {
+			if (!generatorCacheDir.endsWith(URL_SEPARATOR)) {
+				generatorCacheDir = generatorCacheDir + URL_SEPARATOR;
+			}
+			return generatorCacheDir + cacheDirectory + URL_SEPARATOR;
+		}
 		return this.workingDir + JawrConstant.GENERATOR_CACHE_DIR + URL_SEPARATOR + cacheDirectory + URL_SEPARATOR;
 	}
 
@@ -253,12 +328,46 @@ public abstract class AbstractCachedGenerator
 			stopWatch.start();
 		}
 
+		String cacheKey = getResourceCacheKey(path, context);
+		Reader rd = retrieveFromCache(cacheKey, context);
+		if (rd == null) {
+			if (useCache) {
+				rd = generateOnce(cacheKey, context);
+			} else {
+				// Without cache, there is no cache entry to share between the
+				// callers, so the resource is generated directly
+				rd = generate(cacheKey, context);
+			}
+		}
+
+		if (PERF_LOGGER.isDebugEnabled()) {
+			stopWatch.stop();
+			PERF_LOGGER.debug(stopWatch.shortSummary());
+		}
+
+		return rd;
+	}
+
+	/**
+	 * Retrieves the resource from the cache of the current mode (production
+	 * if the bundle is processed, debug otherwise)
+	 * 
+	 * @param cacheKey
+	 *            the resource cache key
+	 * @param context
+	 *            the generator context
+	 * @return the reader to the resource, or null if it is not in the cache
+	 */
+	private Reader retrieveFromCache(String cacheKey, GeneratorContext context) {
+
 		Reader rd = null;
 		if (useCache) {
-			List<FilePathMapping> fMappings = linkedResourceMap.get(getResourceCacheKey(path, context));
-			if (fMappings != null && !checkResourcesModified(context, fMappings)) {
+			List<FilePathMapping> fMappings = getLinkedResources(cacheKey);
+			if (fMappings != null) {
 				// Retrieve from cache
-				// Checks if temp resource is already created
+				// The cache entry is identified by the content of the linked
+				// resources, so a modified resource will not be found
+				String path = context.getPath();
 				if (context.isProcessingBundle()) {
 
 					if (cacheMode.equals(CacheMode.PROD) || cacheMode.equals(CacheMode.ALL)) {
@@ -271,45 +380,123 @@ public abstract class AbstractCachedGenerator
 				}
 			}
 		}
+		return rd;
+	}
 
-		if (rd == null) {
+	/**
+	 * Generates the resource, ensuring that a resource is generated only once
+	 * at a time. The callers which request a resource while it is being
+	 * generated wait for the generation in progress and share its result,
+	 * while the resources of different keys are generated in parallel. If the
+	 * resource is requested again by the thread which generates it (for
+	 * example by a resource which imports itself), it is generated directly
+	 * instead of waiting for itself.
+	 * 
+	 * @param cacheKey
+	 *            the resource cache key
+	 * @param context
+	 *            the generator context
+	 * @return the reader to the generated resource
+	 */
+	private Reader generateOnce(final String cacheKey, final GeneratorContext context) {
 
-			rd = generateResource(path, context);
-			if (useCache) {
+		// The linked resources are added to the bundle of the context, so the
+		// generation is only shared between the callers of the same bundle
+		JoinableResourceBundle bundle = context.getBundle();
+		String generationKey = (context.isProcessingBundle() ? CacheMode.PROD : CacheMode.DEBUG) + SEMICOLON
+				+ (bundle != null ? bundle.getId() : "") + SEMICOLON + cacheKey;
 
-				if (rd != null) {
-					if (cacheMode.equals(CacheMode.PROD) || cacheMode.equals(CacheMode.ALL)) {
-						rd = createTempResource(context, CacheMode.PROD, rd);
-					}
+		Generation generation = new Generation(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+
+				// Another caller may have generated the resource since the
+				// cache has been checked
+				Reader rd = retrieveFromCache(cacheKey, context);
+				if (rd == null) {
+					rd = generate(cacheKey, context);
 				}
+				return rd == null ? null : IOUtils.toString(rd);
 			}
-			if (context.isProcessingBundle()) {
-				if (useCache && (cacheMode.equals(CacheMode.DEBUG) || cacheMode.equals(CacheMode.ALL))) {
-					// Create debug cache while processing bundle if cache is
-					// allowed in debug
-					String content = null;
-					try {
-						content = IOUtils.toString(rd);
-					} catch (IOException e) {
-						throw new BundlingProcessException(e);
-					}
-					Reader dRd = generateResourceForDebug(new StringReader(content), context);
-					createTempResource(context, CacheMode.DEBUG, dRd);
-					rd = new StringReader(content);
-				}
-			} else {
-				rd = generateResourceForDebug(rd, context);
-				if (useCache && (cacheMode.equals(CacheMode.DEBUG) || cacheMode.equals(CacheMode.ALL))) {
-					rd = createTempResource(context, CacheMode.DEBUG, rd);
-				}
+		});
+
+		Generation inProgress = generationsInProgress.putIfAbsent(generationKey, generation);
+		if (inProgress == null) {
+			inProgress = generation;
+			try {
+				generation.run();
+			} finally {
+				generationsInProgress.remove(generationKey, generation);
 			}
+		} else if (inProgress.owner == Thread.currentThread()) {
+			return generate(cacheKey, context);
 		}
 
-		if (PERF_LOGGER.isDebugEnabled()) {
-			stopWatch.stop();
-			PERF_LOGGER.debug(stopWatch.shortSummary());
+		String content = null;
+		try {
+			content = inProgress.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BundlingProcessException(
+					"The generation of '" + context.getPath() + "' has been interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new BundlingProcessException(cause);
 		}
 
+		return content == null ? null : new StringReader(content);
+	}
+
+	/**
+	 * Generates the resource and stores it in the cache
+	 * 
+	 * @param cacheKey
+	 *            the resource cache key
+	 * @param context
+	 *            the generator context
+	 * @return the reader to the generated resource
+	 */
+	private Reader generate(String cacheKey, GeneratorContext context) {
+
+		String path = context.getPath();
+		Reader rd = generateResource(path, context);
+		if (useCache) {
+
+			storeLinkedResources(cacheKey);
+
+			if (rd != null) {
+				if (cacheMode.equals(CacheMode.PROD) || cacheMode.equals(CacheMode.ALL)) {
+					rd = createTempResource(context, CacheMode.PROD, rd);
+				}
+			}
+		}
+		if (context.isProcessingBundle()) {
+			if (useCache && (cacheMode.equals(CacheMode.DEBUG) || cacheMode.equals(CacheMode.ALL))) {
+				// Create debug cache while processing bundle if cache is
+				// allowed in debug
+				String content = null;
+				try {
+					content = IOUtils.toString(rd);
+				} catch (IOException e) {
+					throw new BundlingProcessException(e);
+				}
+				Reader dRd = generateResourceForDebug(new StringReader(content), context);
+				createTempResource(context, CacheMode.DEBUG, dRd);
+				rd = new StringReader(content);
+			}
+		} else {
+			rd = generateResourceForDebug(rd, context);
+			if (useCache && (cacheMode.equals(CacheMode.DEBUG) || cacheMode.equals(CacheMode.ALL))) {
+				rd = createTempResource(context, CacheMode.DEBUG, rd);
+			}
+		}
 		return rd;
 	}
 
@@ -345,6 +532,49 @@ public abstract class AbstractCachedGenerator
 		return cacheKey;
 	}
 
+	/**
+	 * Returns the resources linked to a generated resource. The linked
+	 * resources are retrieved from the cache store if they are not in memory.
+	 * 
+	 * @param cacheKey
+	 *            the resource cache key
+	 * @return the linked resources or null if they are not known
+	 */
+	protected List<FilePathMapping> getLinkedResources(String cacheKey) {
+
+		List<FilePathMapping> fMappings = linkedResourceMap.get(cacheKey);
+		if (fMappings == null) {
+			try {
+				fMappings = cacheStore.readLinkedResources(cacheKey);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Unable to read the linked resources of '" + cacheKey + "' from " + getName()
+						+ " generator cache", e);
+			}
+			if (fMappings != null) {
+				linkedResourceMap.put(cacheKey, fMappings);
+			}
+		}
+		return fMappings;
+	}
+
+	/**
+	 * Stores the resources linked to a generated resource in the cache store
+	 * 
+	 * @param cacheKey
+	 *            the resource cache key
+	 */
+	protected void storeLinkedResources(String cacheKey) {
+
+		List<FilePathMapping> fMappings = linkedResourceMap.get(cacheKey);
+		if (fMappings != null) {
+			try {
+				cacheStore.writeLinkedResources(cacheKey, fMappings);
+			} catch (IOException e) {
+				throw new BundlingProcessException("Unable to save the linked resources of '" + cacheKey + "'", e);
+			}
+		}
+	}
+
 	/**
 	 * Adds the linked resource to the linked resource map
 	 * 
@@ -454,6 +684,9 @@ public abstract class AbstractCachedGenerator
 
 		Reader rd = null;
 		String filePath = getTempFilePath(context, cacheMode);
+		if (filePath == null) {
+			return null;
+		}
 		FileInputStream fis = null;
 		File file = new File(filePath);
 		if (file.exists()) {
@@ -486,26 +719,16 @@ public abstract class AbstractCachedGenerator
 	 */
 	protected Reader createTempResource(GeneratorContext context, CacheMode cacheMode, Reader rd) {
 		String filePath = getTempFilePath(context, cacheMode);
-		Writer wr = null;
-		FileOutputStream fos = null;
+		if (filePath == null) {
+			return rd;
+		}
 		try {
-			File f = new File(filePath);
-			if (!f.getParentFile().exists()) {
-				f.getParentFile().mkdirs();
-			}
 			String content = IOUtils.toString(rd);
-			fos = new FileOutputStream(f);
-			FileChannel channel = fos.getChannel();
-			wr = Channels.newWriter(channel, config.getResourceCharset().newEncoder(), -1);
-			wr.write(content);
-
+			FileUtils.writeAtomically(new File(filePath), content, config.getResourceCharset());
 			rd = new StringReader(content);
 		} catch (IOException e) {
 			throw new BundlingProcessException("Unable to create temporary resource for '" + context.getPath() + "'",
 					e);
-		} finally {
-			IOUtils.close(wr);
-			IOUtils.close(fos);
 		}
 
 		return rd;
@@ -533,39 +756,20 @@ public abstract class AbstractCachedGenerator
 	}
 
 	/**
-	 * Serialize the cache file mapping
+	 * Serialize the cache properties. The linked resources are stored in the
+	 * cache store when the resources are generated, so only the generator
+	 * configuration is saved here. The file is replaced atomically, so the
+	 * cache directory can be shared by several processes.
 	 */
-	protected synchronized void serializeCacheMapping() {
-		for (Map.Entry<String, List<FilePathMapping>> entry : linkedResourceMap.entrySet()) {
-
-			StringBuilder strb = new StringBuilder();
-			Iterator<FilePathMapping> iter = entry.getValue().iterator();
-			if (iter.hasNext()) {
-
-				for (; iter.hasNext();) {
-					FilePathMapping fMapping = iter.next();
-					strb.append(fMapping.getPath()).append(MAPPING_TIMESTAMP_SEPARATOR)
-							.append(fMapping.getLastModified());
-					if (iter.hasNext()) {
-						strb.append(SEMICOLON);
-					}
-				}
-				cacheProperties.put(JAWR_MAPPING_PREFIX + entry.getKey(), strb.toString());
-			}
-		}
+	protected void serializeCacheMapping() {
 
-		File f = new File(getCacheFilePath());
-		if (!f.getParentFile().exists()) {
-			f.getParentFile().mkdirs();
-		}
-		FileWriter fw = null;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		try {
-			fw = new FileWriter(f);
-			cacheProperties.store(fw, "Cache properties of " + getName() + " generator");
+			cacheProperties.store(bos, "Cache properties of " + getName() + " generator");
+			FileUtils.writeAtomically(new File(getCacheFilePath()), new String(bos.toByteArray(), PROPERTIES_CHARSET),
+					PROPERTIES_CHARSET);
 		} catch (IOException e) {
 			throw new BundlingProcessException("Unable to save cache file mapping ", e);
-		} finally {
-			IOUtils.close(fw);
 		}
 	}
 
@@ -588,40 +792,20 @@ public abstract class AbstractCachedGenerator
 	}
 
 	/**
-	 * Loads the less file mapping
+	 * Loads the cache properties
 	 */
 	protected void loadCacheMapping() {
 		File f = new File(getCacheFilePath());
 		if (f.exists()) {
-			try(InputStream is = new FileInputStream(f); BufferedReader rd = new BufferedReader(new FileReader(f))) {
+			try (InputStream is = new FileInputStream(f)) {
 				cacheProperties.load(is);
+
+				// Remove the file mappings of the previous cache format, the
+				// linked resources are now stored in the cache store
 				for (Enumeration<?> properyNames = cacheProperties.propertyNames(); properyNames.hasMoreElements();) {
 					String propName = (String) properyNames.nextElement();
 					if (propName.startsWith(JAWR_MAPPING_PREFIX)) {
-
-						String value = cacheProperties.getProperty(propName);
-
-						String resourceMapping = propName.substring(JAWR_MAPPING_PREFIX.length());
-						String[] mappings = value.split(SEMICOLON);
-						List<FilePathMapping> fMappings = new CopyOnWriteArrayList<>();
-
-						// TODO check the use of mappingModified
-						boolean mappingModified = true;
-						for (String fmapping : mappings) {
-							String[] mapping = fmapping.split(MAPPING_TIMESTAMP_SEPARATOR);
-							long lastModified = Long.parseLong(mapping[1]);
-							String filePath = mapping[0];
-							if (rsHandler.getLastModified(filePath) != lastModified) {
-								mappingModified = false;
-								break;
-							}
-							FilePathMapping fmap = new FilePathMapping(filePath, lastModified);
-							fMappings.add(fmap);
-						}
-
-						if (mappingModified) {
-							linkedResourceMap.put(resourceMapping, fMappings);
-						}
+						cacheProperties.remove(propName);
 					}
 				}
 
@@ -659,4 +843,25 @@ public abstract class AbstractCachedGenerator
 		}
 	}
 
+	/**
+	 * The generation of a resource, which is run by the thread which has
+	 * created it
+	 * 
+	 * @author Ibrahim Chaehoi
+	 */
+	private static class Generation extends FutureTask<String> {
+
+		/** The thread which runs the generation */
+		private final Thread owner = Thread.currentThread();
+
+		/**
+		 * Constructor
+		 * 
+		 * @param callable
+		 *            the generation task
+		 */
+		private Generation(Callable<String> callable) {
+			super(callable);
+		}
+	}
 }
@@ -0,0 +1,489 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.generator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.resource.bundle.CheckSumUtils;
+import net.jawr.web.resource.bundle.generator.CachedGenerator.CacheMode;
+import net.jawr.web.resource.bundle.mappings.FilePathMapping;
+import net.jawr.web.util.FileUtils;
+
+/**
+ * This class defines the content addressed store of the generator cache.
+ *
+ * The generated resources are stored under a key computed from the content of
+ * the resources used to generate them and from the generator configuration,
+ * so the cache remains valid when the files are copied or checked out again
+ * (which changes their last modification date), and the store directory can
+ * be shared by several nodes or deployments. For the same reason, the paths
+ * of the linked resources located in the base directory are stored relative
+ * to it, and the key of the resources which are not linked to any file (like
+ * the resources retrieved from a JAR) contains the version of the class
+ * loader.
+ *
+ * All the files are written in a temporary file which is then moved to its
+ * final location, so a reader never sees a partially written file, even if
+ * another process writes in the same directory.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class GeneratorCacheStore {
+
+	/** The directory of the linked resource mappings */
+	private static final String MAPPING_DIR = "mapping";
+
+	/** The extension of the linked resource mapping files */
+	private static final String MAPPING_FILE_EXTENSION = ".mapping";
+
+	/** The separator for file mappings */
+	private static final String SEMICOLON = ";";
+
+	/** The last modification separator in file mapping */
+	private static final String MAPPING_TIMESTAMP_SEPARATOR = "#";
+
+	/** The prefix of the linked resource paths relative to the base directory */
+	private static final String BASE_DIR_PREFIX = "basedir:";
+
+	/** The charset of the mapping files */
+	private static final Charset MAPPING_CHARSET = Charset.forName("UTF-8");
+
+	/** The maximum number of content hashes kept in memory */
+	private static final int MAX_CONTENT_HASHES = 10000;
+
+	/**
+	 * The content hashes of the JAR files of the class loaders, indexed by
+	 * absolute path. They are shared by the stores, because the JAR files
+	 * are large and the same for all the generators.
+	 */
+	private static final Map<String, ContentHash> JAR_CONTENT_HASHES = new ConcurrentHashMap<>();
+
+	/** The store directory */
+	private final String directory;
+
+	/**
+	 * The base directory of the linked resources, which ends with a file
+	 * separator, or null if it is not defined
+	 */
+	private final String baseDirectory;
+
+	/** The class loader used to retrieve the resources which are not files */
+	private final ClassLoader classLoader;
+
+	/** The version of the class loader, computed on demand */
+	private volatile String classLoaderVersion;
+
+	/**
+	 * The content hashes of the files, indexed by path. The least recently
+	 * used hashes are removed when the maximum size is reached.
+	 */
+	private final Map<String, ContentHash> contentHashes = Collections
+			.synchronizedMap(new LinkedHashMap<String, ContentHash>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 2915542925316245707L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, ContentHash> eldest) {
+					return size() > MAX_CONTENT_HASHES;
+				}
+			});
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            the store directory
+	 */
+	public GeneratorCacheStore(String directory) {
+		this(directory, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            the store directory
+	 * @param baseDirectory
+	 *            the base directory of the linked resources, or null if it
+	 *            is not defined
+	 */
+	public GeneratorCacheStore(String directory, String baseDirectory) {
+		this(directory, baseDirectory, Thread.currentThread().getContextClassLoader());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            the store directory
+	 * @param baseDirectory
+	 *            the base directory of the linked resources, or null if it
+	 *            is not defined
+	 * @param classLoader
+	 *            the class loader used to retrieve the resources which are
+	 *            not files
+	 */
+	public GeneratorCacheStore(String directory, String baseDirectory, ClassLoader classLoader) {
+		this.directory = directory.endsWith(JawrConstant.URL_SEPARATOR) ? directory
+				: directory + JawrConstant.URL_SEPARATOR;
+		if (baseDirectory != null) {
+			baseDirectory = new File(baseDirectory).getAbsolutePath();
+			if (!baseDirectory.endsWith(File.separator)) {
+				baseDirectory = baseDirectory + File.separator;
+			}
+		}
+		this.baseDirectory = baseDirectory;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Returns the store directory
+	 *
+	 * @return the store directory
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the hash of the content of the file, or null if the file
+	 * doesn't exist. The hash is computed only once as long as the file is
+	 * not modified.
+	 *
+	 * @param filePath
+	 *            the file path
+	 * @return the hash of the content of the file
+	 */
+	public String getContentHash(String filePath) {
+
+		return getContentHash(contentHashes, new File(filePath), filePath);
+	}
+
+	/**
+	 * Returns the hash of the content of the file, or null if the file
+	 * doesn't exist. The hash is computed only once as long as the file is
+	 * not modified.
+	 *
+	 * @param hashes
+	 *            the content hashes already computed
+	 * @param f
+	 *            the file
+	 * @param filePath
+	 *            the key of the file in the content hashes
+	 * @return the hash of the content of the file
+	 */
+	private static String getContentHash(Map<String, ContentHash> hashes, File f, String filePath) {
+
+		if (!f.isFile()) {
+			return null;
+		}
+
+		long lastModified = f.lastModified();
+		long length = f.length();
+		ContentHash contentHash = hashes.get(filePath);
+		if (contentHash == null || contentHash.lastModified != lastModified || contentHash.length != length) {
+			try (InputStream is = new BufferedInputStream(new FileInputStream(f))) {
+				contentHash = new ContentHash(lastModified, length, CheckSumUtils.getMD5Checksum(is));
+			} catch (IOException e) {
+				return null;
+			}
+			hashes.put(filePath, contentHash);
+		}
+		return contentHash.hash;
+	}
+
+	/**
+	 * Returns the version of the class loader, which is computed from the
+	 * name, the size and the content hash of its JAR files, and from the
+	 * location of its directories. The content hashes are cached per file.
+	 *
+	 * @return the version of the class loader
+	 */
+	public String getClassLoaderVersion() {
+
+		String version = classLoaderVersion;
+		if (version == null) {
+			StringBuilder strb = new StringBuilder();
+			for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent()) {
+				if (cl instanceof URLClassLoader) {
+					for (URL url : ((URLClassLoader) cl).getURLs()) {
+						appendClassPathEntry(strb, url);
+					}
+				}
+			}
+			String classPath = System.getProperty("java.class.path");
+			if (classPath != null) {
+				for (String entry : classPath.split(File.pathSeparator)) {
+					appendClassPathEntry(strb, new File(entry));
+				}
+			}
+
+			try {
+				version = CheckSumUtils.getMD5Checksum(strb.toString());
+			} catch (IOException e) {
+				// Should not happen while reading from memory
+				version = "";
+			}
+			classLoaderVersion = version;
+		}
+		return version;
+	}
+
+	/**
+	 * Appends the class path entry to the class loader version
+	 *
+	 * @param strb
+	 *            the class loader version
+	 * @param url
+	 *            the URL of the class path entry
+	 */
+	private void appendClassPathEntry(StringBuilder strb, URL url) {
+
+		if ("file".equals(url.getProtocol())) {
+			try {
+				appendClassPathEntry(strb, new File(url.toURI()));
+				return;
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// Use the URL
+			}
+		}
+		strb.append(url).append(SEMICOLON);
+	}
+
+	/**
+	 * Appends the class path entry to the class loader version
+	 *
+	 * @param strb
+	 *            the class loader version
+	 * @param f
+	 *            the file of the class path entry
+	 */
+	private void appendClassPathEntry(StringBuilder strb, File f) {
+
+		// The JAR files are identified by their content, so that a new
+		// deployment of the same JAR in another location doesn't change the
+		// version
+		String hash = getContentHash(JAR_CONTENT_HASHES, f, f.getAbsolutePath());
+		if (hash != null) {
+			strb.append(f.getName()).append(MAPPING_TIMESTAMP_SEPARATOR).append(f.length())
+					.append(MAPPING_TIMESTAMP_SEPARATOR).append(hash);
+		} else {
+			strb.append(f.getAbsolutePath());
+		}
+		strb.append(SEMICOLON);
+	}
+
+	/**
+	 * Returns the key of a cache entry. The key is computed from the prefix,
+	 * which identifies the generated resource and the generator
+	 * configuration, and from the content of the linked resources. If there
+	 * is no linked resource, the resource has been retrieved from the class
+	 * loader, so the key contains the class loader version.
+	 *
+	 * @param prefix
+	 *            the key prefix
+	 * @param fMappings
+	 *            the linked resources
+	 * @return the key of the cache entry, or null if one of the linked
+	 *         resources doesn't exist anymore
+	 */
+	public String getEntryKey(String prefix, List<FilePathMapping> fMappings) {
+
+		StringBuilder strb = new StringBuilder(prefix);
+		for (FilePathMapping fMapping : fMappings) {
+			String hash = getContentHash(fMapping.getPath());
+			if (hash == null) {
+				return null;
+			}
+			strb.append(SEMICOLON).append(hash);
+		}
+		if (fMappings.isEmpty()) {
+			strb.append(SEMICOLON).append(getClassLoaderVersion());
+		}
+
+		try {
+			return CheckSumUtils.getMD5Checksum(strb.toString());
+		} catch (IOException e) {
+			// Should not happen while reading from memory
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the file of a cache entry
+	 *
+	 * @param cacheMode
+	 *            the cache mode
+	 * @param entryKey
+	 *            the entry key
+	 * @return the file of the cache entry
+	 */
+	public File getEntryFile(CacheMode cacheMode, String entryKey) {
+		return new File(directory + cacheMode + JawrConstant.URL_SEPARATOR + entryKey);
+	}
+
+	/**
+	 * Reads the linked resources of a generated resource
+	 *
+	 * @param resourceKey
+	 *            the resource cache key
+	 * @return the linked resources, or null if they are not stored
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public List<FilePathMapping> readLinkedResources(String resourceKey) throws IOException {
+
+		File f = getMappingFile(resourceKey);
+		if (!f.isFile()) {
+			return null;
+		}
+
+		String value = new String(Files.readAllBytes(f.toPath()), MAPPING_CHARSET).trim();
+		List<FilePathMapping> fMappings = new CopyOnWriteArrayList<>();
+		if (value.length() > 0) {
+			for (String fmapping : value.split(SEMICOLON)) {
+				int idx = fmapping.lastIndexOf(MAPPING_TIMESTAMP_SEPARATOR);
+				String path = getFilePath(fmapping.substring(0, idx));
+				if (path == null) {
+					return null;
+				}
+				fMappings.add(new FilePathMapping(path, Long.parseLong(fmapping.substring(idx + 1))));
+			}
+		}
+		return fMappings;
+	}
+
+	/**
+	 * Writes the linked resources of a generated resource
+	 *
+	 * @param resourceKey
+	 *            the resource cache key
+	 * @param fMappings
+	 *            the linked resources
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public void writeLinkedResources(String resourceKey, List<FilePathMapping> fMappings) throws IOException {
+
+		StringBuilder strb = new StringBuilder();
+		for (FilePathMapping fMapping : fMappings) {
+			if (strb.length() > 0) {
+				strb.append(SEMICOLON);
+			}
+			strb.append(getStoredPath(fMapping.getPath())).append(MAPPING_TIMESTAMP_SEPARATOR)
+					.append(fMapping.getLastModified());
+		}
+		FileUtils.writeAtomically(getMappingFile(resourceKey), strb.toString(), MAPPING_CHARSET);
+	}
+
+	/**
+	 * Returns the path of a linked resource as it is stored. The path of a
+	 * file located in the base directory is relative to it.
+	 *
+	 * @param filePath
+	 *            the file path
+	 * @return the stored path
+	 */
+	private String getStoredPath(String filePath) {
+
+		if (baseDirectory != null) {
+			String path = new File(filePath).getAbsolutePath();
+			if (path.startsWith(baseDirectory)) {
+				return BASE_DIR_PREFIX + path.substring(baseDirectory.length()).replace(File.separatorChar, '/');
+			}
+		}
+		return filePath;
+	}
+
+	/**
+	 * Returns the file path of a stored linked resource
+	 *
+	 * @param storedPath
+	 *            the stored path
+	 * @return the file path, or null if the path is relative to the base
+	 *         directory and the base directory is not defined
+	 */
+	private String getFilePath(String storedPath) {
+
+		if (storedPath.startsWith(BASE_DIR_PREFIX)) {
+			if (baseDirectory == null) {
+				return null;
+			}
+			return baseDirectory
+					+ storedPath.substring(BASE_DIR_PREFIX.length()).replace('/', File.separatorChar);
+		}
+		return storedPath;
+	}
+
+	/**
+	 * Returns the file which stores the linked resources of a generated
+	 * resource
+	 *
+	 * @param resourceKey
+	 *            the resource cache key
+	 * @return the mapping file
+	 */
+	private File getMappingFile(String resourceKey) {
+		return new File(directory + MAPPING_DIR + JawrConstant.URL_SEPARATOR + resourceKey + MAPPING_FILE_EXTENSION);
+	}
+
+	/**
+	 * The content hash of a file in a given state
+	 *
+	 * @author Ibrahim Chaehoi
+	 */
+	private static class ContentHash {
+
+		/** The last modification date of the file */
+		private final long lastModified;
+
+		/** The length of the file */
+		private final long length;
+
+		/** The hash of the content */
+		private final String hash;
+
+		/**
+		 * Constructor
+		 *
+		 * @param lastModified
+		 *            the last modification date of the file
+		 * @param length
+		 *            the length of the file
+		 * @param hash
+		 *            the hash of the content
+		 */
+		private ContentHash(long lastModified, long length, String hash) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+		}
+	}
+}
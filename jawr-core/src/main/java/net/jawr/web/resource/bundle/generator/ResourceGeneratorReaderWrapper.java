@@ -25,7 +25,9 @@ import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.generator.variant.VariantResourceGenerator;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
 import net.jawr.web.resource.bundle.variant.VariantSet;
+import net.jawr.web.resource.bundle.variant.VariantUtils;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import net.jawr.web.resource.handler.reader.TextResourceReader;
 
@@ -149,6 +151,18 @@ public class ResourceGeneratorReaderWrapper implements TextResourceReader {
 		context.setResourceReaderHandler(rsHandler);
 		context.setProcessingBundle(processingBundle);
 
+		BundlingProfiler profiler = config.getBundlingProfiler();
+		if (profiler != null && processingBundle) {
+			BundlingProfiler.Span span = profiler.start(BundlingProfiler.GENERATOR_CATEGORY,
+					generator.getClass().getSimpleName(), bundle != null ? bundle.getId() : null,
+					VariantUtils.getVariantKey(contextVariants));
+			try {
+				return generator.createResource(context);
+			} finally {
+				profiler.stop(span, -1, -1);
+			}
+		}
+
 		return generator.createResource(context);
 	}
 
@@ -16,7 +16,9 @@ package net.jawr.web.resource.bundle.generator.classpath;
 import java.io.InputStream;
 import java.util.Set;
 
+import net.jawr.web.config.JawrConfig;
 import net.jawr.web.resource.FileNameUtils;
+import net.jawr.web.resource.bundle.generator.ConfigurationAwareResourceGenerator;
 import net.jawr.web.resource.bundle.generator.GeneratorContext;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
 import net.jawr.web.resource.bundle.generator.ResourceGenerator;
@@ -32,7 +34,8 @@ import net.jawr.web.resource.handler.reader.ResourceBrowser;
  * @author Ibrahim Chaehoi
  *
  */
-public class ClassPathBinaryResourceGenerator implements ResourceBrowser, StreamResourceGenerator {
+public class ClassPathBinaryResourceGenerator
+		implements ResourceBrowser, StreamResourceGenerator, ConfigurationAwareResourceGenerator {
 
 	/** the class path generator helper */
 	private static final String CLASSPATH_GENERATOR_HELPER_PREFIX = "";
@@ -51,6 +54,18 @@ public class ClassPathBinaryResourceGenerator implements ResourceBrowser, Stream
 		resolver = createResolver(getGeneratorPrefix());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.generator.
+	 * ConfigurationAwareResourceGenerator#setConfig(net.jawr.web.config.
+	 * JawrConfig)
+	 */
+	@Override
+	public void setConfig(JawrConfig config) {
+		helper.setResourceIndex(ClassPathResourceIndex.getInstance(config));
+	}
+
 	/**
 	 * create the resource generator resolver
 	 *
@@ -104,6 +104,7 @@ public class ClassPathCSSGenerator extends AbstractCSSGenerator implements Resou
 	public void setConfig(JawrConfig config) {
 		super.setConfig(config);
 		this.isHandlingCssImage = config.isCssClasspathImageHandledByClasspathCss();
+		helper.setResourceIndex(ClassPathResourceIndex.getInstance(config));
 	}
 
 	/*
@@ -64,6 +64,9 @@ public class ClassPathGeneratorHelper implements ResourceBrowser {
 	/** The prefix to preppend before searching resource in classpath */
 	private final String classpathPrefix;
 
+	/** The index of the JAR entries of the classpath */
+	private ClassPathResourceIndex resourceIndex = ClassPathResourceIndex.getInstance();
+
 	/**
 	 * Constructor
 	 */
@@ -81,6 +84,16 @@ public class ClassPathGeneratorHelper implements ResourceBrowser {
 		this.classpathPrefix = classpathPrefix;
 	}
 
+	/**
+	 * Sets the index of the JAR entries of the classpath
+	 * 
+	 * @param resourceIndex
+	 *            the index to set
+	 */
+	public void setResourceIndex(ClassPathResourceIndex resourceIndex) {
+		this.resourceIndex = resourceIndex;
+	}
+
 	/**
 	 * Finds a resource from the classpath and returns a reader on it.
 	 * 
@@ -173,6 +186,12 @@ public class ClassPathGeneratorHelper implements ResourceBrowser {
 	 */
 	private Set<String> getResourceNamesFromJar(String path, URL resourceURL) {
 
+		// Use the shared index to avoid scanning the JAR entries each time
+		Set<String> indexedNames = resourceIndex.getResourceNames(resourceURL);
+		if (indexedNames != null) {
+			return indexedNames;
+		}
+
 		URLConnection con = null;
 
 		try {
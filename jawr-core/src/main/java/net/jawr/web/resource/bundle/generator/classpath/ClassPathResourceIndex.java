@@ -0,0 +1,493 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.generator.classpath;
+
+import static net.jawr.web.JawrConstant.FILE_URL_PREFIX;
+import static net.jawr.web.JawrConstant.JAR_URL_PREFIX;
+import static net.jawr.web.JawrConstant.JAR_URL_SEPARATOR;
+import static net.jawr.web.JawrConstant.URL_SEPARATOR;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.CheckSumUtils;
+import net.jawr.web.util.FileUtils;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class defines the index of the JAR entries of the classpath, which is
+ * shared by the classpath and the webjars generators.
+ *
+ * The entries of a JAR file are read only once, when the JAR is first used,
+ * and the index is reused as long as the JAR file is not modified. This
+ * avoids opening and scanning the JAR files for each directory listing.
+ *
+ * The index of each JAR can be persisted in a directory, so the next startup
+ * doesn't have to scan the JAR files again. The persisted indexes are keyed
+ * by the JAR path, and are only used if the size and the last modification
+ * date of the JAR haven't changed. There is one index instance by
+ * persistence directory, so each Jawr config persists the indexes in its own
+ * directory.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class ClassPathResourceIndex {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClassPathResourceIndex.class);
+
+	/** The shared instance, which doesn't persist the indexes */
+	private static final ClassPathResourceIndex INSTANCE = new ClassPathResourceIndex(null);
+
+	/** The instances which persist the indexes, by persistence directory */
+	private static final ConcurrentMap<String, ClassPathResourceIndex> PERSISTENT_INSTANCES = new ConcurrentHashMap<>();
+
+	/** The extension of the persisted index files */
+	private static final String INDEX_FILE_EXTENSION = ".idx";
+
+	/** The charset of the persisted index files */
+	private static final Charset INDEX_CHARSET = Charset.forName("UTF-8");
+
+	/** The line separator of the persisted index files */
+	private static final String LINE_SEPARATOR = "\n";
+
+	/** The JAR indexes, indexed by JAR file path */
+	private final ConcurrentMap<String, JarIndex> jarIndexes = new ConcurrentHashMap<>();
+
+	/** The directory where the indexes are persisted */
+	private final String persistenceDirectory;
+
+	/**
+	 * Constructor
+	 *
+	 * @param persistenceDirectory
+	 *            the directory where the indexes are persisted, or null if
+	 *            they are not persisted
+	 */
+	private ClassPathResourceIndex(String persistenceDirectory) {
+		this.persistenceDirectory = persistenceDirectory;
+	}
+
+	/**
+	 * Returns the shared instance, which doesn't persist the indexes
+	 *
+	 * @return the shared instance
+	 */
+	public static ClassPathResourceIndex getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the instance which persists the indexes in the classpath index
+	 * directory of the Jawr config
+	 *
+	 * @param config
+	 *            the Jawr config
+	 * @return the instance for the Jawr config
+	 */
+	public static ClassPathResourceIndex getInstance(JawrConfig config) {
+
+		String persistenceDirectory = config == null ? null : config.getClasspathIndexDirectory();
+		if (StringUtils.isEmpty(persistenceDirectory)) {
+			return INSTANCE;
+		}
+
+		ClassPathResourceIndex index = PERSISTENT_INSTANCES.get(persistenceDirectory);
+		if (index == null) {
+			index = new ClassPathResourceIndex(persistenceDirectory);
+			ClassPathResourceIndex existingIndex = PERSISTENT_INSTANCES.putIfAbsent(persistenceDirectory, index);
+			if (existingIndex != null) {
+				index = existingIndex;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Clears the in-memory indexes
+	 */
+	public void clear() {
+		jarIndexes.clear();
+	}
+
+	/**
+	 * Returns the names of the direct children of a JAR directory. The names
+	 * of the sub directories end with a slash.
+	 *
+	 * @param resourceURL
+	 *            the URL of the directory in the JAR (jar:file:...!/dir)
+	 * @return the names of the direct children, or null if the URL can't be
+	 *         handled by the index
+	 */
+	public Set<String> getResourceNames(URL resourceURL) {
+
+		String strURL = resourceURL.toString();
+		if (!strURL.startsWith(JAR_URL_PREFIX + FILE_URL_PREFIX)) {
+			return null;
+		}
+
+		String urlFile = resourceURL.getFile();
+		int separatorIndex = urlFile.indexOf(JAR_URL_SEPARATOR);
+		if (separatorIndex == -1) {
+			return null;
+		}
+
+		String rootEntryPath = urlFile.substring(separatorIndex + JAR_URL_SEPARATOR.length());
+		if (rootEntryPath.contains(JAR_URL_SEPARATOR)) {
+			// Nested JAR files are not indexed
+			return null;
+		}
+		if (!"".equals(rootEntryPath) && !rootEntryPath.endsWith(URL_SEPARATOR)) {
+			rootEntryPath = rootEntryPath + URL_SEPARATOR;
+		}
+
+		JarIndex index = getJarIndex(getJarFile(urlFile.substring(0, separatorIndex)));
+		if (index == null) {
+			return null;
+		}
+
+		Set<String> children = index.getChildren(rootEntryPath);
+		if (children == null) {
+			return Collections.emptySet();
+		}
+		return new LinkedHashSet<>(children);
+	}
+
+	/**
+	 * Returns the paths of the resources which are located under the
+	 * directory in the classpath. The directories are not part of the
+	 * result, and the paths are relative to the classpath root, like
+	 * "META-INF/resources/webjars/jquery/2.1.4/jquery.js".
+	 *
+	 * @param classLoader
+	 *            the class loader
+	 * @param dirPath
+	 *            the directory path, relative to the classpath root
+	 * @return the paths of the resources under the directory
+	 */
+	public Set<String> getResourcePaths(ClassLoader classLoader, String dirPath) {
+
+		String prefix = dirPath.endsWith(URL_SEPARATOR) ? dirPath : dirPath + URL_SEPARATOR;
+		Set<String> result = new LinkedHashSet<>();
+		Enumeration<URL> urls;
+		try {
+			urls = classLoader.getResources(prefix.substring(0, prefix.length() - 1));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to list the resources of '" + dirPath + "'", e);
+			return result;
+		}
+
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			String strURL = url.toString();
+			if (strURL.startsWith(JAR_URL_PREFIX)) {
+				String urlFile = url.getFile();
+				int separatorIndex = urlFile.indexOf(JAR_URL_SEPARATOR);
+				JarIndex index = null;
+				if (separatorIndex != -1 && strURL.startsWith(JAR_URL_PREFIX + FILE_URL_PREFIX)) {
+					index = getJarIndex(getJarFile(urlFile.substring(0, separatorIndex)));
+				}
+				if (index != null) {
+					for (String entry : index.getEntries()) {
+						if (entry.startsWith(prefix) && !entry.endsWith(URL_SEPARATOR)) {
+							result.add(entry);
+						}
+					}
+				} else if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Unable to index the resources of '" + strURL + "'");
+				}
+			} else if (strURL.startsWith(FILE_URL_PREFIX)) {
+				addDirectoryResources(FileUtils.urlToFile(url), prefix, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the paths of the files located under the directory to the result
+	 *
+	 * @param dir
+	 *            the directory
+	 * @param prefix
+	 *            the classpath path of the directory, which ends with a slash
+	 * @param result
+	 *            the result
+	 */
+	private void addDirectoryResources(File dir, final String prefix, final Set<String> result) {
+
+		final Path root = dir.toPath();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()) {
+						result.add(prefix + root.relativize(file).toString().replace(File.separatorChar, '/'));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			LOGGER.warn("Unable to list the resources of '" + dir + "'", e);
+		}
+	}
+
+	/**
+	 * Returns the JAR file from its URL
+	 *
+	 * @param jarFileUrl
+	 *            the JAR file URL
+	 * @return the JAR file or null if the URL is not valid
+	 */
+	private File getJarFile(String jarFileUrl) {
+		try {
+			return FileUtils.urlToFile(ClassPathGeneratorHelper.toURI(jarFileUrl).toURL());
+		} catch (Exception e) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Invalid JAR file URL '" + jarFileUrl + "'", e);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the index of the JAR file. The index is built or loaded from
+	 * the persistence directory if needed.
+	 *
+	 * @param jarFile
+	 *            the JAR file
+	 * @return the index of the JAR, or null if the JAR can't be read
+	 */
+	private JarIndex getJarIndex(File jarFile) {
+
+		if (jarFile == null || !jarFile.isFile()) {
+			return null;
+		}
+
+		String jarPath = jarFile.getAbsolutePath();
+		String fingerprint = jarFile.length() + ":" + jarFile.lastModified();
+		JarIndex index = jarIndexes.get(jarPath);
+		if (index == null || !index.getFingerprint().equals(fingerprint)) {
+
+			File indexFile = getIndexFile(jarPath);
+			index = loadJarIndex(indexFile, fingerprint);
+			if (index == null) {
+				index = buildJarIndex(jarFile, fingerprint);
+				if (index == null) {
+					return null;
+				}
+				storeJarIndex(indexFile, index);
+			}
+			jarIndexes.put(jarPath, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Builds the index of the JAR file
+	 *
+	 * @param jarFile
+	 *            the JAR file
+	 * @param fingerprint
+	 *            the JAR fingerprint
+	 * @return the index or null if the JAR can't be read
+	 */
+	private JarIndex buildJarIndex(File jarFile, String fingerprint) {
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Indexing the JAR file '" + jarFile + "'");
+		}
+
+		List<String> entries = new ArrayList<>();
+		try (JarFile jar = new JarFile(jarFile)) {
+			for (Enumeration<JarEntry> jarEntries = jar.entries(); jarEntries.hasMoreElements();) {
+				entries.add(jarEntries.nextElement().getName());
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to index the JAR file '" + jarFile + "'", e);
+			return null;
+		}
+		return new JarIndex(fingerprint, entries);
+	}
+
+	/**
+	 * Returns the file where the JAR index is persisted
+	 *
+	 * @param jarPath
+	 *            the JAR path
+	 * @return the index file or null if the index is not persisted
+	 */
+	private File getIndexFile(String jarPath) {
+
+		if (persistenceDirectory == null) {
+			return null;
+		}
+		try {
+			return new File(persistenceDirectory, CheckSumUtils.getMD5Checksum(jarPath) + INDEX_FILE_EXTENSION);
+		} catch (IOException e) {
+			// Should not happen while reading from memory
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the persisted JAR index
+	 *
+	 * @param indexFile
+	 *            the index file
+	 * @param fingerprint
+	 *            the current JAR fingerprint
+	 * @return the JAR index or null if it is not persisted or not valid
+	 *         anymore
+	 */
+	private JarIndex loadJarIndex(File indexFile, String fingerprint) {
+
+		if (indexFile == null || !indexFile.isFile()) {
+			return null;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(indexFile.toPath(), INDEX_CHARSET);
+			if (lines.isEmpty() || !lines.get(0).equals(fingerprint)) {
+				return null;
+			}
+			return new JarIndex(fingerprint, lines.subList(1, lines.size()));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to load the JAR index '" + indexFile + "'", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Persists the JAR index
+	 *
+	 * @param indexFile
+	 *            the index file
+	 * @param index
+	 *            the JAR index
+	 */
+	private void storeJarIndex(File indexFile, JarIndex index) {
+
+		if (indexFile == null) {
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder(index.getFingerprint());
+		for (String entry : index.getEntries()) {
+			sb.append(LINE_SEPARATOR).append(entry);
+		}
+		try {
+			FileUtils.writeAtomically(indexFile, sb.toString(), INDEX_CHARSET);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to store the JAR index '" + indexFile + "'", e);
+		}
+	}
+
+	/**
+	 * This class holds the entries of a JAR file
+	 *
+	 * @author Ibrahim Chaehoi
+	 */
+	private static class JarIndex {
+
+		/** The JAR fingerprint */
+		private final String fingerprint;
+
+		/** The entry names */
+		private final List<String> entries;
+
+		/** The direct children of the directories */
+		private final Map<String, Set<String>> children = new HashMap<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param fingerprint
+		 *            the JAR fingerprint
+		 * @param entries
+		 *            the entry names
+		 */
+		public JarIndex(String fingerprint, List<String> entries) {
+			this.fingerprint = fingerprint;
+			this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+
+			for (String entry : this.entries) {
+				if (entry.isEmpty()) {
+					continue;
+				}
+				int idx = entry.lastIndexOf(URL_SEPARATOR, entry.length() - 2);
+				String parent = entry.substring(0, idx + 1);
+				Set<String> names = children.get(parent);
+				if (names == null) {
+					names = new LinkedHashSet<>();
+					children.put(parent, names);
+				}
+				names.add(entry.substring(parent.length()));
+			}
+		}
+
+		/**
+		 * Returns the JAR fingerprint
+		 *
+		 * @return the JAR fingerprint
+		 */
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * Returns the entry names
+		 *
+		 * @return the entry names
+		 */
+		public List<String> getEntries() {
+			return entries;
+		}
+
+		/**
+		 * Returns the names of the direct children of the directory
+		 *
+		 * @param dirEntry
+		 *            the directory entry, which ends with a slash, or an
+		 *            empty string for the JAR root
+		 * @return the names of the direct children or null if there is none
+		 */
+		public Set<String> getChildren(String dirEntry) {
+			return children.get(dirEntry);
+		}
+	}
+}
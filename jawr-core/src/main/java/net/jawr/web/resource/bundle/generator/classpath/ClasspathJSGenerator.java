@@ -17,6 +17,7 @@ import java.io.Reader;
 import java.util.Set;
 
 import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
 import net.jawr.web.resource.FileNameUtils;
 import net.jawr.web.resource.bundle.generator.AbstractJavascriptGenerator;
 import net.jawr.web.resource.bundle.generator.CachedGenerator;
@@ -54,6 +55,19 @@ public class ClasspathJSGenerator extends AbstractJavascriptGenerator implements
 		resolver = createResolver(getGeneratorPrefix());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.jawr.web.resource.bundle.generator.AbstractCachedGenerator#setConfig(
+	 * net.jawr.web.config.JawrConfig)
+	 */
+	@Override
+	public void setConfig(JawrConfig config) {
+		super.setConfig(config);
+		helper.setResourceIndex(ClassPathResourceIndex.getInstance(config));
+	}
+
 	/**
 	 * create the resource generator resolver
 	 *
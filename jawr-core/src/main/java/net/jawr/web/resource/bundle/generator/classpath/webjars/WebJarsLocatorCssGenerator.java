@@ -16,6 +16,8 @@ package net.jawr.web.resource.bundle.generator.classpath.webjars;
 import java.util.Set;
 
 import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.generator.classpath.ClassPathResourceIndex;
 import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolver;
 import net.jawr.web.resource.bundle.generator.resolver.WebJarsLocatorPathResolver;
 
@@ -46,6 +48,18 @@ public class WebJarsLocatorCssGenerator extends WebJarsCssGenerator {
 	protected ResourceGeneratorResolver createResolver(String generatorPrefix) {
 		return new WebJarsLocatorPathResolver(generatorPrefix, true, true);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.generator.classpath.ClassPathCSSGenerator#
+	 * setConfig(net.jawr.web.config.JawrConfig)
+	 */
+	@Override
+	public void setConfig(JawrConfig config) {
+		super.setConfig(config);
+		((WebJarsLocatorPathResolver) resolver).setResourceIndex(ClassPathResourceIndex.getInstance(config));
+	}
 	
 	/* (non-Javadoc)
 	 * @see net.jawr.web.resource.bundle.generator.classpath.ClasspathCSSGenerator#getResourceNames(java.lang.String)
@@ -16,6 +16,8 @@ package net.jawr.web.resource.bundle.generator.classpath.webjars;
 import java.util.Set;
 
 import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.generator.classpath.ClassPathResourceIndex;
 import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolver;
 import net.jawr.web.resource.bundle.generator.resolver.WebJarsLocatorPathResolver;
 
@@ -45,6 +47,18 @@ public class WebJarsLocatorJSGenerator extends WebJarsJSGenerator {
 		return new WebJarsLocatorPathResolver(generatorPrefix, true, false);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.generator.classpath.ClasspathJSGenerator#
+	 * setConfig(net.jawr.web.config.JawrConfig)
+	 */
+	@Override
+	public void setConfig(JawrConfig config) {
+		super.setConfig(config);
+		((WebJarsLocatorPathResolver) resolver).setResourceIndex(ClassPathResourceIndex.getInstance(config));
+	}
+
 	/* (non-Javadoc)
 	 * @see net.jawr.web.resource.bundle.generator.classpath.ClasspathJSGenerator#getResourceNames(java.lang.String)
 	 */
@@ -30,6 +30,7 @@ import org.webjars.WebJarAssetLocator;
 import net.jawr.web.JawrConstant;
 import net.jawr.web.resource.bundle.generator.GeneratorMappingHelper;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.generator.classpath.ClassPathResourceIndex;
 import net.jawr.web.resource.bundle.generator.classpath.webjars.WebJarsLocatorCssGenerator;
 
 /**
@@ -55,8 +56,14 @@ public class WebJarsLocatorPathResolver extends PrefixedPathResolver {
 	/** The webjars resource prefix */
 	private static Pattern WEBJARS_PREFIX_PATTERN = Pattern.compile(WEBJARS_RESOURCE_PREFIX + "(/[^/]*/[^/]*)");
 
+	/** The webjars asset locator shared by all the resolvers */
+	private static WebJarAssetLocator sharedLocator;
+
 	/** The webjars Asset locator */
-	private final WebJarAssetLocator locator;
+	private WebJarAssetLocator locator;
+
+	/** The index of the JAR entries of the classpath */
+	private ClassPathResourceIndex resourceIndex = ClassPathResourceIndex.getInstance();
 
 	/**
 	 * The flag indicating that a check should be done on the resource path for
@@ -98,12 +105,66 @@ public class WebJarsLocatorPathResolver extends PrefixedPathResolver {
 	public WebJarsLocatorPathResolver(String prefix, boolean checkResourcePathForInfo,
 			boolean checkResourcePathForWarning) {
 		super(prefix);
-		this.locator = new WebJarAssetLocator();
 		this.checkResourcePathForInfo = checkResourcePathForInfo;
 		this.checkResourcePathForWarning = checkResourcePathForWarning;
 		this.pathsChecked = new ArrayList<>();
 	}
 
+	/**
+	 * Sets the index of the JAR entries of the classpath, which is used to
+	 * build the webjars asset locator
+	 * 
+	 * @param resourceIndex
+	 *            the index to set
+	 */
+	public void setResourceIndex(ClassPathResourceIndex resourceIndex) {
+		this.resourceIndex = resourceIndex;
+	}
+
+	/**
+	 * Returns the webjars asset locator of the resolver
+	 * 
+	 * @return the webjars asset locator
+	 */
+	private synchronized WebJarAssetLocator getLocator() {
+		if (locator == null) {
+			locator = getSharedLocator(resourceIndex);
+		}
+		return locator;
+	}
+
+	/**
+	 * Returns the webjars asset locator shared by all the resolvers. The
+	 * locator is built once from the classpath resource index, instead of
+	 * scanning the whole classpath for each resolver.
+	 * 
+	 * @param resourceIndex
+	 *            the index of the JAR entries of the classpath
+	 * @return the shared webjars asset locator
+	 */
+	private static WebJarAssetLocator getSharedLocator(ClassPathResourceIndex resourceIndex) {
+
+		synchronized (WebJarsLocatorPathResolver.class) {
+			if (sharedLocator == null) {
+				ClassLoader classLoader = WebJarAssetLocator.class.getClassLoader();
+				Set<String> assetPaths = resourceIndex.getResourcePaths(classLoader, WEBJARS_RESOURCE_PREFIX);
+				sharedLocator = new WebJarAssetLocator(assetPaths);
+			}
+			return sharedLocator;
+		}
+	}
+
+	/**
+	 * Resets the shared webjars asset locator, which will be built again by
+	 * the resolvers which don't have a locator yet. This is called when the
+	 * configuration is reloaded, so the new webjars of the classpath are found.
+	 */
+	public static void resetSharedLocator() {
+		synchronized (WebJarsLocatorPathResolver.class) {
+			sharedLocator = null;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -118,9 +179,9 @@ public class WebJarsLocatorPathResolver extends PrefixedPathResolver {
 		String fullPath = null;
 		if (StringUtils.isNotEmpty(helper.getBracketsParam())) {
 			// Use the webjars reference stored in the bracket params
-			fullPath = locator.getFullPath(helper.getBracketsParam(), helper.getPath());
+			fullPath = getLocator().getFullPath(helper.getBracketsParam(), helper.getPath());
 		} else {
-			fullPath = locator.getFullPath(resourcePath);
+			fullPath = getLocator().getFullPath(resourcePath);
 		}
 		if (checkResourcePathForInfo || checkResourcePathForWarning) {
 			checkResourcePath(resourcePath, fullPath);
@@ -137,7 +198,7 @@ public class WebJarsLocatorPathResolver extends PrefixedPathResolver {
 	 */
 	public Set<String> getResourceNames(String folder) {
 		String path = super.getResourcePath(folder);
-		Set<String> assets = locator.listAssets(path);
+		Set<String> assets = getLocator().listAssets(path);
 		Set<String> resourceNames = new HashSet<>();
 		for (String asset : assets) {
 			int idx = asset.indexOf(path);
@@ -15,6 +15,7 @@
  */
 package net.jawr.web.resource.bundle.global.postprocessor.google.closure;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,11 +26,14 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -50,14 +54,17 @@ import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.exception.BundlingProcessException;
 import net.jawr.web.exception.ResourceNotFoundException;
+import net.jawr.web.resource.bundle.CheckSumUtils;
 import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.JoinableResourceBundleContent;
 import net.jawr.web.resource.bundle.factory.global.postprocessor.GlobalPostProcessingContext;
 import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
 import net.jawr.web.resource.bundle.global.processor.AbstractChainedGlobalProcessor;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
 import net.jawr.web.resource.bundle.variant.VariantSet;
 import net.jawr.web.resource.bundle.variant.VariantUtils;
+import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.util.FileUtils;
 import net.jawr.web.util.StringUtils;
 import net.jawr.web.util.io.TeeOutputStream;
@@ -95,6 +102,9 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 	/** The js argument for the closure command line runner */
 	private static final String JS_ARG = "--js";
 
+	/** The externs argument for the closure command line runner */
+	private static final String EXTERNS_ARG = "--externs";
+
 	/** The compilation level argument for the closure command line runner */
 	private static final String COMPILATION_LEVEL = "compilation_level";
 
@@ -128,9 +138,17 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 	 */
 	private static final String JAWR_JS_CLOSURE_MODULES = "jawr.js.closure.modules";
 
+	/**
+	 * The property enabling the incremental compilation, where the bundles are
+	 * compiled in memory and only the modules whose inputs have changed are
+	 * compiled again
+	 */
+	private static final String JAWR_JS_CLOSURE_INCREMENTAL = "jawr.js.closure.incremental";
+
 	/** The list of the jawr js closure properties */
-	private static final List<String> JAWR_JS_CLOSURE_SPECIFIC_PROPERTIES = Arrays
-			.asList(JAWR_JS_CLOSURE_BUNDLES_EXCLUDED, JAWR_JS_CLOSURE_DISABLE_THREAD, JAWR_JS_CLOSURE_MODULES);
+	private static final List<String> JAWR_JS_CLOSURE_SPECIFIC_PROPERTIES = Arrays.asList(
+			JAWR_JS_CLOSURE_BUNDLES_EXCLUDED, JAWR_JS_CLOSURE_DISABLE_THREAD, JAWR_JS_CLOSURE_MODULES,
+			JAWR_JS_CLOSURE_INCREMENTAL);
 
 	/** The google closure temporary directory */
 	public static final String GOOGLE_CLOSURE_TEMP_DIR = "/googleClosure/temp/";
@@ -162,6 +180,22 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 	/** The temporary directory */
 	private String tempDir;
 
+	/**
+	 * The compiled bundles of the last incremental compilation, indexed by
+	 * the key of the compilation unit which has produced them
+	 */
+	private Map<String, Map<String, String>> compiledUnits = new HashMap<>();
+
+	/**
+	 * The source of the bundles stored by the last incremental compilation,
+	 * indexed by bundle path. Each entry holds the checksum of the stored
+	 * compiled content and the source content which has been compiled. As the
+	 * compiled bundles replace their source in the bundle directory, this
+	 * allows to retrieve the source of the bundles which have not been rebuilt
+	 * since.
+	 */
+	private Map<String, String[]> storedBundleSources = new HashMap<>();
+
 	/**
 	 * Constructor
 	 */
@@ -190,6 +224,11 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 				tempDir = workingDir + GOOGLE_CLOSURE_TEMP_DIR;
 			}
 
+			if (ctx.getJawrConfig().getBooleanProperty(JAWR_JS_CLOSURE_INCREMENTAL, false)) {
+				processBundlesIncrementally(ctx, bundles);
+				return;
+			}
+
 			// Create result directory
 			File dir = new File(destDir);
 			if (!dir.exists() && !dir.mkdirs()) {
@@ -229,6 +268,330 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 		}
 	}
 
+	/**
+	 * Compiles the bundles in memory. The closure modules are split in
+	 * compilation units, which are the groups of modules linked by their
+	 * dependencies. A compilation unit is only compiled again if the content
+	 * of one of its bundles or of the externs, or the compiler arguments have
+	 * changed, otherwise the result of the previous compilation is reused.
+	 * The compiled bundles are then stored using the resource bundle handler.
+	 * 
+	 * @param ctx
+	 *            the global processing context
+	 * @param bundles
+	 *            the bundles
+	 */
+	private void processBundlesIncrementally(GlobalPostProcessingContext ctx, List<JoinableResourceBundle> bundles) {
+
+		Map<String, String> resultBundleMapping = new HashMap<>();
+		List<String> args = Arrays.asList(getClosureCompilerArgs(ctx, bundles, resultBundleMapping));
+
+		// Split the arguments between the compiler options and the modules
+		List<String> optionArgs = new ArrayList<>();
+		Map<String, String[]> moduleArgs = new LinkedHashMap<>();
+		for (Iterator<String> iterArg = args.iterator(); iterArg.hasNext();) {
+			String arg = iterArg.next();
+			if (arg.equals(JS_ARG)) {
+				String jsFile = iterArg.next();
+				iterArg.next(); // MODULE_ARG
+				String moduleArg = iterArg.next();
+				String moduleName = moduleArg.substring(0, moduleArg.indexOf(':'));
+				if (!moduleName.equals(JAWR_ROOT_MODULE_NAME)) {
+					moduleArgs.put(moduleName, new String[] { jsFile, moduleArg });
+				}
+			} else {
+				optionArgs.add(arg);
+			}
+		}
+
+		Charset charset = ctx.getJawrConfig().getResourceCharset();
+
+		// Read the externs once, so their content is part of the key of the
+		// compilation units
+		Map<String, String> externs = new HashMap<>();
+		StringBuilder externsKey = new StringBuilder();
+		for (Iterator<String> iterArg = optionArgs.iterator(); iterArg.hasNext();) {
+			if (iterArg.next().equals(EXTERNS_ARG) && iterArg.hasNext()) {
+				String externPath = iterArg.next();
+				String content = readBundle(ctx, externPath, charset);
+				externs.put(externPath, content);
+				try {
+					externsKey.append(externPath).append('\n').append(CheckSumUtils.getMD5Checksum(content))
+							.append('\n');
+				} catch (IOException e) {
+					throw new BundlingProcessException(e);
+				}
+			}
+		}
+
+		Map<String, Map<String, String>> currentUnits = new HashMap<>();
+		Map<String, String[]> currentSources = new HashMap<>();
+		for (List<String> unit : getCompilationUnits(moduleArgs)) {
+
+			Map<String, String> inputs = new HashMap<>(externs);
+			StringBuilder keyBuilder = new StringBuilder();
+			for (String arg : optionArgs) {
+				keyBuilder.append(arg).append('\n');
+			}
+			keyBuilder.append(externsKey);
+			for (String moduleName : unit) {
+				String[] moduleArg = moduleArgs.get(moduleName);
+				String content = readBundleSource(ctx, moduleArg[0], charset);
+				inputs.put(moduleArg[0], content);
+				keyBuilder.append(moduleArg[1]).append('\n').append(moduleArg[0]).append('\n').append(content)
+						.append('\n');
+			}
+
+			String key;
+			try {
+				key = CheckSumUtils.getMD5Checksum(keyBuilder.toString());
+			} catch (IOException e) {
+				throw new BundlingProcessException(e);
+			}
+
+			Map<String, String> results = compiledUnits.get(key);
+			if (results == null) {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Compiling the closure modules " + unit);
+				}
+				results = compileUnit(ctx, optionArgs, unit, moduleArgs, inputs, resultBundleMapping, charset);
+			} else if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Reusing the compiled closure modules " + unit);
+			}
+			currentUnits.put(key, results);
+
+			for (Entry<String, String> result : results.entrySet()) {
+				storeBundle(ctx, result.getKey(), result.getValue(), charset);
+				currentSources.put(result.getKey(),
+						new String[] { getChecksum(result.getValue()), inputs.get(result.getKey()) });
+			}
+		}
+
+		// Only keep the compilation units which are still in use
+		compiledUnits = currentUnits;
+		storedBundleSources = currentSources;
+	}
+
+	/**
+	 * Returns the compilation units, which are the groups of closure modules
+	 * linked by a dependency. The JAWR root module, which is a dependency of
+	 * all the modules, is not taken in account.
+	 * 
+	 * @param moduleArgs
+	 *            the module arguments (JS file and module definition) indexed
+	 *            by module name
+	 * @return the compilation units
+	 */
+	private List<List<String>> getCompilationUnits(Map<String, String[]> moduleArgs) {
+
+		Map<String, String> parents = new HashMap<>();
+		for (String moduleName : moduleArgs.keySet()) {
+			parents.put(moduleName, moduleName);
+		}
+
+		for (Entry<String, String[]> entry : moduleArgs.entrySet()) {
+			Matcher matcher = MODULE_ARG_PATTERN.matcher(entry.getValue()[1]);
+			if (matcher.find() && StringUtils.isNotEmpty(matcher.group(1))) {
+				for (String dep : matcher.group(1).split(MODULE_DEPENDENCIES_SEPARATOR)) {
+					if (parents.containsKey(dep)) {
+						String root1 = findUnit(parents, entry.getKey());
+						String root2 = findUnit(parents, dep);
+						if (!root1.equals(root2)) {
+							parents.put(root1, root2);
+						}
+					}
+				}
+			}
+		}
+
+		// Keep the module order of the compiler arguments
+		Map<String, List<String>> units = new LinkedHashMap<>();
+		for (String moduleName : moduleArgs.keySet()) {
+			String root = findUnit(parents, moduleName);
+			List<String> unit = units.get(root);
+			if (unit == null) {
+				unit = new ArrayList<>();
+				units.put(root, unit);
+			}
+			unit.add(moduleName);
+		}
+		return new ArrayList<>(units.values());
+	}
+
+	/**
+	 * Returns the root module of the compilation unit of a module
+	 * 
+	 * @param parents
+	 *            the parent modules
+	 * @param moduleName
+	 *            the module name
+	 * @return the root module
+	 */
+	private String findUnit(Map<String, String> parents, String moduleName) {
+		String root = moduleName;
+		while (!root.equals(parents.get(root))) {
+			root = parents.get(root);
+		}
+		return root;
+	}
+
+	/**
+	 * Compiles a compilation unit in memory
+	 * 
+	 * @param ctx
+	 *            the global processing context
+	 * @param optionArgs
+	 *            the compiler option arguments
+	 * @param unit
+	 *            the module names of the compilation unit
+	 * @param moduleArgs
+	 *            the module arguments indexed by module name
+	 * @param inputs
+	 *            the bundle contents indexed by bundle path
+	 * @param resultBundleMapping
+	 *            the mapping between the module name and the bundle path
+	 * @param charset
+	 *            the charset
+	 * @return the compiled bundles indexed by bundle path
+	 */
+	private Map<String, String> compileUnit(GlobalPostProcessingContext ctx, List<String> optionArgs,
+			List<String> unit, Map<String, String[]> moduleArgs, Map<String, String> inputs,
+			Map<String, String> resultBundleMapping, Charset charset) {
+
+		List<String> args = new ArrayList<>(optionArgs);
+		args.add(JS_ARG);
+		args.add(JAWR_ROOT_MODULE_JS);
+		args.add(MODULE_ARG);
+		args.add(JAWR_ROOT_MODULE_NAME + ":1:");
+		for (String moduleName : unit) {
+			String[] moduleArg = moduleArgs.get(moduleName);
+			args.add(JS_ARG);
+			args.add(moduleArg[0]);
+			args.add(MODULE_ARG);
+			args.add(moduleArg[1]);
+		}
+
+		Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+		JawrClosureCommandLineRunner cmdRunner = new JawrClosureCommandLineRunner(ctx,
+				args.toArray(new String[args.size()]), resultBundleMapping, inputs, outputs);
+		try {
+			cmdRunner.doRun();
+		} catch (Exception e) {
+			throw new BundlingProcessException(e);
+		}
+
+		Map<String, String> results = new HashMap<>();
+		for (String moduleName : unit) {
+			String jsFile = moduleArgs.get(moduleName)[0];
+			ByteArrayOutputStream out = outputs.get(jsFile);
+			if (out == null) {
+				throw new BundlingProcessException("No closure compiler output for the module '" + moduleName + "'");
+			}
+			results.put(jsFile, new String(out.toByteArray(), charset));
+		}
+		return results;
+	}
+
+	/**
+	 * Reads the content of a bundle
+	 * 
+	 * @param ctx
+	 *            the global processing context
+	 * @param bundlePath
+	 *            the bundle path
+	 * @param charset
+	 *            the charset
+	 * @return the content of the bundle
+	 */
+	private String readBundle(GlobalPostProcessingContext ctx, String bundlePath, Charset charset) {
+
+		try {
+			File f = new File(srcDir, bundlePath);
+			if (f.isFile()) {
+				return new String(Files.readAllBytes(f.toPath()), charset);
+			}
+			return IOUtils.toString(ctx.getRsReaderHandler().getResource(bundlePath));
+		} catch (IOException | ResourceNotFoundException e) {
+			throw new BundlingProcessException(e);
+		}
+	}
+
+	/**
+	 * Reads the source content of a bundle. If the bundle directory still
+	 * contains the compiled content stored by the last incremental
+	 * compilation, because the bundle has not been rebuilt since, the source
+	 * content which has been compiled is returned.
+	 * 
+	 * @param ctx
+	 *            the global processing context
+	 * @param bundlePath
+	 *            the bundle path
+	 * @param charset
+	 *            the charset
+	 * @return the source content of the bundle
+	 */
+	private String readBundleSource(GlobalPostProcessingContext ctx, String bundlePath, Charset charset) {
+
+		String content = readBundle(ctx, bundlePath, charset);
+		String[] storedSource = storedBundleSources.get(bundlePath);
+		if (storedSource != null && storedSource[0].equals(getChecksum(content))) {
+			content = storedSource[1];
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the checksum of a content
+	 * 
+	 * @param content
+	 *            the content
+	 * @return the checksum of the content
+	 */
+	private String getChecksum(String content) {
+		try {
+			return CheckSumUtils.getMD5Checksum(content);
+		} catch (IOException e) {
+			throw new BundlingProcessException(e);
+		}
+	}
+
+	/**
+	 * Stores the compiled bundle, using the resource bundle handler if
+	 * available, otherwise the text and gzipped bundles are directly written
+	 * in the bundle directories.
+	 * 
+	 * @param ctx
+	 *            the global processing context
+	 * @param bundlePath
+	 *            the bundle path
+	 * @param content
+	 *            the compiled content
+	 * @param charset
+	 *            the charset
+	 */
+	private void storeBundle(GlobalPostProcessingContext ctx, String bundlePath, String content, Charset charset) {
+
+		ResourceBundleHandler resourceBundleHandler = ctx.getResourceBundleHandler();
+		if (resourceBundleHandler != null) {
+			resourceBundleHandler.storeBundle(bundlePath,
+					new JoinableResourceBundleContent(new StringBuffer(content)));
+		} else {
+			String path = PathNormalizer.escapeToPhysicalPath(bundlePath);
+			byte[] data = content.getBytes(charset);
+			File outFile = new File(srcDir, path);
+			File outZipFile = new File(srcZipDir, path);
+			outFile.getParentFile().mkdirs();
+			outZipFile.getParentFile().mkdirs();
+			try (OutputStream os = new FileOutputStream(outFile);
+					OutputStream gzOs = new GZIPOutputStream(new FileOutputStream(outZipFile))) {
+				os.write(data);
+				gzOs.write(data);
+			} catch (IOException e) {
+				throw new BundlingProcessException(e);
+			}
+		}
+	}
+
 	/**
 	 * Returns the closure compiler arguments
 	 * 
@@ -632,6 +995,18 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 		 */
 		private final Map<String, String> resultBundleMapping;
 
+		/**
+		 * The bundle contents indexed by bundle path, or null if the bundles
+		 * are read from the temporary directory
+		 */
+		private final Map<String, String> inputContents;
+
+		/**
+		 * The compiled bundles indexed by bundle path, or null if the compiled
+		 * bundles are written in the result directories
+		 */
+		private final Map<String, ByteArrayOutputStream> outputs;
+
 		/**
 		 * Constructor
 		 * 
@@ -648,6 +1023,33 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 
 			this.ctx = ctx;
 			this.resultBundleMapping = resultBundleMapping;
+			this.inputContents = null;
+			this.outputs = null;
+		}
+
+		/**
+		 * Constructor for the in-memory compilation
+		 * 
+		 * @param ctx
+		 *            the global post processing context
+		 * @param args
+		 *            the compiler arguments
+		 * @param resultBundleMapping
+		 *            the result bundle mapping
+		 * @param inputContents
+		 *            the bundle contents indexed by bundle path
+		 * @param outputs
+		 *            the map which will hold the compiled bundles
+		 */
+		public JawrClosureCommandLineRunner(GlobalPostProcessingContext ctx, String[] args,
+				Map<String, String> resultBundleMapping, Map<String, String> inputContents,
+				Map<String, ByteArrayOutputStream> outputs) {
+			super(args);
+
+			this.ctx = ctx;
+			this.resultBundleMapping = resultBundleMapping;
+			this.inputContents = inputContents;
+			this.outputs = outputs;
 		}
 
 		/*
@@ -697,6 +1099,8 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 				if (filename.equals(JAWR_ROOT_MODULE_JS)) {
 					SourceFile newFile = SourceFile.fromCode(filename, "");
 					inputs.add(newFile);
+				} else if (inputContents != null && inputContents.containsKey(filename)) {
+					inputs.add(SourceFile.fromCode(filename, inputContents.get(filename)));
 				} else if (!"-".equals(filename)) {
 					Reader rd = null;
 					StringWriter swr = new StringWriter();
@@ -749,6 +1153,12 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 			String bundleName = fileName.substring(0, fileExtensionIdx).substring(2);
 
 			String bundlePath = resultBundleMapping.get(bundleName);
+			if (outputs != null) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				outputs.put(bundlePath, out);
+				return out;
+			}
+
 			bundlePath = PathNormalizer.escapeToPhysicalPath(bundlePath);
 			File outFile = new File(destDir, bundlePath);
 			outFile.getParentFile().mkdirs();
@@ -768,6 +1178,10 @@ public class ClosureGlobalPostProcessor extends AbstractChainedGlobalProcessor<G
 		 */
 		public int doRun() throws FlagUsageException, IOException {
 			int result = super.doRun();
+			if (outputs != null) {
+				return result;
+			}
+
 			// Delete JAWR_ROOT_MODULE file
 			File jawrRootModuleFile = new File(destDir, resultBundleMapping.get(JAWR_ROOT_MODULE_NAME));
 			if (!jawrRootModuleFile.delete()) {
@@ -16,6 +16,7 @@ package net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,18 +38,27 @@ import net.jawr.web.exception.BundlingProcessException;
 import net.jawr.web.resource.BinaryResourcesHandler;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.factory.global.preprocessor.GlobalPreprocessingContext;
+import net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites.SpritePartitioner.SpritePartition;
 import net.jawr.web.resource.bundle.global.processor.AbstractChainedGlobalProcessor;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingScheduler;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingUnit;
+import net.jawr.web.resource.bundle.global.processor.ParallelGlobalProcessor;
 import net.jawr.web.resource.bundle.iterator.BundlePath;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import net.jawr.web.util.StringUtils;
 
 /**
  * This class defines the global preprocessor which will process all CSS files
  * which used smartsprites annotations.
  * 
+ * The sprites of each independent partition of CSS files are built in a
+ * separate unit of work, so the partitions can be built in parallel.
+ * 
  * @author Ibrahim Chaehoi
  * 
  */
-public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProcessor<GlobalPreprocessingContext> {
+public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProcessor<GlobalPreprocessingContext>
+		implements ParallelGlobalProcessor<GlobalPreprocessingContext> {
 
 	/** The logger */
 	private static final Logger LOGGER = LoggerFactory.getLogger(CssSmartSpritesGlobalPreprocessor.class);
@@ -62,6 +72,9 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 	/** The info level name */
 	private static final String INFO_LEVEL = "INFO";
 
+	/** The prefix of the IDs of the processing units */
+	private static final String UNIT_ID_PREFIX = "smartsprites:";
+
 	/**
 	 * Constructor
 	 */
@@ -79,28 +92,74 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 	@Override
 	public void processBundles(GlobalPreprocessingContext ctx, List<JoinableResourceBundle> bundles) {
 
-		ResourceReaderHandler rsHandler = ctx.getRsReaderHandler();
+		GlobalProcessingScheduler.execute(getProcessingUnits(ctx, bundles), getThreadCount(ctx.getJawrConfig()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.global.processor.
+	 * ParallelGlobalProcessor#getProcessingUnits(net.jawr.web.resource.bundle.
+	 * global.processor.AbstractGlobalProcessingContext, java.util.List)
+	 */
+	@Override
+	public List<GlobalProcessingUnit> getProcessingUnits(GlobalPreprocessingContext ctx,
+			final List<JoinableResourceBundle> bundles) {
+
+		final ResourceReaderHandler rsHandler = ctx.getRsReaderHandler();
 
 		Set<String> resourcePaths = getResourcePaths(bundles);
-		JawrConfig jawrConfig = ctx.getJawrConfig();
+		final JawrConfig jawrConfig = ctx.getJawrConfig();
 		Charset charset = jawrConfig.getResourceCharset();
 
-		BinaryResourcesHandler binaryRsHandler = (BinaryResourcesHandler) jawrConfig.getContext()
+		final BinaryResourcesHandler binaryRsHandler = (BinaryResourcesHandler) jawrConfig.getContext()
 				.getAttribute(JawrConstant.BINARY_CONTEXT_ATTRIBUTE);
 
-		generateSprites(rsHandler, binaryRsHandler, resourcePaths, jawrConfig, charset);
+		List<GlobalProcessingUnit> units = createSpriteBuildUnits(rsHandler, binaryRsHandler, resourcePaths,
+				jawrConfig, charset);
+
+		// Once all the sprites are built, update the resource handlers
+		GlobalProcessingUnit updateUnit = new GlobalProcessingUnit(UNIT_ID_PREFIX + "update") {
+
+			@Override
+			public void process() {
+
+				// Update CSS resource handler
+				CssSmartSpritesResourceReader cssSpriteResourceReader = new CssSmartSpritesResourceReader(
+						rsHandler.getWorkingDirectory(), jawrConfig);
+
+				updateBundlesDirtyState(bundles, cssSpriteResourceReader);
 
-		// Update CSS resource handler
-		CssSmartSpritesResourceReader cssSpriteResourceReader = new CssSmartSpritesResourceReader(
-				rsHandler.getWorkingDirectory(), jawrConfig);
+				rsHandler.addResourceReader(cssSpriteResourceReader);
 
-		updateBundlesDirtyState(bundles, cssSpriteResourceReader);
+				// Update image resource handler
+				ResourceReaderHandler imgStreamRsHandler = binaryRsHandler.getRsReaderHandler();
+				imgStreamRsHandler.addResourceReader(cssSpriteResourceReader);
+			}
+		};
+		for (GlobalProcessingUnit unit : units) {
+			updateUnit.addDependency(unit.getId());
+		}
+		units.add(updateUnit);
+
+		return units;
+	}
 
-		ctx.getRsReaderHandler().addResourceReader(cssSpriteResourceReader);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.global.processor.
+	 * ParallelGlobalProcessor#getMaxParallelism(net.jawr.web.resource.bundle.
+	 * global.processor.AbstractGlobalProcessingContext)
+	 */
+	@Override
+	public int getMaxParallelism(GlobalPreprocessingContext ctx) {
 
-		// Update image resource handler
-		ResourceReaderHandler imgStreamRsHandler = binaryRsHandler.getRsReaderHandler();
-		imgStreamRsHandler.addResourceReader(cssSpriteResourceReader);
+		String strThreadCount = ctx.getJawrConfig().getProperty(JawrConstant.CSS_SMARTSPRITES_THREAD_COUNT);
+		if (StringUtils.isNotEmpty(strThreadCount)) {
+			return Math.max(1, Integer.parseInt(strThreadCount));
+		}
+		return 0;
 	}
 
 	/**
@@ -137,8 +196,12 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 	}
 
 	/**
-	 * Generates the image sprites from the smartsprites annotation in the CSS,
-	 * rewrite the CSS files to references the generated sprites.
+	 * Creates the units which generate the image sprites from the smartsprites
+	 * annotation in the CSS, and rewrite the CSS files to references the
+	 * generated sprites. Computing the units has no side effect : the first
+	 * unit prepares the directory of the generated files and removes the
+	 * stale cache entries, then the units of the partitions whose sprites are
+	 * in the cache restore them, while the other ones build them.
 	 * 
 	 * @param cssRsHandler
 	 *            the css resourceHandler
@@ -150,9 +213,11 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 	 *            the Jawr config
 	 * @param charset
 	 *            the charset
+	 * @return the units which build the sprites
 	 */
-	private void generateSprites(ResourceReaderHandler cssRsHandler, BinaryResourcesHandler binaryRsHandler,
-			Set<String> resourcePaths, JawrConfig jawrConfig, Charset charset) {
+	private List<GlobalProcessingUnit> createSpriteBuildUnits(ResourceReaderHandler cssRsHandler,
+			BinaryResourcesHandler binaryRsHandler, Set<String> resourcePaths, JawrConfig jawrConfig,
+			Charset charset) {
 
 		MessageLevel msgLevel = MessageLevel.valueOf(ERROR_LEVEL);
 		String sinkLevel = WARN_LEVEL;
@@ -164,18 +229,72 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 			sinkLevel = WARN_LEVEL;
 		}
 
-		MessageLog messageLog = new MessageLog(new MessageSink[] { new LogMessageSink(sinkLevel) });
+		String contextPath = jawrConfig.getProperty(JawrConstant.JAWR_CSS_URL_REWRITER_CONTEXT_PATH);
+		String outDir = cssRsHandler.getWorkingDirectory() + JawrConstant.CSS_SMARTSPRITES_TMP_DIR;
+		final File tmpDir = new File(outDir);
+		final File backupDir = new File(
+				cssRsHandler.getWorkingDirectory() + JawrConstant.SPRITE_BACKUP_GENERATED_CSS_DIR);
 
-		SmartSpritesResourceHandler smartSpriteRsHandler = new SmartSpritesResourceHandler(cssRsHandler,
-				binaryRsHandler.getRsReaderHandler(), jawrConfig.getGeneratorRegistry(),
-				binaryRsHandler.getConfig().getGeneratorRegistry(), charset.toString(), messageLog);
+		SmartSpritesParameters params = new SmartSpritesParameters("/", null, outDir, null, msgLevel, "",
+				PngDepth.valueOf("AUTO"), false, charset.toString(), true);
 
-		smartSpriteRsHandler.setContextPath(jawrConfig.getProperty(JawrConstant.JAWR_CSS_URL_REWRITER_CONTEXT_PATH));
+		// Split the CSS resources in independent partitions of sprites
+		SmartSpritesResourceHandler smartSpriteRsHandler = createResourceHandler(cssRsHandler, binaryRsHandler,
+				jawrConfig, charset, contextPath, new MessageLog(new MessageSink[] { new LogMessageSink(sinkLevel) }));
+		final List<SpritePartition> partitions = new SpritePartitioner(smartSpriteRsHandler)
+				.getPartitions(resourcePaths, charset + ";" + contextPath);
 
-		String outDir = cssRsHandler.getWorkingDirectory() + JawrConstant.CSS_SMARTSPRITES_TMP_DIR;
+		final boolean useCache = jawrConfig.getBooleanProperty(JawrConstant.CSS_SMARTSPRITES_CACHE_ENABLED, true);
+		final File cacheDir = new File(cssRsHandler.getWorkingDirectory() + JawrConstant.CSS_SMARTSPRITES_CACHE_DIR);
+
+		// Prepare the directory of the generated files before building the
+		// partitions
+		GlobalProcessingUnit prepareUnit = new GlobalProcessingUnit(UNIT_ID_PREFIX + "prepare") {
+
+			@Override
+			public void process() {
+
+				prepareTempDirectory(tmpDir, backupDir);
+				if (useCache) {
+					cleanCache(cacheDir, partitions);
+				}
+			}
+		};
+
+		List<GlobalProcessingUnit> units = new ArrayList<>();
+		units.add(prepareUnit);
+		int partitionIndex = 0;
+		int restoredPartitionCount = 0;
+		for (SpritePartition partition : partitions) {
+			boolean cached = useCache && new File(cacheDir, partition.getKey()).isDirectory();
+			String unitId = UNIT_ID_PREFIX + (cached ? "restore" : "partition") + partitionIndex++;
+			GlobalProcessingUnit unit = new SpriteBuildUnit(unitId, partition, cached, params, sinkLevel,
+					cssRsHandler, binaryRsHandler, jawrConfig, charset, contextPath, useCache ? cacheDir : null,
+					tmpDir);
+			units.add(unit.addDependency(prepareUnit.getId()));
+			if (cached) {
+				restoredPartitionCount++;
+			}
+		}
 
-		// Create temp directories
-		File tmpDir = new File(outDir);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Sprite partitions : " + partitions.size() + ", in cache : " + restoredPartitionCount);
+		}
+
+		return units;
+	}
+
+	/**
+	 * Prepares the directory of the generated files. The files of the
+	 * previous build are copied in the backup directory, to check later if
+	 * the generated CSS have changed, and the directory is cleaned.
+	 * 
+	 * @param tmpDir
+	 *            the directory of the generated files
+	 * @param backupDir
+	 *            the backup directory
+	 */
+	private static void prepareTempDirectory(File tmpDir, File backupDir) {
 
 		if (!tmpDir.exists()) {
 			if (!tmpDir.mkdirs()) {
@@ -184,8 +303,6 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 		} else {
 			// Copy to backup and clean temp directories
 			try {
-				File backupDir = new File(
-						cssRsHandler.getWorkingDirectory() + JawrConstant.SPRITE_BACKUP_GENERATED_CSS_DIR);
 				if (!backupDir.exists()) {
 					if (!backupDir.mkdirs()) {
 						throw new BundlingProcessException("Impossible to create temporary directory : " + backupDir);
@@ -195,18 +312,151 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 				FileUtils.cleanDirectory(tmpDir);
 
 			} catch (IOException e) {
-				throw new BundlingProcessException("Impossible to clean temporary directory : " + outDir, e);
+				throw new BundlingProcessException("Impossible to clean temporary directory : " + tmpDir, e);
 			}
 		}
+	}
 
-		SmartSpritesParameters params = new SmartSpritesParameters("/", null, outDir, null, msgLevel, "",
-				PngDepth.valueOf("AUTO"), false, charset.toString(), true);
+	/**
+	 * Creates the smartsprites resource handler
+	 * 
+	 * @param cssRsHandler
+	 *            the css resourceHandler
+	 * @param binaryRsHandler
+	 *            the binary resourceHandler
+	 * @param jawrConfig
+	 *            the Jawr config
+	 * @param charset
+	 *            the charset
+	 * @param contextPath
+	 *            the context path
+	 * @param messageLog
+	 *            the message log
+	 * @return the smartsprites resource handler
+	 */
+	private static SmartSpritesResourceHandler createResourceHandler(ResourceReaderHandler cssRsHandler,
+			BinaryResourcesHandler binaryRsHandler, JawrConfig jawrConfig, Charset charset, String contextPath,
+			MessageLog messageLog) {
+
+		SmartSpritesResourceHandler smartSpriteRsHandler = new SmartSpritesResourceHandler(cssRsHandler,
+				binaryRsHandler.getRsReaderHandler(), jawrConfig.getGeneratorRegistry(),
+				binaryRsHandler.getConfig().getGeneratorRegistry(), charset.toString(), messageLog);
 
-		SpriteBuilder spriteBuilder = new SpriteBuilder(params, messageLog, smartSpriteRsHandler);
+		smartSpriteRsHandler.setContextPath(contextPath);
+		return smartSpriteRsHandler;
+	}
+
+	/**
+	 * Returns the number of threads to use for the sprite generation
+	 * 
+	 * @param jawrConfig
+	 *            the Jawr config
+	 * @return the number of threads
+	 */
+	private int getThreadCount(JawrConfig jawrConfig) {
+
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		String strThreadCount = jawrConfig.getProperty(JawrConstant.CSS_SMARTSPRITES_THREAD_COUNT);
+		if (StringUtils.isNotEmpty(strThreadCount)) {
+			threadCount = Integer.parseInt(strThreadCount);
+		}
+		return Math.max(1, threadCount);
+	}
+
+	/**
+	 * Restores the generated files of the partition from the cache
+	 * 
+	 * @param partition
+	 *            the sprite partition
+	 * @param cacheDir
+	 *            the cache directory
+	 * @param tmpDir
+	 *            the directory of the generated files
+	 * @return true if the generated files have been restored
+	 */
+	private static boolean restoreFromCache(SpritePartition partition, File cacheDir, File tmpDir) {
+
+		File entryDir = new File(cacheDir, partition.getKey());
+		if (!entryDir.isDirectory()) {
+			return false;
+		}
+
+		try {
+			FileUtils.copyDirectory(entryDir, tmpDir);
+			return true;
+		} catch (IOException e) {
+			LOGGER.warn("Unable to restore the sprites from the cache directory : " + entryDir, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stores the files generated for a partition in the cache. The files are
+	 * first copied in a temporary directory, which is then renamed, so an
+	 * incomplete cache entry is never used.
+	 * 
+	 * @param partition
+	 *            the sprite partition
+	 * @param generatedFiles
+	 *            the generated files
+	 * @param cacheDir
+	 *            the cache directory
+	 * @param tmpDir
+	 *            the directory of the generated files
+	 */
+	private static void storeInCache(SpritePartition partition, List<File> generatedFiles, File cacheDir,
+			File tmpDir) {
+
+		File entryDir = new File(cacheDir, partition.getKey());
+		File workDir = new File(cacheDir, partition.getKey() + ".tmp");
 		try {
-			spriteBuilder.buildSprites(resourcePaths);
+			String tmpDirPath = tmpDir.getCanonicalPath() + File.separator;
+			FileUtils.deleteQuietly(workDir);
+			for (File file : generatedFiles) {
+				String filePath = file.getCanonicalPath();
+				if (!filePath.startsWith(tmpDirPath)) {
+					// Don't cache partitions which write outside of the
+					// working directory
+					FileUtils.deleteQuietly(workDir);
+					return;
+				}
+				FileUtils.copyFile(file, new File(workDir, filePath.substring(tmpDirPath.length())));
+			}
+			if (!workDir.exists() && !workDir.mkdirs()) {
+				throw new IOException("Unable to create the directory : " + workDir);
+			}
+			FileUtils.deleteQuietly(entryDir);
+			if (!workDir.renameTo(entryDir)) {
+				throw new IOException("Unable to rename the directory : " + workDir);
+			}
 		} catch (IOException e) {
-			throw new BundlingProcessException("Unable to build sprites", e);
+			LOGGER.warn("Unable to store the sprites in the cache directory : " + entryDir, e);
+			FileUtils.deleteQuietly(workDir);
+		}
+	}
+
+	/**
+	 * Removes the cache entries which are not used anymore
+	 * 
+	 * @param cacheDir
+	 *            the cache directory
+	 * @param partitions
+	 *            the current partitions
+	 */
+	private static void cleanCache(File cacheDir, List<SpritePartition> partitions) {
+
+		Set<String> keys = new HashSet<>();
+		for (SpritePartition partition : partitions) {
+			keys.add(partition.getKey());
+		}
+
+		File[] entries = cacheDir.listFiles();
+		if (entries != null) {
+			for (File entry : entries) {
+				if (!keys.contains(entry.getName())) {
+					FileUtils.deleteQuietly(entry);
+				}
+			}
 		}
 	}
 
@@ -230,6 +480,123 @@ public class CssSmartSpritesGlobalPreprocessor extends AbstractChainedGlobalProc
 		return resourcePaths;
 	}
 
+	/**
+	 * The unit which builds the sprites of a partition, or restores them from
+	 * the cache if they have been cached
+	 * 
+	 * @author Ibrahim Chaehoi
+	 */
+	private static class SpriteBuildUnit extends GlobalProcessingUnit {
+
+		/** The sprite partition */
+		private final SpritePartition partition;
+
+		/** The flag indicating if the sprites of the partition are cached */
+		private final boolean cached;
+
+		/** The smartsprites parameters */
+		private final SmartSpritesParameters params;
+
+		/** The log level of the message sink */
+		private final String sinkLevel;
+
+		/** The css resourceHandler */
+		private final ResourceReaderHandler cssRsHandler;
+
+		/** The binary resourceHandler */
+		private final BinaryResourcesHandler binaryRsHandler;
+
+		/** The Jawr config */
+		private final JawrConfig jawrConfig;
+
+		/** The charset */
+		private final Charset charset;
+
+		/** The context path */
+		private final String contextPath;
+
+		/** The cache directory, or null if the cache is disabled */
+		private final File cacheDir;
+
+		/** The directory of the generated files */
+		private final File tmpDir;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param id
+		 *            the unit ID
+		 * @param partition
+		 *            the sprite partition
+		 * @param cached
+		 *            the flag indicating if the sprites of the partition are
+		 *            cached
+		 * @param params
+		 *            the smartsprites parameters
+		 * @param sinkLevel
+		 *            the log level of the message sink
+		 * @param cssRsHandler
+		 *            the css resourceHandler
+		 * @param binaryRsHandler
+		 *            the binary resourceHandler
+		 * @param jawrConfig
+		 *            the Jawr config
+		 * @param charset
+		 *            the charset
+		 * @param contextPath
+		 *            the context path
+		 * @param cacheDir
+		 *            the cache directory, or null if the cache is disabled
+		 * @param tmpDir
+		 *            the directory of the generated files
+		 */
+		public SpriteBuildUnit(String id, SpritePartition partition, boolean cached, SmartSpritesParameters params,
+				String sinkLevel, ResourceReaderHandler cssRsHandler, BinaryResourcesHandler binaryRsHandler,
+				JawrConfig jawrConfig, Charset charset, String contextPath, File cacheDir, File tmpDir) {
+			super(id);
+			this.partition = partition;
+			this.cached = cached;
+			this.params = params;
+			this.sinkLevel = sinkLevel;
+			this.cssRsHandler = cssRsHandler;
+			this.binaryRsHandler = binaryRsHandler;
+			this.jawrConfig = jawrConfig;
+			this.charset = charset;
+			this.contextPath = contextPath;
+			this.cacheDir = cacheDir;
+			this.tmpDir = tmpDir;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see net.jawr.web.resource.bundle.global.processor.
+		 * GlobalProcessingUnit#process()
+		 */
+		@Override
+		public void process() {
+
+			if (cached && restoreFromCache(partition, cacheDir, tmpDir)) {
+				return;
+			}
+
+			MessageLog messageLog = new MessageLog(new MessageSink[] { new LogMessageSink(sinkLevel) });
+			SmartSpritesResourceHandler smartSpriteRsHandler = createResourceHandler(cssRsHandler, binaryRsHandler,
+					jawrConfig, charset, contextPath, messageLog);
+
+			SpriteBuilder spriteBuilder = new SpriteBuilder(params, messageLog, smartSpriteRsHandler);
+			try {
+				spriteBuilder.buildSprites(partition.getResourcePaths());
+			} catch (IOException e) {
+				throw new BundlingProcessException("Unable to build sprites", e);
+			}
+
+			if (cacheDir != null) {
+				storeInCache(partition, smartSpriteRsHandler.getGeneratedFiles(), cacheDir, tmpDir);
+			}
+		}
+	}
+
 	/**
 	 * The log message sink
 	 * 
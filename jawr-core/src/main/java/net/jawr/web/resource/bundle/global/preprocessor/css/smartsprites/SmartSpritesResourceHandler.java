@@ -22,6 +22,8 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.jawr.web.JawrConstant;
 import net.jawr.web.exception.BundlingProcessException;
@@ -62,6 +64,9 @@ public class SmartSpritesResourceHandler implements ResourceHandler {
 	/** The webapp context path */
 	private String contextPath = null;
 
+	/** The files generated through this handler */
+	private final List<File> generatedFiles = new CopyOnWriteArrayList<>();
+
 	/**
 	 * Constructor
 	 * 
@@ -103,6 +108,15 @@ public class SmartSpritesResourceHandler implements ResourceHandler {
 		this.contextPath = contextPath;
 	}
 
+	/**
+	 * Returns the files generated through this handler
+	 * 
+	 * @return the generated files
+	 */
+	public List<File> getGeneratedFiles() {
+		return generatedFiles;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -187,7 +201,9 @@ public class SmartSpritesResourceHandler implements ResourceHandler {
 
 		final File parentFile = new File(generatedFilePath).getParentFile();
 		if (!parentFile.exists()) {
-			if (!parentFile.mkdirs()) {
+			// The directory may have been created concurrently by another
+			// sprite builder
+			if (!parentFile.mkdirs() && !parentFile.isDirectory()) {
 				throw new IOException("Unable to create the directory : " + parentFile.getPath());
 			}
 		}
@@ -199,6 +215,7 @@ public class SmartSpritesResourceHandler implements ResourceHandler {
 			file = file.getAbsoluteFile();
 		}
 
+		generatedFiles.add(file);
 		return new FileOutputStream(file);
 	}
 
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.resource.bundle.CheckSumUtils;
+import net.jawr.web.resource.bundle.IOUtils;
+
+/**
+ * This class splits the CSS resources using smartsprites directives into
+ * independent partitions. Two CSS resources belong to the same partition if
+ * they define or reference the same sprite, so each partition can be
+ * processed by its own sprite builder. The CSS resources without sprite
+ * directives are not part of any partition, as smartsprites doesn't rewrite
+ * them.
+ *
+ * Each partition is identified by a key, which is the hash of the content of
+ * its CSS resources (and so of their sprite directives) and of the content of
+ * the images they reference.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class SpritePartitioner {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpritePartitioner.class);
+
+	/** The pattern of the smartsprites directive comments */
+	private static final Pattern DIRECTIVE_COMMENT_PATTERN = Pattern.compile("/\\*\\*(.*?)\\*/", Pattern.DOTALL);
+
+	/** The pattern of the sprite definitions and references */
+	private static final Pattern SPRITE_ID_PATTERN = Pattern.compile("\\bsprite(?:-ref)?\\s*:\\s*([^;\\s\\*]+)");
+
+	/** The pattern of the URL references */
+	private static final Pattern URL_PATTERN = Pattern.compile("url\\(\\s*['\"]?([^'\"\\)]+?)['\"]?\\s*\\)");
+
+	/** The smartsprites resource handler */
+	private final SmartSpritesResourceHandler rsHandler;
+
+	/** The image checksums */
+	private final Map<String, String> imageChecksums = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param rsHandler
+	 *            the smartsprites resource handler
+	 */
+	public SpritePartitioner(SmartSpritesResourceHandler rsHandler) {
+		this.rsHandler = rsHandler;
+	}
+
+	/**
+	 * Returns the partitions of the CSS resources which use smartsprites
+	 * directives
+	 *
+	 * @param resourcePaths
+	 *            the CSS resource paths
+	 * @param parameters
+	 *            the parameters of the sprite generation, which are part of
+	 *            the partition key
+	 * @return the partitions
+	 */
+	public List<SpritePartition> getPartitions(Collection<String> resourcePaths, String parameters) {
+
+		// Sort the paths to get the same partitions from one run to another
+		Map<String, String> contents = new TreeMap<>();
+		Map<String, String> parents = new HashMap<>();
+		Map<String, String> spriteOwners = new HashMap<>();
+
+		for (String path : new TreeSet<>(resourcePaths)) {
+			String content = readContent(path);
+			if (content == null) {
+				continue;
+			}
+
+			Set<String> spriteIds = getSpriteIds(content);
+			if (spriteIds.isEmpty()) {
+				continue;
+			}
+
+			contents.put(path, content);
+			parents.put(path, path);
+			for (String spriteId : spriteIds) {
+				String owner = spriteOwners.get(spriteId);
+				if (owner == null) {
+					spriteOwners.put(spriteId, path);
+				} else {
+					union(parents, owner, path);
+				}
+			}
+		}
+
+		Map<String, List<String>> groups = new TreeMap<>();
+		for (String path : contents.keySet()) {
+			String root = find(parents, path);
+			List<String> group = groups.get(root);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(root, group);
+			}
+			group.add(path);
+		}
+
+		List<SpritePartition> partitions = new ArrayList<>();
+		for (List<String> paths : groups.values()) {
+			partitions.add(new SpritePartition(paths, getKey(paths, contents, parameters)));
+		}
+
+		return partitions;
+	}
+
+	/**
+	 * Returns the content of the CSS resource or null if it can't be read
+	 *
+	 * @param path
+	 *            the CSS resource path
+	 * @return the content of the CSS resource
+	 */
+	private String readContent(String path) {
+
+		try (Reader rd = rsHandler.getResourceAsReader(path)) {
+			return IOUtils.toString(rd);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to read the CSS resource '" + path + "' for sprite generation", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the IDs of the sprites defined or referenced in the CSS content
+	 *
+	 * @param content
+	 *            the CSS content
+	 * @return the sprite IDs
+	 */
+	private Set<String> getSpriteIds(String content) {
+
+		Set<String> spriteIds = new LinkedHashSet<>();
+		Matcher commentMatcher = DIRECTIVE_COMMENT_PATTERN.matcher(content);
+		while (commentMatcher.find()) {
+			Matcher idMatcher = SPRITE_ID_PATTERN.matcher(commentMatcher.group(1));
+			while (idMatcher.find()) {
+				spriteIds.add(idMatcher.group(1));
+			}
+		}
+		return spriteIds;
+	}
+
+	/**
+	 * Returns the key of a partition
+	 *
+	 * @param paths
+	 *            the CSS resource paths of the partition
+	 * @param contents
+	 *            the CSS contents
+	 * @param parameters
+	 *            the parameters of the sprite generation
+	 * @return the key of the partition
+	 */
+	private String getKey(List<String> paths, Map<String, String> contents, String parameters) {
+
+		StringBuilder sb = new StringBuilder(parameters).append('\n');
+		for (String path : paths) {
+			String content = contents.get(path);
+			sb.append(path).append('\n').append(content).append('\n');
+
+			Matcher urlMatcher = URL_PATTERN.matcher(content);
+			while (urlMatcher.find()) {
+				String imgPath = rsHandler.getResourcePath(path, urlMatcher.group(1));
+				sb.append(imgPath).append('=').append(getImageChecksum(imgPath)).append('\n');
+			}
+		}
+
+		try {
+			return CheckSumUtils.getMD5Checksum(sb.toString());
+		} catch (IOException e) {
+			// Should not happen while reading from memory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the checksum of the image or an empty string if the image can't
+	 * be read
+	 *
+	 * @param imgPath
+	 *            the image path
+	 * @return the checksum of the image
+	 */
+	private String getImageChecksum(String imgPath) {
+
+		String checksum = imageChecksums.get(imgPath);
+		if (checksum == null) {
+			checksum = "";
+			try (InputStream is = rsHandler.getResourceAsInputStream(imgPath)) {
+				if (is != null) {
+					checksum = CheckSumUtils.getMD5Checksum(is);
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Unable to read the image '" + imgPath + "'", e);
+			}
+			imageChecksums.put(imgPath, checksum);
+		}
+		return checksum;
+	}
+
+	/**
+	 * Returns the root of the element in the union-find structure
+	 *
+	 * @param parents
+	 *            the parent map
+	 * @param path
+	 *            the element
+	 * @return the root element
+	 */
+	private static String find(Map<String, String> parents, String path) {
+
+		String root = path;
+		while (!root.equals(parents.get(root))) {
+			root = parents.get(root);
+		}
+
+		// Path compression
+		String current = path;
+		while (!current.equals(root)) {
+			String next = parents.get(current);
+			parents.put(current, root);
+			current = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Merges the sets of the two elements in the union-find structure
+	 *
+	 * @param parents
+	 *            the parent map
+	 * @param path1
+	 *            the first element
+	 * @param path2
+	 *            the second element
+	 */
+	private static void union(Map<String, String> parents, String path1, String path2) {
+
+		String root1 = find(parents, path1);
+		String root2 = find(parents, path2);
+		if (!root1.equals(root2)) {
+			// Keep the smallest path as root to have a stable partition order
+			if (root1.compareTo(root2) < 0) {
+				parents.put(root2, root1);
+			} else {
+				parents.put(root1, root2);
+			}
+		}
+	}
+
+	/**
+	 * This class defines a group of CSS resources which share their sprites
+	 *
+	 * @author Ibrahim Chaehoi
+	 */
+	public static class SpritePartition {
+
+		/** The CSS resource paths */
+		private final List<String> resourcePaths;
+
+		/** The partition key */
+		private final String key;
+
+		/**
+		 * Constructor
+		 *
+		 * @param resourcePaths
+		 *            the CSS resource paths
+		 * @param key
+		 *            the partition key
+		 */
+		public SpritePartition(List<String> resourcePaths, String key) {
+			this.resourcePaths = Collections.unmodifiableList(resourcePaths);
+			this.key = key;
+		}
+
+		/**
+		 * Returns the CSS resource paths
+		 *
+		 * @return the CSS resource paths
+		 */
+		public List<String> getResourcePaths() {
+			return resourcePaths;
+		}
+
+		/**
+		 * Returns the partition key
+		 *
+		 * @return the partition key
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+}
@@ -13,6 +13,7 @@
  */
 package net.jawr.web.resource.bundle.global.processor;
 
+import java.util.Collections;
 import java.util.List;
 
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
@@ -21,11 +22,15 @@ import net.jawr.web.resource.bundle.JoinableResourceBundle;
  * This class defines the wrapper, which wraps a custom global processor to a
  * chained global processor.
  * 
+ * If the custom global processor is a {@link ParallelGlobalProcessor}, its
+ * units of work are exposed as is. Otherwise, the custom global processor is
+ * executed as a single unit of work.
+ * 
  * @author Ibrahim Chaehoi
  *
  */
 public class CustomGlobalProcessorChainedWrapper<T extends AbstractGlobalProcessingContext>
-		extends AbstractChainedGlobalProcessor<T> implements ChainedGlobalProcessor<T> {
+		extends AbstractChainedGlobalProcessor<T> implements ChainedGlobalProcessor<T>, ParallelGlobalProcessor<T> {
 
 	/** The global preprocessor */
 	private final GlobalProcessor<T> globalPreprocessor;
@@ -55,4 +60,44 @@ public class CustomGlobalProcessorChainedWrapper<T extends AbstractGlobalProcess
 		globalPreprocessor.processBundles(ctx, bundles);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.global.processor.
+	 * ParallelGlobalProcessor#getProcessingUnits(net.jawr.web.resource.bundle.
+	 * global.processor.AbstractGlobalProcessingContext, java.util.List)
+	 */
+	@Override
+	public List<GlobalProcessingUnit> getProcessingUnits(final T ctx, final List<JoinableResourceBundle> bundles) {
+
+		if (globalPreprocessor instanceof ParallelGlobalProcessor) {
+			return ((ParallelGlobalProcessor<T>) globalPreprocessor).getProcessingUnits(ctx, bundles);
+		}
+
+		GlobalProcessingUnit unit = new GlobalProcessingUnit(getId()) {
+
+			@Override
+			public void process() {
+				globalPreprocessor.processBundles(ctx, bundles);
+			}
+		};
+		return Collections.singletonList(unit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.global.processor.
+	 * ParallelGlobalProcessor#getMaxParallelism(net.jawr.web.resource.bundle.
+	 * global.processor.AbstractGlobalProcessingContext)
+	 */
+	@Override
+	public int getMaxParallelism(T ctx) {
+
+		if (globalPreprocessor instanceof ParallelGlobalProcessor) {
+			return ((ParallelGlobalProcessor<T>) globalPreprocessor).getMaxParallelism(ctx);
+		}
+		return 1;
+	}
+
 }
@@ -0,0 +1,354 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.global.processor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.context.ThreadLocalJawrContext;
+import net.jawr.web.exception.BundlingProcessException;
+import net.jawr.web.exception.InterruptBundlingProcessException;
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.util.BuildExecutor;
+
+/**
+ * This class executes the global processors. The units of work of the
+ * {@link ParallelGlobalProcessor} are executed on the build executor, as soon
+ * as the units they depend on have been executed, while the other global
+ * processors are executed in the current thread.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class GlobalProcessingScheduler {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(GlobalProcessingScheduler.class);
+
+	/** The maximum number of units executed at the same time */
+	private final int threadCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param threadCount
+	 *            the maximum number of units executed at the same time
+	 */
+	public GlobalProcessingScheduler(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Processes the bundles with a global processor
+	 *
+	 * @param processor
+	 *            the global processor
+	 * @param ctx
+	 *            the processing context
+	 * @param bundles
+	 *            the bundles to process
+	 */
+	public <T extends AbstractGlobalProcessingContext> void process(GlobalProcessor<T> processor, T ctx,
+			List<JoinableResourceBundle> bundles) {
+
+		if (processor instanceof ParallelGlobalProcessor) {
+			ParallelGlobalProcessor<T> parallelProcessor = (ParallelGlobalProcessor<T>) processor;
+			int parallelism = threadCount;
+			int maxParallelism = parallelProcessor.getMaxParallelism(ctx);
+			if (maxParallelism > 0) {
+				parallelism = Math.min(parallelism, maxParallelism);
+			}
+			execute(parallelProcessor.getProcessingUnits(ctx, bundles), parallelism);
+		} else {
+			processor.processBundles(ctx, bundles);
+		}
+	}
+
+	/**
+	 * Executes the units of work, respecting their dependencies. The units are
+	 * executed in the current thread if only one unit can be executed at a
+	 * time.
+	 *
+	 * @param units
+	 *            the units of work
+	 * @param parallelism
+	 *            the maximum number of units executed at the same time
+	 */
+	public static void execute(List<GlobalProcessingUnit> units, int parallelism) {
+
+		Map<String, GlobalProcessingUnit> unitsById = new LinkedHashMap<>();
+		for (GlobalProcessingUnit unit : units) {
+			if (unitsById.put(unit.getId(), unit) != null) {
+				throw new BundlingProcessException("The global processing unit '" + unit.getId()
+						+ "' is defined more than once");
+			}
+		}
+
+		Map<String, Integer> remainingDependencies = new HashMap<>();
+		Map<String, List<GlobalProcessingUnit>> dependents = new HashMap<>();
+		Deque<GlobalProcessingUnit> readyUnits = new ArrayDeque<>();
+		for (GlobalProcessingUnit unit : units) {
+			for (String dependency : unit.getDependencies()) {
+				if (!unitsById.containsKey(dependency)) {
+					throw new BundlingProcessException("The global processing unit '" + unit.getId()
+							+ "' depends on the unknown unit '" + dependency + "'");
+				}
+				List<GlobalProcessingUnit> unitDependents = dependents.get(dependency);
+				if (unitDependents == null) {
+					unitDependents = new ArrayList<>();
+					dependents.put(dependency, unitDependents);
+				}
+				unitDependents.add(unit);
+			}
+			remainingDependencies.put(unit.getId(), unit.getDependencies().size());
+			if (unit.getDependencies().isEmpty()) {
+				readyUnits.add(unit);
+			}
+		}
+
+		int nbExecutedUnits;
+		if (parallelism <= 1 || units.size() <= 1) {
+			nbExecutedUnits = executeSerially(readyUnits, remainingDependencies, dependents);
+		} else {
+			nbExecutedUnits = executeInParallel(readyUnits, remainingDependencies, dependents, parallelism);
+		}
+
+		if (nbExecutedUnits < units.size()) {
+			List<String> blockedUnits = new ArrayList<>();
+			for (Map.Entry<String, Integer> entry : remainingDependencies.entrySet()) {
+				if (entry.getValue() > 0) {
+					blockedUnits.add(entry.getKey());
+				}
+			}
+			throw new BundlingProcessException(
+					"Cyclic dependencies between the global processing units : " + blockedUnits);
+		}
+	}
+
+	/**
+	 * Executes the units in the current thread
+	 *
+	 * @param readyUnits
+	 *            the units which are ready to be executed
+	 * @param remainingDependencies
+	 *            the number of dependencies to execute for each unit
+	 * @param dependents
+	 *            the units depending on each unit
+	 * @return the number of units executed
+	 */
+	private static int executeSerially(Deque<GlobalProcessingUnit> readyUnits,
+			Map<String, Integer> remainingDependencies, Map<String, List<GlobalProcessingUnit>> dependents) {
+
+		int nbExecutedUnits = 0;
+		while (!readyUnits.isEmpty()) {
+			stopProcessIfNeeded();
+			GlobalProcessingUnit unit = readyUnits.poll();
+			unit.process();
+			nbExecutedUnits++;
+			release(unit, readyUnits, remainingDependencies, dependents);
+		}
+		return nbExecutedUnits;
+	}
+
+	/**
+	 * Executes the units on the build executor. If a unit fails, no new unit
+	 * is started, and the exception is thrown once the running units are
+	 * ended.
+	 *
+	 * @param readyUnits
+	 *            the units which are ready to be executed
+	 * @param remainingDependencies
+	 *            the number of dependencies to execute for each unit
+	 * @param dependents
+	 *            the units depending on each unit
+	 * @param parallelism
+	 *            the maximum number of units executed at the same time
+	 * @return the number of units executed
+	 */
+	private static int executeInParallel(Deque<GlobalProcessingUnit> readyUnits,
+			Map<String, Integer> remainingDependencies, Map<String, List<GlobalProcessingUnit>> dependents,
+			int parallelism) {
+
+		CompletionService<GlobalProcessingUnit> completionService = new ExecutorCompletionService<>(
+				BuildExecutor.getExecutor());
+		ObjectName mbeanObjectName = ThreadLocalJawrContext.getJawrConfigMgrObjectName();
+		boolean debugOverriden = ThreadLocalJawrContext.isDebugOverriden();
+		boolean bundleProcessingAtBuildTime = ThreadLocalJawrContext.isBundleProcessingAtBuildTime();
+
+		int nbExecutedUnits = 0;
+		int nbRunningUnits = 0;
+		RuntimeException failure = null;
+		while (true) {
+			while (failure == null && nbRunningUnits < parallelism && !readyUnits.isEmpty()) {
+				completionService.submit(new UnitTask(readyUnits.poll(), mbeanObjectName, debugOverriden,
+						bundleProcessingAtBuildTime));
+				nbRunningUnits++;
+			}
+			if (nbRunningUnits == 0) {
+				break;
+			}
+
+			try {
+				GlobalProcessingUnit unit = completionService.take().get();
+				nbExecutedUnits++;
+				release(unit, readyUnits, remainingDependencies, dependents);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BundlingProcessException("The global processing has been interrupted", e);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = toRuntimeException(e.getCause());
+				} else {
+					LOGGER.debug("Global processing unit failure after a first failure", e.getCause());
+				}
+			}
+			nbRunningUnits--;
+
+			if (failure == null && ThreadLocalJawrContext.isInterruptingProcessingBundle()) {
+				failure = new InterruptBundlingProcessException();
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+		return nbExecutedUnits;
+	}
+
+	/**
+	 * Updates the dependencies of the units depending on a unit which has
+	 * been executed, and adds the ones which are now ready
+	 *
+	 * @param unit
+	 *            the unit executed
+	 * @param readyUnits
+	 *            the units which are ready to be executed
+	 * @param remainingDependencies
+	 *            the number of dependencies to execute for each unit
+	 * @param dependents
+	 *            the units depending on each unit
+	 */
+	private static void release(GlobalProcessingUnit unit, Deque<GlobalProcessingUnit> readyUnits,
+			Map<String, Integer> remainingDependencies, Map<String, List<GlobalProcessingUnit>> dependents) {
+
+		List<GlobalProcessingUnit> unitDependents = dependents.get(unit.getId());
+		if (unitDependents != null) {
+			for (GlobalProcessingUnit dependent : unitDependents) {
+				int remaining = remainingDependencies.get(dependent.getId()) - 1;
+				remainingDependencies.put(dependent.getId(), remaining);
+				if (remaining == 0) {
+					readyUnits.add(dependent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the runtime exception to throw for the failure of a unit
+	 *
+	 * @param cause
+	 *            the cause of the failure
+	 * @return the runtime exception
+	 */
+	private static RuntimeException toRuntimeException(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new BundlingProcessException("Unexpected error during the global processing", cause);
+	}
+
+	/**
+	 * Stop the bundling process if needed
+	 */
+	private static void stopProcessIfNeeded() {
+		if (ThreadLocalJawrContext.isInterruptingProcessingBundle()) {
+			throw new InterruptBundlingProcessException();
+		}
+	}
+
+	/**
+	 * The task which executes a unit on the build executor, with the Jawr
+	 * context of the bundling thread
+	 */
+	private static class UnitTask implements Callable<GlobalProcessingUnit> {
+
+		/** The unit to execute */
+		private final GlobalProcessingUnit unit;
+
+		/** The object name of the Jawr config manager */
+		private final ObjectName mbeanObjectName;
+
+		/** The flag indicating if the debug mode is overriden */
+		private final boolean debugOverriden;
+
+		/** The flag indicating if the bundle processing is done at build time */
+		private final boolean bundleProcessingAtBuildTime;
+
+		/**
+		 * Constructor
+		 *
+		 * @param unit
+		 *            the unit to execute
+		 * @param mbeanObjectName
+		 *            the object name of the Jawr config manager
+		 * @param debugOverriden
+		 *            the flag indicating if the debug mode is overriden
+		 * @param bundleProcessingAtBuildTime
+		 *            the flag indicating if the bundle processing is done at
+		 *            build time
+		 */
+		public UnitTask(GlobalProcessingUnit unit, ObjectName mbeanObjectName, boolean debugOverriden,
+				boolean bundleProcessingAtBuildTime) {
+			this.unit = unit;
+			this.mbeanObjectName = mbeanObjectName;
+			this.debugOverriden = debugOverriden;
+			this.bundleProcessingAtBuildTime = bundleProcessingAtBuildTime;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public GlobalProcessingUnit call() throws Exception {
+
+			ThreadLocalJawrContext.setJawrConfigMgrObjectName(mbeanObjectName);
+			ThreadLocalJawrContext.setDebugOverriden(debugOverriden);
+			ThreadLocalJawrContext.setBundleProcessingAtBuildTime(bundleProcessingAtBuildTime);
+			try {
+				unit.process();
+			} finally {
+				ThreadLocalJawrContext.reset();
+			}
+			return unit;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.global.processor;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * This class defines a unit of work of a global processor. A unit is executed
+ * once all the units it depends on have been executed, and may be executed in
+ * parallel with the other units.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public abstract class GlobalProcessingUnit {
+
+	/** The ID of the unit */
+	private final String id;
+
+	/** The IDs of the units which must be executed before this one */
+	private final Set<String> dependencies = new LinkedHashSet<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            the ID of the unit, which must be unique for a global
+	 *            processor
+	 */
+	public GlobalProcessingUnit(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns the ID of the unit
+	 *
+	 * @return the ID of the unit
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Adds a unit which must be executed before this one
+	 *
+	 * @param unitId
+	 *            the ID of the unit
+	 * @return this unit
+	 */
+	public GlobalProcessingUnit addDependency(String unitId) {
+		dependencies.add(unitId);
+		return this;
+	}
+
+	/**
+	 * Returns the IDs of the units which must be executed before this one
+	 *
+	 * @return the IDs of the dependencies
+	 */
+	public Set<String> getDependencies() {
+		return Collections.unmodifiableSet(dependencies);
+	}
+
+	/**
+	 * Executes the unit
+	 */
+	public abstract void process();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return id;
+	}
+}
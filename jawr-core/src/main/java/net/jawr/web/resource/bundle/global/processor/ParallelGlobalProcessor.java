@@ -0,0 +1,53 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.global.processor;
+
+import java.util.List;
+
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+
+/**
+ * This interface is implemented by the global processors which split their
+ * work in units, so Jawr can execute them in parallel on the build executor.
+ *
+ * The units are executed in place of
+ * {@link GlobalProcessor#processBundles(AbstractGlobalProcessingContext, List)},
+ * which remains the entry point when the processor is used outside of Jawr.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public interface ParallelGlobalProcessor<T extends AbstractGlobalProcessingContext> extends GlobalProcessor<T> {
+
+	/**
+	 * Returns the units of work to process the bundles
+	 *
+	 * @param ctx
+	 *            the processing context
+	 * @param bundles
+	 *            the list of bundles to process
+	 * @return the units of work
+	 */
+	public List<GlobalProcessingUnit> getProcessingUnits(T ctx, List<JoinableResourceBundle> bundles);
+
+	/**
+	 * Returns the maximum number of units which can be executed at the same
+	 * time for this processor
+	 *
+	 * @param ctx
+	 *            the processing context
+	 * @return the maximum number of units executed at the same time, or 0 to
+	 *         use the number of bundling threads
+	 */
+	public int getMaxParallelism(T ctx);
+}
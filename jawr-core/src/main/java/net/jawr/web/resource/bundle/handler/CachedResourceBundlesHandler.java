@@ -20,9 +20,30 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import net.jawr.web.DebugMode;
 import net.jawr.web.cache.JawrCacheManager;
@@ -32,10 +53,14 @@ import net.jawr.web.exception.BundlingProcessException;
 import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
 import net.jawr.web.resource.bundle.iterator.ConditionalCommentCallbackHandler;
 import net.jawr.web.resource.bundle.iterator.ResourceBundlePathsIterator;
 import net.jawr.web.resource.bundle.lifecycle.BundlingProcessLifeCycleListener;
+import net.jawr.web.resource.bundle.renderer.BundleRenderer;
 import net.jawr.web.resource.watcher.ResourceWatcher;
+import net.jawr.web.util.BuildExecutor;
+import net.jawr.web.util.StringUtils;
 
 /**
  * ResourceBundlesHandler wrapper implementation that uses a ConcurrentHashMap
@@ -44,12 +69,26 @@ import net.jawr.web.resource.watcher.ResourceWatcher;
  * in subsequent calls. Every method call not related to retrieving data is
  * delegated to the wrapped implementation.
  * 
+ * The cached elements belong to a cache generation. Once the bundles are
+ * built, the text and gzip content of all the bundles are loaded in a new
+ * generation, which then replaces the current one. The concurrent loads of
+ * the same element are done only once.
+ * 
+ * When a generation is replaced, the content of the bundles whose path has
+ * changed is retained for the last generations, so the requests with a
+ * previous hashcode are served the content they referenced. Without warm up,
+ * the content of the bundles to rebuild is loaded before they are rebuilt,
+ * so it can be retained as well.
+ * 
  * @author Jordi Hernández Sellés
  * @author Ibrahim Chaehoi
  * 
  */
 public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachedResourceBundlesHandler.class);
+
 	/** The prefix for text element in cache */
 	private static final String TEXT_CACHE_PREFIX = "TEXT.";
 
@@ -62,6 +101,30 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	/** The cache manager */
 	private final JawrCacheManager cacheMgr;
 
+	/** The generation counter */
+	private final AtomicInteger generationCounter = new AtomicInteger();
+
+	/** The current cache generation */
+	private volatile CacheGeneration generation = new CacheGeneration(0);
+
+	/** The pending loads of the cached elements, by cache key */
+	private final ConcurrentMap<String, FutureTask<Object>> pendingLoads = new ConcurrentHashMap<>();
+
+	/**
+	 * The bundle keys of the paths of the current generation. The bundle key
+	 * identifies a variant of a bundle.
+	 */
+	private Map<String, String> currentBundleKeys = new HashMap<>();
+
+	/** The retained elements of the previous generations, by cache key */
+	private final Map<String, Object> retainedElements = new ConcurrentHashMap<>();
+
+	/**
+	 * The retained paths of the previous generations, from the most recent to
+	 * the oldest one, by bundle key
+	 */
+	private final Map<String, Deque<String>> retainedPaths = new HashMap<>();
+
 	/**
 	 * Build a cached wrapper around the supplied ResourceBundlesHandler.
 	 * 
@@ -152,6 +215,7 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	@Override
 	public void initAllBundles() {
 		rsHandler.initAllBundles();
+		warmUpCache();
 	}
 
 	/*
@@ -177,21 +241,9 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	public void streamBundleTo(String bundlePath, OutputStream out) throws ResourceNotFoundException {
 
 		try {
-			// byte[] gzip = gzipCache.get(bundlePath);
-			byte[] gzip = (byte[]) cacheMgr.get(ZIP_CACHE_PREFIX + bundlePath);
-			// If it's not cached yet
-			if (null == gzip) {
-				// Stream the stored data
-				ByteArrayOutputStream baOs = new ByteArrayOutputStream();
-				BufferedOutputStream bfOs = new BufferedOutputStream(baOs);
-				rsHandler.streamBundleTo(bundlePath, bfOs);
-
-				// Copy the data into the ByteBuffer
-				bfOs.close();
-				gzip = baOs.toByteArray();
-
-				// Cache the byte array
-				cacheMgr.put(ZIP_CACHE_PREFIX + bundlePath, gzip);
+			byte[] gzip = (byte[]) retainedElements.get(ZIP_CACHE_PREFIX + bundlePath);
+			if (gzip == null) {
+				gzip = (byte[]) getCachedElement(generation, ZIP_CACHE_PREFIX, bundlePath);
 			}
 
 			// Write bytes to the outputstream
@@ -212,18 +264,11 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	 */
 	@Override
 	public void writeBundleTo(String bundlePath, Writer writer) throws ResourceNotFoundException {
-		
-		String text = (String) cacheMgr.get(TEXT_CACHE_PREFIX + bundlePath);
+
 		try {
-			// If it's not cached yet
-			if (null == text) {
-				String charsetName = rsHandler.getConfig().getResourceCharset().name();
-				ByteArrayOutputStream baOs = new ByteArrayOutputStream();
-				WritableByteChannel wrChannel = Channels.newChannel(baOs);
-				Writer tempWriter = Channels.newWriter(wrChannel, charsetName);
-				rsHandler.writeBundleTo(bundlePath, tempWriter);
-				text = baOs.toString(charsetName);
-				cacheMgr.put(TEXT_CACHE_PREFIX + bundlePath, text);
+			String text = (String) retainedElements.get(TEXT_CACHE_PREFIX + bundlePath);
+			if (text == null) {
+				text = (String) getCachedElement(generation, TEXT_CACHE_PREFIX, bundlePath);
 			}
 
 			// Write the text to the outputstream
@@ -237,6 +282,395 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 		}
 	}
 
+	/**
+	 * Returns the cached element of a bundle. If the element is not cached
+	 * yet, it is loaded from the wrapped handler. Only one thread loads a
+	 * given element, the other threads wait for its result.
+	 * 
+	 * @param cacheGeneration
+	 *            the cache generation
+	 * @param typePrefix
+	 *            the prefix of the type of element
+	 * @param bundlePath
+	 *            the bundle path
+	 * @return the cached element
+	 * @throws ResourceNotFoundException
+	 *             if the bundle is not found
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private Object getCachedElement(final CacheGeneration cacheGeneration, final String typePrefix,
+			final String bundlePath) throws ResourceNotFoundException, IOException {
+
+		final String key = cacheGeneration.getKey(typePrefix, bundlePath);
+		Object element = cacheMgr.get(key);
+		if (element != null) {
+			return element;
+		}
+
+		FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				Object value = cacheMgr.get(key);
+				if (value == null) {
+					value = ZIP_CACHE_PREFIX.equals(typePrefix) ? loadGzipContent(bundlePath)
+							: loadTextContent(bundlePath);
+					cacheGeneration.put(key, value);
+				}
+				return value;
+			}
+		});
+
+		FutureTask<Object> pendingTask = pendingLoads.putIfAbsent(key, task);
+		if (pendingTask == null) {
+			pendingTask = task;
+			try {
+				task.run();
+			} finally {
+				pendingLoads.remove(key, task);
+			}
+		}
+
+		try {
+			return pendingTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BundlingProcessException("Interrupted while loading bundle[" + bundlePath + "]", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ResourceNotFoundException) {
+				throw (ResourceNotFoundException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new BundlingProcessException("Unexpected error loading bundle[" + bundlePath + "]", cause);
+		}
+	}
+
+	/**
+	 * Loads the gzip content of a bundle from the wrapped handler
+	 * 
+	 * @param bundlePath
+	 *            the bundle path
+	 * @return the gzip content
+	 * @throws ResourceNotFoundException
+	 *             if the bundle is not found
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private byte[] loadGzipContent(String bundlePath) throws ResourceNotFoundException, IOException {
+
+		// Stream the stored data
+		ByteArrayOutputStream baOs = new ByteArrayOutputStream();
+		BufferedOutputStream bfOs = new BufferedOutputStream(baOs);
+		rsHandler.streamBundleTo(bundlePath, bfOs);
+
+		// Copy the data into the ByteBuffer
+		bfOs.close();
+		return baOs.toByteArray();
+	}
+
+	/**
+	 * Loads the text content of a bundle from the wrapped handler
+	 * 
+	 * @param bundlePath
+	 *            the bundle path
+	 * @return the text content
+	 * @throws ResourceNotFoundException
+	 *             if the bundle is not found
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private String loadTextContent(String bundlePath) throws ResourceNotFoundException, IOException {
+
+		String charsetName = rsHandler.getConfig().getResourceCharset().name();
+		ByteArrayOutputStream baOs = new ByteArrayOutputStream();
+		WritableByteChannel wrChannel = Channels.newChannel(baOs);
+		Writer tempWriter = Channels.newWriter(wrChannel, charsetName);
+		rsHandler.writeBundleTo(bundlePath, tempWriter);
+		return baOs.toString(charsetName);
+	}
+
+	/**
+	 * Loads the text and gzip content of all the bundles in a new cache
+	 * generation, which then replaces the current one. The content which is
+	 * already cached or retained for the same bundle path is reused, as the
+	 * bundle path contains the hashcode of the bundle.
+	 */
+	public synchronized void warmUpCache() {
+
+		if (!isWarmUpEnabled()) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		final CacheGeneration oldGeneration = generation;
+		final CacheGeneration newGeneration = new CacheGeneration(generationCounter.incrementAndGet());
+
+		Map<String, String> bundleKeys = getBundleKeys();
+		final Queue<String[]> elements = new ConcurrentLinkedQueue<>();
+		for (String bundlePath : bundleKeys.keySet()) {
+			elements.add(new String[] { TEXT_CACHE_PREFIX, bundlePath });
+			elements.add(new String[] { ZIP_CACHE_PREFIX, bundlePath });
+		}
+		int elementCount = elements.size();
+
+		Callable<Void> loader = new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				String[] element = null;
+				while ((element = elements.poll()) != null) {
+					String typePrefix = element[0];
+					String bundlePath = element[1];
+					Object value = cacheMgr.get(oldGeneration.getKey(typePrefix, bundlePath));
+					if (value == null) {
+						value = retainedElements.get(typePrefix + bundlePath);
+					}
+					if (value != null) {
+						newGeneration.put(newGeneration.getKey(typePrefix, bundlePath), value);
+					} else {
+						try {
+							getCachedElement(newGeneration, typePrefix, bundlePath);
+						} catch (ResourceNotFoundException | IOException | BundlingProcessException e) {
+							LOGGER.warn("Unable to load the bundle '" + bundlePath + "' in cache", e);
+						}
+					}
+				}
+				return null;
+			}
+		};
+
+		int threadCount = Math.max(1, Math.min(rsHandler.getConfig().getBundlingThreadCount(), elementCount));
+		try {
+			if (threadCount == 1) {
+				loader.call();
+			} else {
+				List<Future<Void>> futures = new ArrayList<>();
+				for (int i = 0; i < threadCount; i++) {
+					futures.add(BuildExecutor.getExecutor().submit(loader));
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			LOGGER.warn("Unable to warm up the bundle cache", e);
+			return;
+		}
+
+		// Publish the new generation and drop the elements of the previous one
+		retainPreviousBundles(oldGeneration, bundleKeys);
+		generation = newGeneration;
+		currentBundleKeys = bundleKeys;
+		oldGeneration.retire();
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Bundle cache warmed up with " + elementCount + " elements in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Checks if the cache is warmed up once the bundles are built
+	 * 
+	 * @return true if the cache is warmed up
+	 */
+	private boolean isWarmUpEnabled() {
+		return rsHandler.getConfig().isBundleCacheWarmUp() && !rsHandler.getConfig().isDebugModeOn();
+	}
+
+	/**
+	 * Loads the content of the bundles to rebuild in the current generation,
+	 * while it is still available, so it can be retained once the bundles are
+	 * rebuilt. With warm up, the current generation already contains the
+	 * content of all the bundles.
+	 */
+	private synchronized void loadBundlesToRebuild() {
+
+		if (isWarmUpEnabled() || rsHandler.getConfig().isDebugModeOn()) {
+			return;
+		}
+
+		currentBundleKeys = getBundleKeys();
+		if (rsHandler.getConfig().getBundleRetainedGenerations() <= 0) {
+			return;
+		}
+
+		List<JoinableResourceBundle> bundlesToRebuild = new ArrayList<>();
+		for (JoinableResourceBundle bundle : getBundles()) {
+			if (bundle.isDirty()) {
+				bundlesToRebuild.add(bundle);
+			}
+		}
+		for (String bundlePath : getBundleKeys(bundlesToRebuild).keySet()) {
+			for (String typePrefix : new String[] { TEXT_CACHE_PREFIX, ZIP_CACHE_PREFIX }) {
+				try {
+					getCachedElement(generation, typePrefix, bundlePath);
+				} catch (ResourceNotFoundException | IOException | BundlingProcessException e) {
+					LOGGER.warn("Unable to load the bundle '" + bundlePath + "' before its rebuild", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Refreshes the cache once the bundles are rebuilt. With warm up, the
+	 * content of the bundles is loaded in a new generation. Otherwise, the
+	 * content of the bundles whose path has changed is retained and removed
+	 * from the current generation.
+	 */
+	private synchronized void refreshCache() {
+
+		if (isWarmUpEnabled()) {
+			warmUpCache();
+		} else if (!rsHandler.getConfig().isDebugModeOn()) {
+			Map<String, String> bundleKeys = getBundleKeys();
+			retainPreviousBundles(generation, bundleKeys);
+			for (String bundlePath : currentBundleKeys.keySet()) {
+				if (!bundleKeys.containsKey(bundlePath)) {
+					cacheMgr.remove(generation.getKey(TEXT_CACHE_PREFIX, bundlePath));
+					cacheMgr.remove(generation.getKey(ZIP_CACHE_PREFIX, bundlePath));
+				}
+			}
+			currentBundleKeys = bundleKeys;
+		}
+	}
+
+	/**
+	 * Retains the content of the bundles of the current generation whose path
+	 * is not part of the new generation. Only the content of the last
+	 * generations of each bundle is kept.
+	 * 
+	 * @param oldGeneration
+	 *            the current generation
+	 * @param bundleKeys
+	 *            the bundle keys of the paths of the new generation
+	 */
+	private void retainPreviousBundles(CacheGeneration oldGeneration, Map<String, String> bundleKeys) {
+
+		// The paths of the new generation are served from its cache
+		for (Deque<String> paths : retainedPaths.values()) {
+			for (Iterator<String> it = paths.iterator(); it.hasNext();) {
+				String path = it.next();
+				if (bundleKeys.containsKey(path)) {
+					it.remove();
+					removeRetainedElements(path);
+				}
+			}
+		}
+
+		int maxGenerations = rsHandler.getConfig().getBundleRetainedGenerations();
+		for (Entry<String, String> entry : currentBundleKeys.entrySet()) {
+			String bundlePath = entry.getKey();
+			if (maxGenerations <= 0 || bundleKeys.containsKey(bundlePath)) {
+				continue;
+			}
+
+			Object text = cacheMgr.get(oldGeneration.getKey(TEXT_CACHE_PREFIX, bundlePath));
+			Object gzip = cacheMgr.get(oldGeneration.getKey(ZIP_CACHE_PREFIX, bundlePath));
+			if (text == null && gzip == null) {
+				continue;
+			}
+			if (text != null) {
+				retainedElements.put(TEXT_CACHE_PREFIX + bundlePath, text);
+			}
+			if (gzip != null) {
+				retainedElements.put(ZIP_CACHE_PREFIX + bundlePath, gzip);
+			}
+
+			Deque<String> paths = retainedPaths.get(entry.getValue());
+			if (paths == null) {
+				paths = new LinkedList<>();
+				retainedPaths.put(entry.getValue(), paths);
+			}
+			paths.remove(bundlePath);
+			paths.addFirst(bundlePath);
+			while (paths.size() > maxGenerations) {
+				removeRetainedElements(paths.removeLast());
+			}
+		}
+	}
+
+	/**
+	 * Removes the retained elements of a bundle path
+	 * 
+	 * @param bundlePath
+	 *            the bundle path
+	 */
+	private void removeRetainedElements(String bundlePath) {
+		retainedElements.remove(TEXT_CACHE_PREFIX + bundlePath);
+		retainedElements.remove(ZIP_CACHE_PREFIX + bundlePath);
+	}
+
+	/**
+	 * Returns the paths of the bundles, as requested in production mode,
+	 * for all their variants, with the key of the bundle variant they belong
+	 * to
+	 * 
+	 * @return the bundle keys, by bundle path
+	 */
+	private Map<String, String> getBundleKeys() {
+		return getBundleKeys(getBundles());
+	}
+
+	/**
+	 * Returns the global and context bundles
+	 * 
+	 * @return the bundles
+	 */
+	private List<JoinableResourceBundle> getBundles() {
+		List<JoinableResourceBundle> bundles = new ArrayList<>(rsHandler.getGlobalBundles());
+		bundles.addAll(rsHandler.getContextBundles());
+		return bundles;
+	}
+
+	/**
+	 * Returns the paths of the bundles given in parameter, as requested in
+	 * production mode, for all their variants, with the key of the bundle
+	 * variant they belong to
+	 * 
+	 * @param bundles
+	 *            the bundles
+	 * @return the bundle keys, by bundle path
+	 */
+	private Map<String, String> getBundleKeys(List<JoinableResourceBundle> bundles) {
+
+		Map<String, String> bundleKeys = new LinkedHashMap<>();
+		for (JoinableResourceBundle bundle : bundles) {
+
+			// The bundles served from another URL or under a bundle prefix
+			// are loaded on their first request
+			if (StringUtils.isNotEmpty(bundle.getAlternateProductionURL())
+					|| StringUtils.isNotEmpty(bundle.getBundlePrefix())) {
+				continue;
+			}
+
+			List<String> variantKeys = bundle.getVariantKeys();
+			if (variantKeys == null || variantKeys.isEmpty()) {
+				variantKeys = Collections.singletonList(null);
+			}
+			for (String variantKey : variantKeys) {
+				String hashcode = bundle.getBundleDataHashCode(variantKey);
+				if (hashcode != null) {
+					String urlPrefix = StringUtils.isEmpty(variantKey) ? hashcode + "/"
+							: hashcode + "." + variantKey + "/";
+					String bundleKey = StringUtils.isEmpty(variantKey) ? bundle.getId()
+							: bundle.getId() + "@" + variantKey;
+					bundleKeys.put(PathNormalizer.asPath(PathNormalizer.joinPaths(urlPrefix, bundle.getId())),
+							bundleKey);
+				}
+			}
+		}
+		return bundleKeys;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -311,7 +745,23 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	 */
 	@Override
 	public BundleHashcodeType getBundleHashcodeType(String requestedPath) {
-		return rsHandler.getBundleHashcodeType(requestedPath);
+
+		BundleHashcodeType bundleHashcodeType = rsHandler.getBundleHashcodeType(requestedPath);
+		if (bundleHashcodeType.equals(BundleHashcodeType.INVALID_HASHCODE) && !retainedElements.isEmpty()) {
+
+			// The content of a previous generation is still served
+			String bundlePath = requestedPath;
+			String typePrefix = TEXT_CACHE_PREFIX;
+			int idx = requestedPath.indexOf(BundleRenderer.GZIP_PATH_PREFIX);
+			if (idx != -1) {
+				bundlePath = "/" + requestedPath.substring(idx + BundleRenderer.GZIP_PATH_PREFIX.length());
+				typePrefix = ZIP_CACHE_PREFIX;
+			}
+			if (retainedElements.containsKey(typePrefix + bundlePath)) {
+				bundleHashcodeType = BundleHashcodeType.VALID_HASHCODE;
+			}
+		}
+		return bundleHashcodeType;
 	}
 
 	/*
@@ -355,7 +805,22 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	 */
 	@Override
 	public void rebuildModifiedBundles() {
+		loadBundlesToRebuild();
 		rsHandler.rebuildModifiedBundles();
+		refreshCache();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.handler.ResourceBundlesHandler#
+	 * rebuildNotifiedBundles()
+	 */
+	@Override
+	public void rebuildNotifiedBundles() {
+		loadBundlesToRebuild();
+		rsHandler.rebuildNotifiedBundles();
+		refreshCache();
 	}
 
 	/*
@@ -412,4 +877,80 @@ public class CachedResourceBundlesHandler implements ResourceBundlesHandler {
 	public void setBundlingProcessLifeCycleListeners(List<BundlingProcessLifeCycleListener> listeners) {
 		this.rsHandler.setBundlingProcessLifeCycleListeners(listeners);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.handler.ResourceBundlesHandler#
+	 * addBundlingProcessLifeCycleListener(net.jawr.web.resource.bundle.
+	 * lifecycle.BundlingProcessLifeCycleListener)
+	 */
+	@Override
+	public void addBundlingProcessLifeCycleListener(BundlingProcessLifeCycleListener listener) {
+		this.rsHandler.addBundlingProcessLifeCycleListener(listener);
+	}
+
+	/**
+	 * This class defines a generation of the cached elements
+	 */
+	private class CacheGeneration {
+
+		/** The prefix of the cache keys of the generation */
+		private final String keyPrefix;
+
+		/** The keys of the elements cached for the generation */
+		private final Set<String> keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		/** The flag indicating if the generation has been replaced */
+		private volatile boolean retired;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param number
+		 *            the generation number
+		 */
+		public CacheGeneration(int number) {
+			this.keyPrefix = number == 0 ? "" : "G" + number + ".";
+		}
+
+		/**
+		 * Returns the cache key of an element
+		 * 
+		 * @param typePrefix
+		 *            the prefix of the type of element
+		 * @param bundlePath
+		 *            the bundle path
+		 * @return the cache key
+		 */
+		public String getKey(String typePrefix, String bundlePath) {
+			return keyPrefix + typePrefix + bundlePath;
+		}
+
+		/**
+		 * Puts an element in the cache for this generation
+		 * 
+		 * @param key
+		 *            the cache key
+		 * @param value
+		 *            the element
+		 */
+		public void put(String key, Object value) {
+			keys.add(key);
+			cacheMgr.put(key, value);
+			if (retired) {
+				cacheMgr.remove(key);
+			}
+		}
+
+		/**
+		 * Removes the elements of this generation from the cache
+		 */
+		public void retire() {
+			retired = true;
+			for (String key : keys) {
+				cacheMgr.remove(key);
+			}
+		}
+	}
 }
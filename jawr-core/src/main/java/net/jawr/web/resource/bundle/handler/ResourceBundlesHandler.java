@@ -246,6 +246,13 @@ public interface ResourceBundlesHandler {
 	 */
 	public void rebuildModifiedBundles();
 
+	/**
+	 * Rebuilds the bundles which needs to be rebuild, without waiting for the
+	 * pending watch events. It is used by the resource watcher to rebuild the
+	 * bundles once it has processed a batch of events.
+	 */
+	public void rebuildNotifiedBundles();
+
 	/**
 	 * Returns the names of dirty bundles
 	 * 
@@ -276,4 +283,12 @@ public interface ResourceBundlesHandler {
 	 */
 	public void setBundlingProcessLifeCycleListeners(List<BundlingProcessLifeCycleListener> listeners);
 
+	/**
+	 * Adds a bundling life cycle listener
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addBundlingProcessLifeCycleListener(BundlingProcessLifeCycleListener listener);
+
 }
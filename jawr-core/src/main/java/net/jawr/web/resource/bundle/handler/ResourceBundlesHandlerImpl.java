@@ -16,7 +16,9 @@ package net.jawr.web.resource.bundle.handler;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
@@ -28,13 +30,18 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
 import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
@@ -54,10 +61,16 @@ import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.JoinableResourceBundleContent;
 import net.jawr.web.resource.bundle.JoinableResourceBundlePropertySerializer;
+import net.jawr.web.resource.bundle.css.CssImportGraph;
+import net.jawr.web.resource.bundle.factory.PropertiesBundleConstant;
 import net.jawr.web.resource.bundle.factory.global.postprocessor.GlobalPostProcessingContext;
 import net.jawr.web.resource.bundle.factory.global.preprocessor.GlobalPreprocessingContext;
 import net.jawr.web.resource.bundle.factory.util.ClassLoaderResourceUtils;
 import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
+import net.jawr.web.resource.bundle.factory.util.PropertiesConfigHelper;
+import net.jawr.web.resource.bundle.global.processor.ChainedGlobalProcessor;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingScheduler;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingUnit;
 import net.jawr.web.resource.bundle.global.processor.GlobalProcessor;
 import net.jawr.web.resource.bundle.hashcode.BundleHashcodeGenerator;
 import net.jawr.web.resource.bundle.iterator.BundlePath;
@@ -69,10 +82,13 @@ import net.jawr.web.resource.bundle.iterator.ResourceBundlePathsIterator;
 import net.jawr.web.resource.bundle.lifecycle.BundlingProcessLifeCycleListener;
 import net.jawr.web.resource.bundle.postprocess.AbstractChainedResourceBundlePostProcessor;
 import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
+import net.jawr.web.resource.bundle.postprocess.ChainedResourceBundlePostProcessor;
 import net.jawr.web.resource.bundle.postprocess.ResourceBundlePostProcessor;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
 import net.jawr.web.resource.bundle.sorting.GlobalResourceBundleComparator;
 import net.jawr.web.resource.bundle.variant.VariantSet;
 import net.jawr.web.resource.bundle.variant.VariantUtils;
+import net.jawr.web.resource.handler.bundle.BundleArtifactStore;
 import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import net.jawr.web.resource.watcher.ResourceWatcher;
@@ -114,9 +130,9 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 
 	/**
 	 * The bundles that will be processed once when the server will be up and
-	 * running.
+	 * running. The bundles may be stored concurrently by the build executor.
 	 */
-	private List<String> liveProcessBundles = new ArrayList<>();
+	private final Set<String> liveProcessBundles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 	/** The resource handler */
 	private ResourceReaderHandler resourceHandler;
@@ -154,6 +170,9 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 	/** The bundle mapping */
 	private Properties bundleMapping;
 
+	/** The directory of the bundling profile in the working directory */
+	private static final String PROFILING_DIR = "profiling";
+
 	/** The flag indicating if we are processing bundles */
 	private final AtomicBoolean processingBundle = new AtomicBoolean(false);
 
@@ -166,6 +185,15 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 	/** The flag indicating if we need to search for variant in post process */
 	private boolean needToSearchForVariantInPostProcess;
 
+	/** The bundling profiler, or null if the bundling is not profiled */
+	private final BundlingProfiler profiler;
+
+	/**
+	 * The store where the bundle artifacts are shared, or null if they are not
+	 * shared
+	 */
+	private BundleArtifactStore artifactStore;
+
 	/**
 	 * Build a ResourceBundlesHandler.
 	 * 
@@ -239,6 +267,21 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 				.getBundlingProcessLifeCycleListeners();
 		lifeCycleListeners.addAll(generatorLifeCycleListeners);
 
+		this.profiler = config.getBundlingProfiler();
+		if (profiler != null) {
+			if (profiler.getReportDirectory() == null && resourceBundleHandler.getBundleTextDirPath() != null) {
+				profiler.setReportDirectory(new File(resourceBundleHandler.getBundleTextDirPath()).getParent()
+						+ File.separator + PROFILING_DIR);
+			}
+			lifeCycleListeners.add(profiler);
+		}
+
+		this.artifactStore = config.getBundleArtifactStore();
+		if (artifactStore != null && !config.getUseBundleMapping()) {
+			LOGGER.warn("The bundle artifact store is ignored because the property '"
+					+ JawrConfig.JAWR_USE_BUNDLE_MAPPING + "' is not set to true");
+			this.artifactStore = null;
+		}
 	}
 
 	/*
@@ -700,7 +743,219 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 		}
 
 		// Execute processing
-		build(bundleToProcess, forceStoreJawrBundleMapping, stopWatch);
+		if (processBundleFlag && artifactStore != null) {
+			buildWithArtifactStore(stopWatch);
+		} else {
+			build(bundleToProcess, forceStoreJawrBundleMapping, stopWatch);
+		}
+	}
+
+	/**
+	 * Loads the bundles from the artifact store if another instance has
+	 * already built them. Otherwise, builds the bundles and publishes them in
+	 * the store. The bundles which can't be shared are built in any case.
+	 * 
+	 * @param stopWatch
+	 *            the stopWatch
+	 */
+	private void buildWithArtifactStore(StopWatch stopWatch) {
+
+		List<JoinableResourceBundle> localBundles = new ArrayList<>();
+		String key = getBundleArtifactKey(localBundles);
+		if (loadBundleArtifacts(key, localBundles, stopWatch)) {
+			return;
+		}
+
+		if (artifactStore.lock(key)) {
+			try {
+				// The artifacts may have been published while waiting for the
+				// lock
+				if (!loadBundleArtifacts(key, localBundles, stopWatch)) {
+					resourceBundleHandler.setBundleArtifactsRecording(true);
+					try {
+						build(this.bundles, false, stopWatch);
+						resourceBundleHandler.publishBundleArtifacts(artifactStore, key);
+					} finally {
+						resourceBundleHandler.setBundleArtifactsRecording(false);
+					}
+				}
+			} finally {
+				artifactStore.unlock(key);
+			}
+		} else if (!loadBundleArtifacts(key, localBundles, stopWatch)) {
+			build(this.bundles, false, stopWatch);
+		}
+	}
+
+	/**
+	 * Loads the bundle artifacts from the store, and builds the bundles which
+	 * can't be shared
+	 * 
+	 * @param key
+	 *            the key of the artifacts
+	 * @param localBundles
+	 *            the bundles which can't be shared
+	 * @param stopWatch
+	 *            the stopWatch
+	 * @return true if the bundles have been loaded
+	 */
+	private boolean loadBundleArtifacts(String key, List<JoinableResourceBundle> localBundles,
+			StopWatch stopWatch) {
+
+		if (!loadBundleArtifacts(key)) {
+			return false;
+		}
+		if (!localBundles.isEmpty()) {
+			build(localBundles, true, stopWatch);
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the bundle artifacts from the store, and initializes the bundle
+	 * hashcodes from the loaded bundle mapping
+	 * 
+	 * @param key
+	 *            the key of the artifacts
+	 * @return true if the bundles have been loaded
+	 */
+	private boolean loadBundleArtifacts(String key) {
+
+		if (!resourceBundleHandler.loadBundleArtifacts(artifactStore, key)) {
+			return false;
+		}
+
+		Properties loadedMapping = resourceBundleHandler.getJawrBundleMapping();
+		PropertiesConfigHelper props = new PropertiesConfigHelper(loadedMapping,
+				resourceBundleHandler.getResourceType());
+		for (JoinableResourceBundle bundle : bundles) {
+			for (String variantKey : bundle.getVariantKeys()) {
+				String hashcode = null;
+				if (StringUtils.isEmpty(variantKey)) {
+					hashcode = props.getCustomBundleProperty(bundle.getName(),
+							PropertiesBundleConstant.BUNDLE_FACTORY_CUSTOM_HASHCODE);
+				} else {
+					hashcode = props.getCustomBundleProperty(bundle.getName(),
+							PropertiesBundleConstant.BUNDLE_FACTORY_CUSTOM_HASHCODE_VARIANT + variantKey);
+				}
+				if (hashcode == null) {
+					LOGGER.warn("The bundle '" + bundle.getName() + "' is missing from the artifacts '" + key
+							+ "'. The bundles will be processed.");
+					return false;
+				}
+				bundle.setBundleDataHashCode(variantKey, hashcode);
+			}
+			bundle.setDirty(false);
+		}
+		bundleMapping = loadedMapping;
+
+		try {
+			if (watcher != null) {
+				watcher.initPathToResourceBundleMap(bundles);
+			}
+		} catch (IOException e) {
+			throw new BundlingProcessException(e);
+		}
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("The bundles have been loaded from the artifacts '" + key + "'");
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the key of the bundle artifacts, which is based on the resource
+	 * type, the Jawr config and the content of the bundled resources. The
+	 * content is read through the resource reader handler, with the content
+	 * of the CSS imported by the bundled resources. The content of a bundle
+	 * which contains a generated resource, or which imports one, is only known
+	 * once the bundle is built, so such a bundle is not shared and is added to
+	 * the local bundles instead.
+	 * 
+	 * @param localBundles
+	 *            the list where the bundles which can't be shared are added
+	 * @return the key of the bundle artifacts
+	 */
+	protected String getBundleArtifactKey(List<JoinableResourceBundle> localBundles) {
+
+		// The sources are sorted by bundle ID, as the order of the bundles
+		// may differ between the instances
+		Map<String, String> sourcesByBundleId = new TreeMap<>();
+		try {
+			for (JoinableResourceBundle bundle : bundles) {
+				String bundleHeader = bundle.getId() + "|" + bundle.getVariants() + "\n";
+				StringBuilder bundleSources = new StringBuilder();
+				boolean shared = true;
+				Set<String> visitedPaths = new HashSet<>();
+				for (Iterator<BundlePath> it = bundle.getItemPathList().iterator(); shared && it.hasNext();) {
+					shared = appendContentChecksum(it.next().getPath(), bundleSources, visitedPaths);
+				}
+				if (shared) {
+					sourcesByBundleId.put(bundle.getId(), bundleHeader + bundleSources);
+				} else {
+					sourcesByBundleId.put(bundle.getId(), bundleHeader);
+					localBundles.add(bundle);
+				}
+			}
+			StringBuilder sources = new StringBuilder();
+			for (String bundleSources : sourcesByBundleId.values()) {
+				sources.append(bundleSources);
+			}
+			return resourceBundleHandler.getResourceType() + "-" + getJawrConfigHashcode() + "-"
+					+ CheckSumUtils.getMD5Checksum(sources.toString());
+		} catch (IOException e) {
+			throw new BundlingProcessException("Unable to calculate the checksum of the bundled resources", e);
+		}
+	}
+
+	/**
+	 * Appends the path and the checksum of the content of a resource, and of
+	 * the CSS it imports
+	 * 
+	 * @param path
+	 *            the resource path
+	 * @param sources
+	 *            the sources of the key
+	 * @param visitedPaths
+	 *            the paths already appended
+	 * @return false if the resource is generated or imports a generated
+	 *         resource
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private boolean appendContentChecksum(String path, StringBuilder sources, Set<String> visitedPaths)
+			throws IOException {
+
+		if (config.getGeneratorRegistry().isPathGenerated(path)) {
+			return false;
+		}
+		if (!visitedPaths.add(path)) {
+			return true;
+		}
+
+		String content = null;
+		try (Reader reader = resourceHandler.getResource(path)) {
+			StringWriter writer = new StringWriter();
+			IOUtils.copy(reader, writer);
+			content = writer.toString();
+		} catch (ResourceNotFoundException e) {
+			sources.append(path).append("|-\n");
+			return true;
+		}
+		sources.append(path).append('|').append(CheckSumUtils.getMD5Checksum(content)).append('\n');
+
+		boolean shared = true;
+		if (resourceBundleHandler.getResourceType().equals(JawrConstant.CSS_TYPE)) {
+			Matcher matcher = CssImportGraph.IMPORT_PATTERN.matcher(content);
+			while (shared && matcher.find()) {
+				String importedPath = matcher.group(3);
+				if (!config.getGeneratorRegistry().isPathGenerated(importedPath) && !importedPath.startsWith("/")) {
+					importedPath = PathNormalizer.concatWebPath(path, importedPath);
+				}
+				shared = appendContentChecksum(importedPath, sources, visitedPaths);
+			}
+		}
+		return shared;
 	}
 
 	/**
@@ -737,13 +992,24 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 				stopWatch.start("Global preprocessing");
 			}
 			GlobalPreprocessingContext ctx = new GlobalPreprocessingContext(config, resourceHandler, processBundleFlag);
-			resourceTypePreprocessor.processBundles(ctx, bundles);
+			BundlingProfiler.Span span = startProfiling(BundlingProfiler.GLOBAL_PREPROCESSOR_CATEGORY,
+					getProcessorName(resourceTypePreprocessor), null, null);
+			try {
+				new GlobalProcessingScheduler(config.getBundlingThreadCount()).process(resourceTypePreprocessor, ctx,
+						bundles);
+			} finally {
+				stopProfiling(span, -1, -1);
+			}
+
+			// The global preprocessors may have generated resources which
+			// take precedence over the ones already resolved
+			resourceHandler.clearResourceCache();
 
 			// Update the list of bundle to rebuild if new bundles have been
 			// detected as dirty in the global preprocessing phase
-			List<JoinableResourceBundle> currentBundles = getBundlesToRebuild();
-			for (JoinableResourceBundle b : currentBundles) {
-				if (!bundlesToBuild.contains(b)) {
+			Set<JoinableResourceBundle> bundlesToBuildSet = new HashSet<>(bundlesToBuild);
+			for (JoinableResourceBundle b : getBundlesToRebuild()) {
+				if (bundlesToBuildSet.add(b)) {
 					bundlesToBuild.add(b);
 				}
 			}
@@ -758,7 +1024,29 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 	 * 
 	 */
 	@Override
-	public synchronized void rebuildModifiedBundles() {
+	public void rebuildModifiedBundles() {
+		rebuildModifiedBundles(true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.handler.ResourceBundlesHandler#
+	 * rebuildNotifiedBundles()
+	 */
+	@Override
+	public void rebuildNotifiedBundles() {
+		rebuildModifiedBundles(false);
+	}
+
+	/**
+	 * Rebuilds the bundles which needs to be rebuild
+	 * 
+	 * @param waitForWatchEvents
+	 *            the flag indicating if the rebuild must wait until the
+	 *            resource watcher has processed all its events
+	 */
+	private synchronized void rebuildModifiedBundles(boolean waitForWatchEvents) {
 
 		stopProcessIfNeeded();
 
@@ -767,7 +1055,7 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 		if (config.getUseSmartBundling()) {
 
 			// Wait until all watch event has been processed
-			if (watcher != null) {
+			if (watcher != null && waitForWatchEvents) {
 				while (!watcher.hasNoEventToProcess()) {
 					try {
 						if (LOGGER.isInfoEnabled()) {
@@ -837,20 +1125,184 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 
 		notifyStartBundlingProcess();
 
+		// The resources may have been created or deleted since the last build
+		resourceHandler.clearResourceCache();
+		if (watcher == null) {
+			// Without watcher, the snapshot of the resource tree is not
+			// updated when the resources change
+			resourceHandler.clearResourceTreeSnapshot();
+		}
+
 		boolean mappingFileExists = resourceBundleHandler.isExistingMappingFile();
 		boolean processBundleFlag = !config.getUseBundleMapping() || !mappingFileExists;
 
 		// Global preprocessing
 		executeGlobalPreprocessing(bundlesToBuild, processBundleFlag, stopWatch);
 
+		// The bundles are built in dependency order. As the stop watch is not
+		// thread-safe, the bundles built in parallel are timed together.
+		int parallelism = config.isBundlingParallel() ? config.getBundlingThreadCount() : 1;
+		boolean parallelBuild = parallelism > 1 && bundlesToBuild.size() > 1;
+		if (parallelBuild && stopWatch != null) {
+			stopWatch.start("Processing bundles");
+		}
+		GlobalProcessingScheduler.execute(getBundleBuildUnits(bundlesToBuild, parallelBuild ? null : stopWatch),
+				parallelism);
+		if (parallelBuild && stopWatch != null) {
+			stopWatch.stop();
+		}
+
+		executeGlobalPostProcessing(processBundleFlag, stopWatch);
+		storeJawrBundleMapping(resourceBundleHandler.isExistingMappingFile(), true);
+
+		// Update the watcher with the path to watch
+		try {
+			if (watcher != null) {
+				watcher.initPathToResourceBundleMap(bundlesToBuild);
+			}
+		} catch (IOException e) {
+			throw new BundlingProcessException(e);
+		}
+
+		notifyEndBundlingProcess();
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("End of bundle processing");
+		}
+
+	}
+
+	/**
+	 * Returns the units building the bundles. A bundle is built after the
+	 * bundles it depends on, after the global bundles if it is not a global
+	 * one, and after its child bundles if it is a composite one. A
+	 * dependency which would create a cycle is ignored.
+	 * 
+	 * @param bundlesToBuild
+	 *            the bundles to build
+	 * @param stopWatch
+	 *            the stop watch used to time each bundle, or null
+	 * @return the units building the bundles
+	 */
+	private List<GlobalProcessingUnit> getBundleBuildUnits(List<JoinableResourceBundle> bundlesToBuild,
+			StopWatch stopWatch) {
+
+		Map<String, GlobalProcessingUnit> unitsById = new LinkedHashMap<>();
+		for (JoinableResourceBundle bundle : bundlesToBuild) {
+			unitsById.put(bundle.getId(), new BundleBuildUnit(bundle, stopWatch));
+		}
+
 		for (JoinableResourceBundle bundle : bundlesToBuild) {
+			GlobalProcessingUnit unit = unitsById.get(bundle.getId());
+			if (bundle.getDependencies() != null) {
+				for (JoinableResourceBundle dependency : bundle.getDependencies()) {
+					addBuildDependency(unit, dependency.getId(), unitsById);
+				}
+			}
+			if (bundle instanceof CompositeResourceBundle) {
+				for (JoinableResourceBundle childBundle : ((CompositeResourceBundle) bundle).getChildBundles()) {
+					addBuildDependency(unit, childBundle.getId(), unitsById);
+				}
+			}
+		}
+
+		for (JoinableResourceBundle bundle : bundlesToBuild) {
+			if (!isGlobalBundle(bundle)) {
+				GlobalProcessingUnit unit = unitsById.get(bundle.getId());
+				for (JoinableResourceBundle globalBundle : bundlesToBuild) {
+					if (isGlobalBundle(globalBundle)) {
+						addBuildDependency(unit, globalBundle.getId(), unitsById);
+					}
+				}
+			}
+		}
 
-			stopProcessIfNeeded();
+		return new ArrayList<>(unitsById.values());
+	}
 
-			if (stopWatch != null) {
-				stopWatch.start("Processing bundle '" + bundle.getName() + "'");
+	/**
+	 * Checks if a bundle is a global one
+	 * 
+	 * @param bundle
+	 *            the bundle
+	 * @return true if the bundle is a global one
+	 */
+	private boolean isGlobalBundle(JoinableResourceBundle bundle) {
+		return bundle.getInclusionPattern() != null && bundle.getInclusionPattern().isGlobal();
+	}
+
+	/**
+	 * Adds a dependency to a bundle build unit, if the bundle it depends on
+	 * is built and if the dependency doesn't create a cycle
+	 * 
+	 * @param unit
+	 *            the bundle build unit
+	 * @param bundleId
+	 *            the ID of the bundle to build before
+	 * @param unitsById
+	 *            the bundle build units mapped by bundle ID
+	 */
+	private void addBuildDependency(GlobalProcessingUnit unit, String bundleId,
+			Map<String, GlobalProcessingUnit> unitsById) {
+
+		if (unit.getId().equals(bundleId) || !unitsById.containsKey(bundleId)) {
+			return;
+		}
+
+		if (dependsOn(unitsById.get(bundleId), unit.getId(), unitsById, new HashSet<String>())) {
+			LOGGER.warn("The bundle '" + unit.getId() + "' and the bundle '" + bundleId
+					+ "' depend on each other. The bundle '" + unit.getId()
+					+ "' may be built before the bundle '" + bundleId + "'.");
+		} else {
+			unit.addDependency(bundleId);
+		}
+	}
+
+	/**
+	 * Checks if a bundle build unit depends, directly or not, on a bundle
+	 * 
+	 * @param unit
+	 *            the bundle build unit
+	 * @param bundleId
+	 *            the bundle ID
+	 * @param unitsById
+	 *            the bundle build units mapped by bundle ID
+	 * @param visitedIds
+	 *            the IDs of the units already checked
+	 * @return true if the unit depends on the bundle
+	 */
+	private boolean dependsOn(GlobalProcessingUnit unit, String bundleId,
+			Map<String, GlobalProcessingUnit> unitsById, Set<String> visitedIds) {
+
+		if (!visitedIds.add(unit.getId())) {
+			return false;
+		}
+		for (String dependency : unit.getDependencies()) {
+			if (dependency.equals(bundleId) || dependsOn(unitsById.get(dependency), bundleId, unitsById, visitedIds)) {
+				return true;
 			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds a bundle
+	 * 
+	 * @param bundle
+	 *            the bundle to build
+	 * @param stopWatch
+	 *            the stop watch, or null
+	 */
+	private void buildBundle(JoinableResourceBundle bundle, StopWatch stopWatch) {
 
+		stopProcessIfNeeded();
+
+		if (stopWatch != null) {
+			stopWatch.start("Processing bundle '" + bundle.getName() + "'");
+		}
+		BundlingProfiler.Span bundleSpan = startProfiling(BundlingProfiler.BUNDLE_CATEGORY, bundle.getName(),
+				bundle.getId(), null);
+
+		try {
 			if (!ThreadLocalJawrContext.isBundleProcessingAtBuildTime() && null != bundle.getAlternateProductionURL()) {
 				if (LOGGER.isDebugEnabled()) {
 					LOGGER.debug("No bundle generated for '" + bundle.getId()
@@ -869,29 +1321,57 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 			}
 
 			bundle.setDirty(false);
-
-			if (stopWatch != null) {
-				stopWatch.stop();
-			}
+		} finally {
+			stopProfiling(bundleSpan, -1, -1);
 		}
-
-		executeGlobalPostProcessing(processBundleFlag, stopWatch);
-		storeJawrBundleMapping(resourceBundleHandler.isExistingMappingFile(), true);
-
-		// Update the watcher with the path to watch
-		try {
-			if (watcher != null) {
-				watcher.initPathToResourceBundleMap(bundlesToBuild);
-			}
-		} catch (IOException e) {
-			throw new BundlingProcessException(e);
+		if (stopWatch != null) {
+			stopWatch.stop();
 		}
+	}
 
-		notifyEndBundlingProcess();
-		if (LOGGER.isInfoEnabled()) {
-			LOGGER.info("End of bundle processing");
+	/**
+	 * Starts the profiling of a bundling phase
+	 * 
+	 * @param category
+	 *            the category of the phase
+	 * @param name
+	 *            the name of the phase
+	 * @param bundleId
+	 *            the bundle ID
+	 * @param variantKey
+	 *            the variant key
+	 * @return the profiling span, or null if the bundling is not profiled
+	 */
+	private BundlingProfiler.Span startProfiling(String category, String name, String bundleId, String variantKey) {
+		return profiler == null ? null : profiler.start(category, name, bundleId, variantKey);
+	}
+
+	/**
+	 * Stops the profiling of a bundling phase
+	 * 
+	 * @param span
+	 *            the profiling span
+	 * @param bytesIn
+	 *            the size of the input, or -1 if unknown
+	 * @param bytesOut
+	 *            the size of the output, or -1 if unknown
+	 */
+	private void stopProfiling(BundlingProfiler.Span span, long bytesIn, long bytesOut) {
+		if (span != null) {
+			profiler.stop(span, bytesIn, bytesOut);
 		}
+	}
 
+	/**
+	 * Returns the name of a global processor
+	 * 
+	 * @param processor
+	 *            the global processor
+	 * @return the name of the global processor
+	 */
+	private static String getProcessorName(GlobalProcessor<?> processor) {
+		return processor instanceof ChainedGlobalProcessor ? ((ChainedGlobalProcessor<?>) processor).getId()
+				: processor.getClass().getSimpleName();
 	}
 
 	/**
@@ -993,8 +1473,16 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 			}
 			GlobalPostProcessingContext ctx = new GlobalPostProcessingContext(config, this, resourceHandler,
 					processBundleFlag);
-
-			resourceTypePostprocessor.processBundles(ctx, this.bundles);
+			ctx.setResourceBundleHandler(resourceBundleHandler);
+
+			BundlingProfiler.Span span = startProfiling(BundlingProfiler.GLOBAL_POSTPROCESSOR_CATEGORY,
+					getProcessorName(resourceTypePostprocessor), null, null);
+			try {
+				new GlobalProcessingScheduler(config.getBundlingThreadCount()).process(resourceTypePostprocessor, ctx,
+						this.bundles);
+			} finally {
+				stopProfiling(span, -1, -1);
+			}
 			if (stopWatch != null) {
 				stopWatch.stop();
 			}
@@ -1092,27 +1580,36 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 		// Process all variants
 		for (Map<String, String> variants : allVariants) {
 			status.setBundleVariants(variants);
-			store = new JoinableResourceBundleContent();
-			for (JoinableResourceBundle childbundle : composite.getChildBundles()) {
-				if (!childbundle.getInclusionPattern().isIncludeOnlyOnDebug()) {
-					JoinableResourceBundleContent childContent = joinAndPostprocessBundle(childbundle, variants,
-							status);
-					// Do unitary postprocessing.
-					status.setProcessingType(BundleProcessingStatus.FILE_PROCESSING_TYPE);
-					StringBuffer content = executeUnitaryPostProcessing(composite, status, childContent.getContent(),
-							this.unitaryCompositePostProcessor);
-					childContent.setContent(content);
-					store.append(childContent);
+			String variantKey = VariantUtils.getVariantKey(variants);
+			BundlingProfiler.Span span = startProfiling(BundlingProfiler.VARIANT_CATEGORY,
+					VariantUtils.getVariantBundleName(composite.getId(), variantKey, false), composite.getId(),
+					variantKey);
+			long bytesOut = -1;
+			try {
+				store = new JoinableResourceBundleContent();
+				for (JoinableResourceBundle childbundle : composite.getChildBundles()) {
+					if (!childbundle.getInclusionPattern().isIncludeOnlyOnDebug()) {
+						JoinableResourceBundleContent childContent = joinAndPostprocessBundle(childbundle, variants,
+								status);
+						// Do unitary postprocessing.
+						status.setProcessingType(BundleProcessingStatus.FILE_PROCESSING_TYPE);
+						StringBuffer content = executeUnitaryPostProcessing(composite, status, childContent.getContent(),
+								this.unitaryCompositePostProcessor);
+						childContent.setContent(content);
+						store.append(childContent);
+					}
 				}
-			}
 
-			// Post process composite bundle as needed
-			store = postProcessJoinedCompositeBundle(composite, store.getContent(), status);
+				// Post process composite bundle as needed
+				store = postProcessJoinedCompositeBundle(composite, store.getContent(), status);
 
-			String variantKey = VariantUtils.getVariantKey(variants);
-			String name = VariantUtils.getVariantBundleName(composite.getId(), variantKey, false);
-			storeBundle(name, store);
-			initBundleDataHashcode(composite, store, variantKey);
+				String name = VariantUtils.getVariantBundleName(composite.getId(), variantKey, false);
+				storeBundle(name, store);
+				initBundleDataHashcode(composite, store, variantKey);
+				bytesOut = store.getContent().length();
+			} finally {
+				stopProfiling(span, -1, bytesOut);
+			}
 		}
 	}
 
@@ -1297,9 +1794,17 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 			status.setBundleVariants(variantMap);
 			String variantKey = VariantUtils.getVariantKey(variantMap);
 			String name = VariantUtils.getVariantBundleName(bundle.getId(), variantKey, false);
-			store = joinAndPostprocessBundle(bundle, variantMap, status);
-			storeBundle(name, store);
-			initBundleDataHashcode(bundle, store, variantKey);
+			BundlingProfiler.Span span = startProfiling(BundlingProfiler.VARIANT_CATEGORY, name, bundle.getId(),
+					variantKey);
+			long bytesOut = -1;
+			try {
+				store = joinAndPostprocessBundle(bundle, variantMap, status);
+				storeBundle(name, store);
+				initBundleDataHashcode(bundle, store, variantKey);
+				bytesOut = store.getContent().length();
+			} finally {
+				stopProfiling(span, -1, bytesOut);
+			}
 		}
 	}
 
@@ -1325,6 +1830,7 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 
 		StringBuffer bundleData = new StringBuffer();
 		StringBuffer store = null;
+		boolean shareInvariantContent = isInvariantContentShared(bundle, status, this.unitaryPostProcessor);
 
 		try {
 
@@ -1347,40 +1853,69 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 				if (LOGGER.isDebugEnabled())
 					LOGGER.debug("Adding file [" + path + "] to bundle " + bundle.getId());
 
-				// Get a reader on the resource, with appropriate encoding
-				Reader rd = null;
+				// Reuse the content processed for another variant
+				String sharedContentKey = null;
+				if (shareInvariantContent) {
+					sharedContentKey = bundle.getId() + (firstPath ? "|first|" : "|") + path;
+					String sharedContent = status.getSharedResourceContent(sharedContentKey);
+					if (sharedContent != null) {
+						status.setLastPathAdded(path);
+						bundleData.append(sharedContent);
+						firstPath = false;
+						continue;
+					}
+				}
 
+				BundlingProfiler.Span span = startProfiling(BundlingProfiler.FILE_CATEGORY, path, bundle.getId(),
+						VariantUtils.getVariantKey(variants));
+
+				long bytesIn = -1;
+				long bytesOut = -1;
 				try {
-					rd = resourceHandler.getResource(bundle, path, true);
-				} catch (ResourceNotFoundException e) {
-					// If a mapped file does not exist, a warning is issued and
-					// process continues normally.
-					LOGGER.warn("A mapped resource was not found: [" + path + "]. Please check your configuration");
-					continue;
-				}
+					// Get a reader on the resource, with appropriate encoding
+					Reader rd = null;
 
-				// Update the status.
-				status.setLastPathAdded(path);
+					try {
+						rd = resourceHandler.getResource(bundle, path, true);
+					} catch (ResourceNotFoundException e) {
+						// If a mapped file does not exist, a warning is issued and
+						// process continues normally.
+						LOGGER.warn("A mapped resource was not found: [" + path + "]. Please check your configuration");
+						continue;
+					}
 
-				rd = new UnicodeBOMReader(rd, config.getResourceCharset());
-				if (!firstPath && ((UnicodeBOMReader) rd).hasBOM()) {
-					((UnicodeBOMReader) rd).skipBOM();
-				} else {
-					firstPath = false;
-				}
+					// Update the status.
+					status.setLastPathAdded(path);
 
-				IOUtils.copy(rd, bwriter, true);
+					rd = new UnicodeBOMReader(rd, config.getResourceCharset());
+					if (!firstPath && ((UnicodeBOMReader) rd).hasBOM()) {
+						((UnicodeBOMReader) rd).skipBOM();
+					} else {
+						firstPath = false;
+					}
 
-				// Add new line at the end if it doesn't exist
-				StringBuffer buffer = writer.getBuffer();
+					IOUtils.copy(rd, bwriter, true);
 
-				if (!buffer.toString().endsWith(StringUtils.STR_LINE_FEED)) {
-					buffer.append(StringUtils.STR_LINE_FEED);
-				}
+					// Add new line at the end if it doesn't exist
+					StringBuffer buffer = writer.getBuffer();
 
-				// Do unitary postprocessing.
-				status.setProcessingType(BundleProcessingStatus.FILE_PROCESSING_TYPE);
-				bundleData.append(executeUnitaryPostProcessing(bundle, status, buffer, this.unitaryPostProcessor));
+					if (!buffer.toString().endsWith(StringUtils.STR_LINE_FEED)) {
+						buffer.append(StringUtils.STR_LINE_FEED);
+					}
+
+					// Do unitary postprocessing.
+					status.setProcessingType(BundleProcessingStatus.FILE_PROCESSING_TYPE);
+					bytesIn = buffer.length();
+					StringBuffer processedContent = executeUnitaryPostProcessing(bundle, status, buffer,
+							this.unitaryPostProcessor);
+					bundleData.append(processedContent);
+					if (sharedContentKey != null) {
+						status.putSharedResourceContent(sharedContentKey, processedContent.toString());
+					}
+					bytesOut = processedContent.length();
+				} finally {
+					stopProfiling(span, bytesIn, bytesOut);
+				}
 			}
 
 			// Post process bundle as needed
@@ -1395,6 +1930,35 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 		return bundleContent;
 	}
 
+	/**
+	 * Checks if the processed content of the bundle members can be shared
+	 * between the variants of the bundle. The paths of the members generated
+	 * by a variant generator already contain their variant, so the members
+	 * can be shared as long as the unitary postprocessor doesn't depend on the
+	 * variant, and the postprocessors are not searching for variants.
+	 * 
+	 * @param bundle
+	 *            the bundle
+	 * @param status
+	 *            the bundle processing status
+	 * @param defaultPostProcessor
+	 *            the default unitary postprocessor
+	 * @return true if the processed content of the bundle members can be
+	 *         shared between the variants
+	 */
+	private boolean isInvariantContentShared(JoinableResourceBundle bundle, BundleProcessingStatus status,
+			ResourceBundlePostProcessor defaultPostProcessor) {
+
+		if (!config.isShareInvariantContent() || status.isSearchingPostProcessorVariants()) {
+			return false;
+		}
+
+		ResourceBundlePostProcessor unitaryProcessor = bundle.getUnitaryPostProcessor() != null
+				? bundle.getUnitaryPostProcessor() : defaultPostProcessor;
+		return unitaryProcessor == null || (unitaryProcessor instanceof ChainedResourceBundlePostProcessor
+				&& !((ChainedResourceBundlePostProcessor) unitaryProcessor).isVariantPostProcessor());
+	}
+
 	/**
 	 * Executes the unitary resource post processing
 	 * 
@@ -1585,4 +2149,55 @@ public class ResourceBundlesHandlerImpl implements ResourceBundlesHandler {
 		this.lifeCycleListeners.addAll(listeners);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.bundle.handler.ResourceBundlesHandler#
+	 * addBundlingProcessLifeCycleListener(net.jawr.web.resource.bundle.
+	 * lifecycle.BundlingProcessLifeCycleListener)
+	 */
+	@Override
+	public void addBundlingProcessLifeCycleListener(BundlingProcessLifeCycleListener listener) {
+		this.lifeCycleListeners.add(listener);
+	}
+
+	/**
+	 * This class defines the unit of work building a bundle
+	 * 
+	 * @author Ibrahim Chaehoi
+	 */
+	private class BundleBuildUnit extends GlobalProcessingUnit {
+
+		/** The bundle to build */
+		private final JoinableResourceBundle bundle;
+
+		/** The stop watch, or null */
+		private final StopWatch stopWatch;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param bundle
+		 *            the bundle to build
+		 * @param stopWatch
+		 *            the stop watch, or null
+		 */
+		public BundleBuildUnit(JoinableResourceBundle bundle, StopWatch stopWatch) {
+			super(bundle.getId());
+			this.bundle = bundle;
+			this.stopWatch = stopWatch;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see net.jawr.web.resource.bundle.global.processor.
+		 * GlobalProcessingUnit#process()
+		 */
+		@Override
+		public void process() {
+			buildBundle(bundle, stopWatch);
+		}
+	}
+
 }
@@ -24,6 +24,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -46,6 +47,7 @@ import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolver
 import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolverFactory;
 import net.jawr.web.resource.bundle.generator.variant.VariantResourceGenerator;
 import net.jawr.web.resource.bundle.locale.message.MessageBundleScriptCreator;
+import net.jawr.web.resource.bundle.locale.message.MessageCatalog;
 import net.jawr.web.resource.bundle.mappings.FilePathMapping;
 import net.jawr.web.resource.bundle.mappings.PathMapping;
 import net.jawr.web.resource.bundle.variant.VariantSet;
@@ -89,6 +91,9 @@ public class ResourceBundleMessagesGenerator extends AbstractJavascriptGenerator
 	/** The cache for the list of available locale per resource */
 	private final Map<String, List<String>> cachedAvailableLocalePerResource = new ConcurrentHashMap<>();
 
+	/** The precompiled message catalogs per resource bundle name */
+	private final Map<String, MessageCatalog> messageCatalogs = new ConcurrentHashMap<>();
+
 	/** The message bundle control */
 	protected MessageBundleControl control;
 
@@ -110,6 +115,16 @@ public class ResourceBundleMessagesGenerator extends AbstractJavascriptGenerator
 	public void beforeBundlingProcess() {
 		super.beforeBundlingProcess();
 		cachedAvailableLocalePerResource.clear();
+
+		// The catalogs are kept from one bundling process to another, only
+		// the ones for which a localized file has been added are dropped.
+		// The modified files are checked when the catalogs are used.
+		Iterator<MessageCatalog> catalogs = messageCatalogs.values().iterator();
+		while (catalogs.hasNext()) {
+			if (catalogs.next().hasNewResourceBundles()) {
+				catalogs.remove();
+			}
+		}
 	}
 
 	/*
@@ -132,6 +147,7 @@ public class ResourceBundleMessagesGenerator extends AbstractJavascriptGenerator
 		Charset charset = Charset.forName(charsetName);
 
 		control = new MessageBundleControl(fallbackToSystemLocale, charset);
+		messageCatalogs.clear();
 	}
 
 	/*
@@ -158,7 +174,33 @@ public class ResourceBundleMessagesGenerator extends AbstractJavascriptGenerator
 
 		MessageBundleScriptCreator creator = new MessageBundleScriptCreator(context, control);
 		addLinkedResources(path, context);
-		return creator.createScript(context.getCharset());
+		return creator.createScript(getMessageCatalogs(path, context));
+	}
+
+	/**
+	 * Returns the message catalogs of the resource bundles defined in the
+	 * path. The catalogs are shared by all the locales, and are reloaded only
+	 * if one of the resource bundle they have loaded has been modified.
+	 * 
+	 * @param path
+	 *            the resource path
+	 * @param context
+	 *            the generator context
+	 * @return the message catalogs
+	 */
+	protected List<MessageCatalog> getMessageCatalogs(String path, GeneratorContext context) {
+
+		List<MessageCatalog> catalogs = new ArrayList<>();
+		String[] names = path.split(RESOURCE_BUNDLE_SEPARATOR);
+		for (String name : names) {
+			MessageCatalog catalog = messageCatalogs.get(name);
+			if (catalog == null || checkResourcesModified(context, catalog.getFileMappings())) {
+				catalog = new MessageCatalog(name, control);
+				messageCatalogs.put(name, catalog);
+			}
+			catalogs.add(catalog);
+		}
+		return catalogs;
 	}
 
 	/**
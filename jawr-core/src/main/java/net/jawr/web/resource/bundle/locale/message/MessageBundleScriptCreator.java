@@ -24,7 +24,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.MissingResourceException;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
@@ -154,37 +154,22 @@ public class MessageBundleScriptCreator {
 	}
 
 	/**
-	 * Create the message resource bundles specified and uses a
-	 * BundleStringJsonifier to generate the properties.
+	 * Creates the script from the precompiled message catalogs
 	 * 
-	 * @param charset
-	 *            the charset
+	 * @param catalogs
+	 *            the message catalogs of the resource bundles
 	 * @return the script
 	 */
-	public Reader createScript(Charset charset) {
+	public Reader createScript(List<MessageCatalog> catalogs) {
 
-		String[] names = configParam.split("\\|");
 		Properties props = new Properties();
-
 		Locale currentLocale = getLocaleToApply();
-
-		for (int x = 0; x < names.length; x++) {
-
-			ResourceBundle bundle;
-
-			try {
-				bundle = ResourceBundle.getBundle(names[x], currentLocale, control);
-			} catch (MissingResourceException ex) {
-				// Fixes problems with some servers, e.g. WLS 10
-				try {
-					bundle = ResourceBundle.getBundle(names[x], currentLocale, getClass().getClassLoader(), control);
-				} catch (Exception e) {
-					bundle = ResourceBundle.getBundle(names[x], currentLocale,
-							Thread.currentThread().getContextClassLoader(), control);
+		for (MessageCatalog catalog : catalogs) {
+			for (Map.Entry<String, String> entry : catalog.getMessages(currentLocale).entrySet()) {
+				if (matchesFilter(entry.getKey())) {
+					props.put(entry.getKey(), entry.getValue());
 				}
 			}
-
-			updateProperties(bundle, props, charset);
 		}
 		return doCreateScript(props);
 	}
@@ -0,0 +1,444 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.locale.message;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.exception.BundlingProcessException;
+import net.jawr.web.resource.bundle.locale.MessageBundleControl;
+import net.jawr.web.resource.bundle.mappings.FilePathMapping;
+import net.jawr.web.util.FileUtils;
+
+/**
+ * This class defines a precompiled message catalog for a resource bundle
+ * family (a base name and all its localized properties files).
+ *
+ * Each localized resource bundle is loaded only once. The message keys are
+ * stored in a dictionary shared by all the locales of the family, and each
+ * locale only stores the messages which differ from its parent locale. The
+ * messages of any locale are then resolved from this compact form, following
+ * the same fallback rules as {@link ResourceBundle#getBundle(String, Locale, ResourceBundle.Control)}.
+ *
+ * The resource bundles are looked up with the class loader of Jawr first, and
+ * then with the context class loader of the current thread, which is the
+ * fallback order used to fix the issues with some servers, e.g. WLS 10. As
+ * each localized resource bundle is loaded on its own, the class loaders are
+ * tried for each locale, instead of once for the whole chain of parent
+ * bundles.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class MessageCatalog {
+
+	/** The base name of the resource bundle */
+	private final String baseName;
+
+	/** The message bundle control */
+	private final MessageBundleControl control;
+
+	/**
+	 * The class loaders used to retrieve the resource bundles, in the order
+	 * in which they are tried
+	 */
+	private final ClassLoader[] classLoaders;
+
+	/** The shared dictionary of message keys */
+	private final List<String> keys = new ArrayList<>();
+
+	/** The index of the message keys in the dictionary */
+	private final Map<String, Integer> keyIndex = new HashMap<>();
+
+	/** The localized messages defined for each locale */
+	private final Map<Locale, LocaleMessages> localeMessages = new HashMap<>();
+
+	/** The file path mappings of the loaded resource bundles */
+	private final List<FilePathMapping> fileMappings = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param baseName
+	 *            the resource bundle base name
+	 * @param control
+	 *            the message bundle control
+	 */
+	public MessageCatalog(String baseName, MessageBundleControl control) {
+		this.baseName = baseName;
+		this.control = control;
+		this.classLoaders = new ClassLoader[] { MessageCatalog.class.getClassLoader(),
+				Thread.currentThread().getContextClassLoader() };
+	}
+
+	/**
+	 * Returns the base name of the resource bundle
+	 *
+	 * @return the base name of the resource bundle
+	 */
+	public String getBaseName() {
+		return baseName;
+	}
+
+	/**
+	 * Returns the file path mappings of the resource bundles loaded by this
+	 * catalog. These mappings are used to check if the catalog is still
+	 * valid.
+	 *
+	 * @return the file path mappings of the loaded resource bundles
+	 */
+	public List<FilePathMapping> getFileMappings() {
+		return fileMappings;
+	}
+
+	/**
+	 * Returns true if a properties file has been added since the catalog has
+	 * been loaded, for one of the locales which had no resource bundle.
+	 *
+	 * @return true if a properties file has been added
+	 */
+	public synchronized boolean hasNewResourceBundles() {
+
+		for (LocaleMessages messages : localeMessages.values()) {
+			if (!messages.isDefined() && getResource(messages.getLocale()) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the messages for the locale. The messages are resolved using the
+	 * same rules as the ResourceBundle mechanism.
+	 *
+	 * @param locale
+	 *            the locale
+	 * @return the map of messages
+	 * @throws MissingResourceException
+	 *             if no resource bundle has been found for the locale
+	 */
+	public synchronized Map<String, String> getMessages(Locale locale) {
+
+		LocaleMessages messages = resolve(locale);
+		if (messages == null) {
+			throw new MissingResourceException(
+					"Can't find bundle for base name " + baseName + ", locale " + locale, baseName + "_" + locale,
+					"");
+		}
+
+		String[] values = new String[keys.size()];
+		messages.fill(values);
+
+		Map<String, String> result = new LinkedHashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				result.put(keys.get(i), values[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the localized messages to use for the locale.
+	 *
+	 * @param locale
+	 *            the requested locale
+	 * @return the localized messages or null if no resource bundle has been
+	 *         found
+	 */
+	private LocaleMessages resolve(Locale locale) {
+
+		LocaleMessages found = null;
+		List<Locale> candidates = control.getCandidateLocales(baseName, locale);
+		for (Locale candidate : candidates) {
+			LocaleMessages messages = getLocaleMessages(candidate);
+			if (messages.isDefined()) {
+				found = messages;
+				break;
+			}
+		}
+
+		// The base bundle is only used if the requested locale is the root
+		// locale, or if no bundle has been found for the fallback locale
+		boolean useFallback = found == null
+				|| (found.isBase() && !locale.equals(Locale.ROOT) && candidates.size() > 1);
+		if (useFallback) {
+			Locale fallbackLocale = control.getFallbackLocale(baseName, locale);
+			if (fallbackLocale != null && !fallbackLocale.equals(locale)) {
+				LocaleMessages fallback = resolve(fallbackLocale);
+				if (fallback != null && (found == null || !fallback.isBase())) {
+					found = fallback;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the localized messages for the locale, and loads them if needed
+	 *
+	 * @param locale
+	 *            the locale
+	 * @return the localized messages
+	 */
+	private LocaleMessages getLocaleMessages(Locale locale) {
+
+		LocaleMessages messages = localeMessages.get(locale);
+		if (messages == null) {
+
+			LocaleMessages parent = null;
+			List<Locale> candidates = control.getCandidateLocales(baseName, locale);
+			if (candidates.size() > 1) {
+				parent = getLocaleMessages(candidates.get(1));
+			}
+
+			messages = new LocaleMessages(locale, parent);
+			ResourceBundle bundle = loadBundle(locale);
+			if (bundle != null) {
+				messages.setMessages(bundle, keys.size());
+			}
+			localeMessages.put(locale, messages);
+		}
+		return messages;
+	}
+
+	/**
+	 * Loads the resource bundle of the locale only (without its parents)
+	 *
+	 * @param locale
+	 *            the locale
+	 * @return the resource bundle or null if it doesn't exist
+	 */
+	private ResourceBundle loadBundle(Locale locale) {
+
+		ResourceBundle bundle = null;
+		for (ClassLoader loader : classLoaders) {
+			if (loader == null) {
+				continue;
+			}
+			for (String format : control.getFormats(baseName)) {
+				try {
+					bundle = control.newBundle(baseName, locale, format, loader, false);
+				} catch (IllegalAccessException | InstantiationException | IOException e) {
+					throw new BundlingProcessException(
+							"Unable to load the resource bundle '" + baseName + "' for locale '" + locale + "'", e);
+				}
+				if (bundle != null) {
+					if (format.equals("java.properties")) {
+						addFileMapping(locale, loader);
+					}
+					return bundle;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the file path mapping of the properties file of the resource bundle
+	 * if it is available on the file system.
+	 *
+	 * @param locale
+	 *            the locale
+	 * @param loader
+	 *            the class loader
+	 */
+	private void addFileMapping(Locale locale, ClassLoader loader) {
+
+		URL url = loader.getResource(getResourceName(locale));
+		if (url != null && url.toString().startsWith(JawrConstant.FILE_URL_PREFIX)) {
+			File f = FileUtils.urlToFile(url);
+			fileMappings.add(new FilePathMapping(f.getAbsolutePath(), f.lastModified()));
+		}
+	}
+
+	/**
+	 * Returns the URL of the properties file of the locale
+	 *
+	 * @param locale
+	 *            the locale
+	 * @return the URL of the properties file or null if it doesn't exist
+	 */
+	private URL getResource(Locale locale) {
+
+		String resourceName = getResourceName(locale);
+		for (ClassLoader loader : classLoaders) {
+			if (loader != null) {
+				URL url = loader.getResource(resourceName);
+				if (url != null) {
+					return url;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the name of the properties file of the locale
+	 *
+	 * @param locale
+	 *            the locale
+	 * @return the name of the properties file
+	 */
+	private String getResourceName(Locale locale) {
+		return control.toResourceName(control.toBundleName(baseName, locale), "properties");
+	}
+
+	/**
+	 * Returns the index of the key in the shared dictionary, the key is added
+	 * to the dictionary if needed.
+	 *
+	 * @param key
+	 *            the message key
+	 * @return the index of the key
+	 */
+	private int getKeyIndex(String key) {
+		Integer idx = keyIndex.get(key);
+		if (idx == null) {
+			idx = keys.size();
+			keys.add(key);
+			keyIndex.put(key, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * This class holds the messages of a locale which differ from the
+	 * messages of its parent locale.
+	 *
+	 * @author Ibrahim Chaehoi
+	 */
+	private class LocaleMessages {
+
+		/** The locale */
+		private final Locale locale;
+
+		/** The parent messages */
+		private final LocaleMessages parent;
+
+		/** The flag indicating if a resource bundle exists for the locale */
+		private boolean defined;
+
+		/** The indexes of the keys in the shared dictionary */
+		private int[] keyIndexes = new int[0];
+
+		/** The message values */
+		private String[] values = new String[0];
+
+		/**
+		 * Constructor
+		 *
+		 * @param locale
+		 *            the locale
+		 * @param parent
+		 *            the parent messages
+		 */
+		public LocaleMessages(Locale locale, LocaleMessages parent) {
+			this.locale = locale;
+			this.parent = parent;
+		}
+
+		/**
+		 * Returns the locale
+		 *
+		 * @return the locale
+		 */
+		public Locale getLocale() {
+			return locale;
+		}
+
+		/**
+		 * Returns true if a resource bundle exists for the locale
+		 *
+		 * @return true if a resource bundle exists for the locale
+		 */
+		public boolean isDefined() {
+			return defined;
+		}
+
+		/**
+		 * Returns true if the messages are the one of the base bundle
+		 *
+		 * @return true if the messages are the one of the base bundle
+		 */
+		public boolean isBase() {
+			return Locale.ROOT.equals(locale);
+		}
+
+		/**
+		 * Sets the messages of the resource bundle, only the messages which
+		 * differ from the parent locale are stored.
+		 *
+		 * @param bundle
+		 *            the resource bundle
+		 * @param nbKeys
+		 *            the current number of keys in the dictionary
+		 */
+		public void setMessages(ResourceBundle bundle, int nbKeys) {
+
+			defined = true;
+			String[] parentValues = new String[nbKeys];
+			if (parent != null) {
+				parent.fill(parentValues);
+			}
+
+			List<Integer> deltaKeys = new ArrayList<>();
+			List<String> deltaValues = new ArrayList<>();
+			for (Enumeration<String> bundleKeys = bundle.getKeys(); bundleKeys.hasMoreElements();) {
+				String key = bundleKeys.nextElement();
+				String value = bundle.getString(key);
+				int idx = getKeyIndex(key);
+				if (idx >= parentValues.length || !value.equals(parentValues[idx])) {
+					deltaKeys.add(idx);
+					deltaValues.add(value);
+				}
+			}
+
+			keyIndexes = new int[deltaKeys.size()];
+			for (int i = 0; i < keyIndexes.length; i++) {
+				keyIndexes[i] = deltaKeys.get(i);
+			}
+			values = deltaValues.toArray(new String[deltaValues.size()]);
+		}
+
+		/**
+		 * Fills the array of values with the resolved messages of this locale
+		 *
+		 * @param result
+		 *            the array of values indexed by the key index
+		 */
+		public void fill(String[] result) {
+			if (parent != null) {
+				parent.fill(result);
+			}
+			for (int i = 0; i < keyIndexes.length; i++) {
+				if (keyIndexes[i] < result.length) {
+					result[keyIndexes[i]] = values[i];
+				}
+			}
+		}
+	}
+}
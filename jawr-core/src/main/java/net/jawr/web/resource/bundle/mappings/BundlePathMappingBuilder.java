@@ -15,6 +15,7 @@ package net.jawr.web.resource.bundle.mappings;
 
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +67,12 @@ public class BundlePathMappingBuilder {
 	/** The list of path mappings */
 	private List<String> strPathMappings;
 
+	/** The bundle path mapping whose file paths are indexed */
+	private BundlePathMapping indexedPathMapping;
+
+	/** The index of the file paths of the bundle path mapping */
+	private Set<String> indexedFilePaths;
+
 	/**
 	 * Constructor
 	 * 
@@ -116,6 +123,7 @@ public class BundlePathMappingBuilder {
 			LOGGER.debug("Creating bundle path List for " + this.bundle.getId());
 		}
 
+		invalidateFilePathIndex();
 		BundlePathMapping bundlePathMapping = new BundlePathMapping(this.bundle);
 		bundlePathMapping.setPathMappings(strPathMappings);
 		List<PathMapping> pathMappings = bundlePathMapping.getPathMappings();
@@ -190,23 +198,42 @@ public class BundlePathMappingBuilder {
 	 *            the path mapping to add
 	 */
 	protected void addFilePathMapping(BundlePathMapping bundlePathMapping, String pathMapping) {
-		long timestamp = 0;
 		String filePath = resourceReaderHandler.getFilePath(pathMapping);
-		if (filePath != null) {
-			timestamp = resourceReaderHandler.getLastModified(filePath);
-			List<FilePathMapping> filePathMappings = bundlePathMapping.getFilePathMappings();
-			boolean found = false;
-			for (FilePathMapping filePathMapping : filePathMappings) {
-				if (filePathMapping.getPath().equals(filePath)) {
-					found = true;
-					break;
-				}
-			}
-			if (!found) {
-				filePathMappings.add(new FilePathMapping(bundle, filePath, timestamp));
+		if (filePath != null && getIndexedFilePaths(bundlePathMapping).add(filePath)) {
+			long timestamp = resourceReaderHandler.getLastModified(filePath);
+			bundlePathMapping.getFilePathMappings().add(new FilePathMapping(bundle, filePath, timestamp));
+		}
+	}
+
+	/**
+	 * Returns the index of the file paths of the bundle path mapping. The
+	 * index is built from the file path mappings the first time a bundle path
+	 * mapping is used, and is then updated by this builder.
+	 * 
+	 * @param bundlePathMapping
+	 *            the bundle path mapping
+	 * @return the set of the file paths
+	 */
+	private Set<String> getIndexedFilePaths(BundlePathMapping bundlePathMapping) {
+
+		if (indexedPathMapping != bundlePathMapping) {
+			indexedPathMapping = bundlePathMapping;
+			indexedFilePaths = new HashSet<>();
+			for (FilePathMapping filePathMapping : bundlePathMapping.getFilePathMappings()) {
+				indexedFilePaths.add(filePathMapping.getPath());
 			}
 		}
+		return indexedFilePaths;
+	}
 
+	/**
+	 * Invalidates the index of the file paths. This must be called when the
+	 * file path mappings of the bundle path mapping are updated outside of
+	 * {@link #addFilePathMapping(BundlePathMapping, String)}.
+	 */
+	protected void invalidateFilePathIndex() {
+		indexedPathMapping = null;
+		indexedFilePaths = null;
 	}
 
 	/**
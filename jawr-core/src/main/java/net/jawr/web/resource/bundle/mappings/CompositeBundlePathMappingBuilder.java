@@ -56,6 +56,7 @@ public class CompositeBundlePathMappingBuilder extends BundlePathMappingBuilder
 	@Override
 	public BundlePathMapping build(List<String> strPathMappings) {
 
+		invalidateFilePathIndex();
 		BundlePathMapping bundlePathMapping = new BundlePathMapping(bundle);
 		for (JoinableResourceBundle child : ((CompositeResourceBundle) bundle).getChildBundles()) {
 			if (!child.getInclusionPattern().isIncludeOnlyOnDebug()) {
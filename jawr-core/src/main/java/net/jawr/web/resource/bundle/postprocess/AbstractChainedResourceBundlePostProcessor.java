@@ -16,6 +16,8 @@ package net.jawr.web.resource.bundle.postprocess;
 import java.io.IOException;
 
 import net.jawr.web.exception.BundlingProcessException;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
+import net.jawr.web.resource.bundle.variant.VariantUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,7 +95,20 @@ public abstract class AbstractChainedResourceBundlePostProcessor implements Chai
 		try {
 			if (LOGGER.isDebugEnabled())
 				LOGGER.debug("postprocessing bundle:" + status.getCurrentBundle().getId());
-			processedBundle = doPostProcessBundle(status, bundleData);
+			BundlingProfiler profiler = status.getJawrConfig() != null ? status.getJawrConfig().getBundlingProfiler()
+					: null;
+			if (profiler != null) {
+				BundlingProfiler.Span span = profiler.start(BundlingProfiler.POSTPROCESSOR_CATEGORY, id,
+						status.getCurrentBundle().getId(), VariantUtils.getVariantKey(status.getBundleVariants()));
+				int bytesIn = bundleData.length();
+				try {
+					processedBundle = doPostProcessBundle(status, bundleData);
+				} finally {
+					profiler.stop(span, bytesIn, processedBundle == null ? -1 : processedBundle.length());
+				}
+			} else {
+				processedBundle = doPostProcessBundle(status, bundleData);
+			}
 		} catch (IOException e) {
 			throw new BundlingProcessException("Unexpected IOException during execution of a postprocessor.", e);
 		}
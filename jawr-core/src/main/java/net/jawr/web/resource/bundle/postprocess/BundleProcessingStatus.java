@@ -68,6 +68,12 @@ public class BundleProcessingStatus {
 	/** The processing type (bundle, file) */
 	private String processingType;
 
+	/**
+	 * The processed content of the bundle members which are shared between
+	 * the variants
+	 */
+	private Map<String, String> sharedResourceContents = new HashMap<>();
+
 	/**
 	 * Constructor
 	 * 
@@ -105,6 +111,7 @@ public class BundleProcessingStatus {
 		this.bundleVariants = status.bundleVariants;
 		this.lastPathAdded = status.lastPathAdded;
 		this.searchingPostProcessorVariants = status.searchingPostProcessorVariants;
+		this.sharedResourceContents = status.sharedResourceContents;
 	}
 
 	/**
@@ -276,6 +283,31 @@ public class BundleProcessingStatus {
 		dataMap.put(key, value);
 	}
 
+	/**
+	 * Returns the processed content of a bundle member shared between the
+	 * variants
+	 * 
+	 * @param key
+	 *            the key of the bundle member
+	 * @return the processed content, or null if it has not been stored
+	 */
+	public String getSharedResourceContent(String key) {
+		return sharedResourceContents.get(key);
+	}
+
+	/**
+	 * Stores the processed content of a bundle member, which will be shared
+	 * between the variants
+	 * 
+	 * @param key
+	 *            the key of the bundle member
+	 * @param content
+	 *            the processed content
+	 */
+	public void putSharedResourceContent(String key, String content) {
+		sharedResourceContents.put(key, content);
+	}
+
 	/**
 	 * Gets the data from its key
 	 * 
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.postprocess.impl.css.base64;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class defines the cache of the base64 encoded images. The cache is
+ * shared by all the CSS bundles, all the variants and all the rebuilds of the
+ * application. The images are identified by their file path and their last
+ * modification date, so a modified image will be encoded again, while the
+ * outdated entry will be evicted from the cache once the maximum number of
+ * entries is reached (least recently used entries are evicted first). The
+ * images which are too large to be encoded are also recorded, so their size
+ * is not checked again.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class Base64ImageCache {
+
+	/** The servlet context attribute name of the cache */
+	private static final String BASE64_IMAGE_CACHE_ATTRIBUTE = "JAWR.BASE64.IMAGE.CACHE";
+
+	/** The default maximum number of entries */
+	private static final int DEFAULT_MAX_ENTRIES = 500;
+
+	/** The map of encoded images */
+	private final Map<String, CachedImage> encodedImages;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxEntries
+	 *            the maximum number of entries in the cache
+	 */
+	public Base64ImageCache(final int maxEntries) {
+		this.encodedImages = new LinkedHashMap<String, CachedImage>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 2915744393405539218L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedImage> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the base64 image cache associated to the servlet context of the
+	 * Jawr config. The cache is created if it doesn't exist yet.
+	 *
+	 * @param config
+	 *            the Jawr config
+	 * @return the base64 image cache
+	 */
+	public static Base64ImageCache getInstance(JawrConfig config) {
+
+		ServletContext context = config.getContext();
+		synchronized (context) {
+			Base64ImageCache cache = (Base64ImageCache) context.getAttribute(BASE64_IMAGE_CACHE_ATTRIBUTE);
+			if (cache == null) {
+				int maxEntries = DEFAULT_MAX_ENTRIES;
+				String strMaxEntries = config.getProperty(JawrConstant.BASE64_IMG_CACHE_MAX_ENTRIES);
+				if (StringUtils.isNotEmpty(strMaxEntries)) {
+					maxEntries = Integer.parseInt(strMaxEntries);
+				}
+				cache = new Base64ImageCache(maxEntries);
+				context.setAttribute(BASE64_IMAGE_CACHE_ATTRIBUTE, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the key of the image in the cache
+	 *
+	 * @param filePath
+	 *            the file path of the image
+	 * @param lastModified
+	 *            the last modification date of the image
+	 * @return the key of the image
+	 */
+	private String getKey(String filePath, long lastModified) {
+		return filePath + "@" + lastModified;
+	}
+
+	/**
+	 * Returns the base64 encoded image or null if the image is not in the
+	 * cache
+	 *
+	 * @param filePath
+	 *            the file path of the image
+	 * @param lastModified
+	 *            the last modification date of the image
+	 * @return the base64 encoded image
+	 */
+	public synchronized String get(String filePath, long lastModified) {
+		CachedImage image = encodedImages.get(getKey(filePath, lastModified));
+		return image == null ? null : image.base64Encoding;
+	}
+
+	/**
+	 * Checks if the image has already been found too large to be encoded
+	 *
+	 * @param filePath
+	 *            the file path of the image
+	 * @param lastModified
+	 *            the last modification date of the image
+	 * @param maxFileSize
+	 *            the maximum image file size authorized to be encoded
+	 * @return true if the image is known to exceed the maximum file size
+	 */
+	public synchronized boolean isTooLarge(String filePath, long lastModified, long maxFileSize) {
+		CachedImage image = encodedImages.get(getKey(filePath, lastModified));
+		return image != null && image.base64Encoding == null && image.size > maxFileSize;
+	}
+
+	/**
+	 * Stores the base64 encoded image in the cache
+	 *
+	 * @param filePath
+	 *            the file path of the image
+	 * @param lastModified
+	 *            the last modification date of the image
+	 * @param base64Encoding
+	 *            the base64 encoded image
+	 */
+	public synchronized void put(String filePath, long lastModified, String base64Encoding) {
+		encodedImages.put(getKey(filePath, lastModified), new CachedImage(-1, base64Encoding));
+	}
+
+	/**
+	 * Records that the image is too large to be encoded
+	 *
+	 * @param filePath
+	 *            the file path of the image
+	 * @param lastModified
+	 *            the last modification date of the image
+	 * @param size
+	 *            the size of the image
+	 */
+	public synchronized void putTooLarge(String filePath, long lastModified, long size) {
+		encodedImages.put(getKey(filePath, lastModified), new CachedImage(size, null));
+	}
+
+	/**
+	 * Clears the cache
+	 */
+	public synchronized void clear() {
+		encodedImages.clear();
+	}
+
+	/**
+	 * Returns the number of entries in the cache
+	 *
+	 * @return the number of entries in the cache
+	 */
+	public synchronized int size() {
+		return encodedImages.size();
+	}
+
+	/**
+	 * A cached image, which is either encoded or too large to be encoded
+	 */
+	private static class CachedImage {
+
+		/** The size of the image, or -1 if it is not known */
+		private final long size;
+
+		/** The base64 encoded image, or null if the image is too large */
+		private final String base64Encoding;
+
+		/**
+		 * Constructor
+		 *
+		 * @param size
+		 *            the size of the image
+		 * @param base64Encoding
+		 *            the base64 encoded image
+		 */
+		private CachedImage(long size, String base64Encoding) {
+			this.size = size;
+			this.base64Encoding = base64Encoding;
+		}
+	}
+}
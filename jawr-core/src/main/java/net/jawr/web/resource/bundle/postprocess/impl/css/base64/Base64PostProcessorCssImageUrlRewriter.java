@@ -13,7 +13,7 @@
  */
 package net.jawr.web.resource.bundle.postprocess.impl.css.base64;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
@@ -28,11 +28,11 @@ import net.jawr.web.JawrConstant;
 import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.BinaryResourcesHandler;
 import net.jawr.web.resource.FileNameUtils;
-import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.factory.util.RegexUtil;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
 import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
 import net.jawr.web.resource.bundle.postprocess.impl.PostProcessorCssImageUrlRewriter;
+import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import net.jawr.web.servlet.util.MIMETypesSupport;
 import net.jawr.web.util.Base64Encoder;
 import net.jawr.web.util.StringUtils;
@@ -95,6 +95,9 @@ public class Base64PostProcessorCssImageUrlRewriter extends PostProcessorCssImag
 	/** The map of encoded resources */
 	private Map<String, Base64EncodedResource> encodedResources = null;
 
+	/** The shared cache of base64 encoded images */
+	private final Base64ImageCache imageCache;
+
 	/** The flag which determine if we must encode by default or not */
 	private final boolean encodeByDefault;
 
@@ -116,6 +119,7 @@ public class Base64PostProcessorCssImageUrlRewriter extends PostProcessorCssImag
 		this.browser = status.getVariant(JawrConstant.BROWSER_VARIANT_TYPE);
 
 		encodedResources = (Map<String, Base64EncodedResource>) status.getData(JawrConstant.BASE64_ENCODED_RESOURCES);
+		imageCache = Base64ImageCache.getInstance(status.getJawrConfig());
 		maxFileSize = MAX_LENGTH_FILE;
 		Properties configProperties = status.getJawrConfig().getConfigProperties();
 		String maxLengthProperty = (String) configProperties.get(JawrConstant.BASE64_MAX_IMG_FILE_SIZE);
@@ -243,27 +247,16 @@ public class Base64PostProcessorCssImageUrlRewriter extends PostProcessorCssImag
 
 			LOGGER.info("Encoding resource: " + url);
 			try {
-				InputStream is = binaryRsHandler.getRsReaderHandler().getResourceAsStream(url);
-
 				String fileExtension = FileNameUtils.getExtension(url);
 				String fileMimeType = (String) MIMETypesSupport.getSupportedProperties(this).get(fileExtension);
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				IOUtils.copy(is, out, true);
-
-				int size = out.size();
-				if (size > maxFileSize) { // Check file size
-
-					LOGGER.warn("File content length of '" + url + "' exceeds maximum file length: " + size + " > "
-							+ maxFileSize);
-				} else {
+				String base64Encoding = getBase64Encoding(url, binaryRsHandler.getRsReaderHandler());
 
-					byte[] data = out.toByteArray();
-					StringBuffer s = new StringBuffer(encodeInBase64(data));
+				if (base64Encoding != null) {
 
 					Base64EncodedResource encodedImage = new Base64EncodedResource();
 					encodedImage.setId(url.hashCode());
 					encodedImage.setType(fileMimeType);
-					encodedImage.setBase64Encoding(s);
+					encodedImage.setBase64Encoding(new StringBuffer(base64Encoding));
 
 					encodedResources.put(encodedImage.getId(), encodedImage);
 
@@ -279,7 +272,7 @@ public class Base64PostProcessorCssImageUrlRewriter extends PostProcessorCssImag
 						imgUrl = MHTML_PREFIX + JawrConstant.JAWR_BUNDLE_PATH_PLACEHOLDER + "!" + encodedImage.getId();
 
 					} else {
-						imgUrl = DATA_PREFIX + fileMimeType + ";base64," + s;
+						imgUrl = DATA_PREFIX + fileMimeType + ";base64," + base64Encoding;
 					}
 				}
 			} catch (IOException e) {
@@ -296,13 +289,69 @@ public class Base64PostProcessorCssImageUrlRewriter extends PostProcessorCssImag
 	}
 
 	/**
-	 * Encodes the data in base64
+	 * Returns the base64 encoding of the image. The encoded image is retrieved
+	 * from the shared base64 image cache if the image has already been encoded
+	 * for another bundle or variant and has not been modified since. The size
+	 * of the image files is checked before they are read, and the images
+	 * which are too large are recorded in the cache.
 	 * 
-	 * @param data
-	 *            the byte array of data to encode
-	 * @return the base64 encoded string of the data
+	 * @param url
+	 *            the image url
+	 * @param rsReaderHandler
+	 *            the resource reader handler
+	 * @return the base64 encoded image or null if the image size exceeds the
+	 *         maximum file size
+	 * @throws ResourceNotFoundException
+	 *             if the resource is not found
+	 * @throws IOException
+	 *             if an IOException occurs
 	 */
-	private String encodeInBase64(byte[] data) {
-		return new String(Base64Encoder.encode(data));
+	private String getBase64Encoding(String url, ResourceReaderHandler rsReaderHandler)
+			throws ResourceNotFoundException, IOException {
+
+		// Only the resources available on the file system are cached,
+		// generated resources are encoded each time
+		String filePath = rsReaderHandler.getFilePath(url);
+		long lastModified = 0;
+		if (filePath != null) {
+			lastModified = rsReaderHandler.getLastModified(filePath);
+			String base64Encoding = imageCache.get(filePath, lastModified);
+			if (base64Encoding != null) {
+				return base64Encoding;
+			}
+			if (imageCache.isTooLarge(filePath, lastModified, maxFileSize)) {
+				return null;
+			}
+
+			// Check the file size before reading and encoding the image
+			long length = new File(filePath).length();
+			if (length > maxFileSize) {
+				LOGGER.warn("File content length of '" + url + "' exceeds maximum file length: " + length + " > "
+						+ maxFileSize);
+				imageCache.putTooLarge(filePath, lastModified, length);
+				return null;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		long size = 0;
+		try (InputStream is = rsReaderHandler.getResourceAsStream(url)) {
+			size = Base64Encoder.encode(is, sb);
+		}
+
+		String base64Encoding = null;
+		if (size > maxFileSize) { // Check file size
+			LOGGER.warn("File content length of '" + url + "' exceeds maximum file length: " + size + " > "
+					+ maxFileSize);
+			if (filePath != null) {
+				imageCache.putTooLarge(filePath, lastModified, size);
+			}
+		} else {
+			base64Encoding = sb.toString();
+			if (filePath != null) {
+				imageCache.put(filePath, lastModified, base64Encoding);
+			}
+		}
+		return base64Encoding;
 	}
 }
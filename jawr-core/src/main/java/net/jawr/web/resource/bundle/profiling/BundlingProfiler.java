@@ -0,0 +1,539 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.profiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.resource.bundle.generator.JavascriptStringUtil;
+import net.jawr.web.resource.bundle.lifecycle.BundlingProcessLifeCycleListener;
+import net.jawr.web.util.FileUtils;
+
+/**
+ * This class collects the profile of the bundling process : for each bundle,
+ * variant, file, post processor, generator and global processor, it records
+ * the wall time, the CPU time, the allocated bytes and the size of the input
+ * and of the output.
+ *
+ * The profile of the last bundling process is exported in the JSON format and
+ * in the Chrome trace event format (which can be loaded in chrome://tracing),
+ * in the report directory if one is defined.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class BundlingProfiler implements BundlingProcessLifeCycleListener {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BundlingProfiler.class);
+
+	/** The category of the bundle processing phases */
+	public static final String BUNDLE_CATEGORY = "bundle";
+
+	/** The category of the bundle variant processing phases */
+	public static final String VARIANT_CATEGORY = "variant";
+
+	/** The category of the bundle member processing phases */
+	public static final String FILE_CATEGORY = "file";
+
+	/** The category of the post processor phases */
+	public static final String POSTPROCESSOR_CATEGORY = "postprocessor";
+
+	/** The category of the generator phases */
+	public static final String GENERATOR_CATEGORY = "generator";
+
+	/** The category of the global preprocessor phases */
+	public static final String GLOBAL_PREPROCESSOR_CATEGORY = "globalPreprocessor";
+
+	/** The category of the global postprocessor phases */
+	public static final String GLOBAL_POSTPROCESSOR_CATEGORY = "globalPostprocessor";
+
+	/** The file name of the JSON profile */
+	public static final String PROFILE_FILE_NAME = "bundling-profile.json";
+
+	/** The file name of the Chrome trace */
+	public static final String TRACE_FILE_NAME = "bundling-trace.json";
+
+	/** The charset of the reports */
+	private static final Charset REPORT_CHARSET = Charset.forName("UTF-8");
+
+	/** The thread MX bean */
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/** The flag indicating if the thread CPU time is available */
+	private static final boolean CPU_TIME_SUPPORTED = isCpuTimeSupported();
+
+	/** The flag indicating if the thread allocated bytes are available */
+	private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+	/** The resource type */
+	private final String resourceType;
+
+	/** The directory where the reports are written */
+	private volatile String reportDirectory;
+
+	/** The events of the current bundling process */
+	private final Queue<ProfilingEvent> events = new ConcurrentLinkedQueue<>();
+
+	/** The start time of the current bundling process in nanoseconds */
+	private volatile long buildStartNanos = System.nanoTime();
+
+	/** The start date of the current bundling process */
+	private volatile long buildStartDate = System.currentTimeMillis();
+
+	/** The JSON profile of the last bundling process */
+	private volatile String lastProfile;
+
+	/** The Chrome trace of the last bundling process */
+	private volatile String lastTrace;
+
+	/**
+	 * Constructor
+	 *
+	 * @param resourceType
+	 *            the resource type
+	 */
+	public BundlingProfiler(String resourceType) {
+		this.resourceType = resourceType;
+	}
+
+	/**
+	 * Sets the directory where the reports are written
+	 *
+	 * @param reportDirectory
+	 *            the report directory
+	 */
+	public void setReportDirectory(String reportDirectory) {
+		this.reportDirectory = reportDirectory;
+	}
+
+	/**
+	 * Returns the directory where the reports are written
+	 *
+	 * @return the report directory
+	 */
+	public String getReportDirectory() {
+		return reportDirectory;
+	}
+
+	/**
+	 * Starts the measure of a phase
+	 *
+	 * @param category
+	 *            the category of the phase
+	 * @param name
+	 *            the name of the phase
+	 * @param bundle
+	 *            the bundle ID
+	 * @param variant
+	 *            the variant key
+	 * @return the span of the phase, which must be given to
+	 *         {@link #stop(Span, long, long)}
+	 */
+	public Span start(String category, String name, String bundle, String variant) {
+		Thread thread = Thread.currentThread();
+		return new Span(category, name, bundle, variant, System.nanoTime(), getCpuTime(),
+				getAllocatedBytes(thread.getId()));
+	}
+
+	/**
+	 * Stops the measure of a phase and records it
+	 *
+	 * @param span
+	 *            the span returned by
+	 *            {@link #start(String, String, String, String)}
+	 * @param bytesIn
+	 *            the size of the input, or -1 if unknown
+	 * @param bytesOut
+	 *            the size of the output, or -1 if unknown
+	 */
+	public void stop(Span span, long bytesIn, long bytesOut) {
+
+		long endNanos = System.nanoTime();
+		Thread thread = Thread.currentThread();
+		long cpuTime = span.startCpuTime < 0 ? -1 : (getCpuTime() - span.startCpuTime) / 1000;
+		long allocated = span.startAllocatedBytes < 0 ? -1
+				: getAllocatedBytes(thread.getId()) - span.startAllocatedBytes;
+
+		events.add(new ProfilingEvent(span.category, span.name, span.bundle, span.variant, thread.getName(),
+				thread.getId(), (span.startNanos - buildStartNanos) / 1000, (endNanos - span.startNanos) / 1000,
+				cpuTime, allocated, bytesIn, bytesOut));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.resource.bundle.lifecycle.
+	 * BundlingProcessLifeCycleListener#beforeBundlingProcess()
+	 */
+	@Override
+	public void beforeBundlingProcess() {
+		events.clear();
+		buildStartNanos = System.nanoTime();
+		buildStartDate = System.currentTimeMillis();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jawr.web.resource.bundle.lifecycle.
+	 * BundlingProcessLifeCycleListener#afterBundlingProcess()
+	 */
+	@Override
+	public void afterBundlingProcess() {
+
+		long totalWallTime = (System.nanoTime() - buildStartNanos) / 1000;
+		List<ProfilingEvent> snapshot = getEvents();
+		lastProfile = toJson(snapshot, totalWallTime);
+		lastTrace = toChromeTrace(snapshot);
+
+		String dir = reportDirectory;
+		if (dir != null) {
+			try {
+				FileUtils.writeAtomically(new File(dir, PROFILE_FILE_NAME), lastProfile, REPORT_CHARSET);
+				FileUtils.writeAtomically(new File(dir, TRACE_FILE_NAME), lastTrace, REPORT_CHARSET);
+			} catch (IOException e) {
+				LOGGER.warn("Unable to write the bundling profile in '" + dir + "'", e);
+			}
+		}
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Bundling profile for " + resourceType + " resources : " + snapshot.size()
+					+ " phases recorded in " + totalWallTime / 1000 + " ms");
+		}
+	}
+
+	/**
+	 * Returns the events recorded for the current bundling process
+	 *
+	 * @return the events recorded
+	 */
+	public List<ProfilingEvent> getEvents() {
+		return new ArrayList<>(events);
+	}
+
+	/**
+	 * Returns the JSON profile of the last bundling process, or null if no
+	 * bundling process has ended since the profiler has been created
+	 *
+	 * @return the JSON profile of the last bundling process
+	 */
+	public String getLastProfile() {
+		return lastProfile;
+	}
+
+	/**
+	 * Returns the Chrome trace of the last bundling process, or null if no
+	 * bundling process has ended since the profiler has been created
+	 *
+	 * @return the Chrome trace of the last bundling process
+	 */
+	public String getLastTrace() {
+		return lastTrace;
+	}
+
+	/**
+	 * Returns the JSON profile of the events. The profile contains the
+	 * events, and a summary of the bundles and of the processors sorted by
+	 * wall time.
+	 *
+	 * @param events
+	 *            the events
+	 * @param totalWallTime
+	 *            the total wall time of the bundling process in microseconds
+	 * @return the JSON profile
+	 */
+	protected String toJson(List<ProfilingEvent> events, long totalWallTime) {
+
+		StringBuilder json = new StringBuilder(256 + events.size() * 256);
+		json.append("{\n  \"resourceType\": ").append(JavascriptStringUtil.quote(resourceType));
+		json.append(",\n  \"startDate\": ").append(buildStartDate);
+		json.append(",\n  \"totalWallTime\": ").append(totalWallTime);
+		json.append(",\n  \"cpuTimeSupported\": ").append(CPU_TIME_SUPPORTED);
+		json.append(",\n  \"allocationSupported\": ").append(ALLOCATION_SUPPORTED);
+
+		Map<String, long[]> bundles = new LinkedHashMap<>();
+		Map<String, long[]> processors = new LinkedHashMap<>();
+		for (ProfilingEvent event : events) {
+			if (BUNDLE_CATEGORY.equals(event.getCategory())) {
+				aggregate(bundles, event.getBundle(), event);
+			} else if (!VARIANT_CATEGORY.equals(event.getCategory()) && !FILE_CATEGORY.equals(event.getCategory())) {
+				aggregate(processors, event.getCategory() + ':' + event.getName(), event);
+			}
+		}
+
+		json.append(",\n  \"bundles\": ");
+		appendSummary(json, bundles, "bundle");
+		json.append(",\n  \"processors\": ");
+		appendSummary(json, processors, "processor");
+
+		json.append(",\n  \"events\": [");
+		boolean first = true;
+		for (ProfilingEvent event : events) {
+			json.append(first ? "\n    {" : ",\n    {");
+			first = false;
+			json.append("\"category\": ").append(JavascriptStringUtil.quote(event.getCategory()));
+			json.append(", \"name\": ").append(JavascriptStringUtil.quote(event.getName()));
+			appendOptional(json, "bundle", event.getBundle());
+			appendOptional(json, "variant", event.getVariant());
+			json.append(", \"thread\": ").append(JavascriptStringUtil.quote(event.getThreadName()));
+			json.append(", \"start\": ").append(event.getStartTime());
+			json.append(", \"wallTime\": ").append(event.getWallTime());
+			json.append(", \"cpuTime\": ").append(event.getCpuTime());
+			json.append(", \"allocatedBytes\": ").append(event.getAllocatedBytes());
+			json.append(", \"bytesIn\": ").append(event.getBytesIn());
+			json.append(", \"bytesOut\": ").append(event.getBytesOut());
+			json.append("}");
+		}
+		json.append(first ? "]\n}\n" : "\n  ]\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Returns the Chrome trace of the events, using the trace event format
+	 * with complete events
+	 *
+	 * @param events
+	 *            the events
+	 * @return the Chrome trace
+	 */
+	protected String toChromeTrace(List<ProfilingEvent> events) {
+
+		StringBuilder json = new StringBuilder(64 + events.size() * 256);
+		json.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+		boolean first = true;
+		for (ProfilingEvent event : events) {
+			json.append(first ? "\n" : ",\n");
+			first = false;
+			json.append("{\"name\": ").append(JavascriptStringUtil.quote(event.getName()));
+			json.append(", \"cat\": ").append(JavascriptStringUtil.quote(event.getCategory()));
+			json.append(", \"ph\": \"X\", \"pid\": ").append(JavascriptStringUtil.quote(resourceType));
+			json.append(", \"tid\": ").append(event.getThreadId());
+			json.append(", \"ts\": ").append(event.getStartTime());
+			json.append(", \"dur\": ").append(event.getWallTime());
+			json.append(", \"args\": {");
+			json.append("\"cpuTime\": ").append(event.getCpuTime());
+			json.append(", \"allocatedBytes\": ").append(event.getAllocatedBytes());
+			json.append(", \"bytesIn\": ").append(event.getBytesIn());
+			json.append(", \"bytesOut\": ").append(event.getBytesOut());
+			appendOptional(json, "bundle", event.getBundle());
+			appendOptional(json, "variant", event.getVariant());
+			json.append("}}");
+		}
+		json.append("\n]}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Adds the measures of an event to the summary entry of a key. The
+	 * measures are : count, wall time, CPU time, allocated bytes, bytes in and
+	 * bytes out.
+	 *
+	 * @param summary
+	 *            the summary
+	 * @param key
+	 *            the key
+	 * @param event
+	 *            the event
+	 */
+	private static void aggregate(Map<String, long[]> summary, String key, ProfilingEvent event) {
+		long[] values = summary.get(key);
+		if (values == null) {
+			values = new long[6];
+			summary.put(key, values);
+		}
+		values[0]++;
+		values[1] += event.getWallTime();
+		values[2] += Math.max(0, event.getCpuTime());
+		values[3] += Math.max(0, event.getAllocatedBytes());
+		values[4] += Math.max(0, event.getBytesIn());
+		values[5] += Math.max(0, event.getBytesOut());
+	}
+
+	/**
+	 * Appends the summary sorted by descending wall time
+	 *
+	 * @param json
+	 *            the JSON content
+	 * @param summary
+	 *            the summary
+	 * @param keyName
+	 *            the name of the key attribute
+	 */
+	private static void appendSummary(StringBuilder json, Map<String, long[]> summary, String keyName) {
+
+		List<Map.Entry<String, long[]>> entries = new ArrayList<>(summary.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+
+			@Override
+			public int compare(Map.Entry<String, long[]> e1, Map.Entry<String, long[]> e2) {
+				return Long.compare(e2.getValue()[1], e1.getValue()[1]);
+			}
+		});
+
+		json.append("[");
+		boolean first = true;
+		for (Map.Entry<String, long[]> entry : entries) {
+			json.append(first ? "\n    {" : ",\n    {");
+			first = false;
+			long[] values = entry.getValue();
+			json.append("\"").append(keyName).append("\": ").append(JavascriptStringUtil.quote(entry.getKey()));
+			json.append(", \"count\": ").append(values[0]);
+			json.append(", \"wallTime\": ").append(values[1]);
+			json.append(", \"cpuTime\": ").append(values[2]);
+			json.append(", \"allocatedBytes\": ").append(values[3]);
+			json.append(", \"bytesIn\": ").append(values[4]);
+			json.append(", \"bytesOut\": ").append(values[5]);
+			json.append("}");
+		}
+		json.append(first ? "]" : "\n  ]");
+	}
+
+	/**
+	 * Appends an attribute if its value is not null
+	 *
+	 * @param json
+	 *            the JSON content
+	 * @param name
+	 *            the attribute name
+	 * @param value
+	 *            the attribute value
+	 */
+	private static void appendOptional(StringBuilder json, String name, String value) {
+		if (value != null) {
+			json.append(", \"").append(name).append("\": ").append(JavascriptStringUtil.quote(value));
+		}
+	}
+
+	/**
+	 * Returns the CPU time of the current thread in nanoseconds, or -1 if not
+	 * available
+	 *
+	 * @return the CPU time of the current thread
+	 */
+	private static long getCpuTime() {
+		return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by a thread, or -1 if not
+	 * available
+	 *
+	 * @param threadId
+	 *            the thread ID
+	 * @return the number of bytes allocated by the thread
+	 */
+	private static long getAllocatedBytes(long threadId) {
+		return ALLOCATION_SUPPORTED
+				? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(threadId) : -1;
+	}
+
+	/**
+	 * Checks if the thread CPU time is available
+	 *
+	 * @return true if the thread CPU time is available
+	 */
+	private static boolean isCpuTimeSupported() {
+		try {
+			return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if the thread allocated bytes are available. They are only
+	 * available on the HotSpot based virtual machines.
+	 *
+	 * @return true if the thread allocated bytes are available
+	 */
+	private static boolean isAllocationSupported() {
+		try {
+			return THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+					&& ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled();
+		} catch (LinkageError | UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * This class defines a phase being measured
+	 */
+	public static final class Span {
+
+		/** The category */
+		private final String category;
+
+		/** The name */
+		private final String name;
+
+		/** The bundle ID */
+		private final String bundle;
+
+		/** The variant key */
+		private final String variant;
+
+		/** The start time in nanoseconds */
+		private final long startNanos;
+
+		/** The CPU time of the thread at the start */
+		private final long startCpuTime;
+
+		/** The bytes allocated by the thread at the start */
+		private final long startAllocatedBytes;
+
+		/**
+		 * Constructor
+		 *
+		 * @param category
+		 *            the category
+		 * @param name
+		 *            the name
+		 * @param bundle
+		 *            the bundle ID
+		 * @param variant
+		 *            the variant key
+		 * @param startNanos
+		 *            the start time in nanoseconds
+		 * @param startCpuTime
+		 *            the CPU time of the thread at the start
+		 * @param startAllocatedBytes
+		 *            the bytes allocated by the thread at the start
+		 */
+		private Span(String category, String name, String bundle, String variant, long startNanos,
+				long startCpuTime, long startAllocatedBytes) {
+			this.category = category;
+			this.name = name;
+			this.bundle = bundle;
+			this.variant = variant;
+			this.startNanos = startNanos;
+			this.startCpuTime = startCpuTime;
+			this.startAllocatedBytes = startAllocatedBytes;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.bundle.profiling;
+
+/**
+ * This class defines a phase of the bundling process, which has been measured
+ * by the bundling profiler.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class ProfilingEvent {
+
+	/** The category of the phase (bundle, variant, file, postprocessor...) */
+	private final String category;
+
+	/** The name of the phase */
+	private final String name;
+
+	/** The bundle ID, or null if the phase is not linked to a bundle */
+	private final String bundle;
+
+	/** The variant key, or null for the default variant */
+	private final String variant;
+
+	/** The name of the thread which has executed the phase */
+	private final String threadName;
+
+	/** The ID of the thread which has executed the phase */
+	private final long threadId;
+
+	/** The start time in microseconds, relative to the start of the build */
+	private final long startTime;
+
+	/** The wall time in microseconds */
+	private final long wallTime;
+
+	/** The CPU time in microseconds, or -1 if not available */
+	private final long cpuTime;
+
+	/** The number of bytes allocated, or -1 if not available */
+	private final long allocatedBytes;
+
+	/** The size of the input, or -1 if unknown */
+	private final long bytesIn;
+
+	/** The size of the output, or -1 if unknown */
+	private final long bytesOut;
+
+	/**
+	 * Constructor
+	 *
+	 * @param category
+	 *            the category
+	 * @param name
+	 *            the name
+	 * @param bundle
+	 *            the bundle ID
+	 * @param variant
+	 *            the variant key
+	 * @param threadName
+	 *            the thread name
+	 * @param threadId
+	 *            the thread ID
+	 * @param startTime
+	 *            the start time in microseconds
+	 * @param wallTime
+	 *            the wall time in microseconds
+	 * @param cpuTime
+	 *            the CPU time in microseconds
+	 * @param allocatedBytes
+	 *            the number of bytes allocated
+	 * @param bytesIn
+	 *            the size of the input
+	 * @param bytesOut
+	 *            the size of the output
+	 */
+	public ProfilingEvent(String category, String name, String bundle, String variant, String threadName,
+			long threadId, long startTime, long wallTime, long cpuTime, long allocatedBytes, long bytesIn,
+			long bytesOut) {
+		this.category = category;
+		this.name = name;
+		this.bundle = bundle;
+		this.variant = variant;
+		this.threadName = threadName;
+		this.threadId = threadId;
+		this.startTime = startTime;
+		this.wallTime = wallTime;
+		this.cpuTime = cpuTime;
+		this.allocatedBytes = allocatedBytes;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+	}
+
+	/**
+	 * @return the category
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the bundle ID
+	 */
+	public String getBundle() {
+		return bundle;
+	}
+
+	/**
+	 * @return the variant key
+	 */
+	public String getVariant() {
+		return variant;
+	}
+
+	/**
+	 * @return the thread name
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return the thread ID
+	 */
+	public long getThreadId() {
+		return threadId;
+	}
+
+	/**
+	 * @return the start time in microseconds, relative to the start of the
+	 *         build
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the wall time in microseconds
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/**
+	 * @return the CPU time in microseconds, or -1 if not available
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @return the number of bytes allocated, or -1 if not available
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the size of the input, or -1 if unknown
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return the size of the output, or -1 if unknown
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+}
@@ -13,6 +13,7 @@
  */
 package net.jawr.web.resource.handler.bundle;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -21,14 +22,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
-import java.util.StringTokenizer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPOutputStream;
 
 import net.jawr.web.JawrConstant;
@@ -68,6 +78,30 @@ public abstract class AbstractResourceBundleHandler implements ResourceBundleHan
 	 */
 	protected static final String TEMP_CSS_CLASSPATH_SUBDIR = "cssClasspath";
 
+	/** The initial size of the buffers used to compress the bundles */
+	private static final int INITIAL_BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * The maximum size of a compression buffer kept by a thread between two
+	 * bundles
+	 */
+	private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+	/** The maximum number of attempts to replace a bundle file atomically */
+	private static final int MAX_ATOMIC_MOVE_ATTEMPTS = 5;
+
+	/** The delay in milliseconds between two attempts to replace a bundle file */
+	private static final long ATOMIC_MOVE_RETRY_DELAY = 20;
+
+	/** The compression buffer of each thread */
+	private static final ThreadLocal<BundleBuffer> GZIP_BUFFER = new ThreadLocal<BundleBuffer>() {
+
+		@Override
+		protected BundleBuffer initialValue() {
+			return new BundleBuffer();
+		}
+	};
+
 	/** The path of the temporary working directory */
 	protected String tempDirPath;
 
@@ -98,6 +132,18 @@ public abstract class AbstractResourceBundleHandler implements ResourceBundleHan
 	 */
 	private boolean useFileSystemTempDir = true;
 
+	/** The directories already created by this handler */
+	private final Set<String> createdDirs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * The paths of the bundle files stored by this handler since the
+	 * recording has been started, relative to the temporary directory
+	 */
+	private final Set<String> storedBundleFiles = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+	/** The flag indicating if the paths of the stored bundle files are recorded */
+	private volatile boolean recordingBundleArtifacts;
+
 	/**
 	 * Build a resource handler based on the specified temporary files root path
 	 * and charset.
@@ -357,17 +403,84 @@ public abstract class AbstractResourceBundleHandler implements ResourceBundleHan
 	@Override
 	public void storeJawrBundleMapping(Properties bundleMapping) {
 
+		// The mapping is written in a temporary file, which is then renamed,
+		// so a concurrent reader never loads a partially written mapping
 		File bundleMappingFile = new File(tempDirPath, mappingFileName);
-		OutputStream out = null;
+		File tmpFile = null;
 		try {
-			out = new FileOutputStream(bundleMappingFile);
-			bundleMapping.store(out, "Jawr mapping");
+			tmpFile = File.createTempFile("." + bundleMappingFile.getName() + "-", ".tmp",
+					bundleMappingFile.getParentFile());
+			try (OutputStream out = new FileOutputStream(tmpFile)) {
+				bundleMapping.store(out, "Jawr mapping");
+			}
+			moveFile(tmpFile, bundleMappingFile);
 		} catch (IOException e) {
 			LOGGER.error("Unable to store the bundle mapping");
 		} finally {
-			IOUtils.close(out);
+			if (tmpFile != null && tmpFile.exists()) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.bundle.ResourceBundleHandler#
+	 * loadBundleArtifacts(net.jawr.web.resource.handler.bundle.
+	 * BundleArtifactStore, java.lang.String)
+	 */
+	@Override
+	public boolean loadBundleArtifacts(BundleArtifactStore store, String key) {
+
+		if (!useFileSystemTempDir) {
+			return false;
+		}
+
+		try {
+			return store.load(key, new File(tempDirPath));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to load the bundle artifacts '" + key + "'", e);
+			return false;
 		}
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.bundle.ResourceBundleHandler#
+	 * setBundleArtifactsRecording(boolean)
+	 */
+	@Override
+	public void setBundleArtifactsRecording(boolean recording) {
+		storedBundleFiles.clear();
+		recordingBundleArtifacts = recording;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.bundle.ResourceBundleHandler#
+	 * publishBundleArtifacts(net.jawr.web.resource.handler.bundle.
+	 * BundleArtifactStore, java.lang.String)
+	 */
+	@Override
+	public void publishBundleArtifacts(BundleArtifactStore store, String key) {
+
+		if (!useFileSystemTempDir) {
+			return;
+		}
+
+		List<String> files = new ArrayList<>();
+		synchronized (storedBundleFiles) {
+			files.addAll(storedBundleFiles);
+		}
+		files.add(mappingFileName);
+		try {
+			store.publish(key, new File(tempDirPath), files);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to publish the bundle artifacts '" + key + "'", e);
+		}
 	}
 
 	/*
@@ -480,75 +593,151 @@ public abstract class AbstractResourceBundleHandler implements ResourceBundleHan
 	@Override
 	public void storeBundle(String bundleName, JoinableResourceBundleContent bundleResourcesContent) {
 
-		// Text version
-		String bundleContent = bundleResourcesContent.getContent().toString();
-		storeBundle(bundleName, bundleContent, false, textDirPath);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Storing a generated bundle with an id of:" + bundleName);
+		}
 
-		// binary version
-		storeBundle(bundleName, bundleContent, true, gzipDirPath);
+		// Encode the bundle once for the text and the gzip versions
+		byte[] data = bundleResourcesContent.getContent().toString().getBytes(charset);
+		String bundlePath = PathNormalizer.escapeToPhysicalPath(bundleName);
+		try {
+			// Text version
+			storeBundleFile(bundlePath, TEMP_TEXT_SUBDIR, textDirPath, ByteBuffer.wrap(data));
+
+			// binary version
+			BundleBuffer buffer = GZIP_BUFFER.get();
+			buffer.reset();
+			try {
+				// Closing the stream releases the native resources of its
+				// deflater
+				try (GZIPOutputStream gzOut = new GZIPOutputStream(buffer)) {
+					gzOut.write(data, 0, data.length);
+				}
+				storeBundleFile(bundlePath, TEMP_GZIP_SUBDIR, gzipDirPath, buffer.toByteBuffer());
+			} finally {
+				if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+					GZIP_BUFFER.remove();
+				}
+			}
+		} catch (IOException e) {
+			if (ThreadLocalJawrContext.isInterruptingProcessingBundle() || e instanceof ClosedByInterruptException) {
+				throw new InterruptBundlingProcessException();
+			}
+			throw new BundlingProcessException("Unexpected IOException creating temporary jawr file", e);
+		}
 	}
 
 	/**
-	 * Stores a resource bundle either in text or binary gzipped format.
+	 * Stores a bundle file. The content is written in a temporary file, which
+	 * is then renamed, so the readers never see a partially written bundle.
 	 * 
-	 * @param bundleName
-	 *            the bundle name
-	 * @param bundledResources
-	 *            the bundledRessources
-	 * @param gzipFile
-	 *            a fag defining if the file is gzipped or not
+	 * @param bundlePath
+	 *            the bundle path
+	 * @param subDir
+	 *            the name of the sub directory of the temporary directory
 	 * @param rootDir
 	 *            the root directory
+	 * @param data
+	 *            the content of the file
+	 * @throws IOException
+	 *             if an IO exception occurs
 	 */
-	@SuppressWarnings("resource")
-	private void storeBundle(String bundleName, String bundledResources, boolean gzipFile, String rootdir) {
-		if (LOGGER.isDebugEnabled()) {
-			String msg = "Storing a generated " + (gzipFile ? "and gzipped" : "") + " bundle with an id of:"
-					+ bundleName;
-			LOGGER.debug(msg);
+	private void storeBundleFile(String bundlePath, String subDir, String rootDir, ByteBuffer data)
+			throws IOException {
+
+		if (recordingBundleArtifacts) {
+			storedBundleFiles.add(subDir + (bundlePath.startsWith("/") ? "" : "/") + bundlePath);
 		}
 
+		File file = new File(rootDir, bundlePath.replace('/', File.separatorChar));
+		File parent = file.getParentFile();
+		createDirIfNeeded(parent);
+
+		String tmpFilePrefix = "." + file.getName() + "-";
+		File tmpFile = null;
 		try {
-			// Create subdirs if needed
-			bundleName = bundleName.replaceAll(":", "_");
-			if (bundleName.indexOf('/') != -1) {
-				StringTokenizer tk = new StringTokenizer(bundleName, "/");
-				StringBuilder pathName = new StringBuilder(rootdir);
-				while (tk.hasMoreTokens()) {
-					String name = tk.nextToken();
-					if (tk.hasMoreTokens()) {
-						pathName.append(File.separator).append(name);
-						createDir(pathName.toString());
-					}
+			tmpFile = File.createTempFile(tmpFilePrefix, ".tmp", parent);
+		} catch (IOException e) {
+			// The directory may have been deleted since its creation
+			if (parent.isDirectory()) {
+				throw e;
+			}
+			createdDirs.remove(parent.getPath());
+			createDirIfNeeded(parent);
+			tmpFile = File.createTempFile(tmpFilePrefix, ".tmp", parent);
+		}
+
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+				FileChannel channel = fos.getChannel();
+				while (data.hasRemaining()) {
+					channel.write(data);
 				}
-				bundleName = bundleName.replace('/', File.separatorChar);
 			}
 
-			File store = createNewFile(rootdir + File.separator + bundleName);
+			moveFile(tmpFile, file);
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Created file: " + file.getPath());
+			}
+		} finally {
+			if (tmpFile.exists()) {
+				tmpFile.delete();
+			}
+		}
+	}
 
-			GZIPOutputStream gzOut = null;
-			Writer wr = null;
+	/**
+	 * Replaces a file by another one. The file is replaced atomically if the
+	 * file system supports it. On Windows, the file can't be replaced while it
+	 * is read, so the move is retried a few times before falling back to a
+	 * non atomic replacement.
+	 * 
+	 * @param source
+	 *            the file to move
+	 * @param target
+	 *            the file to replace
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private void moveFile(File source, File target) throws IOException {
+
+		for (int attempt = 1; attempt <= MAX_ATOMIC_MOVE_ATTEMPTS; attempt++) {
 			try {
-				if (gzipFile) {
-					FileOutputStream fos = new FileOutputStream(store);
-					gzOut = new GZIPOutputStream(fos);
-					byte[] data = bundledResources.getBytes(charset.name());
-					gzOut.write(data, 0, data.length);
-				} else {
-					FileOutputStream fos = new FileOutputStream(store);
-					FileChannel channel = fos.getChannel();
-					wr = Channels.newWriter(channel, charset.newEncoder(), -1);
-					wr.write(bundledResources);
+				Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				return;
+			} catch (AtomicMoveNotSupportedException e) {
+				break;
+			} catch (AccessDeniedException e) {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Unable to replace the file " + target.getPath() + " (attempt " + attempt + ")");
+				}
+				try {
+					Thread.sleep(ATOMIC_MOVE_RETRY_DELAY * attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptBundlingProcessException();
 				}
-			} finally {
-				IOUtils.close(gzOut);
-				IOUtils.close(wr);
-			}
-		} catch (IOException e) {
-			if (ThreadLocalJawrContext.isInterruptingProcessingBundle() || e instanceof ClosedByInterruptException) {
-				throw new InterruptBundlingProcessException();
 			}
-			throw new BundlingProcessException("Unexpected IOException creating temporary jawr file", e);
+		}
+		Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Creates a directory if it has not already been created by this handler
+	 * 
+	 * @param dir
+	 *            the directory
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private void createDirIfNeeded(File dir) throws IOException {
+
+		String path = dir.getPath();
+		if (!createdDirs.contains(path)) {
+			createDir(path);
+			createdDirs.add(path);
 		}
 	}
 
@@ -574,27 +763,34 @@ public abstract class AbstractResourceBundleHandler implements ResourceBundleHan
 	}
 
 	/**
-	 * Creates a file. If dir is note created for some reson a runtimeexception
-	 * is thrown.
-	 * 
-	 * @param path
-	 * @return
-	 * @throws IOException
+	 * The byte array output stream used to compress the bundles, which gives
+	 * access to its buffer without copying it
 	 */
-	private File createNewFile(String path) throws IOException {
+	private static class BundleBuffer extends ByteArrayOutputStream {
 
-		// In windows, pathnames with spaces are returned as %20
-		if (path.contains("%20"))
-			path = path.replaceAll("%20", " ");
-		File newFile = new File(path);
+		/**
+		 * Constructor
+		 */
+		public BundleBuffer() {
+			super(INITIAL_BUFFER_SIZE);
+		}
 
-		if (!newFile.exists() && !newFile.createNewFile()) {
-			throw new BundlingProcessException("Unable to create a temporary file at " + path);
+		/**
+		 * Returns the capacity of the buffer
+		 * 
+		 * @return the capacity of the buffer
+		 */
+		public synchronized int capacity() {
+			return buf.length;
 		}
 
-		if (LOGGER.isDebugEnabled())
-			LOGGER.debug("Created file: " + newFile.getCanonicalPath());
-		return newFile;
+		/**
+		 * Returns a byte buffer wrapping the content of the buffer
+		 * 
+		 * @return a byte buffer wrapping the content of the buffer
+		 */
+		public synchronized ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
 	}
-
 }
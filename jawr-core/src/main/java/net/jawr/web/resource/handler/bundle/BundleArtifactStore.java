@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.handler.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import net.jawr.web.config.JawrConfig;
+
+/**
+ * This interface defines the store where the artifacts of a bundling process
+ * (the bundle files and the bundle mapping) are published, so they can be
+ * reused by the other instances of the application instead of being built
+ * again.
+ *
+ * The artifacts are identified by a key, which is computed from the Jawr
+ * configuration and from the content of the bundled resources.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public interface BundleArtifactStore {
+
+	/**
+	 * Initializes the store
+	 *
+	 * @param config
+	 *            the Jawr config
+	 */
+	public void init(JawrConfig config);
+
+	/**
+	 * Copies the artifacts published for a key in the working directory
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @param workingDirectory
+	 *            the working directory
+	 * @return true if the artifacts have been published and copied, false if
+	 *         no artifact has been published for the key
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public boolean load(String key, File workingDirectory) throws IOException;
+
+	/**
+	 * Acquires the right to build and publish the artifacts for a key. This
+	 * method waits while another builder holds it.
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @return true if the lock has been acquired, false if the artifacts have
+	 *         been published by another builder in the meantime, or if the
+	 *         lock couldn't be acquired in time
+	 */
+	public boolean lock(String key);
+
+	/**
+	 * Releases the lock acquired for a key
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 */
+	public void unlock(String key);
+
+	/**
+	 * Publishes the artifacts of a key. The artifacts are made visible at once
+	 * to the other instances.
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @param workingDirectory
+	 *            the working directory
+	 * @param files
+	 *            the paths of the artifacts, relative to the working directory
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public void publish(String key, File workingDirectory, Collection<String> files) throws IOException;
+
+}
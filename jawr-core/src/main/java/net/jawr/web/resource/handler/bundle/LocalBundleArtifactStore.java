@@ -0,0 +1,289 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.handler.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class defines the default bundle artifact store, which keeps the
+ * artifacts in a local directory. Each key has its own sub directory, which
+ * is created at once by renaming a staging directory.
+ *
+ * The lock only prevents the threads of the current JVM from building the same
+ * artifacts at the same time.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class LocalBundleArtifactStore implements BundleArtifactStore {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocalBundleArtifactStore.class);
+
+	/**
+	 * The name of the store directory, created in the servlet context
+	 * temporary directory if no directory is defined
+	 */
+	protected static final String DEFAULT_STORE_DIR = "jawrArtifacts";
+
+	/** The prefix of the staging directories */
+	private static final String STAGING_DIR_PREFIX = ".staging-";
+
+	/** The Jawr config */
+	protected JawrConfig config;
+
+	/** The store directory */
+	private File storeDirectory;
+
+	/** The locks per key */
+	private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.BundleArtifactStore#init(net.jawr.
+	 * web.config.JawrConfig)
+	 */
+	@Override
+	public void init(JawrConfig config) {
+		this.config = config;
+		String dir = config.getProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE_DIR);
+		if (StringUtils.isNotEmpty(dir)) {
+			this.storeDirectory = new File(dir);
+		}
+	}
+
+	/**
+	 * Returns the store directory
+	 *
+	 * @return the store directory
+	 */
+	protected synchronized File getStoreDirectory() {
+
+		if (storeDirectory == null) {
+			File tempDir = null;
+			if (config != null && config.getContext() != null) {
+				tempDir = (File) config.getContext().getAttribute(JawrConstant.SERVLET_CONTEXT_TEMPDIR);
+			}
+			if (tempDir == null) {
+				tempDir = new File(System.getProperty("java.io.tmpdir"));
+			}
+			storeDirectory = new File(tempDir, DEFAULT_STORE_DIR);
+		}
+		return storeDirectory;
+	}
+
+	/**
+	 * Returns the directory of the artifacts of a key
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @return the directory of the artifacts
+	 */
+	protected File getArtifactDirectory(String key) {
+		return new File(getStoreDirectory(), key);
+	}
+
+	/**
+	 * Checks if the artifacts of a key have been published
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @return true if the artifacts have been published
+	 */
+	public boolean isPublished(String key) {
+		return getArtifactDirectory(key).isDirectory();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.BundleArtifactStore#load(java.lang.
+	 * String, java.io.File)
+	 */
+	@Override
+	public boolean load(String key, File workingDirectory) throws IOException {
+
+		File artifactDir = getArtifactDirectory(key);
+		if (!artifactDir.isDirectory()) {
+			return false;
+		}
+
+		copyDirectory(artifactDir.toPath(), workingDirectory.toPath());
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Artifacts '" + key + "' loaded from " + artifactDir.getAbsolutePath());
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.BundleArtifactStore#lock(java.lang.
+	 * String)
+	 */
+	@Override
+	public boolean lock(String key) {
+
+		ReentrantLock lock = locks.get(key);
+		if (lock == null) {
+			ReentrantLock newLock = new ReentrantLock();
+			lock = locks.putIfAbsent(key, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		lock.lock();
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.BundleArtifactStore#unlock(java.lang
+	 * .String)
+	 */
+	@Override
+	public void unlock(String key) {
+
+		ReentrantLock lock = locks.get(key);
+		if (lock != null && lock.isHeldByCurrentThread()) {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.BundleArtifactStore#publish(java.
+	 * lang.String, java.io.File, java.util.Collection)
+	 */
+	@Override
+	public void publish(String key, File workingDirectory, Collection<String> files) throws IOException {
+
+		File artifactDir = getArtifactDirectory(key);
+		if (artifactDir.isDirectory()) {
+			return;
+		}
+
+		Path storeDir = Files.createDirectories(getStoreDirectory().toPath());
+		Path stagingDir = Files.createTempDirectory(storeDir, STAGING_DIR_PREFIX + key + "-");
+		try {
+			Path workingDir = workingDirectory.toPath();
+			for (String file : files) {
+				Path source = workingDir.resolve(file);
+				if (Files.isRegularFile(source)) {
+					Path target = stagingDir.resolve(file);
+					Files.createDirectories(target.getParent());
+					Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+
+			try {
+				Files.move(stagingDir, artifactDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// Another instance may have published the artifacts in the
+				// meantime
+				if (!artifactDir.isDirectory()) {
+					throw e;
+				}
+			}
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Artifacts '" + key + "' published in " + artifactDir.getAbsolutePath());
+			}
+		} finally {
+			if (Files.exists(stagingDir)) {
+				deleteDirectory(stagingDir);
+			}
+		}
+	}
+
+	/**
+	 * Copies the content of a directory into another one
+	 *
+	 * @param sourceDir
+	 *            the source directory
+	 * @param targetDir
+	 *            the target directory
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private static void copyDirectory(final Path sourceDir, final Path targetDir) throws IOException {
+
+		Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(targetDir.resolve(sourceDir.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.copy(file, targetDir.resolve(sourceDir.relativize(file).toString()),
+						StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes a directory and its content
+	 *
+	 * @param dir
+	 *            the directory to delete
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private static void deleteDirectory(Path dir) throws IOException {
+
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -117,4 +117,38 @@ public interface ResourceBundleHandler {
 	 */
 	public String getBundleZipDirPath();
 
+	/**
+	 * Copies the bundle artifacts published in the store in the working
+	 * directory
+	 * 
+	 * @param store
+	 *            the bundle artifact store
+	 * @param key
+	 *            the key of the artifacts
+	 * @return true if the artifacts have been copied
+	 */
+	public boolean loadBundleArtifacts(BundleArtifactStore store, String key);
+
+	/**
+	 * Sets the flag indicating if the paths of the bundles stored in the
+	 * working directory are recorded, to be published in the artifact store.
+	 * The paths already recorded are discarded.
+	 * 
+	 * @param recording
+	 *            the flag indicating if the paths of the stored bundles are
+	 *            recorded
+	 */
+	public void setBundleArtifactsRecording(boolean recording);
+
+	/**
+	 * Publishes the bundles recorded since the recording has been started and
+	 * the bundle mapping in the artifact store
+	 * 
+	 * @param store
+	 *            the bundle artifact store
+	 * @param key
+	 *            the key of the artifacts
+	 */
+	public void publishBundleArtifacts(BundleArtifactStore store, String key);
+
 }
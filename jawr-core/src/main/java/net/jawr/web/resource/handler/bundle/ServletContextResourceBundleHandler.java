@@ -56,6 +56,27 @@ public class ServletContextResourceBundleHandler extends AbstractResourceBundleH
 		this.charset = charset;
 	}
 
+	/**
+	 * Constructor
+	 * 
+	 * @param context
+	 *            the servlet context
+	 * @param tempDirRoot
+	 *            the root directory of the bundles
+	 * @param charset
+	 *            the charset
+	 * @param generatorRegistry
+	 *            the generator registry
+	 * @param resourceType
+	 *            the resource type
+	 */
+	public ServletContextResourceBundleHandler(ServletContext context, File tempDirRoot, Charset charset,
+			GeneratorRegistry generatorRegistry, String resourceType) {
+		super(tempDirRoot, charset, generatorRegistry, resourceType);
+		this.context = context;
+		this.charset = charset;
+	}
+
 	/**
 	 * Constructor
 	 * 
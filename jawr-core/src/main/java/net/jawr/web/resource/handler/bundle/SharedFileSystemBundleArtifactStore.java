@@ -0,0 +1,239 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.handler.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.util.StringUtils;
+
+/**
+ * This class defines the bundle artifact store for a directory shared by
+ * several instances of the application, like a NFS mount.
+ *
+ * The first instance which needs the artifacts of a key creates a lock file in
+ * the store directory, builds the bundles and publishes them. The other
+ * instances wait for the publication instead of building the same bundles. A
+ * lock file older than the lock timeout is considered as abandoned by a
+ * crashed instance and is taken over by a single waiting instance. While the
+ * bundles are built, the modification date of the lock file is refreshed, so a
+ * build longer than the lock timeout doesn't lose its lock.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class SharedFileSystemBundleArtifactStore extends LocalBundleArtifactStore {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(SharedFileSystemBundleArtifactStore.class);
+
+	/** The suffix of the lock files */
+	private static final String LOCK_FILE_SUFFIX = ".lock";
+
+	/** The suffix of the lock files taken over from another instance */
+	private static final String TAKEN_OVER_LOCK_SUFFIX = ".takenover";
+
+	/** The default lock timeout in seconds */
+	private static final int DEFAULT_LOCK_TIMEOUT = 600;
+
+	/** The delay between two checks of the lock file in milliseconds */
+	private static final long POLLING_INTERVAL = 500;
+
+	/** The lock timeout in milliseconds */
+	private long lockTimeout = DEFAULT_LOCK_TIMEOUT * 1000L;
+
+	/** The timers refreshing the lock files, by key */
+	private final Map<String, Timer> heartbeats = new ConcurrentHashMap<>();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.LocalBundleArtifactStore#init(net.
+	 * jawr.web.config.JawrConfig)
+	 */
+	@Override
+	public void init(JawrConfig config) {
+		super.init(config);
+		String value = config.getProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE_LOCK_TIMEOUT);
+		if (StringUtils.isNotEmpty(value)) {
+			lockTimeout = Long.parseLong(value) * 1000L;
+		}
+	}
+
+	/**
+	 * Returns the lock file of a key
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @return the lock file
+	 */
+	protected File getLockFile(String key) {
+		return new File(getStoreDirectory(), key + LOCK_FILE_SUFFIX);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.LocalBundleArtifactStore#lock(java.
+	 * lang.String)
+	 */
+	@Override
+	public boolean lock(String key) {
+
+		super.lock(key);
+		File lockFile = getLockFile(key);
+		long start = System.currentTimeMillis();
+		boolean locked = false;
+		try {
+			while (!locked && !isPublished(key)) {
+				Files.createDirectories(getStoreDirectory().toPath());
+				try {
+					Files.createFile(lockFile.toPath());
+					locked = true;
+				} catch (FileAlreadyExistsException e) {
+					long now = System.currentTimeMillis();
+					long lockDate = lockFile.lastModified();
+					if (lockDate > 0 && now - lockDate > lockTimeout) {
+						removeAbandonedLock(lockFile);
+					} else if (now - start > lockTimeout) {
+						LOGGER.warn("Timeout while waiting for the artifacts '" + key + "' to be published");
+						break;
+					} else {
+						Thread.sleep(POLLING_INTERVAL);
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to create the lock file " + lockFile.getAbsolutePath(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (locked) {
+			startHeartbeat(key, lockFile);
+		} else {
+			super.unlock(key);
+		}
+		return locked;
+	}
+
+	/**
+	 * Removes a lock file which seems abandoned. As several instances may try
+	 * to remove it at the same time, the lock file is first moved to a unique
+	 * name, which only succeeds for one of them. Its modification date is then
+	 * checked again, as the lock may have been refreshed or replaced by a new
+	 * lock since it has been checked. In this case, the lock is restored.
+	 *
+	 * @param lockFile
+	 *            the lock file
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private void removeAbandonedLock(File lockFile) throws IOException {
+
+		Path lockPath = lockFile.toPath();
+		Path takenOverPath = lockPath
+				.resolveSibling(lockFile.getName() + "." + UUID.randomUUID().toString() + TAKEN_OVER_LOCK_SUFFIX);
+		try {
+			Files.move(lockPath, takenOverPath, StandardCopyOption.ATOMIC_MOVE);
+		} catch (NoSuchFileException e) {
+			// Another instance has removed the lock
+			return;
+		}
+
+		if (System.currentTimeMillis() - takenOverPath.toFile().lastModified() > lockTimeout) {
+			LOGGER.warn("Removing the abandoned lock file " + lockFile.getAbsolutePath());
+		} else {
+			// The lock is alive, the link creation fails if another
+			// instance has already created a new lock
+			try {
+				try {
+					Files.createLink(lockPath, takenOverPath);
+				} catch (UnsupportedOperationException e) {
+					Files.move(takenOverPath, lockPath);
+				}
+			} catch (FileAlreadyExistsException e) {
+				LOGGER.warn("Unable to restore the lock file " + lockFile.getAbsolutePath());
+			}
+		}
+		Files.deleteIfExists(takenOverPath);
+	}
+
+	/**
+	 * Starts refreshing the modification date of a lock file, so the other
+	 * instances don't consider it as abandoned while the bundles are built
+	 *
+	 * @param key
+	 *            the key of the artifacts
+	 * @param lockFile
+	 *            the lock file
+	 */
+	private void startHeartbeat(String key, final File lockFile) {
+
+		long period = Math.max(POLLING_INTERVAL, lockTimeout / 4);
+		Timer timer = new Timer("Jawr artifact lock heartbeat", true);
+		timer.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				if (!lockFile.setLastModified(System.currentTimeMillis())) {
+					LOGGER.warn("Unable to refresh the lock file " + lockFile.getAbsolutePath());
+				}
+			}
+		}, period, period);
+
+		Timer previousTimer = heartbeats.put(key, timer);
+		if (previousTimer != null) {
+			previousTimer.cancel();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.jawr.web.resource.handler.bundle.LocalBundleArtifactStore#unlock(java
+	 * .lang.String)
+	 */
+	@Override
+	public void unlock(String key) {
+
+		Timer timer = heartbeats.remove(key);
+		if (timer != null) {
+			timer.cancel();
+		}
+		try {
+			Files.deleteIfExists(getLockFile(key).toPath());
+		} catch (IOException e) {
+			LOGGER.warn("Unable to delete the lock file of the artifacts '" + key + "'", e);
+		} finally {
+			super.unlock(key);
+		}
+	}
+}
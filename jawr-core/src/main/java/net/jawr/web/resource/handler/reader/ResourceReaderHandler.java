@@ -36,6 +36,28 @@ public interface ResourceReaderHandler extends WorkingDirectoryLocationAware, Re
 	 */
 	void addResourceReader(ResourceReader rd);
 
+	/**
+	 * Clears the cache of the resource resolution, which stores the readers
+	 * which have served the resources and the resources which have not been
+	 * found. This should be called when resources are created or deleted.
+	 */
+	void clearResourceCache();
+
+	/**
+	 * Returns the snapshot of the resource tree, which has been created while
+	 * scanning the directories of the resources
+	 * 
+	 * @return the snapshot of the resource tree, or null if no snapshot has
+	 *         been created since the last clear
+	 */
+	ResourceTreeSnapshot getResourceTreeSnapshot();
+
+	/**
+	 * Clears the snapshot of the resource tree. This should be called when
+	 * resources are created or deleted.
+	 */
+	void clearResourceTreeSnapshot();
+
 	/**
 	 * Returns the Jawr working directory
 	 * 
@@ -0,0 +1,406 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.resource.handler.reader;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.util.BuildExecutor;
+
+/**
+ * This class defines an immutable snapshot of a directory tree, which is used
+ * to answer the directory listings of a resource browser without going
+ * through the file system or the servlet context for each directory.
+ *
+ * The snapshot is created by walking the sub directories of the root
+ * directory in parallel. The resource names of the directories follow the
+ * servlet context conventions : the names of the sub directories end with
+ * '/'.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public final class ResourceTreeSnapshot {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResourceTreeSnapshot.class);
+
+	/**
+	 * The maximum number of resources of a snapshot. Above this limit, the
+	 * snapshot is not created and the resource browsers are used directly.
+	 */
+	public static final int MAX_RESOURCES = 200000;
+
+	/** The root directory */
+	private final Path rootDir;
+
+	/** The resource names of the directories, by directory path */
+	private final Map<String, Set<String>> resourceNames;
+
+	/**
+	 * Constructor
+	 *
+	 * @param rootDir
+	 *            the root directory
+	 * @param resourceNames
+	 *            the resource names of the directories, by directory path
+	 */
+	private ResourceTreeSnapshot(Path rootDir, Map<String, Set<String>> resourceNames) {
+		this.rootDir = rootDir;
+		this.resourceNames = resourceNames;
+	}
+
+	/**
+	 * Creates the snapshot of a directory tree
+	 *
+	 * @param rootDirPath
+	 *            the path of the root directory
+	 * @param threadCount
+	 *            the maximum number of threads walking the tree
+	 * @return the snapshot, or null if the root directory doesn't exist or
+	 *         can't be walked
+	 */
+	public static ResourceTreeSnapshot create(String rootDirPath, int threadCount) {
+
+		Path root = Paths.get(rootDirPath).toAbsolutePath().normalize();
+		if (!Files.isDirectory(root)) {
+			return null;
+		}
+
+		long start = System.currentTimeMillis();
+		AtomicInteger resourceCount = new AtomicInteger();
+		Map<String, Set<String>> names = new HashMap<>();
+		Set<String> rootNames = new HashSet<>();
+		names.put("", rootNames);
+
+		List<Path> dirs = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+			for (Path entry : stream) {
+				if (Files.isDirectory(entry)) {
+					dirs.add(entry);
+				} else {
+					rootNames.add(entry.getFileName().toString());
+					resourceCount.incrementAndGet();
+				}
+			}
+
+			int groupCount = Math.max(1, Math.min(threadCount, dirs.size()));
+			List<TreeCollector> collectors = new ArrayList<>();
+			for (int i = 0; i < groupCount; i++) {
+				collectors.add(new TreeCollector(root, resourceCount));
+			}
+			for (int i = 0; i < dirs.size(); i++) {
+				collectors.get(i % groupCount).dirs.add(dirs.get(i));
+			}
+
+			if (groupCount == 1) {
+				collectors.get(0).call();
+			} else {
+				List<Future<TreeCollector>> futures = new ArrayList<>();
+				for (TreeCollector collector : collectors) {
+					futures.add(BuildExecutor.getExecutor().submit(collector));
+				}
+				for (Future<TreeCollector> future : futures) {
+					future.get();
+				}
+			}
+
+			for (TreeCollector collector : collectors) {
+				for (Entry<String, Set<String>> entry : collector.resourceNames.entrySet()) {
+					Set<String> dirNames = names.get(entry.getKey());
+					if (dirNames == null) {
+						names.put(entry.getKey(), entry.getValue());
+					} else {
+						dirNames.addAll(entry.getValue());
+					}
+				}
+			}
+		} catch (IOException e) {
+			logFailure(root, e);
+			return null;
+		} catch (ExecutionException e) {
+			logFailure(root, e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		for (Entry<String, Set<String>> entry : names.entrySet()) {
+			entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+		}
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Snapshot of the " + resourceCount.get() + " resources of " + root + " created in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		return new ResourceTreeSnapshot(root, Collections.unmodifiableMap(names));
+	}
+
+	/**
+	 * Logs the failure of the creation of a snapshot
+	 *
+	 * @param root
+	 *            the root directory
+	 * @param e
+	 *            the cause of the failure
+	 */
+	private static void logFailure(Path root, Throwable e) {
+
+		if (e instanceof ResourceLimitException) {
+			LOGGER.warn("No snapshot is created for the resources of " + root + " as it contains more than "
+					+ MAX_RESOURCES + " resources");
+		} else {
+			LOGGER.warn("Unable to create the snapshot of the resources of " + root, e);
+		}
+	}
+
+	/**
+	 * Returns the key of a path in the snapshot
+	 *
+	 * @param path
+	 *            the resource path
+	 * @return the key of the path
+	 */
+	private static String getKey(String path) {
+
+		String key = path.replace('\\', '/');
+		if (!key.startsWith("/")) {
+			key = "/" + key;
+		}
+		int end = key.length();
+		while (end > 0 && key.charAt(end - 1) == '/') {
+			end--;
+		}
+		return key.substring(0, end);
+	}
+
+	/**
+	 * Returns the resource names of a directory
+	 *
+	 * @param dirPath
+	 *            the directory path
+	 * @return the resource names of the directory, or null if the directory
+	 *         is not part of the snapshot
+	 */
+	public Set<String> getResourceNames(String dirPath) {
+		return resourceNames.get(getKey(dirPath));
+	}
+
+	/**
+	 * Checks if the snapshot knows the resource
+	 *
+	 * @param path
+	 *            the resource path
+	 * @return true if the resource is part of the snapshot
+	 */
+	public boolean contains(String path) {
+
+		String key = getKey(path);
+		if (resourceNames.containsKey(key)) {
+			return true;
+		}
+		int idx = key.lastIndexOf('/');
+		Set<String> parentNames = idx < 0 ? null : resourceNames.get(key.substring(0, idx));
+		return parentNames != null && parentNames.contains(key.substring(idx + 1));
+	}
+
+	/**
+	 * Checks if the resource is a directory of the snapshot
+	 *
+	 * @param path
+	 *            the resource path
+	 * @return true if the resource is a directory
+	 */
+	public boolean isDirectory(String path) {
+		return resourceNames.containsKey(getKey(path));
+	}
+
+	/**
+	 * Returns the directory given in parameter and all its sub directories
+	 *
+	 * @param dir
+	 *            the directory
+	 * @return the directory and its sub directories, or null if the directory
+	 *         is not part of the snapshot
+	 */
+	public List<Path> getDirectories(Path dir) {
+
+		Path path = dir.toAbsolutePath().normalize();
+		if (!path.startsWith(rootDir)) {
+			return null;
+		}
+
+		String key = getKey(rootDir.relativize(path).toString());
+		if (!resourceNames.containsKey(key)) {
+			return null;
+		}
+
+		List<Path> dirs = new ArrayList<>();
+		String prefix = key + "/";
+		for (String dirKey : resourceNames.keySet()) {
+			if (dirKey.equals(key) || dirKey.startsWith(prefix)) {
+				dirs.add(dirKey.isEmpty() ? rootDir : rootDir.resolve(dirKey.substring(1)));
+			}
+		}
+		return dirs;
+	}
+
+	/**
+	 * This class walks a group of directories of the tree
+	 */
+	private static class TreeCollector extends SimpleFileVisitor<Path> implements Callable<TreeCollector> {
+
+		/** The root directory */
+		private final Path rootDir;
+
+		/** The number of resources of the tree */
+		private final AtomicInteger resourceCount;
+
+		/** The directories to walk */
+		private final List<Path> dirs = new ArrayList<>();
+
+		/** The resource names of the walked directories, by directory path */
+		private final Map<String, Set<String>> resourceNames = new HashMap<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param rootDir
+		 *            the root directory
+		 * @param resourceCount
+		 *            the number of resources of the tree
+		 */
+		public TreeCollector(Path rootDir, AtomicInteger resourceCount) {
+			this.rootDir = rootDir;
+			this.resourceCount = resourceCount;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public TreeCollector call() throws IOException {
+			for (Path dir : dirs) {
+				Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, this);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a resource to the names of its directory
+		 *
+		 * @param path
+		 *            the resource path
+		 * @param name
+		 *            the resource name
+		 * @throws ResourceLimitException
+		 *             if the tree contains too many resources
+		 */
+		private void addResource(Path path, String name) throws ResourceLimitException {
+
+			if (resourceCount.incrementAndGet() > MAX_RESOURCES) {
+				throw new ResourceLimitException();
+			}
+			String parentKey = getKey(rootDir.relativize(path.getParent()).toString());
+			Set<String> names = resourceNames.get(parentKey);
+			if (names == null) {
+				names = new HashSet<>();
+				resourceNames.put(parentKey, names);
+			}
+			names.add(name);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.nio.file.SimpleFileVisitor#preVisitDirectory(java.lang.
+		 * Object, java.nio.file.attribute.BasicFileAttributes)
+		 */
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+
+			addResource(dir, dir.getFileName() + "/");
+			String key = getKey(rootDir.relativize(dir).toString());
+			if (!resourceNames.containsKey(key)) {
+				resourceNames.put(key, new HashSet<String>());
+			}
+			return FileVisitResult.CONTINUE;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.nio.file.SimpleFileVisitor#visitFile(java.lang.Object,
+		 * java.nio.file.attribute.BasicFileAttributes)
+		 */
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+			addResource(file, file.getFileName().toString());
+			return FileVisitResult.CONTINUE;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.nio.file.SimpleFileVisitor#visitFileFailed(java.lang.Object,
+		 * java.io.IOException)
+		 */
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+
+			if (exc instanceof FileSystemLoopException) {
+				LOGGER.warn("The directory " + file + " is skipped as it creates a cycle");
+			} else if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Unable to read " + file, exc);
+			}
+			return FileVisitResult.CONTINUE;
+		}
+	}
+
+	/**
+	 * The exception thrown when the tree contains too many resources
+	 */
+	private static class ResourceLimitException extends IOException {
+
+		/** The serial version UID */
+		private static final long serialVersionUID = 4516924829236283746L;
+	}
+}
@@ -18,11 +18,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletContext;
 
@@ -64,18 +68,66 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 	/** The generator registry */
 	private GeneratorRegistry generatorRegistry;
 
-	/** The list of resource readers */
-	private final List<TextResourceReader> resourceReaders = new ArrayList<>();
+	/** The prefix of the cache keys for resources read while processing bundles */
+	private static final String BUNDLE_PROCESSING_KEY_PREFIX = "B:";
 
-	/** The list of stream resource readers */
-	private final List<StreamResourceReader> streamResourceReaders = new ArrayList<>();
+	/** The prefix of the cache keys for resources read outside of the bundle processing */
+	private static final String DEFAULT_KEY_PREFIX = "R:";
 
-	/** The list of resource info providers */
-	private final List<ResourceBrowser> resourceInfoProviders = new ArrayList<>();
+	/** The prefix of the not found cache keys for stream resources */
+	private static final String STREAM_KEY_PREFIX = "S";
+
+	/**
+	 * The resource readers. The array is never modified, it is replaced when
+	 * a reader is added.
+	 */
+	private volatile TextResourceReader[] resourceReaders = new TextResourceReader[0];
+
+	/**
+	 * The stream resource readers. The array is never modified, it is
+	 * replaced when a reader is added.
+	 */
+	private volatile StreamResourceReader[] streamResourceReaders = new StreamResourceReader[0];
+
+	/**
+	 * The resource info providers. The array is never modified, it is
+	 * replaced when a reader is added.
+	 */
+	private volatile ResourceBrowser[] resourceInfoProviders = new ResourceBrowser[0];
+
+	/** The readers which have served the resources, indexed by cache key */
+	private final ConcurrentMap<String, TextResourceReader> resolvedReaders = new ConcurrentHashMap<>();
+
+	/** The stream readers which have served the resources, indexed by cache key */
+	private final ConcurrentMap<String, StreamResourceReader> resolvedStreamReaders = new ConcurrentHashMap<>();
+
+	/** The keys of the resources which have not been found by any reader */
+	private final Map<String, Boolean> notFoundResources = Collections
+			.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = -4612358371297045823L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+					return size() > config.getResourceNotFoundCacheMaxSize();
+				}
+			});
 
 	/** The allowed file extension */
 	private final List<String> allowedExtensions = new ArrayList<>();
 
+	/**
+	 * The snapshot of the resource tree of the browser of the non generated
+	 * resources
+	 */
+	private volatile ResourceTreeSnapshot resourceTreeSnapshot;
+
+	/**
+	 * The flag indicating if the resource tree has been scanned since the
+	 * snapshot has been cleared
+	 */
+	private boolean resourceTreeScanned;
+
 	/**
 	 * Constructor
 	 * 
@@ -191,7 +243,10 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 		}
 
 		if (obj instanceof ResourceBrowser) {
-			resourceInfoProviders.add(0, (ResourceBrowser) obj);
+			List<ResourceBrowser> browsers = new ArrayList<>();
+			browsers.add((ResourceBrowser) obj);
+			browsers.addAll(Arrays.asList(resourceInfoProviders));
+			resourceInfoProviders = browsers.toArray(new ResourceBrowser[browsers.size()]);
 		}
 	}
 
@@ -202,19 +257,155 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 	 * addResourceReader(net.jawr.web.resource.handler.reader. ResourceReader)
 	 */
 	@Override
-	public void addResourceReader(ResourceReader rd) {
+	public synchronized void addResourceReader(ResourceReader rd) {
 
 		if (rd instanceof TextResourceReader) {
-			resourceReaders.add((TextResourceReader) rd);
-			Collections.sort(resourceReaders, new ResourceReaderComparator(config));
+			List<TextResourceReader> readers = new ArrayList<>(Arrays.asList(resourceReaders));
+			readers.add((TextResourceReader) rd);
+			Collections.sort(readers, new ResourceReaderComparator(config));
+			resourceReaders = readers.toArray(new TextResourceReader[readers.size()]);
 		}
 
 		if (rd instanceof StreamResourceReader) {
-			streamResourceReaders.add((StreamResourceReader) rd);
-			Collections.sort(streamResourceReaders, new ResourceReaderComparator(config));
+			List<StreamResourceReader> readers = new ArrayList<>(Arrays.asList(streamResourceReaders));
+			readers.add((StreamResourceReader) rd);
+			Collections.sort(readers, new ResourceReaderComparator(config));
+			streamResourceReaders = readers.toArray(new StreamResourceReader[readers.size()]);
 		}
 
 		initReader(rd);
+
+		// The new reader may take precedence over the resolved ones
+		clearResourceCache();
+		clearResourceTreeSnapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.reader.ResourceReaderHandler#
+	 * clearResourceCache()
+	 */
+	@Override
+	public void clearResourceCache() {
+		resolvedReaders.clear();
+		resolvedStreamReaders.clear();
+		notFoundResources.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.reader.ResourceReaderHandler#
+	 * getResourceTreeSnapshot()
+	 */
+	@Override
+	public ResourceTreeSnapshot getResourceTreeSnapshot() {
+		return resourceTreeSnapshot;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.resource.handler.reader.ResourceReaderHandler#
+	 * clearResourceTreeSnapshot()
+	 */
+	@Override
+	public synchronized void clearResourceTreeSnapshot() {
+		resourceTreeSnapshot = null;
+		resourceTreeScanned = false;
+	}
+
+	/**
+	 * Returns the snapshot of the resource tree of the browser given in
+	 * parameter. The snapshot is created on the first call, so all the scans
+	 * of the directories share the same walk of the tree.
+	 * 
+	 * @param rsBrowser
+	 *            the resource browser of the non generated resources
+	 * @return the snapshot of the resource tree, or null if there is no
+	 *         snapshot for the browser
+	 */
+	private ResourceTreeSnapshot getResourceTreeSnapshot(ResourceBrowser rsBrowser) {
+
+		if (!config.isUseResourceTreeSnapshot() || rsBrowser != getDefaultResourceBrowser()) {
+			return null;
+		}
+
+		ResourceTreeSnapshot snapshot = resourceTreeSnapshot;
+		if (snapshot == null) {
+			synchronized (this) {
+				if (!resourceTreeScanned) {
+					resourceTreeScanned = true;
+					String rootDir = rsBrowser.getFilePath("/");
+					if (rootDir != null) {
+						resourceTreeSnapshot = ResourceTreeSnapshot.create(rootDir, config.getBundlingThreadCount());
+					}
+				}
+				snapshot = resourceTreeSnapshot;
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the first browser of the non generated resources
+	 * 
+	 * @return the first browser of the non generated resources
+	 */
+	private ResourceBrowser getDefaultResourceBrowser() {
+
+		for (ResourceBrowser rsBrowser : resourceInfoProviders) {
+			if (!(rsBrowser instanceof ResourceGenerator)) {
+				return rsBrowser;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cache key of a resource
+	 * 
+	 * @param resourceName
+	 *            the resource name
+	 * @param processingBundle
+	 *            the flag indicating that we are currently processing the
+	 *            bundles
+	 * @return the cache key of a resource
+	 */
+	private String getCacheKey(String resourceName, boolean processingBundle) {
+		return (processingBundle ? BUNDLE_PROCESSING_KEY_PREFIX : DEFAULT_KEY_PREFIX) + resourceName;
+	}
+
+	/**
+	 * Returns true if the resources which are not found can be cached. The
+	 * cache is cleared when a reader is added and by the resource watcher
+	 * when a resource is created or deleted, so the not found resources are
+	 * only cached if the smart bundling is enabled. Otherwise, a resource
+	 * created at runtime would not be found until the next bundling process.
+	 * 
+	 * @return true if the resources which are not found can be cached
+	 */
+	private boolean isNotFoundCacheEnabled() {
+		return config.getUseSmartBundling() && config.getResourceNotFoundCacheMaxSize() > 0;
+	}
+
+	/**
+	 * Logs the exception thrown by a reader
+	 * 
+	 * @param resourceName
+	 *            the resource name
+	 * @param e
+	 *            the exception
+	 */
+	private void logReaderException(String resourceName, Exception e) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("An exception occured while trying to read resource '" + resourceName
+					+ "'. Continuing with other readers. Error : ", e);
+		} else if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("An exception occured while trying to read resource '" + resourceName
+					+ "'. Continuing with other readers. Error : " + e.getMessage());
+		}
 	}
 
 	/*
@@ -275,32 +466,55 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 		}
 		Reader rd = null;
 
+		// The resolution cache is only used if no reader is excluded
+		boolean useCache = excludedReader.isEmpty();
+		String cacheKey = getCacheKey(resourceName, processingBundle);
+		if (useCache) {
+			if (notFoundResources.containsKey(cacheKey)) {
+				throw new ResourceNotFoundException(resourceName);
+			}
+
+			TextResourceReader resolvedReader = resolvedReaders.get(cacheKey);
+			if (resolvedReader != null) {
+				try {
+					rd = resolvedReader.getResource(bundle, resourceName, processingBundle);
+				} catch (Exception e) {
+					logReaderException(resourceName, e);
+				}
+				if (rd != null) {
+					return rd;
+				}
+				resolvedReaders.remove(cacheKey, resolvedReader);
+			}
+		}
+
 		String resourceExtension = FileNameUtils.getExtension(resourceName);
 		boolean generatedPath = generatorRegistry.isPathGenerated(resourceName);
 		if (generatedPath || allowedExtensions.contains(resourceExtension.toLowerCase())) {
-			List<TextResourceReader> list = new ArrayList<>();
-			list.addAll(resourceReaders);
-			for (TextResourceReader rsReader : list) {
+			boolean readerFailed = false;
+			for (TextResourceReader rsReader : resourceReaders) {
 				if (!isInstanceOf(rsReader, excludedReader)) {
 					if (!(rsReader instanceof ResourceGenerator)
 							|| ((ResourceGenerator) rsReader).getResolver().matchPath(resourceName)) {
 						try {
 							rd = rsReader.getResource(bundle, resourceName, processingBundle);
 						} catch (Exception e) {
-							if (LOGGER.isDebugEnabled()) {
-								LOGGER.debug("An exception occured while trying to read resource '" + resourceName
-										+ "'. Continuing with other readers. Error : ", e);
-							} else if (LOGGER.isInfoEnabled()) {
-								LOGGER.info("An exception occured while trying to read resource '" + resourceName
-										+ "'. Continuing with other readers. Error : " + e.getMessage());
-							}
+							readerFailed = true;
+							logReaderException(resourceName, e);
 						}
 						if (rd != null) {
+							if (useCache) {
+								resolvedReaders.put(cacheKey, rsReader);
+							}
 							break;
 						}
 					}
 				}
 			}
+
+			if (rd == null && useCache && !readerFailed && !generatedPath && isNotFoundCacheEnabled()) {
+				notFoundResources.put(cacheKey, Boolean.TRUE);
+			}
 		} else {
 			LOGGER.warn("The resource '" + resourceName + "' will not be read as its extension is not an allowed one.");
 		}
@@ -368,30 +582,47 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 		generatorRegistry.loadGeneratorIfNeeded(resourceName);
 		InputStream is = null;
 
+		String cacheKey = getCacheKey(resourceName, processingBundle);
+		if (notFoundResources.containsKey(STREAM_KEY_PREFIX + cacheKey)) {
+			throw new ResourceNotFoundException(resourceName);
+		}
+
+		StreamResourceReader resolvedReader = resolvedStreamReaders.get(cacheKey);
+		if (resolvedReader != null) {
+			try {
+				is = resolvedReader.getResourceAsStream(resourceName);
+			} catch (Exception e) {
+				logReaderException(resourceName, e);
+			}
+			if (is != null) {
+				return is;
+			}
+			resolvedStreamReaders.remove(cacheKey, resolvedReader);
+		}
+
 		String resourceExtension = FileNameUtils.getExtension(resourceName);
 		boolean generatedPath = generatorRegistry.isPathGenerated(resourceName);
 		if (generatedPath || allowedExtensions.contains(resourceExtension.toLowerCase())) {
-			List<StreamResourceReader> list = new ArrayList<>();
-			list.addAll(streamResourceReaders);
-			for (StreamResourceReader rsReader : list) {
+			boolean readerFailed = false;
+			for (StreamResourceReader rsReader : streamResourceReaders) {
 				if (!(rsReader instanceof ResourceGenerator)
 						|| ((ResourceGenerator) rsReader).getResolver().matchPath(resourceName)) {
 					try {
 						is = rsReader.getResourceAsStream(resourceName);
 					} catch (Exception e) {
-						if (LOGGER.isDebugEnabled()) {
-							LOGGER.debug("An exception occured while trying to read resource '" + resourceName
-									+ "'. Continuing with other readers. Error : ", e);
-						} else if (LOGGER.isInfoEnabled()) {
-							LOGGER.info("An exception occured while trying to read resource '" + resourceName
-									+ "'. Continuing with other readers. Error : " + e.getMessage());
-						}
+						readerFailed = true;
+						logReaderException(resourceName, e);
 					}
 					if (is != null) {
+						resolvedStreamReaders.put(cacheKey, rsReader);
 						break;
 					}
 				}
 			}
+
+			if (is == null && !readerFailed && !generatedPath && isNotFoundCacheEnabled()) {
+				notFoundResources.put(STREAM_KEY_PREFIX + cacheKey, Boolean.TRUE);
+			}
 		} else {
 			LOGGER.warn("The resource '" + resourceName + "' will not be read as its extension is not an allowed one.");
 		}
@@ -413,9 +644,7 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 	public Set<String> getResourceNames(String dirName) {
 		Set<String> resourceNames = new TreeSet<>();
 
-		List<ResourceBrowser> list = new ArrayList<>();
-		list.addAll(resourceInfoProviders);
-		for (ResourceBrowser rsBrowser : list) {
+		for (ResourceBrowser rsBrowser : resourceInfoProviders) {
 			if (generatorRegistry.isPathGenerated(dirName)) {
 				if (rsBrowser instanceof ResourceGenerator) {
 					ResourceGenerator rsGeneratorBrowser = (ResourceGenerator) rsBrowser;
@@ -426,7 +655,18 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 				}
 			} else {
 				if (!(rsBrowser instanceof ResourceGenerator)) {
-					resourceNames.addAll(rsBrowser.getResourceNames(dirName));
+					// The resources served from the JAR files
+					// (META-INF/resources) are not in the snapshot of the
+					// resource tree, so they are listed by the browser
+					ResourceTreeSnapshot snapshot = getResourceTreeSnapshot(rsBrowser);
+					Set<String> names = snapshot == null ? null : snapshot.getResourceNames(dirName);
+					if (names != null) {
+						resourceNames.addAll(names);
+					}
+					Set<String> browserNames = rsBrowser.getResourceNames(dirName);
+					if (browserNames != null) {
+						resourceNames.addAll(browserNames);
+					}
 					break;
 				}
 			}
@@ -445,10 +685,9 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 	@Override
 	public boolean isDirectory(String resourceName) {
 		boolean result = false;
-		List<ResourceBrowser> list = new ArrayList<>();
-		list.addAll(resourceInfoProviders);
-		for (Iterator<ResourceBrowser> iterator = list.iterator(); iterator.hasNext() && !result;) {
-			ResourceBrowser rsBrowser = iterator.next();
+		ResourceBrowser[] browsers = resourceInfoProviders;
+		for (int i = 0; i < browsers.length && !result; i++) {
+			ResourceBrowser rsBrowser = browsers[i];
 			if (generatorRegistry.isPathGenerated(resourceName)) {
 				if (rsBrowser instanceof ResourceGenerator) {
 					ResourceGenerator rsGeneratorBrowser = (ResourceGenerator) rsBrowser;
@@ -458,7 +697,12 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 				}
 			} else {
 				if (!(rsBrowser instanceof ResourceGenerator)) {
-					result = rsBrowser.isDirectory(resourceName);
+					ResourceTreeSnapshot snapshot = getResourceTreeSnapshot(rsBrowser);
+					if (snapshot != null && snapshot.contains(resourceName)) {
+						result = snapshot.isDirectory(resourceName);
+					} else {
+						result = rsBrowser.isDirectory(resourceName);
+					}
 				}
 			}
 		}
@@ -476,10 +720,9 @@ public class ServletContextResourceReaderHandler implements ResourceReaderHandle
 	public String getFilePath(String resourcePath) {
 
 		String filePath = null;
-		List<ResourceBrowser> list = new ArrayList<>();
-		list.addAll(resourceInfoProviders);
-		for (Iterator<ResourceBrowser> iterator = list.iterator(); iterator.hasNext() && filePath == null;) {
-			ResourceBrowser rsBrowser = iterator.next();
+		ResourceBrowser[] browsers = resourceInfoProviders;
+		for (int i = 0; i < browsers.length && filePath == null; i++) {
+			ResourceBrowser rsBrowser = browsers[i];
 			if (generatorRegistry.isPathGenerated(resourcePath)) {
 				if (rsBrowser instanceof ResourceGenerator) {
 					ResourceGenerator rsGeneratorBrowser = (ResourceGenerator) rsBrowser;
@@ -15,24 +15,32 @@ package net.jawr.web.resource.watcher;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.exception.InterruptBundlingProcessException;
 import net.jawr.web.resource.FileNameUtils;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
 import net.jawr.web.resource.bundle.mappings.PathMapping;
+import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 
 /**
  * The Jawr watch event processor
@@ -59,6 +67,13 @@ public class JawrWatchEventProcessor extends Thread {
 	/** The last process time */
 	private final AtomicLong lastProcessTime = new AtomicLong();
 
+	/** The bundles modified during the current batch of events */
+	private final Set<JoinableResourceBundle> modifiedBundles = Collections
+			.synchronizedSet(new LinkedHashSet<JoinableResourceBundle>());
+
+	/** The time of the first event of the current batch */
+	private volatile long batchStartTime;
+
 	/**
 	 * Constructor
 	 * 
@@ -89,25 +104,33 @@ public class JawrWatchEventProcessor extends Thread {
 	@Override
 	public void run() {
 
+		JawrConfig config = bundlesHandler.getConfig();
+		long quietPeriod = config.getSmartBundlingEventQuietPeriod();
+		long maxLatency = config.getSmartBundlingEventMaxLatency();
+
 		while (!stopProcessing.get()) {
 
 			try {
-				JawrWatchEvent evt = watchEvents.take();
-				AtomicBoolean processingBundle = bundlesHandler.isProcessingBundle();
-				synchronized (processingBundle) {
-
-					// Wait until processing ends
-					while (processingBundle.get() && !stopProcessing.get()) {
-						try {
-							processingBundle.wait();
-						} catch (InterruptedException e) {
-							LOGGER.debug("Thread interrupted");
-						}
+				JawrWatchEvent evt = null;
+				if (modifiedBundles.isEmpty()) {
+					evt = watchEvents.take();
+				} else {
+					// Wait for the end of the burst of events, but not more
+					// than the maximum latency
+					long timeout = Math.min(quietPeriod, batchStartTime + maxLatency - currentTime());
+					if (timeout > 0) {
+						evt = watchEvents.poll(timeout, TimeUnit.MILLISECONDS);
 					}
 				}
+
 				if (evt != null && !stopProcessing.get()) {
 					process(evt);
 				}
+
+				if (!modifiedBundles.isEmpty()
+						&& (evt == null || currentTime() - batchStartTime >= maxLatency)) {
+					processModifiedBundles();
+				}
 			} catch (InterruptedException e) {
 				LOGGER.debug("Thread interrupted");
 			}
@@ -118,7 +141,70 @@ public class JawrWatchEventProcessor extends Thread {
 	}
 
 	/**
-	 * Process the event
+	 * Notifies the bundles handler of the bundles modified during the current
+	 * batch, and rebuilds them if needed
+	 */
+	private void processModifiedBundles() {
+
+		AtomicBoolean processingBundle = bundlesHandler.isProcessingBundle();
+		synchronized (processingBundle) {
+
+			// Wait until processing ends
+			while (processingBundle.get() && !stopProcessing.get()) {
+				try {
+					processingBundle.wait();
+				} catch (InterruptedException e) {
+					LOGGER.debug("Thread interrupted");
+				}
+			}
+		}
+
+		if (stopProcessing.get()) {
+			return;
+		}
+
+		List<JoinableResourceBundle> bundles = new ArrayList<>(modifiedBundles);
+		modifiedBundles.clear();
+		batchStartTime = 0;
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Processing a batch of " + bundles.size() + " modified bundle(s)");
+		}
+		ResourceReaderHandler rsReader = watcher.getResourceReaderHandler();
+		if (rsReader != null) {
+			rsReader.clearResourceCache();
+		}
+		bundlesHandler.notifyModification(bundles);
+		lastProcessTime.set(currentTime());
+
+		if (bundlesHandler.getConfig().isSmartBundlingRebuildOnChange()) {
+			try {
+				// The events received in the meantime belong to the next
+				// batch, which can't be processed until this rebuild ends
+				bundlesHandler.rebuildNotifiedBundles();
+			} catch (InterruptBundlingProcessException e) {
+				if (LOGGER.isInfoEnabled()) {
+					LOGGER.info("Bundling processed stopped");
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error("Error while rebuilding modified bundles : " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the current time in milliseconds
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	private long currentTime() {
+		return Calendar.getInstance().getTimeInMillis();
+	}
+
+	/**
+	 * Process the event. The modified bundles are added to the current batch,
+	 * which is processed once there is no more event during the quiet period,
+	 * or when the maximum latency is reached.
 	 * 
 	 * @param evt
 	 *            the jawr watch event
@@ -126,6 +212,15 @@ public class JawrWatchEventProcessor extends Thread {
 	public void process(JawrWatchEvent evt) {
 
 		Path resolvedPath = evt.getResolvedPath();
+
+		// A created or deleted resource changes the resolution of its path
+		if (evt.getKind() != ENTRY_MODIFY) {
+			ResourceReaderHandler rsReader = watcher.getResourceReaderHandler();
+			if (rsReader != null) {
+				rsReader.clearResourceCache();
+				rsReader.clearResourceTreeSnapshot();
+			}
+		}
 		List<PathMapping> mappings = watcher.getPathToResourceBundle().get(evt.getDirPath());
 		if (mappings != null) {
 
@@ -155,7 +250,10 @@ public class JawrWatchEventProcessor extends Thread {
 			}
 
 			if (!bundles.isEmpty()) {
-				bundlesHandler.notifyModification(bundles);
+				if (modifiedBundles.isEmpty()) {
+					batchStartTime = currentTime();
+				}
+				modifiedBundles.addAll(bundles);
 			}
 
 			if (!recursivePathMappings.isEmpty()) {
@@ -176,7 +274,7 @@ public class JawrWatchEventProcessor extends Thread {
 			}
 		}
 
-		lastProcessTime.set(Calendar.getInstance().getTimeInMillis());
+		lastProcessTime.set(currentTime());
 	}
 
 	/**
@@ -186,8 +284,8 @@ public class JawrWatchEventProcessor extends Thread {
 	 */
 	public boolean hasNoEventToProcess() {
 
-		long currentTime = Calendar.getInstance().getTimeInMillis();
-		return watchEvents.isEmpty() && (currentTime - lastProcessTime.get() > bundlesHandler.getConfig()
-				.getSmartBundlingDelayAfterLastEvent());
+		long currentTime = currentTime();
+		return watchEvents.isEmpty() && modifiedBundles.isEmpty() && (currentTime
+				- lastProcessTime.get() > bundlesHandler.getConfig().getSmartBundlingDelayAfterLastEvent());
 	}
 }
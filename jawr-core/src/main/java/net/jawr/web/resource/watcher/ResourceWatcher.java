@@ -34,11 +34,13 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -52,6 +54,7 @@ import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
 import net.jawr.web.resource.bundle.mappings.FilePathMapping;
 import net.jawr.web.resource.bundle.mappings.PathMapping;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import net.jawr.web.resource.handler.reader.ResourceTreeSnapshot;
 
 /**
  * This class defines the resource watcher
@@ -81,6 +84,9 @@ public class ResourceWatcher extends Thread {
 	/** The map between path and resource bundle */
 	private final Map<Path, List<PathMapping>> pathToResourceBundle = new ConcurrentHashMap<>();
 
+	/** The map between the bundle name and the directories watched for it */
+	private final Map<String, Set<Path>> bundleToWatchedDirs = new ConcurrentHashMap<>();
+
 	/** The Jawr watch event processor */
 	private final JawrWatchEventProcessor jawrEvtProcessor;
 
@@ -118,6 +124,15 @@ public class ResourceWatcher extends Thread {
 		}));
 	}
 
+	/**
+	 * Returns the ResourceReaderHandler
+	 * 
+	 * @return the ResourceReaderHandler, or null if the watcher is closed
+	 */
+	public ResourceReaderHandler getResourceReaderHandler() {
+		return rsReader;
+	}
+
 	/**
 	 * Returns the ResourceBundlesHandler
 	 * 
@@ -254,12 +269,23 @@ public class ResourceWatcher extends Thread {
 	 *            the bundle whose the path mapping should be removed
 	 */
 	private void removePathMappingFromPathMap(JoinableResourceBundle bundle) {
-		for (List<PathMapping> pathMappings : pathToResourceBundle.values()) {
-			for (Iterator<PathMapping> iterator = pathMappings.iterator(); iterator.hasNext();) {
-				PathMapping pathMapping = (PathMapping) iterator.next();
-				if (pathMapping.getBundle().getName().equals(bundle.getName())) {
-					iterator.remove();
+
+		// Only the directories watched for the bundle are checked
+		Set<Path> dirs = bundleToWatchedDirs.remove(bundle.getName());
+		if (dirs == null) {
+			return;
+		}
+
+		for (Path dir : dirs) {
+			List<PathMapping> pathMappings = pathToResourceBundle.get(dir);
+			if (pathMappings != null) {
+				List<PathMapping> mappingsToRemove = new ArrayList<>();
+				for (PathMapping pathMapping : pathMappings) {
+					if (pathMapping.getBundle().getName().equals(bundle.getName())) {
+						mappingsToRemove.add(pathMapping);
+					}
 				}
+				pathMappings.removeAll(mappingsToRemove);
 			}
 		}
 	}
@@ -279,10 +305,20 @@ public class ResourceWatcher extends Thread {
 
 		List<PathMapping> m = pathToResourceBundle.get(dir);
 		if (m == null) {
-			m = new ArrayList<>();
+			m = new CopyOnWriteArrayList<>();
 			pathToResourceBundle.put(dir, m);
 		}
 		m.addAll(pathMapping);
+
+		for (PathMapping mapping : pathMapping) {
+			String bundleName = mapping.getBundle().getName();
+			Set<Path> dirs = bundleToWatchedDirs.get(bundleName);
+			if (dirs == null) {
+				dirs = new CopyOnWriteArraySet<>();
+				bundleToWatchedDirs.put(bundleName, dirs);
+			}
+			dirs.add(dir);
+		}
 	}
 
 	/**
@@ -292,6 +328,18 @@ public class ResourceWatcher extends Thread {
 	 * @param pathMapping
 	 */
 	void registerAll(final Path start, final List<PathMapping> pathMappings) throws IOException {
+
+		// Use the snapshot of the resource tree created while scanning the
+		// bundle mappings if the directory belongs to it
+		ResourceTreeSnapshot snapshot = rsReader == null ? null : rsReader.getResourceTreeSnapshot();
+		List<Path> dirs = snapshot == null ? null : snapshot.getDirectories(start);
+		if (dirs != null) {
+			for (Path dir : dirs) {
+				register(dir, pathMappings);
+			}
+			return;
+		}
+
 		// register directory and sub-directories
 		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
 			@Override
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import net.jawr.web.resource.bundle.CheckSumUtils;
+
+/**
+ * This class defines the immutable response of a bundle request, which is
+ * ready to be sent. It is used by the request handler to serve the requests
+ * of the bundles in production mode without processing them again. The
+ * header values which are specific to the bundle are computed once, when the
+ * response is created.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public final class BundleResponse {
+
+	/** The content encoding header name */
+	private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+	/** The cache control header name */
+	private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+
+	/** The ETag header name */
+	private static final String ETAG_HEADER = "ETag";
+
+	/** The content type */
+	private final String contentType;
+
+	/** The content encoding, or null if the content is not encoded */
+	private final String contentEncoding;
+
+	/** The content */
+	private final byte[] content;
+
+	/** The cache control header value */
+	private final String cacheControl;
+
+	/** The ETag of the content */
+	private final String eTag;
+
+	/**
+	 * Constructor
+	 *
+	 * @param contentType
+	 *            the content type
+	 * @param contentEncoding
+	 *            the content encoding, or null if the content is not encoded
+	 * @param content
+	 *            the content
+	 * @param cacheControl
+	 *            the cache control header value
+	 * @throws IOException
+	 *             if an IO exception occurs while computing the ETag
+	 */
+	public BundleResponse(String contentType, String contentEncoding, byte[] content, String cacheControl)
+			throws IOException {
+		this.contentType = contentType;
+		this.contentEncoding = contentEncoding;
+		this.content = content;
+		this.cacheControl = cacheControl;
+		this.eTag = CheckSumUtils.getCRC32Checksum(new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Returns the content type
+	 *
+	 * @return the content type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the content encoding
+	 *
+	 * @return the content encoding, or null if the content is not encoded
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+
+	/**
+	 * Returns the size of the content
+	 *
+	 * @return the size of the content
+	 */
+	public int getContentLength() {
+		return content.length;
+	}
+
+	/**
+	 * Returns the ETag of the content
+	 *
+	 * @return the ETag of the content
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Writes the headers which are specific to the bundle to the response
+	 *
+	 * @param response
+	 *            the response
+	 */
+	public void writeHeaders(HttpServletResponse response) {
+
+		response.setHeader(CACHE_CONTROL_HEADER, cacheControl);
+		response.setHeader(ETAG_HEADER, eTag);
+		response.setContentType(contentType);
+		if (contentEncoding != null) {
+			response.setHeader(CONTENT_ENCODING_HEADER, contentEncoding);
+		}
+		response.setContentLength(content.length);
+	}
+
+	/**
+	 * Writes the content and its headers to the response
+	 *
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public void writeTo(HttpServletResponse response) throws IOException {
+
+		writeHeaders(response);
+		response.getOutputStream().write(content);
+	}
+}
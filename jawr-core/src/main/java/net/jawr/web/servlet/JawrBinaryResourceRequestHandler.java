@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -52,7 +53,9 @@ import net.jawr.web.resource.bundle.handler.BundleHashcodeType;
 import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.servlet.util.ClientAbortExceptionResolver;
 import net.jawr.web.servlet.util.MIMETypesSupport;
+import net.jawr.web.taglib.ImageTagPrescanner;
 import net.jawr.web.util.StopWatch;
+import net.jawr.web.util.StringUtils;
 
 /**
  * This class defines the request handler for binary web resources (images,
@@ -81,6 +84,9 @@ public class JawrBinaryResourceRequestHandler extends JawrRequestHandler {
 	/** The bundle mapping */
 	private Properties bundleMapping;
 
+	/** The Thread which pre-scans the image tags of the pages */
+	private Thread prescanThread;
+
 	/**
 	 * The binary resource MIME map, associating the resource extension to their
 	 * MIME type
@@ -158,6 +164,9 @@ public class JawrBinaryResourceRequestHandler extends JawrRequestHandler {
 		jawrConfig.setContext(servletContext);
 		jawrConfig.setGeneratorRegistry(generatorRegistry);
 
+		// initialize the cache manager
+		initializeApplicationCacheManager();
+
 		// Set mapping, to be used by the tag lib to define URLs that point to
 		// this servlet.
 		String mapping = (String) initParameters.get(JawrConstant.SERVLET_MAPPING_PROPERTY_NAME);
@@ -193,6 +202,8 @@ public class JawrBinaryResourceRequestHandler extends JawrRequestHandler {
 
 		servletContext.setAttribute(JawrConstant.BINARY_CONTEXT_ATTRIBUTE, binaryRsHandler);
 
+		startImageTagPrescan();
+
 		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug("Configuration read. Current config:");
 			LOGGER.debug(jawrConfig.toString());
@@ -214,6 +225,67 @@ public class JawrBinaryResourceRequestHandler extends JawrRequestHandler {
 		}
 	}
 
+	/**
+	 * Starts the pre-scan of the image tags if it is configured. The pre-scan
+	 * of the previous configuration is stopped, so it doesn't keep on using
+	 * the previous binary resource handler.
+	 */
+	private void startImageTagPrescan() {
+
+		stopImageTagPrescan();
+
+		String prescanDirs = jawrConfig.getProperty(JawrConstant.JAWR_BINARY_TAG_PRESCAN_DIRS);
+		if (StringUtils.isNotEmpty(prescanDirs)) {
+			prescanThread = new Thread(new ImageTagPrescanner(servletContext, binaryRsHandler, prescanDirs),
+					"Jawr image tag pre-scan");
+			prescanThread.setDaemon(true);
+			prescanThread.start();
+		}
+	}
+
+	/**
+	 * Stops the pre-scan of the image tags if it is running
+	 */
+	private void stopImageTagPrescan() {
+
+		if (prescanThread != null) {
+			prescanThread.interrupt();
+			prescanThread = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.servlet.JawrRequestHandler#destroy()
+	 */
+	@Override
+	public void destroy() {
+
+		stopImageTagPrescan();
+		super.destroy();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.jawr.web.servlet.JawrRequestHandler#createGenerationSnapshot()
+	 */
+	@Override
+	protected JawrRequestHandler createGenerationSnapshot() {
+
+		JawrBinaryResourceRequestHandler snapshot = (JawrBinaryResourceRequestHandler) super.createGenerationSnapshot();
+		if (bundleMapping != null) {
+			snapshot.bundleMapping = new Properties();
+			snapshot.bundleMapping.putAll(bundleMapping);
+		}
+		snapshot.binaryMimeTypeMap = new HashMap<>(binaryMimeTypeMap);
+
+		// The pre-scan belongs to the reloading handler, which stops it
+		snapshot.prescanThread = null;
+		return snapshot;
+	}
+
 	/**
 	 * Initialize the mapping of the binary web resources handler
 	 * 
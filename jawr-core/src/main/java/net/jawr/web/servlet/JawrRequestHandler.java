@@ -13,20 +13,29 @@
  */
 package net.jawr.web.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.Writer;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -39,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import net.jawr.web.JawrConstant;
 import net.jawr.web.cache.CacheManagerFactory;
+import net.jawr.web.cache.JawrCacheManager;
 import net.jawr.web.config.ConfigPropertyResolver;
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.config.jmx.JawrApplicationConfigManager;
@@ -64,9 +74,12 @@ import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
 import net.jawr.web.resource.bundle.factory.util.PropsFilePropertiesSource;
 import net.jawr.web.resource.bundle.factory.util.ServletContextAware;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.generator.resolver.WebJarsLocatorPathResolver;
 import net.jawr.web.resource.bundle.handler.BundleHashcodeType;
 import net.jawr.web.resource.bundle.handler.ClientSideHandlerScriptRequestHandler;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
+import net.jawr.web.resource.bundle.lifecycle.BundlingProcessLifeCycleListener;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
 import net.jawr.web.resource.bundle.renderer.BundleRenderer;
 import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.resource.handler.bundle.ServletContextResourceBundleHandler;
@@ -74,6 +87,7 @@ import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import net.jawr.web.resource.handler.reader.ServletContextResourceReaderHandler;
 import net.jawr.web.resource.watcher.ResourceWatcher;
 import net.jawr.web.servlet.util.ClientAbortExceptionResolver;
+import net.jawr.web.util.BuildExecutor;
 import net.jawr.web.util.StopWatch;
 import net.jawr.web.util.StringUtils;
 
@@ -84,7 +98,7 @@ import net.jawr.web.util.StringUtils;
  * @author Jordi Hernández Sellés
  * @author Ibrahim Chaehoi
  */
-public class JawrRequestHandler implements ConfigChangeListener, Serializable {
+public class JawrRequestHandler implements ConfigChangeListener, Serializable, Cloneable {
 
 	/** The serial version UID */
 	private static final long serialVersionUID = 5762937687546882131L;
@@ -111,6 +125,9 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	/** The cache control parameter value */
 	protected static final String CACHE_CONTROL_VALUE = "public, max-age=315360000, post-check=315360000, pre-check=315360000";
 
+	/** The cache control header value for the bundles with a valid hashcode */
+	protected static final String IMMUTABLE_CACHE_CONTROL_VALUE = CACHE_CONTROL_VALUE + ", immutable";
+
 	/** The last-modified header parameter name */
 	protected static final String LAST_MODIFIED_HEADER = "Last-Modified";
 
@@ -132,6 +149,21 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	/** The expires header parameter name */
 	protected static final String EXPIRES_HEADER = "Expires";
 
+	/** The format of the HTTP date headers */
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	/** The delay in ms after which the Expires header value is computed again */
+	private static final long EXPIRES_REFRESH_DELAY = 3600000;
+
+	/** The HEAD method */
+	private static final String HEAD_METHOD = "HEAD";
+
+	/** The directory of the bundles of the odd generations */
+	private static final String GREEN_GENERATION_DIR = "green";
+
+	/** The directory of the bundles of the even generations */
+	private static final String BLUE_GENERATION_DIR = "blue";
+
 	/** The configuration property name for the reload interval */
 	protected static final String CONFIG_RELOAD_INTERVAL = "jawr.config.reload.interval";
 
@@ -189,6 +221,55 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	/** The handler for the illegal bundle request */
 	protected IllegalBundleRequestHandler illegalBundleRequestHandler;
 
+	/**
+	 * The responses of the bundles served in production mode, by requested
+	 * path. The fast lane is filled lazily by the requests: the requested
+	 * paths depend on the variants and on the content encoding of the
+	 * clients, so building them all at the end of the bundling process would
+	 * spend the maximum size of the fast lane on responses which may never be
+	 * requested.
+	 */
+	private Map<String, BundleResponse> fastLaneResponses = new ConcurrentHashMap<>();
+
+	/** The size of the responses of the request fast lane */
+	private AtomicLong fastLaneSize = new AtomicLong();
+
+	/**
+	 * The generation number, which is incremented each time the configuration
+	 * is reloaded
+	 */
+	private int generationNumber;
+
+	/**
+	 * The previous generation, which serves the requests while the
+	 * configuration is reloaded
+	 */
+	private volatile JawrRequestHandler servingGeneration;
+
+	/** The previous generation kept during its grace period */
+	private AtomicReference<RetiredGeneration> retiredGeneration = new AtomicReference<>();
+
+	/** The cache manager replaced by the last configuration reload */
+	private JawrCacheManager replacedCacheManager;
+
+	/**
+	 * The flag indicating if this handler is the snapshot of a previous
+	 * generation, which can't reload the configuration
+	 */
+	private boolean generationSnapshot;
+
+	/**
+	 * The flag indicating if the handler is a user of the shared build
+	 * executor
+	 */
+	private boolean buildExecutorAcquired;
+
+	/** The Expires header value */
+	private volatile String expiresValue;
+
+	/** The time after which the Expires header value is computed again */
+	private volatile long expiresRefreshTime;
+
 	/**
 	 * Reads the properties file and initializes all configuration using the
 	 * ServletConfig object. If applicable, a ConfigChangeListenerThread will be
@@ -257,6 +338,8 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 
 		this.servletContext = context;
 		this.overrideProperties = configProps;
+		BuildExecutor.acquire();
+		buildExecutorAcquired = true;
 		resourceType = getInitParameter("type");
 		resourceType = null == resourceType ? "js" : resourceType;
 
@@ -341,9 +424,6 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		// Initialize config
 		initializeJawrConfig(props);
 
-		// initialize the cache manager
-		initializeApplicationCacheManager();
-
 		// initialize the Application config manager
 		JawrApplicationConfigManager appConfigMgr = initApplicationConfigManager();
 
@@ -352,11 +432,17 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	}
 
 	/**
-	 * Resets the cache manager
+	 * Resets the cache manager. When the configuration is reloaded, the cache
+	 * manager is replaced by a new one, and the previous one is kept for the
+	 * previous generation.
 	 */
-	private void initializeApplicationCacheManager() {
+	protected void initializeApplicationCacheManager() {
 
-		CacheManagerFactory.resetCacheManager(jawrConfig, resourceType);
+		if (generationNumber == 0) {
+			CacheManagerFactory.resetCacheManager(jawrConfig, resourceType);
+		} else {
+			replacedCacheManager = CacheManagerFactory.replaceCacheManager(jawrConfig, resourceType);
+		}
 	}
 
 	/**
@@ -495,6 +581,9 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		jawrConfig.setContext(servletContext);
 		jawrConfig.setGeneratorRegistry(generatorRegistry);
 
+		// initialize the cache manager before the bundles are built
+		initializeApplicationCacheManager();
+
 		// Set the content type to be used for every request.
 		contentType = "text/";
 		contentType += "js".equals(resourceType) ? "javascript" : "css";
@@ -538,6 +627,22 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 			throw new ServletException(e);
 		}
 
+		// The responses of the fast lane are dropped each time the bundles
+		// are built
+		clearFastLane();
+		bundlesHandler.addBundlingProcessLifeCycleListener(new BundlingProcessLifeCycleListener() {
+
+			@Override
+			public void beforeBundlingProcess() {
+				clearFastLane();
+			}
+
+			@Override
+			public void afterBundlingProcess() {
+				clearFastLane();
+			}
+		});
+
 		if (resourceType.equals(JawrConstant.JS_TYPE))
 			servletContext.setAttribute(JawrConstant.JS_CONTEXT_ATTRIBUTE, bundlesHandler);
 		else
@@ -600,7 +705,23 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	protected ResourceBundleHandler initResourceBundleHandler() {
 		ResourceBundleHandler rsHandler = null;
 		if (jawrConfig.getUseBundleMapping() && StringUtils.isNotEmpty(jawrConfig.getJawrWorkingDirectory())) {
-			rsHandler = new ServletContextResourceBundleHandler(servletContext, jawrConfig.getJawrWorkingDirectory(),
+			String workingDirectory = jawrConfig.getJawrWorkingDirectory();
+			if (generationNumber > 0) {
+				// The bundles of a new generation are stored in a fresh
+				// directory
+				if (!workingDirectory.endsWith(JawrConstant.URL_SEPARATOR)) {
+					workingDirectory += JawrConstant.URL_SEPARATOR;
+				}
+				workingDirectory += getGenerationDirName();
+			}
+			rsHandler = new ServletContextResourceBundleHandler(servletContext, workingDirectory,
+					jawrConfig.getResourceCharset(), jawrConfig.getGeneratorRegistry(), resourceType);
+		} else if (generationNumber > 0) {
+			// The bundles of a new generation are stored in a fresh directory
+			File tempDir = new File((File) servletContext.getAttribute(JawrConstant.SERVLET_CONTEXT_TEMPDIR),
+					JawrConstant.JAWR_WRK_DIR);
+			tempDir = new File(tempDir, getGenerationDirName());
+			rsHandler = new ServletContextResourceBundleHandler(servletContext, tempDir,
 					jawrConfig.getResourceCharset(), jawrConfig.getGeneratorRegistry(), resourceType);
 		} else {
 			rsHandler = new ServletContextResourceBundleHandler(servletContext, jawrConfig.getResourceCharset(),
@@ -609,6 +730,17 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		return rsHandler;
 	}
 
+	/**
+	 * Returns the name of the directory of the bundles of the current
+	 * generation, which alternates between the odd and the even generations
+	 * 
+	 * @return the name of the directory of the bundles of the current
+	 *         generation
+	 */
+	private String getGenerationDirName() {
+		return generationNumber % 2 == 1 ? GREEN_GENERATION_DIR : BLUE_GENERATION_DIR;
+	}
+
 	/**
 	 * Create the Jawr config from the properties
 	 * 
@@ -689,6 +821,22 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	public void processRequest(String requestedPath, HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
+		// While the configuration is reloaded, the previous generation serves
+		// the requests
+		JawrRequestHandler previousGeneration = servingGeneration;
+		if (previousGeneration != null) {
+			previousGeneration.processRequest(requestedPath, request, response);
+			return;
+		}
+
+		if (serveFromFastLane(requestedPath, request, response)) {
+			return;
+		}
+
+		if (retiredGeneration.get() != null && serveFromRetiredGeneration(requestedPath, request, response)) {
+			return;
+		}
+
 		StopWatch stopWatch = new StopWatch("Request Handling for '" + requestedPath + "'");
 		ThreadLocalJawrContext.setStopWatch(stopWatch);
 		stopWatch.start("Process request for '" + requestedPath + "'");
@@ -705,7 +853,7 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 			initThreadLocalJawrContext(request);
 
 			// manual reload request
-			if (this.jawrConfig.getRefreshKey().length() > 0
+			if (!generationSnapshot && this.jawrConfig.getRefreshKey().length() > 0
 					&& null != request.getParameter(JawrConstant.REFRESH_KEY_PARAM)
 					&& this.jawrConfig.getRefreshKey().equals(request.getParameter(JawrConstant.REFRESH_KEY_PARAM))) {
 
@@ -752,6 +900,248 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		}
 	}
 
+	/**
+	 * Serves the request from the responses of the fast lane. The fast lane
+	 * holds the responses of the bundles already served in production mode,
+	 * which are sent without setting up the Jawr context of the request.
+	 * 
+	 * @param requestedPath
+	 *            the requested path
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @return true if the request has been served
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	protected boolean serveFromFastLane(String requestedPath, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+
+		if (requestedPath == null || request.getQueryString() != null || fastLaneResponses.isEmpty()) {
+			return false;
+		}
+
+		BundleResponse bundleResponse = fastLaneResponses.get(requestedPath);
+		if (bundleResponse == null) {
+			return false;
+		}
+
+		if (null != request.getHeader(IF_MODIFIED_SINCE_HEADER) || null != request.getHeader(IF_NONE_MATCH_HEADER)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+
+		setDateHeaders(response);
+		try {
+			writeBundleResponse(bundleResponse, request, response);
+		} catch (EOFException eofex) {
+			LOGGER.info("Browser cut off response", eofex);
+		} catch (IOException e) {
+			if (ClientAbortExceptionResolver.isClientAbortException(e)) {
+				LOGGER.debug("Browser cut off response", e);
+			} else {
+				throw e;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Serves the request of a bundle from the previous generation, if the
+	 * bundle hashcode is only valid for this generation. The previous
+	 * generation is released once its grace period is over.
+	 * 
+	 * @param requestedPath
+	 *            the requested path
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @return true if the request has been served
+	 * @throws ServletException
+	 *             if a servlet exception occurs
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private boolean serveFromRetiredGeneration(String requestedPath, HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+
+		RetiredGeneration retired = retiredGeneration.get();
+		if (retired == null) {
+			return false;
+		}
+		if (retired.isExpired()) {
+			releaseRetiredGeneration();
+			return false;
+		}
+
+		if (requestedPath == null || jawrConfig.isDebugModeOn() || !PathNormalizer.isNormalized(requestedPath)) {
+			return false;
+		}
+
+		JawrRequestHandler handler = retired.getHandler();
+		if (isValidBundle(requestedPath).equals(BundleHashcodeType.INVALID_HASHCODE)
+				&& handler.isValidBundle(requestedPath).equals(BundleHashcodeType.VALID_HASHCODE)) {
+			handler.processRequest(requestedPath, request, response);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a snapshot of the current generation, which keeps serving the
+	 * requests while the configuration is reloaded. The fields which are
+	 * modified in place by the reload are copied, so the snapshot doesn't
+	 * share them with the new generation.
+	 * 
+	 * @return the snapshot of the current generation
+	 */
+	protected JawrRequestHandler createGenerationSnapshot() {
+
+		JawrRequestHandler snapshot;
+		try {
+			snapshot = (JawrRequestHandler) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new BundlingProcessException(e);
+		}
+		snapshot.initParameters = new HashMap<>(initParameters);
+		if (overrideProperties != null) {
+			snapshot.overrideProperties = new Properties();
+			snapshot.overrideProperties.putAll(overrideProperties);
+		}
+		snapshot.fastLaneResponses = new ConcurrentHashMap<>();
+		snapshot.fastLaneSize = new AtomicLong();
+		snapshot.servingGeneration = null;
+		snapshot.retiredGeneration = new AtomicReference<>();
+		snapshot.generationSnapshot = true;
+		snapshot.buildExecutorAcquired = false;
+		snapshot.configChangeListenerThread = null;
+		snapshot.watcher = null;
+		return snapshot;
+	}
+
+	/**
+	 * Releases the previous generation kept during its grace period
+	 */
+	private void releaseRetiredGeneration() {
+
+		RetiredGeneration retired = retiredGeneration.getAndSet(null);
+		if (retired != null) {
+			retired.release();
+		}
+	}
+
+	/**
+	 * Checks if the response of the request can be kept in the fast lane,
+	 * which must not be full
+	 * 
+	 * @param request
+	 *            the request
+	 * @param bundleHashcodeType
+	 *            the bundle hashcode type
+	 * @return true if the response of the request can be kept in the fast
+	 *         lane
+	 */
+	private boolean isFastLaneCandidate(HttpServletRequest request, BundleHashcodeType bundleHashcodeType) {
+
+		return fastLaneSize.get() < jawrConfig.getRequestFastLaneMaxSize() * 1024L && !jawrConfig.isDebugModeOn()
+				&& bundleHashcodeType.equals(BundleHashcodeType.VALID_HASHCODE)
+				&& jawrConfig.getDebugOverrideKey().length() == 0 && request.getQueryString() == null;
+	}
+
+	/**
+	 * Creates the response of a bundle
+	 * 
+	 * @param requestedPath
+	 *            the requested path
+	 * @param request
+	 *            the request
+	 * @param cacheControl
+	 *            the cache control header value
+	 * @return the response of the bundle
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 * @throws ResourceNotFoundException
+	 *             if the resource is not found
+	 */
+	private BundleResponse createBundleResponse(String requestedPath, HttpServletRequest request,
+			String cacheControl) throws IOException, ResourceNotFoundException {
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		String contentEncoding = null;
+		int idx = requestedPath.indexOf(BundleRenderer.GZIP_PATH_PREFIX);
+		if (idx != -1) {
+			String bundlePath = JawrConstant.URL_SEPARATOR
+					+ requestedPath.substring(idx + BundleRenderer.GZIP_PATH_PREFIX.length(), requestedPath.length());
+			if (!isValidRequestedPath(bundlePath)) {
+				throw new ResourceNotFoundException(bundlePath);
+			}
+			bundlesHandler.streamBundleTo(bundlePath, baos);
+			contentEncoding = GZIP;
+		} else {
+			if (!isValidRequestedPath(requestedPath)) {
+				throw new ResourceNotFoundException(requestedPath);
+			}
+			Writer writer = new OutputStreamWriter(baos, jawrConfig.getResourceCharset());
+			bundlesHandler.writeBundleTo(requestedPath, writer);
+			IOUtils.close(writer);
+		}
+
+		return new BundleResponse(getContentType(requestedPath, request), contentEncoding, baos.toByteArray(),
+				cacheControl);
+	}
+
+	/**
+	 * Writes the response of a bundle. Only the headers are written for the
+	 * HEAD requests.
+	 * 
+	 * @param bundleResponse
+	 *            the response of the bundle
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	private void writeBundleResponse(BundleResponse bundleResponse, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+
+		if (HEAD_METHOD.equals(request.getMethod())) {
+			bundleResponse.writeHeaders(response);
+		} else {
+			bundleResponse.writeTo(response);
+		}
+	}
+
+	/**
+	 * Keeps the response of a bundle in the fast lane if its maximum size is
+	 * not reached
+	 * 
+	 * @param requestedPath
+	 *            the requested path
+	 * @param bundleResponse
+	 *            the response of the bundle
+	 */
+	private void addToFastLane(String requestedPath, BundleResponse bundleResponse) {
+
+		long maxSize = jawrConfig.getRequestFastLaneMaxSize() * 1024L;
+		long size = fastLaneSize.addAndGet(bundleResponse.getContentLength());
+		if (size <= maxSize && fastLaneResponses.putIfAbsent(requestedPath, bundleResponse) == null) {
+			return;
+		}
+		fastLaneSize.addAndGet(-bundleResponse.getContentLength());
+	}
+
+	/**
+	 * Clears the responses of the fast lane
+	 */
+	protected void clearFastLane() {
+		fastLaneResponses.clear();
+		fastLaneSize.set(0);
+	}
+
 	/**
 	 * Initialize the ThreadLocalJawrContext
 	 * 
@@ -901,8 +1291,8 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 			}
 
 			if (validBundle) {
-				// Add caching headers
-				setResponseHeaders(response);
+				// The other caching headers are set by the bundle response
+				setDateHeaders(response);
 			} else {
 
 				writeResponseHeader = illegalBundleRequestHandler.writeResponseHeader(requestedPath, request, response);
@@ -916,10 +1306,22 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		try {
 			if (validBundle || illegalBundleRequestHandler.canWriteContent(requestedPath, request)) {
 
-				// By setting content type, the response writer will use
-				// appropriate encoding
-				response.setContentType(getContentType(requestedPath, request));
-				writeContent(requestedPath, request, response);
+				if (validBundle && !jawrConfig.isDebugModeOn()) {
+					// The bundle is buffered to set the ETag and the length of
+					// its content
+					String cacheControl = bundleHashcodeType.equals(BundleHashcodeType.VALID_HASHCODE)
+							? IMMUTABLE_CACHE_CONTROL_VALUE : CACHE_CONTROL_VALUE;
+					BundleResponse bundleResponse = createBundleResponse(requestedPath, request, cacheControl);
+					if (isFastLaneCandidate(request, bundleHashcodeType)) {
+						addToFastLane(requestedPath, bundleResponse);
+					}
+					writeBundleResponse(bundleResponse, request, response);
+				} else {
+					// By setting content type, the response writer will use
+					// appropriate encoding
+					response.setContentType(getContentType(requestedPath, request));
+					writeContent(requestedPath, request, response);
+				}
 				if (LOGGER.isDebugEnabled())
 					LOGGER.debug("request succesfully attended");
 			} else {
@@ -1126,11 +1528,42 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 	protected void setResponseHeaders(HttpServletResponse resp) {
 		// Force resource caching as best as possible
 		resp.setHeader(CACHE_CONTROL_HEADER, CACHE_CONTROL_VALUE);
-		resp.setHeader(LAST_MODIFIED_HEADER, LAST_MODIFIED_VALUE);
 		resp.setHeader(ETAG_HEADER, ETAG_VALUE);
-		Calendar cal = Calendar.getInstance();
-		cal.roll(Calendar.YEAR, 10);
-		resp.setDateHeader(EXPIRES_HEADER, cal.getTimeInMillis());
+		setDateHeaders(resp);
+	}
+
+	/**
+	 * Adds the Last-Modified and Expires headers to the response
+	 * 
+	 * @param resp
+	 *            the response
+	 */
+	protected void setDateHeaders(HttpServletResponse resp) {
+		resp.setHeader(LAST_MODIFIED_HEADER, LAST_MODIFIED_VALUE);
+		resp.setHeader(EXPIRES_HEADER, getExpiresValue());
+	}
+
+	/**
+	 * Returns the Expires header value, which is set 10 years from now. The
+	 * value is computed again once an hour.
+	 * 
+	 * @return the Expires header value
+	 */
+	private String getExpiresValue() {
+
+		long now = System.currentTimeMillis();
+		String value = expiresValue;
+		if (value == null || now > expiresRefreshTime) {
+			Calendar cal = Calendar.getInstance();
+			cal.setTimeInMillis(now);
+			cal.roll(Calendar.YEAR, 10);
+			SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			value = format.format(cal.getTime());
+			expiresValue = value;
+			expiresRefreshTime = now + EXPIRES_REFRESH_DELAY;
+		}
+		return value;
 	}
 
 	/**
@@ -1166,6 +1599,12 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		JmxUtils.unregisterJMXBean(servletContext, resourceType,
 				jawrConfig.getProperty(JawrConstant.JAWR_JMX_MBEAN_PREFIX));
 
+		// The build executor is shared with the handlers of the other
+		// resource types
+		if (buildExecutorAcquired) {
+			buildExecutorAcquired = false;
+			BuildExecutor.release();
+		}
 		ThreadLocalJawrContext.reset();
 	}
 
@@ -1184,6 +1623,22 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 		return bundleNames;
 	}
 
+	/**
+	 * Returns the JSON profile of the last bundling process
+	 * 
+	 * @return the JSON profile of the last bundling process
+	 */
+	public String getBundlingProfile() {
+
+		BundlingProfiler profiler = jawrConfig != null ? jawrConfig.getBundlingProfiler() : null;
+		if (profiler == null) {
+			return "The bundling profiling is not enabled. Set the property '" + JawrConfig.JAWR_BUNDLING_PROFILING
+					+ "' to true to enable it.";
+		}
+		String profile = profiler.getLastProfile();
+		return profile != null ? profile : "No bundling process has been profiled yet.";
+	}
+
 	/**
 	 * Refresh the dirty bundles
 	 */
@@ -1245,6 +1700,8 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 
 			// clears resource bundle cache for the refresh
 			ResourceBundle.clearCache();
+			// locates the webjars of the classpath again
+			WebJarsLocatorPathResolver.resetSharedLocator();
 			StopWatch stopWatch = ThreadLocalJawrContext.getStopWatch();
 			if (stopWatch != null && stopWatch.isRunning()) {
 				stopWatch.stop();
@@ -1257,7 +1714,32 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 			}
 			props.putAll(newConfig);
 
-			initializeJawrContext(props);
+			// The directory of the generation before the previous one is
+			// reused by the new generation
+			releaseRetiredGeneration();
+
+			// The current generation serves the requests until the new one
+			// is built
+			JawrRequestHandler previousGeneration = null;
+			if (bundlesHandler != null) {
+				previousGeneration = createGenerationSnapshot();
+				servingGeneration = previousGeneration;
+			}
+			generationNumber++;
+			replacedCacheManager = null;
+			try {
+				initializeJawrContext(props);
+				clearFastLane();
+			} finally {
+				// Publish the new generation
+				servingGeneration = null;
+			}
+
+			if (previousGeneration != null) {
+				retiredGeneration.set(new RetiredGeneration(previousGeneration, replacedCacheManager,
+						System.currentTimeMillis() + jawrConfig.getGenerationGracePeriod() * 1000L));
+			}
+			replacedCacheManager = null;
 
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Jawr configuration succesfully reloaded. ");
@@ -1277,4 +1759,63 @@ public class JawrRequestHandler implements ConfigChangeListener, Serializable {
 
 	}
 
+	/**
+	 * This class defines a previous generation of the request handler, which
+	 * is kept during its grace period to serve the requests of its bundles.
+	 */
+	private static class RetiredGeneration {
+
+		/** The request handler of the generation */
+		private final JawrRequestHandler handler;
+
+		/** The cache manager of the generation */
+		private final JawrCacheManager cacheManager;
+
+		/** The time after which the generation is released */
+		private final long expiryTime;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param handler
+		 *            the request handler of the generation
+		 * @param cacheManager
+		 *            the cache manager of the generation
+		 * @param expiryTime
+		 *            the time after which the generation is released
+		 */
+		public RetiredGeneration(JawrRequestHandler handler, JawrCacheManager cacheManager, long expiryTime) {
+			this.handler = handler;
+			this.cacheManager = cacheManager;
+			this.expiryTime = expiryTime;
+		}
+
+		/**
+		 * Returns the request handler of the generation
+		 * 
+		 * @return the request handler of the generation
+		 */
+		public JawrRequestHandler getHandler() {
+			return handler;
+		}
+
+		/**
+		 * Checks if the grace period of the generation is over
+		 * 
+		 * @return true if the grace period of the generation is over
+		 */
+		public boolean isExpired() {
+			return System.currentTimeMillis() > expiryTime;
+		}
+
+		/**
+		 * Releases the resources of the generation
+		 */
+		public void release() {
+			if (cacheManager != null) {
+				cacheManager.clear();
+			}
+			handler.clearFastLane();
+		}
+	}
 }
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.taglib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.resource.BinaryResourcesHandler;
+import net.jawr.web.resource.FileNameUtils;
+import net.jawr.web.resource.bundle.IOUtils;
+
+/**
+ * This class scans the pages of the web application for the Jawr image tags,
+ * and computes the cache busted URL of the images they reference. It is
+ * launched in background at startup, so the first page renderings don't have
+ * to compute the image checksums.
+ *
+ * Only the images referenced by an absolute path or by a generator path are
+ * handled, as the relative paths depend on the requested page.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public class ImageTagPrescanner implements Runnable {
+
+	/** The logger */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageTagPrescanner.class);
+
+	/** The extensions of the scanned pages */
+	private static final List<String> PAGE_EXTENSIONS = Arrays.asList("jsp", "jspx", "jspf", "tag", "tagx", "xhtml");
+
+	/** The pattern of the image tags */
+	private static final Pattern IMAGE_TAG_PATTERN = Pattern
+			.compile("<jawr:(?:img|image|imagePath)\\b[^>]*?\\bsrc\\s*=\\s*[\"']([^\"']+)[\"']");
+
+	/** The servlet context */
+	private final ServletContext servletContext;
+
+	/** The binary resource handler */
+	private final BinaryResourcesHandler binaryRsHandler;
+
+	/** The directories to scan */
+	private final List<String> directories;
+
+	/**
+	 * Constructor
+	 *
+	 * @param servletContext
+	 *            the servlet context
+	 * @param binaryRsHandler
+	 *            the binary resource handler
+	 * @param directories
+	 *            the comma separated list of directories to scan
+	 */
+	public ImageTagPrescanner(ServletContext servletContext, BinaryResourcesHandler binaryRsHandler,
+			String directories) {
+		this.servletContext = servletContext;
+		this.binaryRsHandler = binaryRsHandler;
+		this.directories = Arrays.asList(directories.replaceAll("\\s", "").split(","));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+
+		Set<String> imagePaths = new LinkedHashSet<>();
+		for (String dir : directories) {
+			if (dir.length() > 0) {
+				scanDirectory(dir.endsWith(JawrConstant.URL_SEPARATOR) ? dir : dir + JawrConstant.URL_SEPARATOR,
+						imagePaths);
+			}
+		}
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Image tag pre-scan found " + imagePaths.size() + " image(s)");
+		}
+
+		for (String imagePath : imagePaths) {
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			ImageTagUtils.getCacheBustedUrl(imagePath, binaryRsHandler);
+		}
+	}
+
+	/**
+	 * Scans the pages of a directory and of its sub directories
+	 *
+	 * @param dir
+	 *            the directory path
+	 * @param imagePaths
+	 *            the image paths found
+	 */
+	private void scanDirectory(String dir, Set<String> imagePaths) {
+
+		Set<String> paths = servletContext.getResourcePaths(dir);
+		if (paths == null) {
+			return;
+		}
+
+		for (String path : paths) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			if (path.endsWith(JawrConstant.URL_SEPARATOR)) {
+				scanDirectory(path, imagePaths);
+			} else if (PAGE_EXTENSIONS.contains(FileNameUtils.getExtension(path).toLowerCase())) {
+				scanPage(path, imagePaths);
+			}
+		}
+	}
+
+	/**
+	 * Adds the paths of the images referenced by the image tags of the page
+	 *
+	 * @param path
+	 *            the page path
+	 * @param imagePaths
+	 *            the image paths found
+	 */
+	private void scanPage(String path, Set<String> imagePaths) {
+
+		InputStream is = servletContext.getResourceAsStream(path);
+		if (is == null) {
+			return;
+		}
+
+		String content;
+		try (Reader rd = new InputStreamReader(is, binaryRsHandler.getConfig().getResourceCharset())) {
+			content = IOUtils.toString(rd);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to scan the page '" + path + "'", e);
+			return;
+		}
+
+		Matcher matcher = IMAGE_TAG_PATTERN.matcher(content);
+		while (matcher.find()) {
+			String src = matcher.group(1).trim();
+			if (isStaticPath(src)) {
+				imagePaths.add(src);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the image path can be resolved without the request, which is
+	 * the case for the absolute paths and the generated resources which don't
+	 * use expressions
+	 *
+	 * @param src
+	 *            the image path
+	 * @return true if the image path can be resolved without the request
+	 */
+	private boolean isStaticPath(String src) {
+
+		if (src.contains("${") || src.contains("#{") || src.contains("<%")) {
+			return false;
+		}
+		return src.startsWith(JawrConstant.URL_SEPARATOR)
+				|| binaryRsHandler.getConfig().getGeneratorRegistry().isGeneratedBinaryResource(src);
+	}
+}
@@ -13,9 +13,9 @@
  */
 package net.jawr.web.taglib;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,7 +31,6 @@ import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.BinaryResourcesHandler;
 import net.jawr.web.resource.FileNameUtils;
 import net.jawr.web.resource.bundle.CheckSumUtils;
-import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
 import net.jawr.web.servlet.RendererRequestUtils;
 import net.jawr.web.servlet.util.MIMETypesSupport;
@@ -107,20 +106,9 @@ public final class ImageTagUtils {
 
 		imgSrc = getFullImagePath(imgSrc, binaryRsHandler, request);
 
-		String newUrl = (String) binaryRsHandler.getCacheUrl(imgSrc);
+		String newUrl = getCacheBustedUrl(imgSrc, binaryRsHandler);
 
 		JawrConfig jawrConfig = binaryRsHandler.getConfig();
-		if (newUrl == null) {
-			try {
-				newUrl = CheckSumUtils.getCacheBustedUrl(imgSrc, binaryRsHandler.getRsReaderHandler(), jawrConfig);
-				binaryRsHandler.addMapping(imgSrc, newUrl);
-			} catch (IOException e) {
-				LOGGER.info("Unable to create the checksum for the image '" + imgSrc + "' while generating image tag.");
-			} catch (ResourceNotFoundException e) {
-				LOGGER.info("Unable to find the image '" + imgSrc + "' while generating image tag.");
-			}
-		}
-
 		if (newUrl == null) {
 			newUrl = imgSrc;
 		}
@@ -141,6 +129,45 @@ public final class ImageTagUtils {
 		return newUrl;
 	}
 
+	/**
+	 * Returns the cache busted URL of the image. If the URL is not already
+	 * mapped, it is computed only once, even if several threads request the
+	 * same image concurrently.
+	 * 
+	 * @param imgSrc
+	 *            the full image path
+	 * @param binaryRsHandler
+	 *            the binary resource handler
+	 * @return the cache busted URL, or null if it can't be computed
+	 */
+	static String getCacheBustedUrl(final String imgSrc, final BinaryResourcesHandler binaryRsHandler) {
+
+		String newUrl = binaryRsHandler.getCacheUrl(imgSrc);
+		if (newUrl == null) {
+			newUrl = binaryRsHandler.computeOnce(imgSrc, new Callable<String>() {
+
+				@Override
+				public String call() {
+					String url = binaryRsHandler.getCacheUrl(imgSrc);
+					if (url == null) {
+						try {
+							url = CheckSumUtils.getCacheBustedUrl(imgSrc, binaryRsHandler.getRsReaderHandler(),
+									binaryRsHandler.getConfig());
+							binaryRsHandler.addMapping(imgSrc, url);
+						} catch (IOException e) {
+							LOGGER.info("Unable to create the checksum for the image '" + imgSrc
+									+ "' while generating image tag.");
+						} catch (ResourceNotFoundException e) {
+							LOGGER.info("Unable to find the image '" + imgSrc + "' while generating image tag.");
+						}
+					}
+					return url;
+				}
+			});
+		}
+		return newUrl;
+	}
+
 	/**
 	 * Returns the full image path to handle the relative path
 	 * 
@@ -215,31 +242,55 @@ public final class ImageTagUtils {
 					"You are using a Jawr image tag while the Jawr Image servlet has not been initialized. Initialization of Jawr Image servlet either failed or never occurred.");
 		}
 
-		imgSrc = getFullImagePath(imgSrc, binaryRsHandler, request);
+		final String imgPath = getFullImagePath(imgSrc, binaryRsHandler, request);
+		final BinaryResourcesHandler rsHandler = binaryRsHandler;
 
-		encodedResult = binaryRsHandler.getCacheUrl(BASE64_KEY_PREFIX + imgSrc);
+		encodedResult = binaryRsHandler.getBase64Image(imgPath);
 		if (encodedResult == null) {
-			try {
-				String fileExtension = FileNameUtils.getExtension(imgSrc);
-				String fileMimeType = (String) MIMETypesSupport.getSupportedProperties(ImageTagUtils.class)
-						.get(fileExtension);
-
-				InputStream is = binaryRsHandler.getRsReaderHandler().getResourceAsStream(imgSrc);
-
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				IOUtils.copy(is, out, true);
-				byte[] data = out.toByteArray();
-				encodedResult = new String(Base64Encoder.encode(data));
-				encodedResult = DATA_PREFIX + fileMimeType + ";base64," + encodedResult;
-				binaryRsHandler.addMapping(BASE64_KEY_PREFIX + imgSrc, encodedResult);
-			} catch (ResourceNotFoundException e) {
-				LOGGER.warn("Unable to find the image '" + imgSrc + "' while generating image tag.");
-			} catch (IOException e) {
-				LOGGER.warn("Unable to copy the image '" + imgSrc + "' while generating image tag.");
-			}
+			encodedResult = binaryRsHandler.computeOnce(BASE64_KEY_PREFIX + imgPath, new Callable<String>() {
+
+				@Override
+				public String call() {
+					String result = rsHandler.getBase64Image(imgPath);
+					if (result == null) {
+						result = encodeImage(imgPath, rsHandler);
+						if (result != null) {
+							rsHandler.addBase64Image(imgPath, result);
+						}
+					}
+					return result;
+				}
+			});
 		}
 
 		return encodedResult;
 	}
 
+	/**
+	 * Returns the data URL of the image, where the image is encoded in base64
+	 * 
+	 * @param imgPath
+	 *            the full image path
+	 * @param binaryRsHandler
+	 *            the binary resource handler
+	 * @return the data URL of the image, or null if the image can't be read
+	 */
+	private static String encodeImage(String imgPath, BinaryResourcesHandler binaryRsHandler) {
+
+		String encodedResult = null;
+		String fileExtension = FileNameUtils.getExtension(imgPath);
+		String fileMimeType = (String) MIMETypesSupport.getSupportedProperties(ImageTagUtils.class).get(fileExtension);
+
+		try (InputStream is = binaryRsHandler.getRsReaderHandler().getResourceAsStream(imgPath)) {
+			StringBuilder sb = new StringBuilder(DATA_PREFIX).append(fileMimeType).append(";base64,");
+			Base64Encoder.encode(is, sb);
+			encodedResult = sb.toString();
+		} catch (ResourceNotFoundException e) {
+			LOGGER.warn("Unable to find the image '" + imgPath + "' while generating image tag.");
+		} catch (IOException e) {
+			LOGGER.warn("Unable to copy the image '" + imgPath + "' while generating image tag.");
+		}
+		return encodedResult;
+	}
+
 }
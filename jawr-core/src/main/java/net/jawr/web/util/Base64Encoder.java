@@ -13,6 +13,9 @@
 //This module is provided "as is", without warranties of any kind.
 package net.jawr.web.util;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * A Base64 encoder/decoder.
  * 
@@ -32,6 +35,9 @@ public class Base64Encoder {
 	// The line separator string of the operating system.
 	private static final String systemLineSeparator = System.getProperty("line.separator");
 
+	// The chunk size used to encode streams (must be a multiple of 3)
+	private static final int STREAM_CHUNK_SIZE = 3 * 1024;
+
 	// Mapping table from 6-bit nibbles to Base64 characters.
 	private static char[] map1 = new char[64];
 	static {
@@ -179,6 +185,82 @@ public class Base64Encoder {
 		return out;
 	}
 
+	/**
+	 * Encodes the content of an input stream into Base64 format and appends
+	 * the result to the output buffer. The stream is read and encoded by
+	 * chunks, so the content is never held in memory as a whole byte array.
+	 * No blanks or line breaks are inserted in the output. The input stream
+	 * is not closed by this method.
+	 * 
+	 * @param in
+	 *            the input stream to encode
+	 * @param out
+	 *            the buffer where the Base64 encoded data will be appended
+	 * @return the number of bytes read from the input stream
+	 * @throws IOException
+	 *             if an I/O exception occurs
+	 */
+	public static long encode(InputStream in, StringBuilder out) throws IOException {
+
+		// The chunk size must be a multiple of 3 to avoid padding characters
+		// in the middle of the output
+		byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+		char[] encoded = new char[(STREAM_CHUNK_SIZE / 3) * 4];
+		long total = 0;
+		int len = 0;
+		int read = 0;
+		while (read != -1) {
+			read = in.read(buffer, len, buffer.length - len);
+			if (read > 0) {
+				len += read;
+				total += read;
+			}
+			if (len == buffer.length || (read == -1 && len > 0)) {
+				int oLen = encode(buffer, 0, len, encoded);
+				out.append(encoded, 0, oLen);
+				len = 0;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Encodes a byte array into Base64 format in the given output array.
+	 * 
+	 * @param in
+	 *            An array containing the data bytes to be encoded.
+	 * @param iOff
+	 *            Offset of the first byte in <code>in</code> to be processed.
+	 * @param iLen
+	 *            Number of bytes to process in <code>in</code>, starting at
+	 *            <code>iOff</code>.
+	 * @param out
+	 *            the character array where the encoded data is written
+	 * @return the number of characters written
+	 */
+	private static int encode(byte[] in, int iOff, int iLen, char[] out) {
+		int oDataLen = (iLen * 4 + 2) / 3; // output length without padding
+		int ip = iOff;
+		int iEnd = iOff + iLen;
+		int op = 0;
+		while (ip < iEnd) {
+			int i0 = in[ip++] & 0xff;
+			int i1 = ip < iEnd ? in[ip++] & 0xff : 0;
+			int i2 = ip < iEnd ? in[ip++] & 0xff : 0;
+			int o0 = i0 >>> 2;
+			int o1 = ((i0 & 3) << 4) | (i1 >>> 4);
+			int o2 = ((i1 & 0xf) << 2) | (i2 >>> 6);
+			int o3 = i2 & 0x3F;
+			out[op++] = map1[o0];
+			out[op++] = map1[o1];
+			out[op] = op < oDataLen ? map1[o2] : '=';
+			op++;
+			out[op] = op < oDataLen ? map1[o3] : '=';
+			op++;
+		}
+		return op;
+	}
+
 	/**
 	 * Decodes a string from Base64 format. No blanks or line breaks are allowed
 	 * within the Base64 encoded input data.
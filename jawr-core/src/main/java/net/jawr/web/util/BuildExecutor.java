@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.jawr.web.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the executor shared by the bundling processes, to run the
+ * build tasks in parallel.
+ *
+ * The executor doesn't limit the number of threads, it is the responsibility
+ * of the caller to limit the number of tasks submitted at the same time. The
+ * threads are daemon threads, which are released after one minute of
+ * inactivity.
+ *
+ * The executor is shared by the request handlers of the different resource
+ * types, so each handler acquires it when it is initialized and releases it
+ * when it is destroyed. The executor is shut down once it is released by all
+ * its users.
+ *
+ * @author Ibrahim Chaehoi
+ */
+public final class BuildExecutor {
+
+	/** The shared executor */
+	private static ExecutorService executor;
+
+	/** The number of users of the shared executor */
+	private static int userCount;
+
+	/**
+	 * Constructor
+	 */
+	private BuildExecutor() {
+
+	}
+
+	/**
+	 * Returns the shared executor. The executor is created if needed.
+	 *
+	 * @return the shared executor
+	 */
+	public static synchronized ExecutorService getExecutor() {
+
+		if (executor == null || executor.isShutdown()) {
+			executor = Executors.newCachedThreadPool(new BuildThreadFactory());
+		}
+		return executor;
+	}
+
+	/**
+	 * Registers a user of the shared executor, which must call
+	 * {@link #release()} when it doesn't need the executor anymore.
+	 */
+	public static synchronized void acquire() {
+
+		userCount++;
+	}
+
+	/**
+	 * Unregisters a user of the shared executor. The executor is shut down
+	 * when its last user is unregistered, and a new executor will be created
+	 * at the next call of {@link #getExecutor()}.
+	 */
+	public static synchronized void release() {
+
+		if (userCount > 0) {
+			userCount--;
+		}
+		if (userCount == 0 && executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the number of users of the shared executor
+	 *
+	 * @return the number of users of the shared executor
+	 */
+	public static synchronized int getUserCount() {
+
+		return userCount;
+	}
+
+	/**
+	 * The thread factory of the build executor
+	 */
+	private static class BuildThreadFactory implements ThreadFactory {
+
+		/** The thread counter */
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Jawr build worker-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -22,10 +22,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -487,6 +492,48 @@ public class FileUtils {
 		}
 	}
 
+	/**
+	 * Writes the content in the file. The content is written in a temporary
+	 * file of the same directory, which is then moved to the target file.
+	 *
+	 * @param f
+	 *            the target file
+	 * @param content
+	 *            the content
+	 * @param charset
+	 *            the charset
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public static void writeAtomically(File f, String content, Charset charset) throws IOException {
+
+		File parent = f.getParentFile();
+		if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create the directory : " + parent.getPath());
+		}
+
+		File tmpFile = File.createTempFile(f.getName(), ".tmp", parent);
+		try {
+			OutputStream os = new FileOutputStream(tmpFile);
+			try {
+				IOUtils.write(content.getBytes(charset), os);
+			} finally {
+				IOUtils.close(os);
+			}
+
+			try {
+				Files.move(tmpFile.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			if (tmpFile.exists()) {
+				tmpFile.delete();
+			}
+		}
+	}
+
 	/**
 	 * Returns the resource names contained in a directory, and for directory
 	 * resource, a trailing '/' is added
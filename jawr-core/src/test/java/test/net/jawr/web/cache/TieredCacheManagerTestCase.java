@@ -0,0 +1,164 @@
+package test.net.jawr.web.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.cache.TieredCacheManager;
+import net.jawr.web.config.JawrConfig;
+import test.net.jawr.web.FileUtils;
+
+public class TieredCacheManagerTestCase {
+
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = new File(FileUtils.getClasspathRootDir(), "tieredCache");
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	private TieredCacheManager createCacheManager(String type) {
+		return createCacheManager(type, null);
+	}
+
+	private TieredCacheManager createCacheManager(String type, String secondarySize) {
+		Properties props = new Properties();
+		// 16 KB of heap tier, i.e. 1 KB per stripe
+		props.setProperty(TieredCacheManager.JAWR_CACHE_HEAP_SIZE, "16");
+		if (secondarySize != null) {
+			props.setProperty(TieredCacheManager.JAWR_CACHE_SECONDARY_SIZE, secondarySize);
+		}
+		props.setProperty(TieredCacheManager.JAWR_CACHE_SECONDARY_TYPE, type);
+		props.setProperty(TieredCacheManager.JAWR_CACHE_SECONDARY_DIR, cacheDir.getAbsolutePath());
+		return new TieredCacheManager(new JawrConfig("js", props));
+	}
+
+	private void checkTiers(TieredCacheManager cacheMgr) {
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			text.append("é");
+		}
+
+		for (int i = 0; i < 100; i++) {
+			byte[] data = new byte[900];
+			data[0] = (byte) i;
+			cacheMgr.put("ZIP.bundle" + i, data);
+			cacheMgr.put("TEXT.bundle" + i, text.toString() + i);
+		}
+
+		// Each stripe keeps at most one element in the heap tier
+		assertTrue(cacheMgr.getHeapElementCount() <= 16);
+		assertEquals(200, cacheMgr.getHeapElementCount() + cacheMgr.getSecondaryElementCount());
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, ((byte[]) cacheMgr.get("ZIP.bundle" + i))[0]);
+			assertEquals(text.toString() + i, cacheMgr.get("TEXT.bundle" + i));
+		}
+		assertEquals(text.toString() + 0, cacheMgr.remove("TEXT.bundle0"));
+		assertNull(cacheMgr.get("TEXT.bundle0"));
+
+		cacheMgr.clear();
+		assertNull(cacheMgr.get("ZIP.bundle1"));
+		assertEquals(0, cacheMgr.getHeapElementCount() + cacheMgr.getSecondaryElementCount());
+	}
+
+	@Test
+	public void testOffHeapTier() throws Exception {
+		checkTiers(createCacheManager(TieredCacheManager.OFF_HEAP_SECONDARY_TYPE));
+	}
+
+	@Test
+	public void testMappedFileTier() throws Exception {
+		TieredCacheManager cacheMgr = createCacheManager(TieredCacheManager.MAPPED_FILE_SECONDARY_TYPE);
+		checkTiers(cacheMgr);
+		assertEquals(0, new File(cacheDir, "js").list().length);
+	}
+
+	@Test
+	public void testMappedFilesAreReused() throws Exception {
+		TieredCacheManager cacheMgr = createCacheManager(TieredCacheManager.MAPPED_FILE_SECONDARY_TYPE, "256");
+		for (int i = 0; i < 1000; i++) {
+			cacheMgr.put("ZIP.bundle" + i, new byte[900]);
+		}
+		assertTrue(cacheMgr.getSecondaryElementCount() > 0);
+
+		// The secondary tier uses one file per stripe
+		File generationDir = new File(cacheDir, "js").listFiles()[0];
+		assertTrue(generationDir.list().length <= 16);
+		cacheMgr.clear();
+	}
+
+	@Test
+	public void testOversizedElementsAreNotStored() throws Exception {
+
+		// 256 KB of secondary tier, i.e. 16 KB per stripe
+		TieredCacheManager cacheMgr = createCacheManager(TieredCacheManager.OFF_HEAP_SECONDARY_TYPE, "256");
+		for (int i = 0; i < 16; i++) {
+			byte[] data = new byte[900];
+			data[0] = (byte) i;
+			cacheMgr.put("ZIP.bundle" + i, data);
+		}
+		for (int i = 0; i < 16; i++) {
+			assertEquals(i, ((byte[]) cacheMgr.get("ZIP.bundle" + i))[0]);
+		}
+
+		// The elements larger than the secondary tier of a stripe are dropped
+		// when they are evicted from the heap tier, without evicting the
+		// elements of the secondary tier
+		for (int i = 0; i < 32; i++) {
+			cacheMgr.put("TEXT.big" + i, new String(new char[20 * 1024]));
+		}
+		for (int i = 0; i < 16; i++) {
+			assertEquals(i, ((byte[]) cacheMgr.get("ZIP.bundle" + i))[0]);
+		}
+		int bigElementCount = 0;
+		for (int i = 0; i < 32; i++) {
+			if (cacheMgr.get("TEXT.big" + i) != null) {
+				bigElementCount++;
+			}
+		}
+		assertTrue(bigElementCount < 32);
+		cacheMgr.clear();
+	}
+
+	@Test
+	public void testGenerationsDontShareMappedFiles() throws Exception {
+		TieredCacheManager previousCacheMgr = createCacheManager(TieredCacheManager.MAPPED_FILE_SECONDARY_TYPE);
+		for (int i = 0; i < 100; i++) {
+			previousCacheMgr.put("ZIP.bundle" + i, new byte[] { 1 });
+			previousCacheMgr.put("TEXT.bundle" + i, new String(new char[400]).replace('\0', 'a'));
+		}
+		assertTrue(previousCacheMgr.getSecondaryElementCount() > 0);
+
+		// The cache manager of the new generation uses the same directory
+		TieredCacheManager cacheMgr = createCacheManager(TieredCacheManager.MAPPED_FILE_SECONDARY_TYPE);
+		for (int i = 0; i < 100; i++) {
+			cacheMgr.put("TEXT.bundle" + i, new String(new char[400]).replace('\0', 'b'));
+		}
+		assertTrue(cacheMgr.getSecondaryElementCount() > 0);
+		assertEquals(2, new File(cacheDir, "js").list().length);
+
+		// Releasing the previous generation doesn't affect the new one
+		previousCacheMgr.clear();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(new String(new char[400]).replace('\0', 'b'), cacheMgr.get("TEXT.bundle" + i));
+		}
+		assertEquals(1, new File(cacheDir, "js").list().length);
+		cacheMgr.clear();
+		assertEquals(0, new File(cacheDir, "js").list().length);
+	}
+}
@@ -115,6 +115,45 @@ public class OrphanResourceBundlesMapperTest {
 		
 	}
 	
+	/**
+	 * Checks that a bundle ID matching an orphan resource is only reported as
+	 * a duplicate if no bundle maps the resource, whatever the order of the
+	 * bundles.
+	 */
+	@Test
+	public void testDuplicateBundleIdDoesNotDependOnBundleOrder() throws Exception {
+
+		JoinableResourceBundle bundleWithResourceId = buildMockResourceBundle(Collections.<String> emptyList(),
+				Collections.<String> emptySet());
+		when(bundleWithResourceId.getId()).thenReturn("/js/one.js");
+		JoinableResourceBundle bundleMappingResource = buildMockResourceBundle(Arrays.asList("/js/one.js"),
+				Collections.<String> emptySet());
+
+		// The resource is mapped, so there is no duplicate
+		getOrphansList(bundleWithResourceId, bundleMappingResource);
+		getOrphansList(bundleMappingResource, bundleWithResourceId);
+
+		JoinableResourceBundle otherBundle = buildMockResourceBundle(Arrays.asList("/js/two.js"),
+				Collections.<String> emptySet());
+		for (List<JoinableResourceBundle> bundles : Arrays.asList(Arrays.asList(bundleWithResourceId, otherBundle),
+				Arrays.asList(otherBundle, bundleWithResourceId))) {
+			try {
+				getOrphansList(bundles.toArray(new JoinableResourceBundle[bundles.size()]));
+				fail("The duplicate bundle ID has not been detected");
+			} catch (DuplicateBundlePathException e) {
+				assertEquals("/js/one.js", e.getBundlePath());
+			}
+		}
+	}
+
+	private List<String> getOrphansList(JoinableResourceBundle... bundles) throws Exception {
+
+		ResourceReaderHandler rsHandler = rhb.createResourceReaderHandler(ROOT_TESTDIR, "js",
+				Charset.forName("UTF-8"));
+		return new OrphanResourceBundlesMapper("", rsHandler, rhb.getConfig().getGeneratorRegistry(),
+				Arrays.asList(bundles), "js").getOrphansList();
+	}
+
 	private JoinableResourceBundle buildMockResourceBundle(final List<String> avoidedPaths, final Set<String> licenses) {
 		
 		JoinableResourceBundle bundle = Mockito.mock(JoinableResourceBundle.class);
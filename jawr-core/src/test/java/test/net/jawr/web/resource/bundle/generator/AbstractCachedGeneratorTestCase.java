@@ -0,0 +1,173 @@
+package test.net.jawr.web.resource.bundle.generator;
+
+import static net.jawr.web.util.FileUtils.writeAtomically;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.IOUtils;
+import net.jawr.web.resource.bundle.generator.AbstractJavascriptGenerator;
+import net.jawr.web.resource.bundle.generator.CachedGenerator;
+import net.jawr.web.resource.bundle.generator.CachedGenerator.CacheMode;
+import net.jawr.web.resource.bundle.generator.GeneratorContext;
+import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolver;
+import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolverFactory;
+import net.jawr.web.resource.bundle.mappings.FilePathMapping;
+import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import test.net.jawr.web.FileUtils;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class AbstractCachedGeneratorTestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String workDir;
+
+	private File srcFile;
+
+	private JawrConfig config;
+
+	private TestGenerator generator;
+
+	@Before
+	public void setUp() throws Exception {
+
+		workDir = FileUtils.getClasspathRootDir() + "/generator/cachedGenerator/";
+		FileUtils.clearDirectory(workDir);
+		srcFile = new File(workDir + "src/script.test");
+		writeAtomically(srcFile, "var a = 1;", UTF8);
+
+		config = new JawrConfig("js", new Properties());
+		config.setContext(new MockServletContext());
+		config.setCharsetName("UTF-8");
+
+		generator = new TestGenerator();
+		generator.setConfig(config);
+		generator.setResourceReaderHandler(mock(ResourceReaderHandler.class));
+		generator.setWorkingDirectory(workDir + "work");
+		generator.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	private String getResourceContent(String path) throws Exception {
+
+		GeneratorContext context = new GeneratorContext(null, config, path);
+		context.setProcessingBundle(true);
+		return IOUtils.toString(generator.createResource(context));
+	}
+
+	@Test
+	public void testResourceIsGeneratedOncePerKey() throws Exception {
+
+		generator.generationDelay = 200;
+		final List<String> paths = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			paths.add(i % 2 == 0 ? "/a.test" : "/b.test");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(paths.size());
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<String>> results = new ArrayList<>();
+			for (final String path : paths) {
+				results.add(executor.submit(new Callable<String>() {
+
+					@Override
+					public String call() throws Exception {
+						start.await();
+						return getResourceContent(path);
+					}
+				}));
+			}
+			start.countDown();
+
+			for (int i = 0; i < paths.size(); i++) {
+				assertEquals("var path = '" + paths.get(i) + "';", results.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, generator.getGenerationCount("/a.test"));
+		assertEquals(1, generator.getGenerationCount("/b.test"));
+	}
+
+	@Test(timeout = 10000)
+	public void testReentrantGeneration() throws Exception {
+
+		// The resource requests itself while it is generated
+		generator.reentrantPath = "/self.test";
+		assertTrue(getResourceContent("/self.test").startsWith("var path = '/self.test';"));
+		assertEquals(2, generator.getGenerationCount("/self.test"));
+	}
+
+	@CachedGenerator(name = "Test", cacheDirectory = "testJs", mappingFileName = "testCache.txt", mode = CacheMode.ALL)
+	private class TestGenerator extends AbstractJavascriptGenerator {
+
+		/** The number of generations by path */
+		private final ConcurrentMap<String, AtomicInteger> generationCounts = new ConcurrentHashMap<>();
+
+		/** The duration of a generation */
+		private volatile long generationDelay;
+
+		/** The path of the resource which requests itself once */
+		private volatile String reentrantPath;
+
+		private int getGenerationCount(String path) {
+			AtomicInteger count = generationCounts.get(path);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public ResourceGeneratorResolver getResolver() {
+			return ResourceGeneratorResolverFactory.createSuffixResolver("test");
+		}
+
+		@Override
+		protected Reader generateResource(String path, GeneratorContext context) {
+
+			generationCounts.putIfAbsent(path, new AtomicInteger());
+			generationCounts.get(path).incrementAndGet();
+
+			String content = "var path = '" + path + "';";
+			try {
+				Thread.sleep(generationDelay);
+				if (path.equals(reentrantPath)) {
+					reentrantPath = null;
+					content = content + getResourceContent(path);
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+
+			addLinkedResources(path, context, new FilePathMapping(srcFile.getAbsolutePath(), srcFile.lastModified()));
+			return new StringReader(content);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package test.net.jawr.web.resource.bundle.generator;
+
+import static net.jawr.web.util.FileUtils.writeAtomically;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.resource.bundle.generator.CachedGenerator.CacheMode;
+import net.jawr.web.resource.bundle.generator.GeneratorCacheStore;
+import net.jawr.web.resource.bundle.mappings.FilePathMapping;
+import test.net.jawr.web.FileUtils;
+
+public class GeneratorCacheStoreTestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String workDir;
+
+	private GeneratorCacheStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		workDir = FileUtils.getClasspathRootDir() + "/generator/cacheStore/";
+		FileUtils.clearDirectory(workDir);
+		store = new GeneratorCacheStore(workDir + "cache");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testEntryKeyDependsOnContentOnly() throws Exception {
+
+		File src = new File(workDir + "src/style.less");
+		writeAtomically(src, "@color: red;", UTF8);
+		List<FilePathMapping> fMappings = Arrays.asList(new FilePathMapping(src));
+
+		String key = store.getEntryKey("less;/style.less", fMappings);
+
+		// Same content with another modification date
+		assertTrue(src.setLastModified(src.lastModified() - 10000));
+		assertEquals(key, store.getEntryKey("less;/style.less", fMappings));
+
+		// Other generator configuration
+		assertNotEquals(key, store.getEntryKey("less;/other.less", fMappings));
+
+		// Modified content
+		writeAtomically(src, "@color: blue;", UTF8);
+		assertNotEquals(key, store.getEntryKey("less;/style.less", fMappings));
+
+		// Deleted file
+		assertTrue(src.delete());
+		assertNull(store.getEntryKey("less;/style.less", fMappings));
+	}
+
+	@Test
+	public void testLinkedResources() throws Exception {
+
+		assertNull(store.readLinkedResources("style.less"));
+
+		List<FilePathMapping> fMappings = Arrays.asList(new FilePathMapping("/app/css/style.less", 123L),
+				new FilePathMapping("/app/css/mixins#1.less", 456L));
+		store.writeLinkedResources("style.less", fMappings);
+
+		List<FilePathMapping> result = store.readLinkedResources("style.less");
+		assertEquals(2, result.size());
+		assertEquals("/app/css/style.less", result.get(0).getPath());
+		assertEquals(123L, result.get(0).getLastModified());
+		assertEquals("/app/css/mixins#1.less", result.get(1).getPath());
+		assertEquals(456L, result.get(1).getLastModified());
+	}
+
+	@Test
+	public void testLinkedResourcesAreRelativeToBaseDirectory() throws Exception {
+
+		File src = new File(workDir + "app1/css/style.less");
+		writeAtomically(src, "@color: red;", UTF8);
+		List<FilePathMapping> fMappings = Arrays.asList(new FilePathMapping(src.getAbsolutePath(), 123L),
+				new FilePathMapping("/outside/mixins.less", 456L));
+
+		store = new GeneratorCacheStore(workDir + "cache", workDir + "app1");
+		store.writeLinkedResources("style.less", fMappings);
+		String mapping = FileUtils.readFile(new File(workDir + "cache/mapping/style.less.mapping"), "UTF-8");
+		assertFalse(mapping.contains(new File(workDir).getAbsolutePath()));
+
+		// The store is used by the same application deployed in another
+		// directory
+		store = new GeneratorCacheStore(workDir + "cache", workDir + "app2/");
+		List<FilePathMapping> result = store.readLinkedResources("style.less");
+		assertEquals(2, result.size());
+		assertEquals(new File(workDir + "app2/css/style.less").getAbsolutePath(), result.get(0).getPath());
+		assertEquals(123L, result.get(0).getLastModified());
+		assertEquals("/outside/mixins.less", result.get(1).getPath());
+
+		// The relative paths can't be resolved without base directory
+		store = new GeneratorCacheStore(workDir + "cache");
+		assertNull(store.readLinkedResources("style.less"));
+	}
+
+	@Test
+	public void testEntryKeyWithoutLinkedResourcesDependsOnClassLoader() throws Exception {
+
+		File jar = new File(workDir + "lib/resources.jar");
+		writeAtomically(jar, "version 1", UTF8);
+		ClassLoader parent = getClass().getClassLoader();
+		List<FilePathMapping> noMapping = Collections.emptyList();
+
+		String key = new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent)).getEntryKey("js;/lib.js", noMapping);
+		assertEquals(key, new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent)).getEntryKey("js;/lib.js", noMapping));
+
+		// Another version of the JAR is deployed
+		writeAtomically(jar, "version 1.1", UTF8);
+		assertNotEquals(key, new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent)).getEntryKey("js;/lib.js", noMapping));
+
+		// The keys of the resources linked to files don't depend on the class
+		// loader
+		File src = new File(workDir + "src/style.less");
+		writeAtomically(src, "@color: red;", UTF8);
+		List<FilePathMapping> fMappings = Arrays.asList(new FilePathMapping(src));
+		assertEquals(store.getEntryKey("less;/style.less", fMappings), new GeneratorCacheStore(workDir + "cache",
+				null, new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent))
+						.getEntryKey("less;/style.less", fMappings));
+	}
+
+	@Test
+	public void testClassLoaderVersionDoesntDependOnJarLocation() throws Exception {
+
+		File jar = new File(workDir + "deploy1/lib/resources.jar");
+		writeAtomically(jar, "version 1", UTF8);
+		ClassLoader parent = getClass().getClassLoader();
+
+		String version = new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent)).getClassLoaderVersion();
+
+		// The same JAR is redeployed in another directory
+		File redeployedJar = new File(workDir + "deploy2/lib/resources.jar");
+		writeAtomically(redeployedJar, "version 1", UTF8);
+		assertTrue(redeployedJar.setLastModified(jar.lastModified() + 10000));
+		assertEquals(version, new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { redeployedJar.toURI().toURL() }, parent)).getClassLoaderVersion());
+
+		// Another JAR with the same size
+		writeAtomically(redeployedJar, "version 2", UTF8);
+		assertNotEquals(version, new GeneratorCacheStore(workDir + "cache", null,
+				new URLClassLoader(new URL[] { redeployedJar.toURI().toURL() }, parent)).getClassLoaderVersion());
+	}
+
+	@Test
+	public void testWriteReplacesEntry() throws Exception {
+
+		File entry = store.getEntryFile(CacheMode.PROD, "abc");
+		writeAtomically(entry, "first", UTF8);
+		writeAtomically(entry, "second", UTF8);
+
+		assertEquals("second", FileUtils.readFile(entry, "UTF-8"));
+		assertEquals(1, entry.getParentFile().list().length);
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Ibrahim Chaehoi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * 
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package test.net.jawr.web.resource.bundle.generator.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.generator.classpath.ClassPathResourceIndex;
+import test.net.jawr.web.FileUtils;
+
+/**
+ * The ClassPathResourceIndex Test Case
+ * 
+ * @author Ibrahim Chaehoi
+ */
+public class ClassPathResourceIndexTestCase {
+
+	private static final String BOOTSTRAP_DIR = "META-INF/resources/webjars/bootstrap/3.2.0/";
+
+	private String indexDir;
+
+	private ClassPathResourceIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		indexDir = FileUtils.getClasspathRootDir() + "/classpathIndex/";
+		FileUtils.clearDirectory(indexDir);
+		index = ClassPathResourceIndex.getInstance(createConfig(indexDir));
+		index.clear();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		index.clear();
+		FileUtils.deleteDirectory(indexDir);
+	}
+
+	private JawrConfig createConfig(String classpathIndexDir) {
+		JawrConfig config = new JawrConfig("js", new Properties());
+		config.setClasspathIndexDirectory(classpathIndexDir);
+		return config;
+	}
+
+	@Test
+	public void testGetResourceNamesFromPersistedIndex() throws Exception {
+
+		URL url = getClass().getClassLoader().getResource(BOOTSTRAP_DIR);
+		Set<String> names = index.getResourceNames(url);
+		assertEquals(5, names.size());
+		assertTrue(names.contains("css/"));
+		assertTrue(names.contains("webjars-requirejs.js"));
+
+		File[] indexFiles = new File(indexDir).listFiles();
+		assertEquals(1, indexFiles.length);
+
+		// The persisted index is reused once the memory is cleared
+		index.clear();
+		assertEquals(names, index.getResourceNames(url));
+		assertEquals(1, new File(indexDir).listFiles().length);
+	}
+
+	@Test
+	public void testGetResourcePaths() throws Exception {
+
+		Set<String> paths = index.getResourcePaths(getClass().getClassLoader(), "META-INF/resources/webjars");
+		assertTrue(paths.contains(BOOTSTRAP_DIR + "css/bootstrap.css"));
+		for (String path : paths) {
+			assertFalse(path.endsWith("/"));
+		}
+	}
+
+	@Test
+	public void testIndexesArePersistedByConfig() throws Exception {
+
+		String otherIndexDir = indexDir + "other/";
+		ClassPathResourceIndex otherIndex = ClassPathResourceIndex.getInstance(createConfig(otherIndexDir));
+		assertNotSame(index, otherIndex);
+		assertSame(index, ClassPathResourceIndex.getInstance(createConfig(indexDir)));
+		assertSame(ClassPathResourceIndex.getInstance(), ClassPathResourceIndex.getInstance(createConfig(null)));
+
+		// Each config persists the indexes in its own directory
+		URL url = getClass().getClassLoader().getResource(BOOTSTRAP_DIR);
+		otherIndex.clear();
+		otherIndex.getResourceNames(url);
+		assertEquals(1, new File(otherIndexDir).listFiles().length);
+		assertFalse(new File(indexDir).listFiles()[0].isFile());
+
+		index.getResourceNames(url);
+		assertEquals(2, new File(indexDir).listFiles().length);
+		otherIndex.clear();
+	}
+}
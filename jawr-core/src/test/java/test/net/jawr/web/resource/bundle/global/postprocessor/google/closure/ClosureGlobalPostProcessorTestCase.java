@@ -1,14 +1,20 @@
 package test.net.jawr.web.resource.bundle.global.postprocessor.google.closure;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,20 +24,27 @@ import javax.servlet.ServletContext;
 
 import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
+import net.jawr.web.exception.BundlingProcessException;
 import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.bundle.InclusionPattern;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.JoinableResourceBundleContent;
 import net.jawr.web.resource.bundle.factory.global.postprocessor.GlobalPostProcessingContext;
 import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
 import net.jawr.web.resource.bundle.global.postprocessor.google.closure.ClosureGlobalPostProcessor;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
 import net.jawr.web.resource.bundle.variant.VariantSet;
+import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
+import net.jawr.web.resource.handler.bundle.ServletContextResourceBundleHandler;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -39,6 +52,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import test.net.jawr.log.AppenderForTesting;
 import test.net.jawr.web.FileUtils;
 import test.net.jawr.web.servlet.mock.MockServletContext;
 
@@ -66,6 +80,9 @@ public class ClosureGlobalPostProcessorTestCase {
 	@Mock
 	private ResourceBundlesHandler rsBundlesHandler;
 	
+	@Mock
+	private ResourceBundleHandler rsBundleHandler;
+	
 	private String bundleDirPath;
 	
 	private JawrConfig config;
@@ -74,6 +91,7 @@ public class ClosureGlobalPostProcessorTestCase {
 	private String srcDir;
 	private String srcZipDir;
 	private String destDir;
+	private String externContent;
 	
 	@Before
 	public void setUp() throws Exception {
@@ -121,7 +139,12 @@ public class ClosureGlobalPostProcessorTestCase {
 		when(rsBundlesHandler.getBundleTextDirPath()).thenReturn(srcDir);
 		when(rsBundlesHandler.getBundleZipDirPath()).thenReturn(srcZipDir);
 		when(rsHandler.getWorkingDirectory()).thenReturn(FileUtils.getClasspathRootDir()+"/global/postprocessor/google/closure/work/");
-		when(rsHandler.getResource("extern.js")).thenReturn(new StringReader(FileUtils.readClassPathFile("global/postprocessor/google/closure/externs/extern.js")));
+		externContent = FileUtils.readClassPathFile("global/postprocessor/google/closure/externs/extern.js");
+		when(rsHandler.getResource("extern.js")).thenAnswer(new Answer<StringReader>() {
+			public StringReader answer(InvocationOnMock invocation) {
+				return new StringReader(externContent);
+			}
+		});
 		
 		processor = new ClosureGlobalPostProcessor();
 	}
@@ -285,6 +308,116 @@ public class ClosureGlobalPostProcessorTestCase {
 		compareResult("msgBundle@fr", false);
 	}
 
+	@Test
+	public void testIncrementalPostProcessing() throws Exception {
+		
+		Properties props = new Properties();
+		props.put("jawr.js.closure.modules", "bundle01:bundle02");
+		props.put("jawr.js.closure.externs", "extern.js");
+		props.put("jawr.js.closure.incremental", "true");
+		initProcessingContext(props);
+		ctx.setResourceBundleHandler(rsBundleHandler);
+		
+		List<JoinableResourceBundle> bundles = new ArrayList<JoinableResourceBundle>();
+		bundles.add(bundle01);
+		bundles.add(bundle02);
+		processor.processBundles(ctx, bundles);
+		
+		ArgumentCaptor<JoinableResourceBundleContent> content = ArgumentCaptor.forClass(JoinableResourceBundleContent.class);
+		verify(rsBundleHandler).storeBundle(Matchers.eq("/myBundle/bundle01.js"), content.capture());
+		String bundle01Result = content.getValue().getContent().toString();
+		verify(rsBundleHandler).storeBundle(Matchers.eq("/myBundle/bundle02.js"), Matchers.any(JoinableResourceBundleContent.class));
+		
+		// The bundles are unchanged, so the previous compilation is reused.
+		// The externs are read once by build.
+		processor.processBundles(ctx, bundles);
+		verify(rsHandler, times(2)).getResource("extern.js");
+		verify(rsBundleHandler, times(2)).storeBundle(Matchers.eq("/myBundle/bundle01.js"), content.capture());
+		assertEquals(bundle01Result, content.getValue().getContent().toString());
+	}
+
+	@Test
+	public void testIncrementalPostProcessingWithModifiedExterns() throws Exception {
+		
+		Properties props = new Properties();
+		props.put("jawr.js.closure.modules", "bundle01:bundle02");
+		props.put("jawr.js.closure.externs", "extern.js");
+		props.put("jawr.js.closure.compilation_level", "ADVANCED_OPTIMIZATIONS");
+		props.put("jawr.js.closure.incremental", "true");
+		initProcessingContext(props);
+		ctx.setResourceBundleHandler(rsBundleHandler);
+		
+		List<JoinableResourceBundle> bundles = new ArrayList<JoinableResourceBundle>();
+		bundles.add(bundle01);
+		bundles.add(bundle02);
+		processor.processBundles(ctx, bundles);
+		verify(rsBundleHandler).storeBundle(Matchers.eq("/myBundle/bundle01.js"), Matchers.any(JoinableResourceBundleContent.class));
+		
+		// The bundles are unchanged but the extern used by bundle01 has been
+		// removed, so the modules are compiled again and the compilation fails
+		externContent = "function textDiv(text){};";
+		try {
+			processor.processBundles(ctx, bundles);
+			fail("The modules should have been compiled again");
+		} catch (BundlingProcessException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testIncrementalPostProcessingWithBundleHandler() throws Exception {
+		
+		Properties props = new Properties();
+		props.put("jawr.js.closure.modules", "bundle01:bundle02");
+		props.put("jawr.js.closure.externs", "extern.js");
+		props.put("jawr.js.closure.incremental", "true");
+		initProcessingContext(props);
+		
+		// The compiled bundles are stored in the directory of the source
+		// bundles, like in a real build
+		File bundleHandlerDir = new File(FileUtils.getClasspathRootDir()+"/global/postprocessor/google/closure/work/bundleHandler");
+		FileUtils.deleteDirectory(bundleHandlerDir);
+		ResourceBundleHandler bundleHandler = new ServletContextResourceBundleHandler(new MockServletContext(),
+				bundleHandlerDir, config.getResourceCharset(), config.getGeneratorRegistry(), "js");
+		String textDir = bundleHandler.getBundleTextDirPath();
+		// The sources are not compressed, so the compiled bundles differ from
+		// them
+		org.apache.commons.io.FileUtils.writeStringToFile(new File(textDir, "myBundle/bundle01.js"),
+				"function tooCool(){\n\n\talert(textSpan(\"It's too Cool!!!\"));\n}\n\nwindow[\"tooCool\"]=tooCool;\n", "UTF-8");
+		org.apache.commons.io.FileUtils.writeStringToFile(new File(textDir, "myBundle/bundle02.js"),
+				"function woohoo(){\n\n\talert(\"woohoo!!\");\n}\n\nwindow['woohoo'] = woohoo;\n", "UTF-8");
+		when(rsBundlesHandler.getBundleTextDirPath()).thenReturn(textDir);
+		when(rsBundlesHandler.getBundleZipDirPath()).thenReturn(bundleHandler.getBundleZipDirPath());
+		ctx.setResourceBundleHandler(bundleHandler);
+		
+		List<JoinableResourceBundle> bundles = new ArrayList<JoinableResourceBundle>();
+		bundles.add(bundle01);
+		bundles.add(bundle02);
+		
+		AppenderForTesting.clear();
+		AppenderForTesting appender = new AppenderForTesting();
+		appender.setThreshold(Level.DEBUG);
+		Logger logger = Logger.getLogger(ClosureGlobalPostProcessor.class);
+		logger.addAppender(appender);
+		try {
+			processor.processBundles(ctx, bundles);
+			String bundle01Result = FileUtils.readFile(textDir+"/myBundle/bundle01.js");
+			
+			// The bundles have not been rebuilt, so the directory contains the
+			// compiled bundles, which must be mapped back to their source
+			processor.processBundles(ctx, bundles);
+			assertEquals(bundle01Result, FileUtils.readFile(textDir+"/myBundle/bundle01.js"));
+			
+			List<String> messages = Arrays.asList(AppenderForTesting.getMessages());
+			assertEquals(1, Collections.frequency(messages, "Compiling the closure modules [bundle02, bundle01]"));
+			assertTrue(messages.contains("Reusing the compiled closure modules [bundle02, bundle01]"));
+		} finally {
+			logger.removeAppender(appender);
+			AppenderForTesting.clear();
+			FileUtils.deleteDirectory(bundleHandlerDir);
+		}
+	}
+
 	private void compareResult(String bundle) throws Exception {
 		compareResult(bundle, true);
 	}
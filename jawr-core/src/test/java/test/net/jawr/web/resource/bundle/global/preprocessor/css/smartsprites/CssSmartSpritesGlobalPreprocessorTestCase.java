@@ -0,0 +1,268 @@
+package test.net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.exception.ResourceNotFoundException;
+import net.jawr.web.resource.BinaryResourcesHandler;
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.global.preprocessor.GlobalPreprocessingContext;
+import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites.CssSmartSpritesGlobalPreprocessor;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingUnit;
+import net.jawr.web.resource.bundle.iterator.BundlePath;
+import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import test.net.jawr.web.FileUtils;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class CssSmartSpritesGlobalPreprocessorTestCase {
+
+	private File rootDir;
+
+	private File webappDir;
+
+	private File workDir;
+
+	private GlobalPreprocessingContext ctx;
+
+	private List<JoinableResourceBundle> bundles;
+
+	@Before
+	public void setUp() throws Exception {
+
+		rootDir = new File(FileUtils.getClasspathRootDir(), "smartsprites");
+		FileUtils.deleteDirectory(rootDir);
+		webappDir = new File(rootDir, "webapp");
+		workDir = new File(rootDir, "work");
+		workDir.mkdirs();
+
+		writeFile("css/a.css", "/** sprite: s1; sprite-image: url('../img/s1.png'); sprite-layout: vertical; */\n"
+				+ ".a {\n  background-image: url(../img/a.png); /** sprite-ref: s1; */\n}");
+		writeFile("css/b.css", ".b {\n  background-image: url(../img/b.png); /** sprite-ref: s1; */\n}");
+		writeFile("css/c.css", "/** sprite: s2; sprite-image: url('../img/s2.png'); sprite-layout: vertical; */\n"
+				+ ".c {\n  background-image: url(../img/c.png); /** sprite-ref: s2; */\n}");
+		writeImage("img/a.png", Color.RED);
+		writeImage("img/b.png", Color.GREEN);
+		writeImage("img/c.png", Color.BLUE);
+
+		ResourceReaderHandler cssRsHandler = mock(ResourceReaderHandler.class);
+		when(cssRsHandler.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+		when(cssRsHandler.getResource((JoinableResourceBundle) isNull(), anyString(), eq(true)))
+				.thenAnswer(new Answer<Reader>() {
+
+					@Override
+					public Reader answer(InvocationOnMock invocation) throws Throwable {
+						return new InputStreamReader(getWebappFile((String) invocation.getArguments()[1]),
+								StandardCharsets.UTF_8);
+					}
+				});
+
+		ResourceReaderHandler imgRsHandler = mock(ResourceReaderHandler.class);
+		when(imgRsHandler.getResourceAsStream(anyString())).thenAnswer(new Answer<InputStream>() {
+
+			@Override
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				return getWebappFile((String) invocation.getArguments()[0]);
+			}
+		});
+
+		JawrConfig binaryConfig = new JawrConfig(JawrConstant.BINARY_TYPE, new Properties());
+		binaryConfig.setGeneratorRegistry(new GeneratorRegistry(JawrConstant.BINARY_TYPE));
+		BinaryResourcesHandler binaryRsHandler = mock(BinaryResourcesHandler.class);
+		when(binaryRsHandler.getRsReaderHandler()).thenReturn(imgRsHandler);
+		when(binaryRsHandler.getConfig()).thenReturn(binaryConfig);
+
+		MockServletContext servletContext = new MockServletContext();
+		servletContext.setAttribute(JawrConstant.BINARY_CONTEXT_ATTRIBUTE, binaryRsHandler);
+		JawrConfig config = new JawrConfig(JawrConstant.CSS_TYPE, new Properties());
+		config.setContext(servletContext);
+		config.setCharsetName("UTF-8");
+		config.setGeneratorRegistry(new GeneratorRegistry(JawrConstant.CSS_TYPE));
+
+		ctx = new GlobalPreprocessingContext(config, cssRsHandler, true);
+
+		JoinableResourceBundle bundle = mock(JoinableResourceBundle.class);
+		List<BundlePath> itemPaths = new ArrayList<>();
+		for (String path : Arrays.asList("/css/a.css", "/css/b.css", "/css/c.css")) {
+			itemPaths.add(new BundlePath(null, path));
+		}
+		when(bundle.getItemPathList()).thenReturn(itemPaths);
+		bundles = Arrays.asList(bundle);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	private InputStream getWebappFile(String path) throws ResourceNotFoundException, IOException {
+		File file = new File(webappDir, path);
+		if (!file.exists()) {
+			throw new ResourceNotFoundException(path);
+		}
+		return new FileInputStream(file);
+	}
+
+	private void writeFile(String path, String content) throws IOException {
+		File file = new File(webappDir, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void writeImage(String path, Color color) throws IOException {
+		File file = new File(webappDir, path);
+		file.getParentFile().mkdirs();
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, color.getRGB());
+			}
+		}
+		ImageIO.write(image, "png", file);
+	}
+
+	/**
+	 * Builds the sprites and returns the number of partitions which have been
+	 * built, the other ones being restored from the cache
+	 */
+	private int buildSprites() {
+
+		List<GlobalProcessingUnit> units = new CssSmartSpritesGlobalPreprocessor().getProcessingUnits(ctx, bundles);
+		int builtPartitionCount = 0;
+		for (GlobalProcessingUnit unit : units) {
+			// The first unit prepares the build, and the last one updates the
+			// resource handlers
+			if (!unit.getId().endsWith("update")) {
+				unit.process();
+			}
+			if (unit.getId().contains("partition")) {
+				builtPartitionCount++;
+			}
+		}
+		return builtPartitionCount;
+	}
+
+	private File getCacheDir() {
+		return new File(workDir, JawrConstant.CSS_SMARTSPRITES_CACHE_DIR);
+	}
+
+	private File getGeneratedFile(String path) {
+		return new File(workDir, JawrConstant.CSS_SMARTSPRITES_TMP_DIR + path);
+	}
+
+	private List<String> getCacheEntries() {
+		List<String> entries = new ArrayList<>(Arrays.asList(getCacheDir().list()));
+		Collections.sort(entries);
+		return entries;
+	}
+
+	@Test
+	public void testSpritesAreRestoredFromTheCache() throws Exception {
+
+		assertEquals(2, buildSprites());
+		assertEquals(2, getCacheEntries().size());
+		assertTrue(getGeneratedFile("img/s1.png").exists());
+		String generatedCss = FileUtils.readFile(getGeneratedFile("css/a.css"));
+
+		// Nothing has changed, so the generated files come from the cache
+		assertEquals(0, buildSprites());
+		assertTrue(getGeneratedFile("img/s1.png").exists());
+		assertTrue(getGeneratedFile("img/s2.png").exists());
+		assertEquals(generatedCss, FileUtils.readFile(getGeneratedFile("css/a.css")));
+	}
+
+	@Test
+	public void testCacheIsInvalidatedByAModifiedImage() throws Exception {
+
+		assertEquals(2, buildSprites());
+		List<String> entries = getCacheEntries();
+
+		writeImage("img/c.png", Color.BLACK);
+		assertEquals(1, buildSprites());
+
+		// The stale entry has been replaced
+		List<String> newEntries = getCacheEntries();
+		assertEquals(2, newEntries.size());
+		newEntries.retainAll(entries);
+		assertEquals(1, newEntries.size());
+		assertTrue(getGeneratedFile("img/s2.png").exists());
+	}
+
+	@Test
+	public void testCacheIsInvalidatedByAModifiedCss() throws Exception {
+
+		assertEquals(2, buildSprites());
+		List<String> entries = getCacheEntries();
+
+		writeFile("css/b.css", ".b {\n  background-image: url(../img/b.png); /** sprite-ref: s1; */\n  color: red;\n}");
+		assertEquals(1, buildSprites());
+		assertTrue(FileUtils.readFile(getGeneratedFile("css/b.css")).contains("color: red"));
+
+		List<String> newEntries = getCacheEntries();
+		assertEquals(2, newEntries.size());
+		newEntries.retainAll(entries);
+		assertEquals(1, newEntries.size());
+	}
+
+	@Test
+	public void testProcessingUnitsHaveNoSideEffect() throws Exception {
+
+		assertEquals(2, buildSprites());
+		List<String> entries = getCacheEntries();
+		writeImage("img/c.png", Color.BLACK);
+
+		// Computing the units neither cleans the generated files nor removes
+		// the stale cache entry
+		List<GlobalProcessingUnit> units = new CssSmartSpritesGlobalPreprocessor().getProcessingUnits(ctx, bundles);
+		assertEquals(4, units.size());
+		assertTrue(getGeneratedFile("img/s1.png").exists());
+		assertTrue(getGeneratedFile("img/s2.png").exists());
+		assertEquals(entries, getCacheEntries());
+
+		// The stale cache entry is removed by the processing step
+		units.get(0).process();
+		assertFalse(getGeneratedFile("img/s1.png").exists());
+		assertEquals(1, getCacheEntries().size());
+	}
+
+	@Test
+	public void testCacheCanBeDisabled() throws Exception {
+
+		ctx.getJawrConfig().getConfigProperties().setProperty(JawrConstant.CSS_SMARTSPRITES_CACHE_ENABLED, "false");
+		assertEquals(2, buildSprites());
+		assertEquals(2, buildSprites());
+		assertFalse(getCacheDir().exists());
+	}
+}
@@ -0,0 +1,167 @@
+package test.net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
+import net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites.SmartSpritesResourceHandler;
+import net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites.SpritePartitioner;
+import net.jawr.web.resource.bundle.global.preprocessor.css.smartsprites.SpritePartitioner.SpritePartition;
+
+public class SpritePartitionerTestCase {
+
+	private static final String PARAMETERS = "UTF-8;null";
+
+	private static final List<String> RESOURCE_PATHS = Arrays.asList("/css/d.css", "/css/c.css", "/css/b.css",
+			"/css/a.css");
+
+	private final Map<String, String> contents = new HashMap<>();
+
+	private final Map<String, String> images = new HashMap<>();
+
+	private SmartSpritesResourceHandler rsHandler;
+
+	@Before
+	public void setUp() throws Exception {
+
+		contents.put("/css/a.css", "/** sprite: s1; sprite-image: url('../img/s1.png'); */\n"
+				+ ".a { background-image: url(../img/a.png); /** sprite-ref: s1; */ }");
+		contents.put("/css/b.css", ".b { background-image: url(../img/b.png); /** sprite-ref: s1; */ }");
+		contents.put("/css/c.css", "/** sprite: s2; sprite-image: url('../img/s2.png'); */\n"
+				+ ".c { background-image: url(../img/c.png); /** sprite-ref: s2; */ }");
+		contents.put("/css/d.css", ".d { background-image: url(../img/d.png); }");
+		for (String img : Arrays.asList("a", "b", "c", "d")) {
+			images.put("/img/" + img + ".png", img);
+		}
+
+		rsHandler = mock(SmartSpritesResourceHandler.class);
+		when(rsHandler.getResourceAsReader(anyString())).thenAnswer(new Answer<Reader>() {
+
+			@Override
+			public Reader answer(InvocationOnMock invocation) throws Throwable {
+				String content = contents.get(invocation.getArguments()[0]);
+				if (content == null) {
+					throw new IOException("The resource was not found.");
+				}
+				return new StringReader(content);
+			}
+		});
+		when(rsHandler.getResourceAsInputStream(anyString())).thenAnswer(new Answer<InputStream>() {
+
+			@Override
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				String content = images.get(invocation.getArguments()[0]);
+				if (content == null) {
+					throw new IOException("The resource was not found.");
+				}
+				return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		when(rsHandler.getResourcePath(anyString(), anyString())).thenAnswer(new Answer<String>() {
+
+			@Override
+			public String answer(InvocationOnMock invocation) throws Throwable {
+				Object[] args = invocation.getArguments();
+				return PathNormalizer.concatWebPath((String) args[0], (String) args[1]);
+			}
+		});
+	}
+
+	private List<SpritePartition> getPartitions() {
+		return new SpritePartitioner(rsHandler).getPartitions(RESOURCE_PATHS, PARAMETERS);
+	}
+
+	private String getPartitionKey(String path) {
+		for (SpritePartition partition : getPartitions()) {
+			if (partition.getResourcePaths().contains(path)) {
+				return partition.getKey();
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testPartitions() throws Exception {
+
+		List<SpritePartition> partitions = getPartitions();
+
+		// The CSS without directive is not part of any partition
+		assertEquals(2, partitions.size());
+		assertEquals(Arrays.asList("/css/a.css", "/css/b.css"), partitions.get(0).getResourcePaths());
+		assertEquals(Arrays.asList("/css/c.css"), partitions.get(1).getResourcePaths());
+		assertFalse(partitions.get(0).getKey().equals(partitions.get(1).getKey()));
+	}
+
+	@Test
+	public void testPartitionsSharingASpriteAreMerged() throws Exception {
+
+		contents.put("/css/d.css", ".d { background-image: url(../img/d.png); /** sprite-ref: s2; */ }\n"
+				+ ".e { background-image: url(../img/a.png); /** sprite-ref: s1; */ }");
+
+		List<SpritePartition> partitions = getPartitions();
+		assertEquals(1, partitions.size());
+		assertEquals(Arrays.asList("/css/a.css", "/css/b.css", "/css/c.css", "/css/d.css"),
+				partitions.get(0).getResourcePaths());
+	}
+
+	@Test
+	public void testKeysAreStable() throws Exception {
+
+		List<SpritePartition> partitions = getPartitions();
+		List<SpritePartition> otherPartitions = getPartitions();
+		assertEquals(partitions.size(), otherPartitions.size());
+		for (int i = 0; i < partitions.size(); i++) {
+			assertEquals(partitions.get(i).getKey(), otherPartitions.get(i).getKey());
+		}
+	}
+
+	@Test
+	public void testKeyChangesWithTheCss() throws Exception {
+
+		String keyAB = getPartitionKey("/css/a.css");
+		String keyC = getPartitionKey("/css/c.css");
+
+		contents.put("/css/b.css", ".b { background-image: url(../img/b.png); /** sprite-ref: s1; */ color: red; }");
+		assertFalse(keyAB.equals(getPartitionKey("/css/a.css")));
+		assertEquals(keyC, getPartitionKey("/css/c.css"));
+	}
+
+	@Test
+	public void testKeyChangesWithTheImages() throws Exception {
+
+		String keyAB = getPartitionKey("/css/a.css");
+		String keyC = getPartitionKey("/css/c.css");
+
+		images.put("/img/c.png", "modified");
+		assertEquals(keyAB, getPartitionKey("/css/a.css"));
+		assertFalse(keyC.equals(getPartitionKey("/css/c.css")));
+	}
+
+	@Test
+	public void testKeyChangesWithTheParameters() throws Exception {
+
+		String key = getPartitions().get(0).getKey();
+		String otherKey = new SpritePartitioner(rsHandler).getPartitions(RESOURCE_PATHS, "ISO-8859-1;null").get(0)
+				.getKey();
+		assertFalse(key.equals(otherKey));
+	}
+}
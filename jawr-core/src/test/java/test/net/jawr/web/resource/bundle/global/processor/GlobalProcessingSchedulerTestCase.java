@@ -0,0 +1,135 @@
+package test.net.jawr.web.resource.bundle.global.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import net.jawr.web.exception.BundlingProcessException;
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.global.preprocessor.GlobalPreprocessingContext;
+import net.jawr.web.resource.bundle.global.processor.CustomGlobalProcessorChainedWrapper;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingScheduler;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessingUnit;
+import net.jawr.web.resource.bundle.global.processor.GlobalProcessor;
+
+public class GlobalProcessingSchedulerTestCase {
+
+	@Test
+	public void testDependenciesAreExecutedFirst() throws Exception {
+
+		final List<String> executedUnits = Collections.synchronizedList(new ArrayList<String>());
+		List<GlobalProcessingUnit> units = new ArrayList<>();
+		units.add(new RecordingUnit("final", executedUnits).addDependency("a").addDependency("b"));
+		units.add(new RecordingUnit("b", executedUnits).addDependency("a"));
+		units.add(new RecordingUnit("a", executedUnits));
+
+		GlobalProcessingScheduler.execute(units, 1);
+		assertEquals(Arrays.asList("a", "b", "final"), executedUnits);
+
+		executedUnits.clear();
+		GlobalProcessingScheduler.execute(units, 4);
+		assertEquals(Arrays.asList("a", "b", "final"), executedUnits);
+	}
+
+	@Test
+	public void testIndependentUnitsAreExecutedInParallel() throws Exception {
+
+		// Each unit waits for the other one, so they must run at the same time
+		final CountDownLatch latch = new CountDownLatch(2);
+		List<GlobalProcessingUnit> units = new ArrayList<>();
+		for (String id : Arrays.asList("a", "b")) {
+			units.add(new GlobalProcessingUnit(id) {
+
+				@Override
+				public void process() {
+					latch.countDown();
+					try {
+						assertTrue(latch.await(10, TimeUnit.SECONDS));
+					} catch (InterruptedException e) {
+						throw new BundlingProcessException(e);
+					}
+				}
+			});
+		}
+
+		GlobalProcessingScheduler.execute(units, 2);
+		assertEquals(0, latch.getCount());
+	}
+
+	@Test
+	public void testFailureIsPropagated() throws Exception {
+
+		final List<String> executedUnits = Collections.synchronizedList(new ArrayList<String>());
+		List<GlobalProcessingUnit> units = new ArrayList<>();
+		units.add(new GlobalProcessingUnit("a") {
+
+			@Override
+			public void process() {
+				throw new BundlingProcessException("Failure of a");
+			}
+		});
+		units.add(new RecordingUnit("b", executedUnits).addDependency("a"));
+
+		try {
+			GlobalProcessingScheduler.execute(units, 4);
+			fail("The failure should have been propagated");
+		} catch (BundlingProcessException e) {
+			assertEquals("Failure of a", e.getMessage());
+		}
+		assertTrue(executedUnits.isEmpty());
+	}
+
+	@Test(expected = BundlingProcessException.class)
+	public void testCyclicDependencies() throws Exception {
+
+		List<String> executedUnits = new ArrayList<>();
+		List<GlobalProcessingUnit> units = new ArrayList<>();
+		units.add(new RecordingUnit("a", executedUnits).addDependency("b"));
+		units.add(new RecordingUnit("b", executedUnits).addDependency("a"));
+		GlobalProcessingScheduler.execute(units, 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSerialProcessorFallback() throws Exception {
+
+		GlobalProcessor<GlobalPreprocessingContext> processor = Mockito.mock(GlobalProcessor.class);
+		GlobalPreprocessingContext ctx = Mockito.mock(GlobalPreprocessingContext.class);
+		List<JoinableResourceBundle> bundles = new ArrayList<>();
+
+		new GlobalProcessingScheduler(4).process(processor, ctx, bundles);
+		Mockito.verify(processor).processBundles(ctx, bundles);
+
+		// A custom processor is wrapped in a single unit
+		CustomGlobalProcessorChainedWrapper<GlobalPreprocessingContext> wrapper = new CustomGlobalProcessorChainedWrapper<>(
+				"custom", processor);
+		assertEquals(1, wrapper.getProcessingUnits(ctx, bundles).size());
+		new GlobalProcessingScheduler(4).process(wrapper, ctx, bundles);
+		Mockito.verify(processor, Mockito.times(2)).processBundles(ctx, bundles);
+	}
+
+	private static class RecordingUnit extends GlobalProcessingUnit {
+
+		private final List<String> executedUnits;
+
+		public RecordingUnit(String id, List<String> executedUnits) {
+			super(id);
+			this.executedUnits = executedUnits;
+		}
+
+		@Override
+		public void process() {
+			executedUnits.add(getId());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package test.net.jawr.web.resource.bundle.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.factory.BundlesHandlerFactory;
+import net.jawr.web.resource.bundle.factory.util.ResourceBundleDefinition;
+import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
+import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import test.net.jawr.web.FileUtils;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class BundleArtifactStoreHandlerTestCase extends ResourceHandlerBasedTest {
+
+	private static final String ROOT_DIR = "artifactStoreHandler/";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String STORE_MARKER = "/* from the store */";
+
+	private File rootDir;
+
+	private File storeDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		rootDir = new File(FileUtils.getClasspathRootDir(), ROOT_DIR);
+		FileUtils.deleteDirectory(rootDir);
+		// The generator cache of the resource reader handler is stored in the
+		// temporary directory, which is relative to the working directory
+		FileUtils.deleteDirectory(ROOT_DIR);
+		storeDir = new File(rootDir, "store");
+		writeFile(WORK_DIR + "css/main.css", "@import url(../imports/imported.css);\n.main { color: red; }");
+		writeFile(WORK_DIR + "imports/imported.css", ".imported { color: blue; }");
+		writeFile("generated.css", ".generated{color:green;}");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(rootDir);
+		FileUtils.deleteDirectory(ROOT_DIR);
+	}
+
+	private void writeFile(String path, String content) throws IOException {
+		File file = new File(rootDir, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(UTF8));
+	}
+
+	private File buildNode(String nodeName) throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty(JawrConfig.JAWR_USE_BUNDLE_MAPPING, "true");
+		props.setProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE, JawrConfig.LOCAL_BUNDLE_ARTIFACT_STORE);
+		props.setProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE_DIR, storeDir.getAbsolutePath());
+		JawrConfig config = new JawrConfig("css", props);
+		config.setCharsetName("UTF-8");
+		config.setContext(new MockServletContext());
+		GeneratorRegistry generatorRegistry = new GeneratorRegistry("css");
+		config.setGeneratorRegistry(generatorRegistry);
+		generatorRegistry.setConfig(config);
+
+		ResourceReaderHandler rsHandler = createResourceReaderHandler(ROOT_DIR, "css", UTF8, config);
+		generatorRegistry.setResourceReaderHandler(rsHandler);
+		ResourceBundleHandler bundleHandler = createResourceBundleHandler(ROOT_DIR + nodeName + "/", UTF8, "css");
+
+		BundlesHandlerFactory factory = new BundlesHandlerFactory(config);
+		factory.setResourceReaderHandler(rsHandler);
+		factory.setResourceBundleHandler(bundleHandler);
+		factory.setBaseDir("/css");
+		factory.setBundlesType("css");
+
+		Set<ResourceBundleDefinition> bundleDefinitions = new HashSet<ResourceBundleDefinition>();
+		ResourceBundleDefinition def = new ResourceBundleDefinition();
+		def.setMappings(Arrays.asList("/css/**"));
+		def.setBundleName("main");
+		def.setBundleId("/main.css");
+		bundleDefinitions.add(def);
+
+		def = new ResourceBundleDefinition();
+		def.setMappings(Arrays.asList("jar:" + ROOT_DIR + "generated.css"));
+		def.setBundleName("generated");
+		def.setBundleId("/generated.css");
+		bundleDefinitions.add(def);
+		factory.setBundleDefinitions(bundleDefinitions);
+
+		factory.buildResourceBundlesHandler();
+		return new File(bundleHandler.getBundleTextDirPath());
+	}
+
+	private List<File> getArtifactDirs() {
+		List<File> dirs = new ArrayList<File>();
+		for (File dir : storeDir.listFiles()) {
+			if (dir.isDirectory()) {
+				dirs.add(dir);
+			}
+		}
+		return dirs;
+	}
+
+	private String readBundles(File textDir) throws IOException {
+		final StringBuilder content = new StringBuilder();
+		Files.walkFileTree(textDir.toPath(), new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				content.append(new String(Files.readAllBytes(file), UTF8)).append('\n');
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return content.toString();
+	}
+
+	private void markStoredBundles() throws IOException {
+		for (File artifactDir : getArtifactDirs()) {
+			Files.walkFileTree(new File(artifactDir, "text").toPath(), new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					String content = new String(Files.readAllBytes(file), UTF8);
+					Files.write(file, (content + STORE_MARKER).getBytes(UTF8));
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+	}
+
+	public void testBundlesAreLoadedFromTheStore() throws Exception {
+
+		String builtBundles = readBundles(buildNode("nodeA"));
+		assertTrue(builtBundles.contains(".imported"));
+		assertEquals(1, getArtifactDirs().size());
+
+		// The second node loads the shared bundle and builds the bundle with a
+		// generated resource
+		markStoredBundles();
+		String loadedBundles = readBundles(buildNode("nodeB"));
+		assertTrue(loadedBundles.contains(".main{color:red;}" + STORE_MARKER));
+		assertTrue(loadedBundles.contains(".generated{color:green;}"));
+		assertFalse(loadedBundles.contains(".generated{color:green;}" + STORE_MARKER));
+		assertEquals(1, getArtifactDirs().size());
+	}
+
+	public void testKeyChangesWithImportedCss() throws Exception {
+
+		buildNode("nodeA");
+		assertEquals(1, getArtifactDirs().size());
+
+		// The generated resource is not part of the key
+		writeFile("generated.css", ".generated { color: black; }");
+		buildNode("nodeB");
+		assertEquals(1, getArtifactDirs().size());
+
+		writeFile(WORK_DIR + "imports/imported.css", ".imported { color: white; }");
+		String bundles = readBundles(buildNode("nodeC"));
+		assertTrue(bundles.contains(".imported{color:white;}"));
+		assertEquals(2, getArtifactDirs().size());
+	}
+}
@@ -0,0 +1,193 @@
+package test.net.jawr.web.resource.bundle.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.cache.CacheManagerFactory;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.handler.BundleHashcodeType;
+import net.jawr.web.resource.bundle.handler.CachedResourceBundlesHandler;
+import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class CachedResourceBundlesHandlerTestCase {
+
+	private ResourceBundlesHandler rsHandler;
+
+	private JoinableResourceBundle bundle;
+
+	private AtomicInteger loadCount;
+
+	@Before
+	public void setUp() throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty(JawrConfig.JAWR_BUNDLE_CACHE_WARM_UP, "true");
+		JawrConfig config = new JawrConfig(JawrConstant.JS_TYPE, props);
+		config.setContext(new MockServletContext());
+		CacheManagerFactory.resetCacheManager(config, JawrConstant.JS_TYPE);
+
+		bundle = mock(JoinableResourceBundle.class);
+		when(bundle.getId()).thenReturn("/bundle/all.js");
+		when(bundle.getVariantKeys()).thenReturn(Collections.<String> emptyList());
+		when(bundle.getBundleDataHashCode(null)).thenReturn("N123");
+
+		rsHandler = mock(ResourceBundlesHandler.class);
+		when(rsHandler.getConfig()).thenReturn(config);
+		when(rsHandler.getResourceType()).thenReturn(JawrConstant.JS_TYPE);
+		when(rsHandler.getGlobalBundles()).thenReturn(Collections.<JoinableResourceBundle> emptyList());
+		when(rsHandler.getContextBundles()).thenReturn(Collections.singletonList(bundle));
+		when(rsHandler.getBundleHashcodeType(anyString())).thenReturn(BundleHashcodeType.INVALID_HASHCODE);
+
+		loadCount = new AtomicInteger();
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				Writer writer = (Writer) invocation.getArguments()[1];
+				writer.write("content of " + invocation.getArguments()[0] + " #" + loadCount.incrementAndGet());
+				writer.close();
+				return null;
+			}
+		}).when(rsHandler).writeBundleTo(anyString(), any(Writer.class));
+	}
+
+	@Test
+	public void testBundlesAreLoadedOnceBuilt() throws Exception {
+
+		CachedResourceBundlesHandler handler = new CachedResourceBundlesHandler(rsHandler);
+		handler.initAllBundles();
+		verify(rsHandler).writeBundleTo(anyString(), any(Writer.class));
+
+		for (int i = 0; i < 3; i++) {
+			StringWriter writer = new StringWriter();
+			handler.writeBundleTo("/N123/bundle/all.js", writer);
+			assertEquals("content of /N123/bundle/all.js #1", writer.toString());
+		}
+		verify(rsHandler).writeBundleTo(anyString(), any(Writer.class));
+	}
+
+	@Test
+	public void testNoWarmUpByDefault() throws Exception {
+
+		JawrConfig config = new JawrConfig(JawrConstant.JS_TYPE, new Properties());
+		config.setContext(new MockServletContext());
+		when(rsHandler.getConfig()).thenReturn(config);
+
+		CachedResourceBundlesHandler handler = new CachedResourceBundlesHandler(rsHandler);
+		handler.initAllBundles();
+		verify(rsHandler, never()).writeBundleTo(anyString(), any(Writer.class));
+
+		// The bundle is loaded on its first request
+		StringWriter writer = new StringWriter();
+		handler.writeBundleTo("/N123/bundle/all.js", writer);
+		assertEquals("content of /N123/bundle/all.js #1", writer.toString());
+	}
+
+	@Test
+	public void testUnchangedBundlesAreKeptOnRebuild() throws Exception {
+
+		CachedResourceBundlesHandler handler = new CachedResourceBundlesHandler(rsHandler);
+		handler.initAllBundles();
+
+		// The bundle path doesn't change, so the content is reused
+		handler.rebuildModifiedBundles();
+		verify(rsHandler).writeBundleTo(anyString(), any(Writer.class));
+
+		// The new bundle path is loaded in the new generation
+		when(bundle.getBundleDataHashCode(null)).thenReturn("N456");
+		handler.rebuildModifiedBundles();
+		verify(rsHandler, times(2)).writeBundleTo(anyString(), any(Writer.class));
+
+		StringWriter writer = new StringWriter();
+		handler.writeBundleTo("/N456/bundle/all.js", writer);
+		assertEquals("content of /N456/bundle/all.js #2", writer.toString());
+	}
+
+	@Test
+	public void testPreviousGenerationsAreServed() throws Exception {
+
+		CachedResourceBundlesHandler handler = new CachedResourceBundlesHandler(rsHandler);
+		handler.initAllBundles();
+		assertEquals(BundleHashcodeType.INVALID_HASHCODE, handler.getBundleHashcodeType("/N123/bundle/all.js"));
+
+		for (String hashcode : new String[] { "N456", "N789", "N999" }) {
+			when(bundle.getBundleDataHashCode(null)).thenReturn(hashcode);
+			handler.rebuildModifiedBundles();
+		}
+
+		// Only the 2 last previous generations are retained
+		assertEquals(BundleHashcodeType.INVALID_HASHCODE, handler.getBundleHashcodeType("/N123/bundle/all.js"));
+		assertEquals(BundleHashcodeType.VALID_HASHCODE, handler.getBundleHashcodeType("/N456/bundle/all.js"));
+		assertEquals(BundleHashcodeType.VALID_HASHCODE, handler.getBundleHashcodeType("/gzip_N789/bundle/all.js"));
+
+		StringWriter writer = new StringWriter();
+		handler.writeBundleTo("/N456/bundle/all.js", writer);
+		assertEquals("content of /N456/bundle/all.js #2", writer.toString());
+
+		// A bundle path of the current generation is no longer retained
+		when(bundle.getBundleDataHashCode(null)).thenReturn("N789");
+		handler.rebuildModifiedBundles();
+		writer = new StringWriter();
+		handler.writeBundleTo("/N789/bundle/all.js", writer);
+		assertEquals("content of /N789/bundle/all.js #3", writer.toString());
+		assertEquals(BundleHashcodeType.VALID_HASHCODE, handler.getBundleHashcodeType("/N999/bundle/all.js"));
+		verify(rsHandler, times(4)).writeBundleTo(anyString(), any(Writer.class));
+	}
+
+	@Test
+	public void testPreviousGenerationsAreServedWithoutWarmUp() throws Exception {
+
+		JawrConfig config = new JawrConfig(JawrConstant.JS_TYPE, new Properties());
+		config.setContext(new MockServletContext());
+		when(rsHandler.getConfig()).thenReturn(config);
+		when(bundle.isDirty()).thenReturn(true);
+
+		CachedResourceBundlesHandler handler = new CachedResourceBundlesHandler(rsHandler);
+		handler.initAllBundles();
+		verify(rsHandler, never()).writeBundleTo(anyString(), any(Writer.class));
+
+		// The content of the bundle to rebuild is loaded before the rebuild
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				when(bundle.getBundleDataHashCode(null)).thenReturn("N456");
+				return null;
+			}
+		}).when(rsHandler).rebuildModifiedBundles();
+		handler.rebuildModifiedBundles();
+		verify(rsHandler).writeBundleTo(anyString(), any(Writer.class));
+
+		assertEquals(BundleHashcodeType.VALID_HASHCODE, handler.getBundleHashcodeType("/N123/bundle/all.js"));
+		assertEquals(BundleHashcodeType.VALID_HASHCODE, handler.getBundleHashcodeType("/gzip_N123/bundle/all.js"));
+		StringWriter writer = new StringWriter();
+		handler.writeBundleTo("/N123/bundle/all.js", writer);
+		assertEquals("content of /N123/bundle/all.js #1", writer.toString());
+
+		// The new bundle path is loaded on its first request
+		writer = new StringWriter();
+		handler.writeBundleTo("/N456/bundle/all.js", writer);
+		assertEquals("content of /N456/bundle/all.js #2", writer.toString());
+	}
+}
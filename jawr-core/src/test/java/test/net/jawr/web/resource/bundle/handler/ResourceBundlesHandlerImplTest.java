@@ -1,21 +1,50 @@
 package test.net.jawr.web.resource.bundle.handler;
 
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 
 import net.jawr.web.config.JawrConfig;
 import net.jawr.web.exception.BundleDependencyException;
 import net.jawr.web.exception.DuplicateBundlePathException;
 import net.jawr.web.exception.ResourceNotFoundException;
+import net.jawr.web.JawrConstant;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.BundlesHandlerFactory;
+import net.jawr.web.resource.bundle.factory.util.ResourceBundleDefinition;
+import net.jawr.web.resource.bundle.generator.GeneratorContext;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.generator.ResourceGenerator;
+import net.jawr.web.resource.bundle.generator.TextResourceGenerator;
+import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolver;
+import net.jawr.web.resource.bundle.generator.resolver.ResourceGeneratorResolverFactory;
+import net.jawr.web.resource.bundle.generator.variant.VariantResourceGenerator;
 import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
 import net.jawr.web.resource.bundle.iterator.ResourceBundlePathsIterator;
+import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
+import net.jawr.web.resource.bundle.postprocess.ResourceBundlePostProcessor;
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
+import net.jawr.web.resource.bundle.profiling.ProfilingEvent;
+import net.jawr.web.resource.bundle.variant.VariantSet;
 import net.jawr.web.resource.handler.bundle.ResourceBundleHandler;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
+import test.net.jawr.log.AppenderForTesting;
+import test.net.jawr.web.FileUtils;
 import test.net.jawr.web.resource.bundle.PredefinedBundlesHandlerUtil;
 import test.net.jawr.web.servlet.mock.MockServletContext;
 
@@ -164,4 +193,330 @@ public class ResourceBundlesHandlerImplTest  extends  ResourceHandlerBasedTest {
 			}
 		}
 	}
+
+	public void testParallelBuild() throws Exception {
+
+		Charset charsetUtf = Charset.forName("UTF-8");
+		JawrConfig parallelConfig = new JawrConfig("js", new Properties());
+		parallelConfig.setCharsetName("UTF-8");
+		parallelConfig.setDebugModeOn(false);
+		parallelConfig.setGzipResourcesModeOn(false);
+		parallelConfig.setBundlingParallel(true);
+		parallelConfig.setBundlingThreadCount(4);
+		GeneratorRegistry generatorRegistry = new GeneratorRegistry();
+		parallelConfig.setGeneratorRegistry(generatorRegistry);
+		generatorRegistry.setConfig(parallelConfig);
+		parallelConfig.setContext(new MockServletContext());
+
+		ResourceReaderHandler handlerSimple = createResourceReaderHandler(ROOT_SIMPLE_FOLDER, "js", charsetUtf);
+		ResourceBundleHandler bundleHandlerSimple = createResourceBundleHandler(ROOT_SIMPLE_FOLDER, charsetUtf);
+		ResourceBundlesHandler parallelHandler = PredefinedBundlesHandlerUtil.buildSimpleBundles(handlerSimple,
+				bundleHandlerSimple, "/js", "js", parallelConfig);
+
+		for (String bundlePath : new String[] { "/dummy/library.js", "/dummy/js/one.js" }) {
+			StringWriter expected = new StringWriter();
+			simpleHandler.writeBundleTo(bundlePath, expected);
+			StringWriter writer = new StringWriter();
+			parallelHandler.writeBundleTo(bundlePath, writer);
+			assertEquals(expected.toString(), writer.toString());
+		}
+		for (JoinableResourceBundle bundle : parallelHandler.getContextBundles()) {
+			assertFalse(bundle.isDirty());
+		}
+	}
+
+	private ResourceBundleDefinition createDefinition(String name, String mapping) {
+
+		ResourceBundleDefinition def = new ResourceBundleDefinition();
+		def.setBundleName(name);
+		def.setBundleId("/" + name + ".js");
+		if (mapping != null) {
+			def.setMappings(Collections.singletonList(mapping));
+		}
+		def.setUnitaryPostProcessorKeys("slow");
+		return def;
+	}
+
+	private ResourceBundleDefinition createCompositeDefinition(String name, ResourceBundleDefinition... children) {
+
+		ResourceBundleDefinition def = createDefinition(name, null);
+		def.setComposite(true);
+		def.setChildren(Arrays.asList(children));
+		return def;
+	}
+
+	private ResourceBundlesHandler buildParallelBundles(BundlingProfiler profiler,
+			ResourceBundleDefinition... definitions) throws Exception {
+
+		Charset charsetUtf = Charset.forName("UTF-8");
+		JawrConfig parallelConfig = new JawrConfig("js", new Properties());
+		parallelConfig.setCharsetName("UTF-8");
+		parallelConfig.setDebugModeOn(false);
+		parallelConfig.setGzipResourcesModeOn(false);
+		parallelConfig.setBundlingParallel(true);
+		parallelConfig.setBundlingThreadCount(4);
+		parallelConfig.setBundlingProfiler(profiler);
+		parallelConfig.setContext(new MockServletContext());
+
+		GeneratorRegistry generatorRegistry = new GeneratorRegistry("js");
+		generatorRegistry.setConfig(parallelConfig);
+		parallelConfig.setGeneratorRegistry(generatorRegistry);
+		ResourceReaderHandler handlerSimple = createResourceReaderHandler(ROOT_SIMPLE_FOLDER, "js", charsetUtf,
+				parallelConfig);
+		generatorRegistry.setResourceReaderHandler(handlerSimple);
+		ResourceBundleHandler bundleHandlerSimple = createResourceBundleHandler(ROOT_SIMPLE_FOLDER, charsetUtf);
+
+		BundlesHandlerFactory factory = new BundlesHandlerFactory(parallelConfig);
+		factory.setResourceReaderHandler(handlerSimple);
+		factory.setResourceBundleHandler(bundleHandlerSimple);
+		factory.setBaseDir("/js");
+		factory.setBundlesType("js");
+		factory.setCustomPostprocessors(Collections.singletonMap("slow", SlowPostProcessor.class.getName()));
+		factory.setBundleDefinitions(new HashSet<ResourceBundleDefinition>(Arrays.asList(definitions)));
+		return factory.buildResourceBundlesHandler();
+	}
+
+	private BundlingProfiler createProfiler() throws Exception {
+
+		String reportDir = FileUtils.getClasspathRootDir() + "/parallelBuild/";
+		FileUtils.clearDirectory(reportDir);
+		BundlingProfiler profiler = new BundlingProfiler("js");
+		profiler.setReportDirectory(reportDir);
+		return profiler;
+	}
+
+	private void assertBuiltBefore(BundlingProfiler profiler, String bundleId, String dependentBundleId) {
+
+		ProfilingEvent event = getBundleEvent(profiler, bundleId);
+		ProfilingEvent dependentEvent = getBundleEvent(profiler, dependentBundleId);
+		assertTrue("The bundle '" + bundleId + "' must be built before the bundle '" + dependentBundleId + "'",
+				event.getStartTime() + event.getWallTime() <= dependentEvent.getStartTime());
+	}
+
+	private ProfilingEvent getBundleEvent(BundlingProfiler profiler, String bundleId) {
+
+		for (ProfilingEvent event : profiler.getEvents()) {
+			if (event.getCategory().equals(BundlingProfiler.BUNDLE_CATEGORY) && event.getBundle().equals(bundleId)) {
+				return event;
+			}
+		}
+		fail("The bundle '" + bundleId + "' has not been built");
+		return null;
+	}
+
+	public void testParallelBuildOrder() throws Exception {
+
+		ResourceBundleDefinition global = createDefinition("global", "/js/global/**");
+		global.setGlobal(true);
+		ResourceBundleDefinition lib = createDefinition("lib", "/js/lib/**");
+		ResourceBundleDefinition one = createDefinition("one", "/js/one/**");
+		one.setDependencies(Collections.singletonList("lib"));
+		ResourceBundleDefinition childA = createDefinition("childA", "/js/two/**");
+		ResourceBundleDefinition childB = createDefinition("childB", "/js/three/**");
+		ResourceBundleDefinition composite = createCompositeDefinition("composite", childA, childB);
+
+		BundlingProfiler profiler = createProfiler();
+		try {
+			ResourceBundlesHandler parallelHandler = buildParallelBundles(profiler, global, lib, one, childA,
+					childB, composite);
+
+			// The global bundles are built first
+			for (String bundleId : new String[] { "/lib.js", "/one.js", "/childA.js", "/childB.js",
+					"/composite.js" }) {
+				assertBuiltBefore(profiler, "/global.js", bundleId);
+			}
+			// A bundle is built after its dependencies
+			assertBuiltBefore(profiler, "/lib.js", "/one.js");
+			// A composite bundle is built after its children
+			assertBuiltBefore(profiler, "/childA.js", "/composite.js");
+			assertBuiltBefore(profiler, "/childB.js", "/composite.js");
+
+			for (JoinableResourceBundle bundle : parallelHandler.getContextBundles()) {
+				assertFalse(bundle.isDirty());
+			}
+		} finally {
+			FileUtils.deleteDirectory(profiler.getReportDirectory());
+		}
+	}
+
+	public void testParallelBuildWithCyclicDependencies() throws Exception {
+
+		// The children of the global composite bundle are not global, so they
+		// should be built after it, while it is built after its children
+		ResourceBundleDefinition childA = createDefinition("childA", "/js/two/**");
+		ResourceBundleDefinition childB = createDefinition("childB", "/js/three/**");
+		ResourceBundleDefinition composite = createCompositeDefinition("composite", childA, childB);
+		composite.setGlobal(true);
+		ResourceBundleDefinition one = createDefinition("one", "/js/one/**");
+
+		AppenderForTesting.clear();
+		AppenderForTesting appender = new AppenderForTesting();
+		appender.setThreshold(Level.WARN);
+		Logger logger = Logger.getLogger(ResourceBundlesHandler.class);
+		logger.addAppender(appender);
+		BundlingProfiler profiler = createProfiler();
+		try {
+			buildParallelBundles(profiler, childA, childB, composite, one);
+
+			List<String> messages = Arrays.asList(AppenderForTesting.getMessages());
+			for (String childId : new String[] { "/childA.js", "/childB.js" }) {
+				assertTrue(messages.contains("The bundle '" + childId + "' and the bundle '/composite.js' "
+						+ "depend on each other. The bundle '" + childId
+						+ "' may be built before the bundle '/composite.js'."));
+
+				// The dependency which creates the cycle is ignored
+				assertBuiltBefore(profiler, childId, "/composite.js");
+			}
+			assertBuiltBefore(profiler, "/composite.js", "/one.js");
+		} finally {
+			logger.removeAppender(appender);
+			AppenderForTesting.clear();
+			FileUtils.deleteDirectory(profiler.getReportDirectory());
+		}
+	}
+
+	private ResourceBundlesHandler buildVariantBundle(boolean shareInvariantContent) throws Exception {
+
+		Charset charsetUtf = Charset.forName("UTF-8");
+		JawrConfig variantConfig = new JawrConfig("js", new Properties());
+		variantConfig.setCharsetName("UTF-8");
+		variantConfig.setDebugModeOn(false);
+		variantConfig.setGzipResourcesModeOn(false);
+		variantConfig.setShareInvariantContent(shareInvariantContent);
+		variantConfig.setContext(new MockServletContext());
+
+		GeneratorRegistry generatorRegistry = new GeneratorRegistry("js");
+		generatorRegistry.setConfig(variantConfig);
+		variantConfig.setGeneratorRegistry(generatorRegistry);
+		ResourceReaderHandler handlerSimple = createResourceReaderHandler(ROOT_SIMPLE_FOLDER, "js", charsetUtf,
+				variantConfig);
+		generatorRegistry.setResourceReaderHandler(handlerSimple);
+		generatorRegistry.registerGenerator(LocaleVariantGenerator.class.getName());
+		ResourceBundleHandler bundleHandlerSimple = createResourceBundleHandler(ROOT_SIMPLE_FOLDER, charsetUtf);
+
+		BundlesHandlerFactory factory = new BundlesHandlerFactory(variantConfig);
+		factory.setResourceReaderHandler(handlerSimple);
+		factory.setResourceBundleHandler(bundleHandlerSimple);
+		factory.setBaseDir("/js");
+		factory.setBundlesType("js");
+		Map<String, String> customPostprocessors = new HashMap<String, String>();
+		customPostprocessors.put("counter", CountingPostProcessor.class.getName());
+		factory.setCustomPostprocessors(customPostprocessors);
+
+		ResourceBundleDefinition def = new ResourceBundleDefinition();
+		def.setMappings(Arrays.asList("/js/one/one.js", "locale:messages"));
+		def.setBundleName("localized");
+		def.setBundleId("/localized.js");
+		def.setUnitaryPostProcessorKeys("counter");
+		Set<ResourceBundleDefinition> bundleDefinitions = new HashSet<ResourceBundleDefinition>();
+		bundleDefinitions.add(def);
+		factory.setBundleDefinitions(bundleDefinitions);
+
+		CountingPostProcessor.PROCESSED_PATHS.clear();
+		return factory.buildResourceBundlesHandler();
+	}
+
+	public void testInvariantMemberIsPostProcessedOnce() throws Exception {
+
+		ResourceBundlesHandler variantHandler = buildVariantBundle(true);
+
+		// The member which doesn't depend on the variant is shared between
+		// the variants of the bundle
+		assertEquals(1, CountingPostProcessor.getCount("/js/one/one.js"));
+
+		// The member which depends on the variant is processed for each locale
+		assertEquals(1, CountingPostProcessor.getCount("locale:messages@fr"));
+		assertEquals(1, CountingPostProcessor.getCount("locale:messages"));
+
+		StringWriter writer = new StringWriter();
+		variantHandler.writeBundleTo("/dummy.fr/localized.js", writer);
+		String frContent = writer.toString();
+		assertTrue(frContent.contains("var locale='fr';"));
+		writer = new StringWriter();
+		variantHandler.writeBundleTo("/dummy/localized.js", writer);
+		String defaultContent = writer.toString();
+		assertTrue(defaultContent.contains("var locale='';"));
+		assertFalse(defaultContent.contains("var locale='fr';"));
+
+		// The shared member is the same in every variant
+		String sharedContent = defaultContent.substring(0, defaultContent.indexOf("var locale"));
+		assertTrue(sharedContent.length() > 0);
+		assertTrue(frContent.startsWith(sharedContent));
+	}
+
+	public void testInvariantMemberIsPostProcessedForEachVariantWithoutSharing() throws Exception {
+
+		// The member is processed for each variant, and once more for the
+		// default bundle
+		buildVariantBundle(false);
+		assertEquals(4, CountingPostProcessor.getCount("/js/one/one.js"));
+		assertEquals(1, CountingPostProcessor.getCount("locale:messages@fr"));
+	}
+
+	/**
+	 * The postprocessor which counts the processed resources
+	 */
+	public static class CountingPostProcessor implements ResourceBundlePostProcessor {
+
+		private static final ConcurrentMap<String, AtomicInteger> PROCESSED_PATHS = new ConcurrentHashMap<String, AtomicInteger>();
+
+		private static int getCount(String path) {
+			AtomicInteger count = PROCESSED_PATHS.get(path);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public StringBuffer postProcessBundle(BundleProcessingStatus status, StringBuffer bundleData) {
+
+			PROCESSED_PATHS.putIfAbsent(status.getLastPathAdded(), new AtomicInteger());
+			PROCESSED_PATHS.get(status.getLastPathAdded()).incrementAndGet();
+			return bundleData;
+		}
+	}
+
+	/**
+	 * The postprocessor which slows down the processing of the resources, so
+	 * the bundles are built concurrently
+	 */
+	public static class SlowPostProcessor implements ResourceBundlePostProcessor {
+
+		@Override
+		public StringBuffer postProcessBundle(BundleProcessingStatus status, StringBuffer bundleData) {
+
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return bundleData;
+		}
+	}
+
+	/**
+	 * The generator of a resource which depends on the locale
+	 */
+	public static class LocaleVariantGenerator implements TextResourceGenerator, VariantResourceGenerator {
+
+		@Override
+		public ResourceGeneratorResolver getResolver() {
+			return ResourceGeneratorResolverFactory.createPrefixResolver("locale");
+		}
+
+		@Override
+		public String getDebugModeRequestPath() {
+			return ResourceGenerator.JAVASCRIPT_DEBUGPATH;
+		}
+
+		@Override
+		public Map<String, VariantSet> getAvailableVariants(String resource) {
+			return Collections.singletonMap(JawrConstant.LOCALE_VARIANT_TYPE,
+					new VariantSet(JawrConstant.LOCALE_VARIANT_TYPE, "", Arrays.asList("", "fr")));
+		}
+
+		@Override
+		public Reader createResource(GeneratorContext context) {
+			String locale = context.getVariantMap().get(JawrConstant.LOCALE_VARIANT_TYPE);
+			return new StringReader("var locale='" + (locale == null ? "" : locale) + "';");
+		}
+	}
 }
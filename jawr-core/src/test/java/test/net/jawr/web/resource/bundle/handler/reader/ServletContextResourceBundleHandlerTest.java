@@ -1,12 +1,16 @@
 package test.net.jawr.web.resource.bundle.handler.reader;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.Properties;
+import java.util.Set;
 
 import net.jawr.web.JawrConstant;
 import net.jawr.web.config.JawrConfig;
+import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.bundle.IOUtils;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
@@ -81,8 +85,109 @@ public class ServletContextResourceBundleHandlerTest {
 	    checkReadResource("/folder/temp1.js", "/resourcehandler/otherDir/");
 	}
 
+	@Test
+	public void testResourceResolutionCache() throws Exception{
+		
+		Properties prop = new Properties();
+		prop.setProperty(JawrConfig.JAWR_USE_SMART_BUNDLING, "true");
+	    initRsReader(prop);
+	    
+	    File newFile = new File(workDir, "folder/created.js");
+	    newFile.delete();
+	    try {
+	    	try {
+	    		rsHandler.getResource("/folder/created.js");
+	    		Assert.fail("The resource should not exist");
+	    	} catch (ResourceNotFoundException e) {
+	    		// Expected
+	    	}
+	    	
+	    	// The missing resource is cached until the cache is cleared
+	    	Files.write(newFile.toPath(), "var created = true;".getBytes("UTF-8"));
+	    	try {
+	    		rsHandler.getResource("/folder/created.js");
+	    		Assert.fail("The missing resource should be cached");
+	    	} catch (ResourceNotFoundException e) {
+	    		// Expected
+	    	}
+	    	
+	    	rsHandler.clearResourceCache();
+	    	Assert.assertEquals("var created = true;", IOUtils.toString(rsHandler.getResource("/folder/created.js")));
+	    	
+	    	// The reader which has served the resource is reused
+	    	checkReadResource("/folder/temp.js", "/resourcehandler/work/");
+	    	checkReadResource("/folder/temp.js", "/resourcehandler/work/");
+	    } finally {
+	    	newFile.delete();
+	    }
+	}
+
+	@Test
+	public void testNotFoundCacheDisabled() throws Exception{
+		
+		// Without smart bundling, no watcher clears the cache
+		checkNotFoundResourceIsRead(new Properties());
+		
+		Properties prop = new Properties();
+		prop.setProperty(JawrConfig.JAWR_USE_SMART_BUNDLING, "true");
+		prop.setProperty(JawrConfig.JAWR_RESOURCE_NOT_FOUND_CACHE_MAX_SIZE, "0");
+		checkNotFoundResourceIsRead(prop);
+	}
+	
+	private void checkNotFoundResourceIsRead(Properties properties) throws Exception{
+		
+	    initRsReader(properties);
+	    
+	    File newFile = new File(workDir, "folder/created.js");
+	    newFile.delete();
+	    try {
+	    	try {
+	    		rsHandler.getResource("/folder/created.js");
+	    		Assert.fail("The resource should not exist");
+	    	} catch (ResourceNotFoundException e) {
+	    		// Expected
+	    	}
+	    	
+	    	Files.write(newFile.toPath(), "var created = true;".getBytes("UTF-8"));
+	    	Assert.assertEquals("var created = true;", IOUtils.toString(rsHandler.getResource("/folder/created.js")));
+	    } finally {
+	    	newFile.delete();
+	    }
+	}
+	
+	@Test
+	public void testResourceTreeSnapshotWithJarResources() throws Exception{
+		
+		// The servlet context also lists the resources of the
+		// META-INF/resources directory of the JAR files
+		MockServletContext ctx = new MockServletContext(workDir, tmpDir){
+			
+			@Override
+			public Set<String> getResourcePaths(String path) {
+				Set<String> paths = super.getResourcePaths(path);
+				if(path.equals("/folder/")){
+					paths.add("/folder/fromJar.js");
+				}
+				return paths;
+			}
+		};
+		Properties prop = new Properties();
+		prop.setProperty(JawrConfig.JAWR_RESOURCE_TREE_SNAPSHOT, "true");
+		initRsReader(ctx, prop);
+		
+		Set<String> names = rsHandler.getResourceNames("/folder/");
+		Assert.assertTrue(names.contains("fromJar.js"));
+		Assert.assertTrue(names.contains("temp.js"));
+		Assert.assertTrue(names.contains("subfolder/"));
+		Assert.assertTrue(rsHandler.isDirectory("/folder/subfolder/"));
+		Assert.assertNotNull(rsHandler.getResourceTreeSnapshot());
+	}
+	
 	private void initRsReader(Properties properties) throws IOException {
-		MockServletContext ctx = new MockServletContext(workDir, tmpDir);
+		initRsReader(new MockServletContext(workDir, tmpDir), properties);
+	}
+	
+	private void initRsReader(MockServletContext ctx, Properties properties) throws IOException {
 	    GeneratorRegistry generatorRegistry = new GeneratorRegistry();
 	    JawrConfig config = new JawrConfig("js", properties);
 	    config.setGeneratorRegistry(generatorRegistry);
@@ -0,0 +1,102 @@
+package test.net.jawr.web.resource.bundle.locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.resource.bundle.locale.MessageBundleControl;
+import net.jawr.web.resource.bundle.locale.message.MessageCatalog;
+import net.jawr.web.util.FileUtils;
+
+public class MessageCatalogTestCase {
+
+	private Locale defaultLocale;
+
+	@Before
+	public void setUp() {
+		defaultLocale = Locale.getDefault();
+		Locale.setDefault(Locale.FRENCH);
+	}
+
+	@After
+	public void tearDown() {
+		Locale.setDefault(defaultLocale);
+	}
+
+	@Test
+	public void testMessagesMatchResourceBundle() {
+
+		checkMessages(true);
+		checkMessages(false);
+	}
+
+	private void checkMessages(boolean fallbackToSystemLocale) {
+
+		MessageBundleControl control = new MessageBundleControl(fallbackToSystemLocale, Charset.forName("ISO-8859-1"));
+		Locale[] locales = { Locale.ROOT, Locale.FRENCH, Locale.FRANCE, new Locale("es"), Locale.US,
+				Locale.ENGLISH, Locale.GERMAN };
+		for (String baseName : new String[] { "bundleLocale.messages", "bundleLocale.errors" }) {
+			MessageCatalog catalog = new MessageCatalog(baseName, control);
+			for (Locale locale : locales) {
+				ResourceBundle bundle = ResourceBundle.getBundle(baseName, locale, control);
+				assertEquals("Invalid messages for " + baseName + " and locale '" + locale + "'", toMap(bundle),
+						catalog.getMessages(locale));
+			}
+		}
+	}
+
+	@Test
+	public void testFileMappings() {
+
+		MessageBundleControl control = new MessageBundleControl(false, Charset.forName("ISO-8859-1"));
+		MessageCatalog catalog = new MessageCatalog("bundleLocale.messages", control);
+		catalog.getMessages(Locale.FRENCH);
+		assertEquals(2, catalog.getFileMappings().size());
+		catalog.getMessages(new Locale("es"));
+		assertEquals(3, catalog.getFileMappings().size());
+		assertTrue(catalog.getFileMappings().get(0).getPath().endsWith("messages.properties"));
+	}
+
+	@Test
+	public void testNewResourceBundles() throws Exception {
+
+		MessageBundleControl control = new MessageBundleControl(false, Charset.forName("ISO-8859-1"));
+		MessageCatalog catalog = new MessageCatalog("bundleLocale.messages", control);
+		catalog.getMessages(Locale.GERMAN);
+		assertFalse(catalog.hasNewResourceBundles());
+
+		File baseFile = FileUtils.urlToFile(getClass().getClassLoader().getResource("bundleLocale/messages.properties"));
+		File newFile = new File(baseFile.getParentFile(), "messages_de.properties");
+		try {
+			Files.write(newFile.toPath(), "ui.msg.hello.world=Hallo Welt".getBytes(StandardCharsets.ISO_8859_1));
+			assertTrue(catalog.hasNewResourceBundles());
+			assertEquals("Hallo Welt", new MessageCatalog("bundleLocale.messages", control).getMessages(Locale.GERMAN)
+					.get("ui.msg.hello.world"));
+		} finally {
+			newFile.delete();
+		}
+	}
+
+	private Map<String, String> toMap(ResourceBundle bundle) {
+		Map<String, String> result = new HashMap<>();
+		for (Enumeration<String> keys = bundle.getKeys(); keys.hasMoreElements();) {
+			String key = keys.nextElement();
+			result.put(key, bundle.getString(key));
+		}
+		return result;
+	}
+}
@@ -2,6 +2,7 @@ package test.net.jawr.web.resource.bundle.postprocess.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,7 +20,10 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import net.jawr.web.JawrConstant;
@@ -28,6 +32,7 @@ import net.jawr.web.resource.BinaryResourcesHandler;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
 import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
+import net.jawr.web.resource.bundle.postprocess.impl.css.base64.Base64ImageCache;
 import net.jawr.web.resource.bundle.postprocess.impl.css.base64.Base64ImageEncoderPostProcessor;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 import test.net.jawr.web.FileUtils;
@@ -248,6 +253,56 @@ public class CSSBase64ImageRewriterPostProcessorTest {
 		assertEquals("URL was not rewritten properly", expectedURL, result);
 	}
 
+	@Test
+	public void testTooBigImgFileIsNotRead() throws Exception {
+
+		// Set the properties
+		Properties props = new Properties();
+		props.setProperty(JawrConfig.JAWR_CSS_CLASSPATH_HANDLE_IMAGE, "true");
+		config = new JawrConfig("css", props);
+		ServletContext servletContext = new MockServletContext();
+		config.setContext(servletContext);
+		config.setServletMapping("/css");
+		config.setCharsetName("UTF-8");
+		addGeneratorRegistryToConfig(config, "css");
+
+		// Set up the Image servlet Jawr config
+		props = new Properties();
+		JawrConfig imgServletJawrConfig = new JawrConfig(JawrConstant.BINARY_TYPE, props);
+		imgServletJawrConfig.setServletMapping("/cssImg/");
+		addGeneratorRegistryToConfig(imgServletJawrConfig, JawrConstant.BINARY_TYPE);
+		config.getGeneratorRegistry().setResourceReaderHandler(rsHandler);
+		BinaryResourcesHandler imgRsHandler = new BinaryResourcesHandler(imgServletJawrConfig, rsHandler, null);
+		imgServletJawrConfig.getGeneratorRegistry().setResourceReaderHandler(rsHandler);
+		servletContext.setAttribute(JawrConstant.BINARY_CONTEXT_ATTRIBUTE, imgRsHandler);
+
+		// The image file exceeds the default maximum file size
+		File imgFile = new File(workingDirectory, "images/logo-bigFile.png");
+		imgFile.getParentFile().mkdirs();
+		FileOutputStream fos = new FileOutputStream(imgFile);
+		try {
+			fos.write(new byte[40000]);
+		} finally {
+			fos.close();
+		}
+		when(rsHandler.getFilePath(Matchers.contains("bigFile"))).thenReturn(imgFile.getPath());
+		when(rsHandler.getLastModified(imgFile.getPath())).thenReturn(imgFile.lastModified());
+
+		String expectedURL = "background-image:url(style/images/logo-bigFile.png);";
+		for (int i = 0; i < 2; i++) {
+			status = new BundleProcessingStatus(BundleProcessingStatus.FILE_PROCESSING_TYPE, bundle, null, config);
+			status.setLastPathAdded("style/default/assets/someCSS.css");
+			StringBuffer data = new StringBuffer("background-image:url(../../images/logo-bigFile.png);");
+			assertEquals("URL was not rewritten properly", expectedURL,
+					processor.postProcessBundle(status, data).toString());
+		}
+
+		// The image is never read, and the decision is cached
+		verify(rsHandler, never()).getResourceAsStream(Matchers.contains("bigFile"));
+		assertTrue(Base64ImageCache.getInstance(config).isTooLarge(imgFile.getPath(), imgFile.lastModified(),
+				30000));
+	}
+
 	@Test
 	public void testBasicImgCssRewritingEncodeByDefault() {
 
@@ -5,10 +5,13 @@ package test.net.jawr.web.resource.bundle.postprocess.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.StringReader;
+import java.util.List;
 import java.util.Properties;
 
 import javax.servlet.ServletContext;
@@ -18,8 +21,11 @@ import net.jawr.web.config.JawrConfig;
 import net.jawr.web.exception.ResourceNotFoundException;
 import net.jawr.web.resource.BinaryResourcesHandler;
 import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.postprocessor.CSSPostProcessorChainFactory;
 import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.bundle.lifecycle.BundlingProcessLifeCycleListener;
 import net.jawr.web.resource.bundle.postprocess.BundleProcessingStatus;
+import net.jawr.web.resource.bundle.postprocess.ResourceBundlePostProcessor;
 import net.jawr.web.resource.bundle.postprocess.impl.CSSImportPostProcessor;
 import net.jawr.web.resource.handler.reader.ResourceReaderHandler;
 
@@ -278,6 +284,73 @@ public class CSSImportPostProcessorTest {
 		assertEquals("Content was not rewritten properly",expectedContent, result);
 	}
 	
+	@Test
+	public void testNestedImportsAreResolvedOnce() throws Exception {
+
+		when(rsHandler.getResource(bundle, "/css/a.css", true)).thenReturn(
+				new StringReader("@import url(sub/b.css);\n.a { background : url('img/a.png'); }"));
+		when(rsHandler.getResource(bundle, "/css/sub/b.css", true))
+				.thenReturn(new StringReader(".b { background : url('b.png'); }"));
+		String expectedContent = ".b { background : url('sub/b.png'); }\n.a { background : url('img/a.png'); }\n.main {}";
+
+		status = getBundleProcessingStatus("/css/main.css", "/css/other.css");
+		String result = processor.postProcessBundle(status, new StringBuffer("@import url(a.css);\n.main {}"))
+				.toString();
+		assertEquals(expectedContent, result);
+
+		// The imported CSS are not read again for another stylesheet
+		status = getBundleProcessingStatus("/css/main.css", "/css/other.css");
+		result = processor.postProcessBundle(status, new StringBuffer("@import url(a.css);\n.main {}")).toString();
+		assertEquals(expectedContent, result);
+		verify(rsHandler, times(1)).getResource(bundle, "/css/a.css", true);
+		verify(rsHandler, times(1)).getResource(bundle, "/css/sub/b.css", true);
+	}
+
+	@Test
+	public void testCyclicImportIsIgnored() throws Exception {
+
+		when(rsHandler.getResource(bundle, "/css/c1.css", true))
+				.thenReturn(new StringReader("@import url(c2.css);\n.c1 {}"));
+		when(rsHandler.getResource(bundle, "/css/c2.css", true))
+				.thenReturn(new StringReader("@import url(c1.css);\n.c2 {}"));
+
+		status = getBundleProcessingStatus("/css/main.css", "/css/other.css");
+		String result = processor.postProcessBundle(status, new StringBuffer("@import url(c1.css);\n.main {}"))
+				.toString();
+		assertEquals("\n.c2 {}\n.c1 {}\n.main {}", result);
+	}
+
+	@Test
+	public void testRebuildWithDefaultChainAfterImportedCssChange() throws Exception {
+
+		CSSPostProcessorChainFactory chainFactory = new CSSPostProcessorChainFactory();
+		ResourceBundlePostProcessor chain = chainFactory.buildDefaultUnitProcessorChain();
+		List<BundlingProcessLifeCycleListener> listeners = chainFactory.getBundlingProcessLifeCycleListeners();
+		assertEquals(1, listeners.size());
+
+		when(rsHandler.getResource(bundle, "/css/a.css", true)).thenReturn(new StringReader(".a { color : red; }"),
+				new StringReader(".a { color : blue; }"));
+
+		assertEquals(".a { color : red; }\n.main {}", processWithLifeCycle(chain, listeners));
+
+		// The imported CSS has changed before the rebuild
+		assertEquals(".a { color : blue; }\n.main {}", processWithLifeCycle(chain, listeners));
+		verify(rsHandler, times(2)).getResource(bundle, "/css/a.css", true);
+	}
+
+	private String processWithLifeCycle(ResourceBundlePostProcessor chain,
+			List<BundlingProcessLifeCycleListener> listeners) {
+		for (BundlingProcessLifeCycleListener listener : listeners) {
+			listener.beforeBundlingProcess();
+		}
+		status = getBundleProcessingStatus("/css/main.css", "/css/other.css");
+		String result = chain.postProcessBundle(status, new StringBuffer("@import url(a.css);\n.main {}")).toString();
+		for (BundlingProcessLifeCycleListener listener : listeners) {
+			listener.afterBundlingProcess();
+		}
+		return result;
+	}
+
 	private BundleProcessingStatus getBundleProcessingStatus(String filePath, String expectedCssImportPath) {
 		//ResourceReaderHandler rsHandler = getResourceReaderHandler(expectedCssImportPath);
 		
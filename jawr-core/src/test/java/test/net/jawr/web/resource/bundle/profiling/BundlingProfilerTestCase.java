@@ -0,0 +1,88 @@
+package test.net.jawr.web.resource.bundle.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.resource.bundle.profiling.BundlingProfiler;
+import net.jawr.web.resource.bundle.profiling.ProfilingEvent;
+import test.net.jawr.web.FileUtils;
+
+public class BundlingProfilerTestCase {
+
+	private String workDir;
+
+	private BundlingProfiler profiler;
+
+	@Before
+	public void setUp() throws Exception {
+		workDir = FileUtils.getClasspathRootDir() + "/profiling/";
+		FileUtils.clearDirectory(workDir);
+		profiler = new BundlingProfiler("js");
+		profiler.setReportDirectory(workDir);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testEventsAreRecorded() throws Exception {
+
+		profiler.beforeBundlingProcess();
+		BundlingProfiler.Span bundleSpan = profiler.start(BundlingProfiler.BUNDLE_CATEGORY, "lib", "/js/lib.js",
+				null);
+		BundlingProfiler.Span span = profiler.start(BundlingProfiler.POSTPROCESSOR_CATEGORY, "jsmin", "/js/lib.js",
+				"");
+		profiler.stop(span, 100, 60);
+		profiler.stop(bundleSpan, -1, -1);
+
+		List<ProfilingEvent> events = profiler.getEvents();
+		assertEquals(2, events.size());
+		ProfilingEvent event = events.get(0);
+		assertEquals(BundlingProfiler.POSTPROCESSOR_CATEGORY, event.getCategory());
+		assertEquals("jsmin", event.getName());
+		assertEquals("/js/lib.js", event.getBundle());
+		assertEquals(100, event.getBytesIn());
+		assertEquals(60, event.getBytesOut());
+		assertTrue(event.getWallTime() >= 0);
+		assertTrue(event.getStartTime() >= events.get(1).getStartTime());
+
+		// A new bundling process starts with a new profile
+		profiler.beforeBundlingProcess();
+		assertTrue(profiler.getEvents().isEmpty());
+	}
+
+	@Test
+	public void testReportsAreExported() throws Exception {
+
+		assertNull(profiler.getLastProfile());
+
+		profiler.beforeBundlingProcess();
+		profiler.stop(profiler.start(BundlingProfiler.BUNDLE_CATEGORY, "lib \"core\"", "/js/lib.js", null), -1, -1);
+		profiler.stop(profiler.start(BundlingProfiler.GENERATOR_CATEGORY, "LessCssGenerator", "/js/lib.js", ""),
+				-1, -1);
+		profiler.afterBundlingProcess();
+
+		String profile = profiler.getLastProfile();
+		assertTrue(profile.contains("\"resourceType\": \"js\""));
+		assertTrue(profile.contains("{\"bundle\": \"/js/lib.js\", \"count\": 1"));
+		assertTrue(profile.contains("{\"processor\": \"generator:LessCssGenerator\", \"count\": 1"));
+		assertTrue(profile.contains("\"name\": \"lib \\\"core\\\"\""));
+
+		String trace = profiler.getLastTrace();
+		assertTrue(trace.startsWith("{\"displayTimeUnit\": \"ms\", \"traceEvents\": ["));
+		assertTrue(trace.contains("\"ph\": \"X\""));
+
+		assertEquals(profile, FileUtils.readFile(new File(workDir, BundlingProfiler.PROFILE_FILE_NAME), "UTF-8"));
+		assertEquals(trace, FileUtils.readFile(new File(workDir, BundlingProfiler.TRACE_FILE_NAME), "UTF-8"));
+	}
+}
@@ -0,0 +1,199 @@
+package test.net.jawr.web.resource.handler.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.handler.bundle.BundleArtifactStore;
+import net.jawr.web.resource.handler.bundle.LocalBundleArtifactStore;
+import net.jawr.web.resource.handler.bundle.SharedFileSystemBundleArtifactStore;
+import test.net.jawr.web.FileUtils;
+
+public class BundleArtifactStoreTestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File rootDir;
+
+	private File storeDir;
+
+	private File workingDir;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = new File(FileUtils.getClasspathRootDir(), "bundleArtifactStore");
+		FileUtils.deleteDirectory(rootDir);
+		storeDir = new File(rootDir, "store");
+		workingDir = new File(rootDir, "working");
+		new File(workingDir, "text/js").mkdirs();
+		Files.write(new File(workingDir, "text/js/bundle.js").toPath(), "var a;".getBytes(UTF8));
+		Files.write(new File(workingDir, "jawr-js-mapping.properties").toPath(), "a=b".getBytes(UTF8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	private BundleArtifactStore createStore(BundleArtifactStore store, String lockTimeout) {
+		Properties props = new Properties();
+		props.setProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE_DIR, storeDir.getAbsolutePath());
+		if (lockTimeout != null) {
+			props.setProperty(JawrConfig.JAWR_BUNDLE_ARTIFACT_STORE_LOCK_TIMEOUT, lockTimeout);
+		}
+		store.init(new JawrConfig("js", props));
+		return store;
+	}
+
+	@Test
+	public void testPublishedArtifactsAreLoaded() throws Exception {
+
+		BundleArtifactStore store = createStore(new LocalBundleArtifactStore(), null);
+		File otherWorkingDir = new File(rootDir, "other");
+		assertFalse(store.load("js-key", otherWorkingDir));
+
+		store.publish("js-key", workingDir,
+				Arrays.asList("text/js/bundle.js", "jawr-js-mapping.properties", "text/js/missing.js"));
+		assertTrue(store.load("js-key", otherWorkingDir));
+		assertEquals("var a;", FileUtils.readFile(new File(otherWorkingDir, "text/js/bundle.js"), "UTF-8"));
+		assertEquals("a=b", FileUtils.readFile(new File(otherWorkingDir, "jawr-js-mapping.properties"), "UTF-8"));
+		assertFalse(new File(otherWorkingDir, "text/js/missing.js").exists());
+
+		// No staging directory is left in the store
+		assertEquals(1, storeDir.list().length);
+	}
+
+	@Test
+	public void testWaitingInstanceGetsPublishedArtifacts() throws Exception {
+
+		final BundleArtifactStore builder = createStore(new SharedFileSystemBundleArtifactStore(), null);
+		final BundleArtifactStore follower = createStore(new SharedFileSystemBundleArtifactStore(), null);
+
+		assertTrue(builder.lock("js-key"));
+		assertTrue(new File(storeDir, "js-key.lock").exists());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> followerLock = executor.submit(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					return follower.lock("js-key");
+				}
+			});
+
+			builder.publish("js-key", workingDir, Arrays.asList("text/js/bundle.js"));
+			builder.unlock("js-key");
+
+			// The artifacts have been published, so the follower doesn't
+			// build them
+			assertFalse(followerLock.get(10, TimeUnit.SECONDS));
+			assertTrue(follower.load("js-key", new File(rootDir, "other")));
+			assertFalse(new File(storeDir, "js-key.lock").exists());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testAbandonedLockIsRemoved() throws Exception {
+
+		BundleArtifactStore store = createStore(new SharedFileSystemBundleArtifactStore(), "1");
+		storeDir.mkdirs();
+		File lockFile = new File(storeDir, "js-key.lock");
+		assertTrue(lockFile.createNewFile());
+		lockFile.setLastModified(System.currentTimeMillis() - 60000);
+
+		assertTrue(store.lock("js-key"));
+		store.unlock("js-key");
+		assertFalse(lockFile.exists());
+	}
+
+	@Test
+	public void testLockIsRefreshedWhileHeld() throws Exception {
+
+		BundleArtifactStore store = createStore(new SharedFileSystemBundleArtifactStore(), "1");
+		assertTrue(store.lock("js-key"));
+		File lockFile = new File(storeDir, "js-key.lock");
+		lockFile.setLastModified(System.currentTimeMillis() - 60000);
+
+		Thread.sleep(1500);
+		assertTrue(System.currentTimeMillis() - lockFile.lastModified() < 10000);
+
+		// The lock is still held, so the other instances don't remove it
+		BundleArtifactStore follower = createStore(new SharedFileSystemBundleArtifactStore(), "1");
+		assertFalse(follower.lock("js-key"));
+		assertTrue(lockFile.exists());
+		store.unlock("js-key");
+		assertFalse(lockFile.exists());
+	}
+
+	@Test
+	public void testAbandonedLockIsTakenOverByOneInstance() throws Exception {
+
+		final int nbInstances = 4;
+		storeDir.mkdirs();
+		File lockFile = new File(storeDir, "js-key.lock");
+		ExecutorService executor = Executors.newFixedThreadPool(nbInstances);
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(lockFile.createNewFile());
+				lockFile.setLastModified(System.currentTimeMillis() - 60000);
+
+				final CountDownLatch startSignal = new CountDownLatch(1);
+				List<BundleArtifactStore> stores = new ArrayList<>();
+				List<Future<Boolean>> locks = new ArrayList<>();
+				for (int j = 0; j < nbInstances; j++) {
+					final BundleArtifactStore store = createStore(new SharedFileSystemBundleArtifactStore(), "1");
+					stores.add(store);
+					locks.add(executor.submit(new Callable<Boolean>() {
+
+						@Override
+						public Boolean call() throws Exception {
+							startSignal.await();
+							return store.lock("js-key");
+						}
+					}));
+				}
+				startSignal.countDown();
+
+				// The other instances wait for the lock until their timeout
+				List<BundleArtifactStore> lockOwners = new ArrayList<>();
+				for (int j = 0; j < nbInstances; j++) {
+					if (locks.get(j).get(10, TimeUnit.SECONDS)) {
+						lockOwners.add(stores.get(j));
+					}
+				}
+				for (BundleArtifactStore lockOwner : lockOwners) {
+					lockOwner.unlock("js-key");
+				}
+				assertEquals(1, lockOwners.size());
+				assertFalse(lockFile.exists());
+
+				// No taken over lock is left in the store
+				assertEquals(0, storeDir.list().length);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
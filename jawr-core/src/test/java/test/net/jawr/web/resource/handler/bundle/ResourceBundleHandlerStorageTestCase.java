@@ -0,0 +1,115 @@
+package test.net.jawr.web.resource.handler.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.resource.bundle.IOUtils;
+import net.jawr.web.resource.bundle.generator.GeneratorRegistry;
+import net.jawr.web.resource.handler.bundle.ServletContextResourceBundleHandler;
+import test.net.jawr.web.FileUtils;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class ResourceBundleHandlerStorageTestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File rootDir;
+
+	private ServletContextResourceBundleHandler bundleHandler;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = new File(FileUtils.getClasspathRootDir(), "bundleHandlerStorage");
+		FileUtils.deleteDirectory(rootDir);
+		File workDir = FileUtils.createDir(new File(rootDir, "work").getPath());
+		File tempDir = FileUtils.createDir(new File(rootDir, "temp").getPath());
+		MockServletContext ctx = new MockServletContext(workDir.getCanonicalPath(), tempDir.getCanonicalPath());
+		bundleHandler = new ServletContextResourceBundleHandler(ctx, UTF8, new GeneratorRegistry(), "js");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Test
+	public void testStoreTextAndGzipBundles() throws Exception {
+
+		StringBuffer content = new StringBuffer("var msg = 'héllo';");
+		bundleHandler.storeBundle("/js/bundle.js", content);
+
+		// A rebuild replaces the previous version
+		content.append("var other;");
+		bundleHandler.storeBundle("/js/bundle.js", content);
+
+		Reader rd = bundleHandler.getResourceBundleReader("/js/bundle.js");
+		try {
+			assertEquals(content.toString(), IOUtils.toString(rd));
+		} finally {
+			IOUtils.close(rd);
+		}
+
+		InputStream is = new GZIPInputStream(
+				Channels.newInputStream(bundleHandler.getResourceBundleChannel("/js/bundle.js", true)));
+		try {
+			assertEquals(content.toString(), IOUtils.toString(new InputStreamReader(is, UTF8)));
+		} finally {
+			IOUtils.close(is);
+		}
+
+		// No temporary file is left in the bundle directories
+		for (String dirPath : new String[] { bundleHandler.getBundleTextDirPath(),
+				bundleHandler.getBundleZipDirPath() }) {
+			String[] files = new File(dirPath, "js").list();
+			assertEquals(1, files.length);
+			assertFalse(files[0].endsWith(".tmp"));
+		}
+	}
+
+	@Test
+	public void testStoreBundleInDeletedDirectory() throws Exception {
+
+		bundleHandler.storeBundle("/js/bundle.js", new StringBuffer("var a;"));
+		FileUtils.deleteDirectory(new File(bundleHandler.getBundleTextDirPath(), "js"));
+
+		bundleHandler.storeBundle("/js/bundle.js", new StringBuffer("var b;"));
+		Reader rd = bundleHandler.getResourceBundleReader("/js/bundle.js");
+		try {
+			assertEquals("var b;", IOUtils.toString(rd));
+		} finally {
+			IOUtils.close(rd);
+		}
+	}
+
+	@Test
+	public void testStoreBundleMapping() throws Exception {
+
+		Properties mapping = new Properties();
+		mapping.put("/js/bundle.js", "N123456789/js/bundle.js");
+		bundleHandler.storeJawrBundleMapping(mapping);
+
+		// A rebuild replaces the previous mapping
+		mapping.put("/js/bundle.js", "N987654321/js/bundle.js");
+		bundleHandler.storeJawrBundleMapping(mapping);
+
+		assertEquals(mapping, bundleHandler.getJawrBundleMapping());
+
+		// No temporary file is left in the temporary directory
+		for (String fileName : new File(bundleHandler.getBundleTextDirPath()).getParentFile().list()) {
+			assertFalse(fileName, fileName.endsWith(".tmp"));
+		}
+	}
+}
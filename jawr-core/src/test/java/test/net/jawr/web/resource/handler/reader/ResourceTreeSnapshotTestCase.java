@@ -0,0 +1,71 @@
+package test.net.jawr.web.resource.handler.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.jawr.web.resource.handler.reader.ResourceTreeSnapshot;
+import test.net.jawr.web.FileUtils;
+
+public class ResourceTreeSnapshotTestCase {
+
+	private File rootDir;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = new File(FileUtils.getClasspathRootDir(), "resourceTreeSnapshot");
+		FileUtils.deleteDirectory(rootDir);
+		new File(rootDir, "js/lib/ext").mkdirs();
+		new File(rootDir, "css").mkdirs();
+		new File(rootDir, "index.html").createNewFile();
+		new File(rootDir, "js/app.js").createNewFile();
+		new File(rootDir, "js/lib/lib.js").createNewFile();
+		new File(rootDir, "js/lib/ext/ext.js").createNewFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Test
+	public void testSnapshotListsTheDirectories() throws Exception {
+
+		ResourceTreeSnapshot snapshot = ResourceTreeSnapshot.create(rootDir.getPath(), 4);
+
+		assertEquals(new HashSet<>(Arrays.asList("js/", "css/", "index.html")), snapshot.getResourceNames("/"));
+		assertEquals(new HashSet<>(Arrays.asList("app.js", "lib/")), snapshot.getResourceNames("/js/"));
+		assertEquals(new HashSet<>(Arrays.asList("lib.js", "ext/")), snapshot.getResourceNames("/js/lib"));
+		assertTrue(snapshot.getResourceNames("/css/").isEmpty());
+		assertNull(snapshot.getResourceNames("/img/"));
+
+		assertTrue(snapshot.contains("/js/lib/lib.js"));
+		assertTrue(snapshot.isDirectory("/js/lib/"));
+		assertFalse(snapshot.isDirectory("/js/lib/lib.js"));
+		assertFalse(snapshot.contains("/js/missing.js"));
+		assertFalse(snapshot.contains("/img/logo.png"));
+	}
+
+	@Test
+	public void testSubDirectories() throws Exception {
+
+		ResourceTreeSnapshot snapshot = ResourceTreeSnapshot.create(rootDir.getPath(), 1);
+
+		List<Path> dirs = snapshot.getDirectories(new File(rootDir, "js/lib").toPath());
+		assertEquals(new HashSet<>(Arrays.asList(new File(rootDir, "js/lib").getAbsoluteFile().toPath(),
+				new File(rootDir, "js/lib/ext").getAbsoluteFile().toPath())), new HashSet<>(dirs));
+		assertNull(snapshot.getDirectories(new File(rootDir, "img").toPath()));
+		assertNull(snapshot.getDirectories(rootDir.getParentFile().toPath()));
+	}
+}
@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
@@ -38,6 +40,7 @@ import static org.junit.Assert.fail;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -221,6 +224,51 @@ public class ResourceWatcherTestCase {
 		verify(bundlesHandler, atLeastOnce()).notifyModification(Matchers.eq(Arrays.asList(b)));
 	}
 
+	@Test
+	public void testBurstOfModificationsIsBatched() throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty(JawrConstant.JAWR_SMART_BUNDLING_EVENT_QUIET_PERIOD, "300");
+		props.setProperty(JawrConstant.JAWR_SMART_BUNDLING_EVENT_MAX_LATENCY, "5000");
+		JawrConfig config = new JawrConfig(JawrConstant.JS_TYPE, props);
+		GeneratorRegistry registry = new GeneratorRegistry(JawrConstant.JS_TYPE);
+		registry.setConfig(config);
+		config.setGeneratorRegistry(registry);
+		when(bundlesHandler.getConfig()).thenReturn(config);
+
+		setBundleMapping("/js/lib/init.js");
+
+		File f = FileUtils.getClassPathFile("watcher/js/lib/init.js");
+		String path = f.getAbsolutePath();
+		when(rsReader.getFilePath("/js/lib/init.js")).thenReturn(path);
+
+		// The batch ends with the rebuild of its bundles
+		final CountDownLatch rebuildLatch = new CountDownLatch(1);
+		doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				rebuildLatch.countDown();
+				return null;
+			}
+		}).when(bundlesHandler).rebuildNotifiedBundles();
+
+		initWatcher();
+		watcher.start();
+
+		// Modify the file several times
+		for (int i = 0; i < 10; i++) {
+			createOrModifyFile(f);
+		}
+
+		// Wait until the end of the quiet period
+		assertTrue(rebuildLatch.await(10, TimeUnit.SECONDS));
+		watcher.stopWatching();
+		verify(bundlesHandler, times(1)).notifyModification(Matchers.eq(Arrays.asList(b)));
+		verify(bundlesHandler, times(1)).rebuildNotifiedBundles();
+		verify(bundlesHandler, never()).rebuildModifiedBundles();
+	}
+
 	/**
 	 * Initialize the resource watcher
 	 * 
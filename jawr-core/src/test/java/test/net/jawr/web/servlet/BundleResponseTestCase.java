@@ -0,0 +1,69 @@
+package test.net.jawr.web.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import net.jawr.web.servlet.BundleResponse;
+
+public class BundleResponseTestCase {
+
+	private static final String CACHE_CONTROL = "public, max-age=315360000, immutable";
+
+	@Test
+	public void testWriteTo() throws Exception {
+
+		byte[] content = "var a = 1;".getBytes(StandardCharsets.UTF_8);
+		BundleResponse bundleResponse = new BundleResponse("text/javascript;charset=UTF-8", "gzip", content,
+				CACHE_CONTROL);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				baos.write(b);
+			}
+		});
+
+		bundleResponse.writeTo(response);
+
+		verify(response).setHeader("Cache-Control", CACHE_CONTROL);
+		verify(response).setHeader("ETag", bundleResponse.getETag());
+		verify(response).setHeader("Content-Encoding", "gzip");
+		verify(response).setContentType("text/javascript;charset=UTF-8");
+		verify(response).setContentLength(content.length);
+		assertArrayEquals(content, baos.toByteArray());
+	}
+
+	@Test
+	public void testWriteHeaders() throws Exception {
+
+		byte[] content = "a { color: red; }".getBytes(StandardCharsets.UTF_8);
+		BundleResponse bundleResponse = new BundleResponse("text/css;charset=UTF-8", null, content, CACHE_CONTROL);
+		assertEquals(bundleResponse.getETag(),
+				new BundleResponse("text/css;charset=UTF-8", null, content.clone(), CACHE_CONTROL).getETag());
+
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		bundleResponse.writeHeaders(response);
+
+		verify(response).setContentLength(content.length);
+		verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+		verify(response, never()).getOutputStream();
+	}
+}
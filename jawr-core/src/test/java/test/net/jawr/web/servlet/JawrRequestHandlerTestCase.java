@@ -0,0 +1,317 @@
+package test.net.jawr.web.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.jawr.web.JawrConstant;
+import net.jawr.web.config.JawrConfig;
+import net.jawr.web.resource.bundle.JoinableResourceBundle;
+import net.jawr.web.resource.bundle.factory.util.PathNormalizer;
+import net.jawr.web.resource.bundle.handler.ResourceBundlesHandler;
+import net.jawr.web.servlet.JawrRequestHandler;
+import test.net.jawr.web.FileUtils;
+import test.net.jawr.web.servlet.mock.MockServletContext;
+
+public class JawrRequestHandlerTestCase {
+
+	private static final String BUNDLE_ID = "/bundles/main.js";
+
+	private File rootDir;
+
+	private File webappDir;
+
+	private MockServletContext servletContext;
+
+	private JawrRequestHandler requestHandler;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = new File(FileUtils.getClasspathRootDir(), "requestHandlerReload");
+		FileUtils.deleteDirectory(rootDir);
+		webappDir = new File(rootDir, "webapp");
+		File tempDir = new File(rootDir, "temp");
+		tempDir.mkdirs();
+		writeScript("var a = 'first';");
+		servletContext = new MockServletContext(webappDir.getAbsolutePath(), tempDir.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (requestHandler != null) {
+			requestHandler.destroy();
+		}
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	private void writeScript(String content) throws IOException {
+		File file = new File(webappDir, "js/main.js");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Properties getConfigProperties(int gracePeriod) {
+		Properties props = new Properties();
+		props.setProperty("jawr.js.bundle.main.id", BUNDLE_ID);
+		props.setProperty("jawr.js.bundle.main.mappings", "/js/main.js");
+		props.setProperty(JawrConfig.JAWR_STRICT_MODE, "true");
+		props.setProperty(JawrConfig.JAWR_GENERATION_GRACE_PERIOD, String.valueOf(gracePeriod));
+		return props;
+	}
+
+	private JawrRequestHandler createRequestHandler(int gracePeriod) throws Exception {
+		return createRequestHandler(getConfigProperties(gracePeriod));
+	}
+
+	private JawrRequestHandler createRequestHandler(Properties props) throws Exception {
+		Map<String, Object> initParams = new HashMap<>();
+		initParams.put("type", JawrConstant.JS_TYPE);
+		requestHandler = new JawrRequestHandler(servletContext, initParams, props);
+		return requestHandler;
+	}
+
+	private HttpServletRequest createRequest(String requestedPath, String queryString) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost" + requestedPath));
+		when(request.getQueryString()).thenReturn(queryString);
+		return request;
+	}
+
+	private String getBundlePath() {
+		ResourceBundlesHandler bundlesHandler = (ResourceBundlesHandler) servletContext
+				.getAttribute(JawrConstant.JS_CONTEXT_ATTRIBUTE);
+		JoinableResourceBundle bundle = bundlesHandler.resolveBundleForPath(BUNDLE_ID);
+		assertNotNull(bundle);
+		return PathNormalizer.joinPaths(bundle.getURLPrefix(null), BUNDLE_ID);
+	}
+
+	private HttpServletResponse request(String requestedPath, final StringWriter content) throws Exception {
+		return request(requestedPath, createRequest(requestedPath, null), content);
+	}
+
+	private HttpServletResponse request(String requestedPath, HttpServletRequest request, final StringWriter content)
+			throws Exception {
+
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getWriter()).thenReturn(new PrintWriter(content));
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				baos.write(b);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				content.write(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+				baos.reset();
+			}
+		});
+		requestHandler.processRequest(requestedPath, request, response);
+		response.getWriter().flush();
+		response.getOutputStream().flush();
+		return response;
+	}
+
+	@Test
+	public void testPreviousGenerationServedDuringGracePeriod() throws Exception {
+
+		JawrRequestHandler handler = createRequestHandler(60);
+		String previousPath = getBundlePath();
+
+		writeScript("var a = 'second';");
+		handler.configChanged(getConfigProperties(60));
+		String path = getBundlePath();
+		assertFalse(previousPath.equals(path));
+
+		StringWriter content = new StringWriter();
+		HttpServletResponse response = request(path, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("second"));
+
+		// The bundle of the previous generation is still served
+		content = new StringWriter();
+		response = request(previousPath, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("first"));
+		assertFalse(content.toString().contains("second"));
+	}
+
+	@Test
+	public void testPreviousGenerationServedWithWorkingDirectory() throws Exception {
+
+		File workingDir = new File(rootDir, "work");
+		Properties props = getConfigProperties(60);
+		props.setProperty(JawrConfig.JAWR_USE_BUNDLE_MAPPING, "true");
+		props.setProperty(JawrConfig.JAWR_WORKING_DIRECTORY, JawrConstant.FILE_URI_PREFIX + workingDir.getAbsolutePath());
+		JawrRequestHandler handler = createRequestHandler(props);
+		String previousPath = getBundlePath();
+
+		writeScript("var a = 'second';");
+		handler.configChanged(props);
+		String path = getBundlePath();
+		assertFalse(previousPath.equals(path));
+
+		// The new generation is stored in its own directory
+		assertTrue(new File(workingDir, "green/text" + BUNDLE_ID).isFile());
+
+		StringWriter content = new StringWriter();
+		HttpServletResponse response = request(path, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("second"));
+
+		content = new StringWriter();
+		response = request(previousPath, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("first"));
+		assertFalse(content.toString().contains("second"));
+	}
+
+	@Test
+	public void testPreviousGenerationReleasedAfterGracePeriod() throws Exception {
+
+		JawrRequestHandler handler = createRequestHandler(0);
+		String previousPath = getBundlePath();
+
+		writeScript("var a = 'second';");
+		handler.configChanged(getConfigProperties(0));
+
+		// Wait for the end of the grace period, which has no length
+		long expiryTime = System.currentTimeMillis();
+		while (System.currentTimeMillis() <= expiryTime) {
+			Thread.yield();
+		}
+
+		StringWriter content = new StringWriter();
+		HttpServletResponse response = request(previousPath, content);
+		verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+		assertEquals("", content.toString());
+	}
+
+	/**
+	 * Checks if the request is served from the fast lane, which doesn't set
+	 * up the Jawr context of the request
+	 */
+	private boolean isServedFromFastLane(final String requestedPath, String queryString) throws Exception {
+
+		final AtomicBoolean contextInitialized = new AtomicBoolean();
+		HttpServletRequest request = createRequest(requestedPath, queryString);
+		when(request.getRequestURL()).thenAnswer(new Answer<StringBuffer>() {
+
+			@Override
+			public StringBuffer answer(InvocationOnMock invocation) throws Throwable {
+				contextInitialized.set(true);
+				return new StringBuffer("http://localhost" + requestedPath);
+			}
+		});
+		StringWriter content = new StringWriter();
+		HttpServletResponse response = request(requestedPath, request, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("var a"));
+		return !contextInitialized.get();
+	}
+
+	@Test
+	public void testFastLaneIsDisabledByDefault() throws Exception {
+
+		createRequestHandler(60);
+		String path = getBundlePath();
+		assertFalse(isServedFromFastLane(path, null));
+		assertFalse(isServedFromFastLane(path, null));
+	}
+
+	@Test
+	public void testResponseHeadersWithoutFastLane() throws Exception {
+
+		createRequestHandler(60);
+		String path = getBundlePath();
+
+		StringWriter content = new StringWriter();
+		HttpServletResponse response = request(path, content);
+		verify(response, never()).sendError(anyInt());
+		assertTrue(content.toString().contains("first"));
+		int contentLength = content.toString().getBytes(StandardCharsets.UTF_8).length;
+		verify(response).setHeader(Matchers.eq("Cache-Control"), Matchers.endsWith(", immutable"));
+		verify(response).setHeader(Matchers.eq("ETag"), Matchers.anyString());
+		verify(response).setContentLength(contentLength);
+
+		// Only the headers are written for the HEAD requests
+		HttpServletRequest request = createRequest(path, null);
+		when(request.getMethod()).thenReturn("HEAD");
+		content = new StringWriter();
+		response = request(path, request, content);
+		verify(response).setContentLength(contentLength);
+		assertEquals("", content.toString());
+	}
+
+	@Test
+	public void testFastLane() throws Exception {
+
+		Properties props = getConfigProperties(60);
+		props.setProperty(JawrConfig.JAWR_REQUEST_FAST_LANE_MAX_SIZE, "1024");
+		props.setProperty(JawrConfig.JAWR_USE_SMART_BUNDLING, "true");
+		JawrRequestHandler handler = createRequestHandler(props);
+		String path = getBundlePath();
+
+		// The first request is a miss, which puts the response in the fast
+		// lane
+		assertFalse(isServedFromFastLane(path, null));
+		assertTrue(isServedFromFastLane(path, null));
+
+		// The requests with a query string bypass the fast lane
+		assertFalse(isServedFromFastLane(path, "a=b"));
+
+		// The fast lane is cleared when the bundles are rebuilt
+		handler.rebuildDirtyBundles();
+		assertFalse(isServedFromFastLane(path, null));
+		assertTrue(isServedFromFastLane(path, null));
+	}
+
+	@Test
+	public void testFastLaneMaxSize() throws Exception {
+
+		// The bundle is larger than the fast lane
+		StringBuilder script = new StringBuilder("var a = 'first';");
+		while (script.length() <= 4096) {
+			script.append("\nvar b = 'padding';");
+		}
+		writeScript(script.toString());
+		Properties props = getConfigProperties(60);
+		props.setProperty(JawrConfig.JAWR_REQUEST_FAST_LANE_MAX_SIZE, "1");
+		createRequestHandler(props);
+		String path = getBundlePath();
+
+		assertFalse(isServedFromFastLane(path, null));
+		assertFalse(isServedFromFastLane(path, null));
+	}
+}
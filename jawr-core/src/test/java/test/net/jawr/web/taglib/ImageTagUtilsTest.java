@@ -7,6 +7,12 @@ import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -80,6 +86,72 @@ public class ImageTagUtilsTest extends TestCase {
 
 	}
 	
+	public void testBase64ImageIsStoredSeparatelyFromMapping() throws Exception {
+
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		when(request.getContextPath()).thenReturn("/basicwebapp/");
+		when(request.getRequestURI()).thenReturn("/basicwebapp/content/myPage.jsp");
+		ResourceReaderHandler rsHandler = Mockito.mock(ResourceReaderHandler.class);
+		when(rsHandler.getResourceAsStream("/img/logo/myLogo.png")).thenReturn(new ByteArrayInputStream("dummy content".getBytes()));
+		BinaryResourcesHandler imgRsHandler = new BinaryResourcesHandler(config, rsHandler, null);
+
+		String result = ImageTagUtils.getBase64EncodedImage("/img/logo/myLogo.png", imgRsHandler, request);
+		assertEquals("data:image/png;base64,ZHVtbXkgY29udGVudA==", result);
+		assertTrue(imgRsHandler.getBinaryPathMap().isEmpty());
+
+		// The image is only read once
+		assertEquals(result, ImageTagUtils.getBase64EncodedImage("/img/logo/myLogo.png", imgRsHandler, request));
+		Mockito.verify(rsHandler, Mockito.times(1)).getResourceAsStream("/img/logo/myLogo.png");
+	}
+
+	public void testConcurrentComputationsAreExecutedOnce() throws Exception {
+
+		BinaryResourcesHandler imgRsHandler = new BinaryResourcesHandler(config, Mockito.mock(ResourceReaderHandler.class), null);
+		final AtomicInteger nbComputations = new AtomicInteger();
+		final CountDownLatch computationStarted = new CountDownLatch(1);
+		final CountDownLatch releaseComputation = new CountDownLatch(1);
+		final Callable<String> computation = new Callable<String>() {
+
+			public String call() throws Exception {
+				nbComputations.incrementAndGet();
+				computationStarted.countDown();
+				releaseComputation.await();
+				return "/cb123/img/logo.png";
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(new ComputeTask(imgRsHandler, computation));
+			computationStarted.await();
+			Future<String> second = executor.submit(new ComputeTask(imgRsHandler, computation));
+			Thread.sleep(100);
+			releaseComputation.countDown();
+
+			assertEquals("/cb123/img/logo.png", first.get());
+			assertEquals("/cb123/img/logo.png", second.get());
+			assertEquals(1, nbComputations.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class ComputeTask implements Callable<String> {
+
+		private final BinaryResourcesHandler imgRsHandler;
+
+		private final Callable<String> computation;
+
+		public ComputeTask(BinaryResourcesHandler imgRsHandler, Callable<String> computation) {
+			this.imgRsHandler = imgRsHandler;
+			this.computation = computation;
+		}
+
+		public String call() {
+			return imgRsHandler.computeOnce("/img/logo.png", computation);
+		}
+	}
+
 	private void testImageUrlWithContextPathOverride(String requestUrl, JawrConfig config,
 			String contextPath) {
 		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
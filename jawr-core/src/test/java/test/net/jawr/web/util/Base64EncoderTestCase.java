@@ -0,0 +1,38 @@
+package test.net.jawr.web.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import net.jawr.web.util.Base64Encoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Base64EncoderTestCase {
+
+	@Test
+	public void testStreamEncodingMatchesArrayEncoding() throws IOException {
+
+		Random random = new Random(42);
+		int[] sizes = { 0, 1, 2, 3, 1023, 3072, 3073, 10000 };
+		for (int size : sizes) {
+			byte[] data = new byte[size];
+			random.nextBytes(data);
+
+			StringBuilder sb = new StringBuilder();
+			long read = Base64Encoder.encode(new ByteArrayInputStream(data), sb);
+
+			Assert.assertEquals(size, read);
+			Assert.assertEquals(new String(Base64Encoder.encode(data)), sb.toString());
+		}
+	}
+
+	@Test
+	public void testStreamEncodingAppendsToBuffer() throws IOException {
+
+		StringBuilder sb = new StringBuilder("data:");
+		Base64Encoder.encode(new ByteArrayInputStream("hello".getBytes("UTF-8")), sb);
+		Assert.assertEquals("data:aGVsbG8=", sb.toString());
+	}
+}
@@ -0,0 +1,37 @@
+package test.net.jawr.web.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Test;
+
+import net.jawr.web.util.BuildExecutor;
+
+public class BuildExecutorTestCase {
+
+	@Test
+	public void testExecutorIsShutDownByTheLastUser() throws Exception {
+
+		int userCount = BuildExecutor.getUserCount();
+		BuildExecutor.acquire();
+		BuildExecutor.acquire();
+		ExecutorService executor = BuildExecutor.getExecutor();
+
+		// The executor is still used by the other handler
+		BuildExecutor.release();
+		assertFalse(executor.isShutdown());
+		assertSame(executor, BuildExecutor.getExecutor());
+
+		BuildExecutor.release();
+		assertEquals(userCount, BuildExecutor.getUserCount());
+		if (userCount == 0) {
+			assertTrue(executor.isShutdown());
+			assertNotSame(executor, BuildExecutor.getExecutor());
+		}
+	}
+}